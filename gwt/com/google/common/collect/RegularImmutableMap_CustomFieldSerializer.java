@@ -42,8 +42,8 @@ public class RegularImmutableMap_CustomFieldSerializer {
     /*
      * For this custom field serializer to be invoked, the map must have been
      * RegularImmutableMap before it's serialized.  Since RegularImmutableMap
-     * always have two or more elements, ImmutableMap.copyOf always return
-     * a RegularImmutableMap back.
+     * always has more than SmallImmutableMap.MAX_SIZE entries,
+     * ImmutableMap.copyOf always returns a RegularImmutableMap back.
      */
     return (RegularImmutableMap<Object, Object>) ImmutableMap.copyOf(entries);
   }
@@ -41,8 +41,8 @@ public class RegularImmutableSet_CustomFieldSerializer {
     /*
      * For this custom field serializer to be invoked, the set must have been
      * RegularImmutableSet before it's serialized.  Since RegularImmutableSet
-     * always have two or more elements, ImmutableSet.copyOf always return
-     * a RegularImmutableSet back.
+     * always has more than SmallImmutableSet.MAX_SIZE elements,
+     * ImmutableSet.copyOf always returns a RegularImmutableSet back.
      */
     return (RegularImmutableSet<Object>) ImmutableSet.copyOf(elements);
   }
@@ -0,0 +1,45 @@
+/*
+ * Copyright (C) 2009 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.base;
+
+import com.google.common.annotations.GwtCompatible;
+
+import java.util.Map;
+
+/**
+ * A {@link Function} that can be applied to many inputs at once more cheaply
+ * than to each input in turn, for example because it looks its results up
+ * with one remote call or one database query. {@link Functions#applyAll}
+ * uses {@link #applyAll} when given a {@code BatchFunction}.
+ *
+ * @param <F> the type of the function input
+ * @param <T> the type of the function output
+ */
+@GwtCompatible
+public interface BatchFunction<F, T> extends Function<F, T> {
+
+  /**
+   * Applies the function to each of {@code inputs}. The returned map has
+   * exactly one entry for each distinct input, whose value is what {@link
+   * #apply} would return for that input, and iterates in the order in which
+   * the inputs were first encountered.
+   *
+   * @param inputs the source objects, possibly containing duplicates
+   * @return a map from each input to its result
+   */
+  Map<F, T> applyAll(Iterable<? extends F> inputs);
+}
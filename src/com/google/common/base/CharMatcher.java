@@ -0,0 +1,844 @@
+/*
+ * Copyright (C) 2009 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.base;
+
+import com.google.common.annotations.GwtCompatible;
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkPositionIndex;
+
+/**
+ * Determines a true or false value for any Java {@code char} value, just as
+ * {@link Predicate} does for any {@link Object}. Also offers basic text
+ * processing methods based on this function. Example: <pre>   {@code
+ *
+ *   String trimmed = CharMatcher.WHITESPACE.trimFrom(userInput);
+ *   if (CharMatcher.ASCII.matchesAllOf(s)) { ... }}</pre>
+ *
+ * <p>Matchers combine with {@link #and}, {@link #or} and {@link #negate}.
+ * A matcher that will be used many times, especially a composed one, should
+ * be {@link #precomputed}: that turns it into a 64K-bit lookup table, whose
+ * text processing methods test each character with a single array access.
+ *
+ * <p>Supplementary code points, which take two {@code char}s, are treated as
+ * two separate characters. All matchers are immutable and thread-safe.
+ */
+@GwtCompatible
+public abstract class CharMatcher implements Predicate<Character> {
+
+  // Constants
+
+  /**
+   * Determines whether a character is whitespace according to the latest
+   * Unicode standard, as illustrated <a
+   * href="http://unicode.org/cldr/utility/list-unicodeset.jsp?a=%5Cp%7Bwhitespace%7D">here</a>.
+   * This is not the same definition used by other Java APIs. See <a
+   * href="http://spreadsheets.google.com/pub?key=pd8dAQyHbdewRsnE5x5GzKQ">a
+   * comparison of several definitions of "whitespace"</a>.
+   */
+  public static final CharMatcher WHITESPACE
+      = anyOf("\t\n\u000b\f\r \u0085"
+              + "\u00a0\u1680\u2028\u2029\u202f\u205f\u3000")
+          .or(inRange('\u2000', '\u200a'))
+          .precomputed()
+          .withToString("CharMatcher.WHITESPACE");
+
+  /** Determines whether a character is ASCII, meaning that its code point
+   * is less than 128. */
+  public static final CharMatcher ASCII
+      = inRange('\0', '\u007f').withToString("CharMatcher.ASCII");
+
+  /**
+   * Determines whether a character is whitespace according to {@link
+   * Character#isWhitespace(char) Java's definition}; it is usually preferable
+   * to use {@link #WHITESPACE}.
+   */
+  public static final CharMatcher JAVA_WHITESPACE = new CharMatcher() {
+    @Override public boolean matches(char c) {
+      return Character.isWhitespace(c);
+    }
+    @Override public String toString() {
+      return "CharMatcher.JAVA_WHITESPACE";
+    }
+  };
+
+  /**
+   * Determines whether a character is a digit according to {@link
+   * Character#isDigit(char) Java's definition}.
+   */
+  public static final CharMatcher JAVA_DIGIT = new CharMatcher() {
+    @Override public boolean matches(char c) {
+      return Character.isDigit(c);
+    }
+    @Override public String toString() {
+      return "CharMatcher.JAVA_DIGIT";
+    }
+  };
+
+  /**
+   * Determines whether a character is a letter according to {@link
+   * Character#isLetter(char) Java's definition}.
+   */
+  public static final CharMatcher JAVA_LETTER = new CharMatcher() {
+    @Override public boolean matches(char c) {
+      return Character.isLetter(c);
+    }
+    @Override public String toString() {
+      return "CharMatcher.JAVA_LETTER";
+    }
+  };
+
+  /**
+   * Determines whether a character is a letter or digit according to {@link
+   * Character#isLetterOrDigit(char) Java's definition}.
+   */
+  public static final CharMatcher JAVA_LETTER_OR_DIGIT = new CharMatcher() {
+    @Override public boolean matches(char c) {
+      return Character.isLetterOrDigit(c);
+    }
+    @Override public String toString() {
+      return "CharMatcher.JAVA_LETTER_OR_DIGIT";
+    }
+  };
+
+  /**
+   * Determines whether a character is upper case according to {@link
+   * Character#isUpperCase(char) Java's definition}.
+   */
+  public static final CharMatcher JAVA_UPPER_CASE = new CharMatcher() {
+    @Override public boolean matches(char c) {
+      return Character.isUpperCase(c);
+    }
+    @Override public String toString() {
+      return "CharMatcher.JAVA_UPPER_CASE";
+    }
+  };
+
+  /**
+   * Determines whether a character is lower case according to {@link
+   * Character#isLowerCase(char) Java's definition}.
+   */
+  public static final CharMatcher JAVA_LOWER_CASE = new CharMatcher() {
+    @Override public boolean matches(char c) {
+      return Character.isLowerCase(c);
+    }
+    @Override public String toString() {
+      return "CharMatcher.JAVA_LOWER_CASE";
+    }
+  };
+
+  /**
+   * Determines whether a character is an ISO control character according to
+   * {@link Character#isISOControl(char)}.
+   */
+  public static final CharMatcher JAVA_ISO_CONTROL
+      = inRange('\u0000', '\u001f').or(inRange('\u007f', '\u009f'))
+          .withToString("CharMatcher.JAVA_ISO_CONTROL");
+
+  /** Matches any character. */
+  public static final CharMatcher ANY = new CharMatcher() {
+    @Override public boolean matches(char c) {
+      return true;
+    }
+    @Override public int indexIn(CharSequence sequence, int start) {
+      int length = sequence.length();
+      checkPositionIndex(start, length);
+      return (start == length) ? -1 : start;
+    }
+    @Override public int countIn(CharSequence sequence) {
+      return sequence.length();
+    }
+    @Override public String removeFrom(CharSequence sequence) {
+      checkNotNull(sequence);
+      return "";
+    }
+    @Override public CharMatcher negate() {
+      return NONE;
+    }
+    @Override public CharMatcher precomputed() {
+      return this;
+    }
+    @Override public String toString() {
+      return "CharMatcher.ANY";
+    }
+  };
+
+  /** Matches no characters. */
+  public static final CharMatcher NONE = new CharMatcher() {
+    @Override public boolean matches(char c) {
+      return false;
+    }
+    @Override public int indexIn(CharSequence sequence, int start) {
+      checkPositionIndex(start, sequence.length());
+      return -1;
+    }
+    @Override public int countIn(CharSequence sequence) {
+      checkNotNull(sequence);
+      return 0;
+    }
+    @Override public String removeFrom(CharSequence sequence) {
+      return sequence.toString();
+    }
+    @Override public CharMatcher negate() {
+      return ANY;
+    }
+    @Override public CharMatcher precomputed() {
+      return this;
+    }
+    @Override public String toString() {
+      return "CharMatcher.NONE";
+    }
+  };
+
+  // Static factories
+
+  /** Returns a {@code char} matcher that matches only one specified char. */
+  public static CharMatcher is(final char match) {
+    return new CharMatcher() {
+      @Override public boolean matches(char c) {
+        return c == match;
+      }
+      @Override public String toString() {
+        return "CharMatcher.is(" + describe(match) + ")";
+      }
+    };
+  }
+
+  /**
+   * Returns a {@code char} matcher that matches any char except the one
+   * specified.
+   */
+  public static CharMatcher isNot(final char match) {
+    return is(match).negate();
+  }
+
+  /**
+   * Returns a {@code char} matcher that matches any character present in the
+   * given character sequence.
+   */
+  public static CharMatcher anyOf(final CharSequence sequence) {
+    switch (sequence.length()) {
+      case 0:
+        return NONE;
+      case 1:
+        return is(sequence.charAt(0));
+      default:
+        final char[] chars = sequence.toString().toCharArray();
+        return new CharMatcher() {
+          @Override public boolean matches(char c) {
+            for (char match : chars) {
+              if (c == match) {
+                return true;
+              }
+            }
+            return false;
+          }
+          @Override public String toString() {
+            StringBuilder builder = new StringBuilder("CharMatcher.anyOf(\"");
+            for (char c : chars) {
+              builder.append(describe(c));
+            }
+            return builder.append("\")").toString();
+          }
+        };
+    }
+  }
+
+  /**
+   * Returns a {@code char} matcher that matches any character not present in
+   * the given character sequence.
+   */
+  public static CharMatcher noneOf(CharSequence sequence) {
+    return anyOf(sequence).negate();
+  }
+
+  /**
+   * Returns a {@code char} matcher that matches any character in a given
+   * range (both endpoints are inclusive). For example, to match any lowercase
+   * letter of the English alphabet, use {@code CharMatcher.inRange('a',
+   * 'z')}.
+   *
+   * @throws IllegalArgumentException if {@code endInclusive < startInclusive}
+   */
+  public static CharMatcher inRange(
+      final char startInclusive, final char endInclusive) {
+    checkArgument(endInclusive >= startInclusive);
+    return new CharMatcher() {
+      @Override public boolean matches(char c) {
+        return startInclusive <= c && c <= endInclusive;
+      }
+      @Override public String toString() {
+        return "CharMatcher.inRange(" + describe(startInclusive) + ", "
+            + describe(endInclusive) + ")";
+      }
+    };
+  }
+
+  /**
+   * Returns a matcher with identical behavior to the given {@link
+   * Character}-based predicate, but which operates on primitive {@code char}
+   * instances instead.
+   */
+  public static CharMatcher forPredicate(
+      final Predicate<? super Character> predicate) {
+    checkNotNull(predicate);
+    if (predicate instanceof CharMatcher) {
+      return (CharMatcher) predicate;
+    }
+    return new CharMatcher() {
+      @Override public boolean matches(char c) {
+        return predicate.apply(c);
+      }
+      @Override public String toString() {
+        return "CharMatcher.forPredicate(" + predicate + ")";
+      }
+    };
+  }
+
+  private static String describe(char c) {
+    return (c >= ' ' && c < '\u007f')
+        ? String.valueOf(c)
+        : "\\u" + Integer.toHexString(0x10000 | c).substring(1);
+  }
+
+  // Abstract methods
+
+  /** Determines a true or false value for the given character. */
+  public abstract boolean matches(char c);
+
+  // Non-static factories
+
+  /** Returns a matcher that matches any character not matched by this one. */
+  public CharMatcher negate() {
+    final CharMatcher original = this;
+    return new CharMatcher() {
+      @Override public boolean matches(char c) {
+        return !original.matches(c);
+      }
+      @Override public CharMatcher negate() {
+        return original;
+      }
+      @Override public String toString() {
+        return original + ".negate()";
+      }
+    };
+  }
+
+  /**
+   * Returns a matcher that matches any character matched by both this matcher
+   * and {@code other}.
+   */
+  public CharMatcher and(final CharMatcher other) {
+    checkNotNull(other);
+    final CharMatcher first = this;
+    return new CharMatcher() {
+      @Override public boolean matches(char c) {
+        return first.matches(c) && other.matches(c);
+      }
+      @Override public String toString() {
+        return "CharMatcher.and(" + first + ", " + other + ")";
+      }
+    };
+  }
+
+  /**
+   * Returns a matcher that matches any character matched by either this
+   * matcher or {@code other}.
+   */
+  public CharMatcher or(final CharMatcher other) {
+    checkNotNull(other);
+    final CharMatcher first = this;
+    return new CharMatcher() {
+      @Override public boolean matches(char c) {
+        return first.matches(c) || other.matches(c);
+      }
+      @Override public String toString() {
+        return "CharMatcher.or(" + first + ", " + other + ")";
+      }
+    };
+  }
+
+  /**
+   * Returns a {@code char} matcher functionally equivalent to this one, but
+   * which tests each character with a lookup in a table of 64K bits (8K
+   * bytes), built by calling {@link #matches} once for every {@code char}
+   * value. The table's text processing methods don't make a method call per
+   * character. Matchers built from two precomputed matchers with {@link #and}
+   * or {@link #or}, or negated with {@link #negate}, are precomputed as well.
+   *
+   * <p>Precomputing takes time, so it's only worthwhile for a matcher that's
+   * stored and used many times.
+   */
+  public CharMatcher precomputed() {
+    long[] words = new long[LookupTable.WORDS];
+    for (int c = Character.MIN_VALUE; c <= Character.MAX_VALUE; c++) {
+      if (matches((char) c)) {
+        words[c >>> 6] |= 1L << c;
+      }
+    }
+    return new LookupTable(words, toString());
+  }
+
+  /** Returns a matcher that behaves like this one but has the given name. */
+  CharMatcher withToString(final String description) {
+    final CharMatcher original = this;
+    return new CharMatcher() {
+      @Override public boolean matches(char c) {
+        return original.matches(c);
+      }
+      @Override public CharMatcher precomputed() {
+        return original.precomputed();
+      }
+      @Override public String toString() {
+        return description;
+      }
+    };
+  }
+
+  // Text processing routines
+
+  /**
+   * Returns {@code true} if a character sequence contains at least one
+   * matching character.
+   */
+  public boolean matchesAnyOf(CharSequence sequence) {
+    return indexIn(sequence) != -1;
+  }
+
+  /**
+   * Returns {@code true} if a character sequence contains only matching
+   * characters. An empty sequence matches.
+   */
+  public boolean matchesAllOf(CharSequence sequence) {
+    for (int i = sequence.length() - 1; i >= 0; i--) {
+      if (!matches(sequence.charAt(i))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Returns {@code true} if a character sequence contains no matching
+   * characters.
+   */
+  public boolean matchesNoneOf(CharSequence sequence) {
+    return indexIn(sequence) == -1;
+  }
+
+  /**
+   * Returns the index of the first matching character in a character
+   * sequence, or {@code -1} if no matching character is present.
+   */
+  public int indexIn(CharSequence sequence) {
+    return indexIn(sequence, 0);
+  }
+
+  /**
+   * Returns the index of the first matching character in a character
+   * sequence, starting from a given position, or {@code -1} if no character
+   * matches after that position.
+   *
+   * @throws IndexOutOfBoundsException if {@code start} is negative or greater
+   *     than {@code sequence.length()}
+   */
+  public int indexIn(CharSequence sequence, int start) {
+    int length = sequence.length();
+    checkPositionIndex(start, length);
+    for (int i = start; i < length; i++) {
+      if (matches(sequence.charAt(i))) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Returns the index of the last matching character in a character
+   * sequence, or {@code -1} if no matching character is present.
+   */
+  public int lastIndexIn(CharSequence sequence) {
+    for (int i = sequence.length() - 1; i >= 0; i--) {
+      if (matches(sequence.charAt(i))) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /** Returns the number of matching characters found in a sequence. */
+  public int countIn(CharSequence sequence) {
+    int count = 0;
+    for (int i = 0, length = sequence.length(); i < length; i++) {
+      if (matches(sequence.charAt(i))) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Returns a string containing all non-matching characters of a character
+   * sequence, in order. For example, {@code
+   * CharMatcher.is('a').removeFrom("bazaar")} returns {@code "bzr"}.
+   */
+  public String removeFrom(CharSequence sequence) {
+    String string = sequence.toString();
+    int first = indexIn(string);
+    if (first == -1) {
+      return string;
+    }
+    char[] chars = string.toCharArray();
+    int kept = first;
+    for (int i = first + 1; i < chars.length; i++) {
+      char c = chars[i];
+      if (!matches(c)) {
+        chars[kept++] = c;
+      }
+    }
+    return new String(chars, 0, kept);
+  }
+
+  /**
+   * Returns a string containing all matching characters of a character
+   * sequence, in order. For example, {@code
+   * CharMatcher.is('a').retainFrom("bazaar")} returns {@code "aaa"}.
+   */
+  public String retainFrom(CharSequence sequence) {
+    return negate().removeFrom(sequence);
+  }
+
+  /**
+   * Returns a string copy of the input character sequence, with each
+   * character that matches this matcher replaced by a given replacement
+   * character. For example, {@code CharMatcher.is('a').replaceFrom("radar",
+   * 'o')} returns {@code "rodor"}.
+   */
+  public String replaceFrom(CharSequence sequence, char replacement) {
+    String string = sequence.toString();
+    int first = indexIn(string);
+    if (first == -1) {
+      return string;
+    }
+    char[] chars = string.toCharArray();
+    chars[first] = replacement;
+    for (int i = first + 1; i < chars.length; i++) {
+      if (matches(chars[i])) {
+        chars[i] = replacement;
+      }
+    }
+    return new String(chars);
+  }
+
+  /**
+   * Returns a substring of the input character sequence that omits all
+   * characters this matcher matches from the beginning and from the end of
+   * the string. For example, {@code
+   * CharMatcher.anyOf("ab").trimFrom("abacatbab")} returns {@code "cat"}.
+   */
+  public String trimFrom(CharSequence sequence) {
+    int length = sequence.length();
+    int first;
+    int last;
+    for (first = 0; first < length; first++) {
+      if (!matches(sequence.charAt(first))) {
+        break;
+      }
+    }
+    for (last = length - 1; last > first; last--) {
+      if (!matches(sequence.charAt(last))) {
+        break;
+      }
+    }
+    return sequence.subSequence(first, last + 1).toString();
+  }
+
+  /**
+   * Returns a substring of the input character sequence that omits all
+   * characters this matcher matches from the beginning of the string.
+   */
+  public String trimLeadingFrom(CharSequence sequence) {
+    int length = sequence.length();
+    int first;
+    for (first = 0; first < length; first++) {
+      if (!matches(sequence.charAt(first))) {
+        break;
+      }
+    }
+    return sequence.subSequence(first, length).toString();
+  }
+
+  /**
+   * Returns a substring of the input character sequence that omits all
+   * characters this matcher matches from the end of the string.
+   */
+  public String trimTrailingFrom(CharSequence sequence) {
+    int last;
+    for (last = sequence.length() - 1; last >= 0; last--) {
+      if (!matches(sequence.charAt(last))) {
+        break;
+      }
+    }
+    return sequence.subSequence(0, last + 1).toString();
+  }
+
+  /**
+   * Returns a string copy of the input character sequence, with each group of
+   * consecutive characters that match this matcher replaced by a single
+   * replacement character. For example, {@code
+   * CharMatcher.anyOf("eko").collapseFrom("bookkeeper", '-')} returns {@code
+   * "b-p-r"}.
+   */
+  public String collapseFrom(CharSequence sequence, char replacement) {
+    int first = indexIn(sequence);
+    if (first == -1) {
+      return sequence.toString();
+    }
+    int length = sequence.length();
+    StringBuilder builder = new StringBuilder(length)
+        .append(sequence, 0, first)
+        .append(replacement);
+    boolean inMatchingGroup = true;
+    for (int i = first + 1; i < length; i++) {
+      char c = sequence.charAt(i);
+      if (matches(c)) {
+        if (!inMatchingGroup) {
+          builder.append(replacement);
+          inMatchingGroup = true;
+        }
+      } else {
+        builder.append(c);
+        inMatchingGroup = false;
+      }
+    }
+    return builder.toString();
+  }
+
+  /**
+   * Collapses groups of matching characters exactly as {@link #collapseFrom}
+   * does, except that groups of matching characters at the start or end of
+   * the sequence are removed without replacement.
+   */
+  public String trimAndCollapseFrom(CharSequence sequence, char replacement) {
+    return collapseFrom(trimFrom(sequence), replacement);
+  }
+
+  /**
+   * Returns {@code true} if this matcher matches the given character.
+   *
+   * @throws NullPointerException if {@code character} is null
+   */
+  public boolean apply(Character character) {
+    return matches(character);
+  }
+
+  /**
+   * A matcher backed by a 64K-bit table. Its text processing methods test
+   * characters inline, rather than by calling {@link #matches}.
+   */
+  private static final class LookupTable extends CharMatcher {
+    static final int WORDS = (Character.MAX_VALUE + 1) / 64;
+
+    final long[] words;
+    final String description;
+
+    LookupTable(long[] words, String description) {
+      this.words = words;
+      this.description = description;
+    }
+
+    @Override public boolean matches(char c) {
+      return (words[c >>> 6] & (1L << c)) != 0;
+    }
+
+    @Override public CharMatcher precomputed() {
+      return this;
+    }
+
+    @Override public CharMatcher negate() {
+      long[] negated = new long[WORDS];
+      for (int i = 0; i < WORDS; i++) {
+        negated[i] = ~words[i];
+      }
+      return new LookupTable(negated, description + ".negate()");
+    }
+
+    @Override public CharMatcher and(CharMatcher other) {
+      if (!(other instanceof LookupTable)) {
+        return super.and(other);
+      }
+      long[] otherWords = ((LookupTable) other).words;
+      long[] combined = new long[WORDS];
+      for (int i = 0; i < WORDS; i++) {
+        combined[i] = words[i] & otherWords[i];
+      }
+      return new LookupTable(
+          combined, "CharMatcher.and(" + this + ", " + other + ")");
+    }
+
+    @Override public CharMatcher or(CharMatcher other) {
+      if (!(other instanceof LookupTable)) {
+        return super.or(other);
+      }
+      long[] otherWords = ((LookupTable) other).words;
+      long[] combined = new long[WORDS];
+      for (int i = 0; i < WORDS; i++) {
+        combined[i] = words[i] | otherWords[i];
+      }
+      return new LookupTable(
+          combined, "CharMatcher.or(" + this + ", " + other + ")");
+    }
+
+    @Override public boolean matchesAllOf(CharSequence sequence) {
+      long[] words = this.words;
+      for (int i = sequence.length() - 1; i >= 0; i--) {
+        char c = sequence.charAt(i);
+        if ((words[c >>> 6] & (1L << c)) == 0) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    @Override public int indexIn(CharSequence sequence, int start) {
+      int length = sequence.length();
+      checkPositionIndex(start, length);
+      long[] words = this.words;
+      for (int i = start; i < length; i++) {
+        char c = sequence.charAt(i);
+        if ((words[c >>> 6] & (1L << c)) != 0) {
+          return i;
+        }
+      }
+      return -1;
+    }
+
+    @Override public int lastIndexIn(CharSequence sequence) {
+      long[] words = this.words;
+      for (int i = sequence.length() - 1; i >= 0; i--) {
+        char c = sequence.charAt(i);
+        if ((words[c >>> 6] & (1L << c)) != 0) {
+          return i;
+        }
+      }
+      return -1;
+    }
+
+    @Override public int countIn(CharSequence sequence) {
+      long[] words = this.words;
+      int count = 0;
+      for (int i = 0, length = sequence.length(); i < length; i++) {
+        char c = sequence.charAt(i);
+        if ((words[c >>> 6] & (1L << c)) != 0) {
+          count++;
+        }
+      }
+      return count;
+    }
+
+    @Override public String removeFrom(CharSequence sequence) {
+      String string = sequence.toString();
+      int first = indexIn(string);
+      if (first == -1) {
+        return string;
+      }
+      long[] words = this.words;
+      char[] chars = string.toCharArray();
+      int kept = first;
+      for (int i = first + 1; i < chars.length; i++) {
+        char c = chars[i];
+        if ((words[c >>> 6] & (1L << c)) == 0) {
+          chars[kept++] = c;
+        }
+      }
+      return new String(chars, 0, kept);
+    }
+
+    @Override public String replaceFrom(
+        CharSequence sequence, char replacement) {
+      String string = sequence.toString();
+      int first = indexIn(string);
+      if (first == -1) {
+        return string;
+      }
+      long[] words = this.words;
+      char[] chars = string.toCharArray();
+      chars[first] = replacement;
+      for (int i = first + 1; i < chars.length; i++) {
+        char c = chars[i];
+        if ((words[c >>> 6] & (1L << c)) != 0) {
+          chars[i] = replacement;
+        }
+      }
+      return new String(chars);
+    }
+
+    @Override public String trimFrom(CharSequence sequence) {
+      long[] words = this.words;
+      int length = sequence.length();
+      int first;
+      int last;
+      for (first = 0; first < length; first++) {
+        char c = sequence.charAt(first);
+        if ((words[c >>> 6] & (1L << c)) == 0) {
+          break;
+        }
+      }
+      for (last = length - 1; last > first; last--) {
+        char c = sequence.charAt(last);
+        if ((words[c >>> 6] & (1L << c)) == 0) {
+          break;
+        }
+      }
+      return sequence.subSequence(first, last + 1).toString();
+    }
+
+    @Override public String collapseFrom(
+        CharSequence sequence, char replacement) {
+      int first = indexIn(sequence);
+      if (first == -1) {
+        return sequence.toString();
+      }
+      long[] words = this.words;
+      int length = sequence.length();
+      char[] chars = new char[length];
+      int size = 0;
+      for (int i = 0; i < first; i++) {
+        chars[size++] = sequence.charAt(i);
+      }
+      chars[size++] = replacement;
+      boolean inMatchingGroup = true;
+      for (int i = first + 1; i < length; i++) {
+        char c = sequence.charAt(i);
+        if ((words[c >>> 6] & (1L << c)) != 0) {
+          if (!inMatchingGroup) {
+            chars[size++] = replacement;
+            inMatchingGroup = true;
+          }
+        } else {
+          chars[size++] = c;
+          inMatchingGroup = false;
+        }
+      }
+      return new String(chars, 0, size);
+    }
+
+    @Override public String toString() {
+      return description + ".precomputed()";
+    }
+  }
+}
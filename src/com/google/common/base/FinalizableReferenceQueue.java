@@ -20,16 +20,32 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.lang.ref.Reference;
 import java.lang.ref.ReferenceQueue;
+import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.net.URL;
 import java.net.URLClassLoader;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
  * A reference queue with an associated background thread that dequeues
  * references and invokes {@link FinalizableReference#finalizeReferent()} on
- * them.
+ * them. All queues share one background thread, so creating many queues
+ * doesn't create many threads. The thread blocks on the queue while it serves
+ * a single one; while it serves several, a reference may wait up to about a
+ * tenth of a second before it's cleaned up. {@link #queueDepth} and {@link
+ * #cleanupLag} report how far cleanup is falling behind.
+ *
+ * <p>A queue created by {@link #newPollingQueue} has no background thread.
+ * Its references are cleaned up by {@link #cleanUp(int)}, which the code
+ * that creates them must call regularly. This also happens to queues whose
+ * background thread couldn't be started, for example because the security
+ * manager doesn't allow it; their references are additionally cleaned up, a
+ * batch at a time, whenever new ones are created.
  *
  * <p>Keep a strong reference to this object until all of the associated
  * referents have been finalized. If this object is garbage collected earlier,
@@ -45,7 +61,7 @@ public class FinalizableReferenceQueue {
    * client (ReferenceMap, for example) no longer has a strong reference to
    * this object, the garbage collector will reclaim it and enqueue the
    * phantom reference. The enqueued reference will trigger the Finalizer to
-   * stop.
+   * stop serving this queue, and once it serves no queues, to stop.
    *
    * If this library is loaded in the system class loader,
    * FinalizableReferenceQueue can load Finalizer directly with no problems.
@@ -96,10 +112,15 @@ public class FinalizableReferenceQueue {
 
   /** Reference to Finalizer.startFinalizer(). */
   private static final Method startFinalizer;
+
+  /** Reference to Finalizer.getStatistics(), or null if there's none. */
+  private static final Method getStatistics;
+
   static {
     Class<?> finalizer = loadFinalizer(
         new SystemLoader(), new DecoupledLoader(), new DirectLoader());
     startFinalizer = getStartFinalizer(finalizer);
+    getStatistics = getGetStatistics(finalizer);
   }
 
   /**
@@ -112,11 +133,62 @@ public class FinalizableReferenceQueue {
    */
   final boolean threadStarted;
 
+  /**
+   * Whether this queue is only cleaned up by explicit calls to {@link
+   * #cleanUp(int)}.
+   */
+  private final boolean polling;
+
+  /**
+   * Maximum number of references cleaned up when a new reference is created
+   * and the background thread isn't running.
+   */
+  static final int CLEANUP_BATCH_SIZE = 32;
+
+  /**
+   * References that drain() dequeued after reaching its limit, so that it
+   * could count them, but hasn't cleaned up yet. They're cleaned up before
+   * any others.
+   */
+  private final Queue<Reference<?>> backlog
+      = new ConcurrentLinkedQueue<Reference<?>>();
+  private final AtomicInteger backlogSize = new AtomicInteger();
+
+  /*
+   * Statistics recorded by drain() when the background thread doesn't serve
+   * this queue.
+   */
+  private volatile int queueDepth;
+  private volatile long cleanupLagNanos;
+  private volatile long lastEmptyNanos = System.nanoTime();
+
   /**
    * Constructs a new queue.
    */
-  @SuppressWarnings("unchecked")
   public FinalizableReferenceQueue() {
+    this(false);
+  }
+
+  /**
+   * Returns a new queue that doesn't use a background thread. Its references
+   * are only cleaned up when {@link #cleanUp(int)} is called, so the code
+   * that creates them must call it regularly, typically whenever it modifies
+   * the data structure that holds them. Use this in environments that don't
+   * allow starting threads, or to control when references are cleaned up.
+   */
+  public static FinalizableReferenceQueue newPollingQueue() {
+    return new FinalizableReferenceQueue(true);
+  }
+
+  @SuppressWarnings("unchecked")
+  private FinalizableReferenceQueue(boolean polling) {
+    this.polling = polling;
+    if (polling) {
+      this.queue = new ReferenceQueue<Object>();
+      this.threadStarted = false;
+      return;
+    }
+
     // We could start the finalizer lazily, but I'd rather it blow up early.
     ReferenceQueue<Object> queue;
     boolean threadStarted = false;
@@ -130,7 +202,7 @@ public class FinalizableReferenceQueue {
     } catch (Throwable t) {
       logger.log(Level.INFO, "Failed to start reference finalizer thread."
           + " Reference cleanup will only occur when new references are"
-          + " created.", t);
+          + " created or cleanUp(int) is called.", t);
       queue = new ReferenceQueue<Object>();
     }
 
@@ -139,18 +211,47 @@ public class FinalizableReferenceQueue {
   }
 
   /**
-   * Repeatedly dequeues references from the queue and invokes
-   * {@link FinalizableReference#finalizeReferent()} on them until the queue
-   * is empty. This method is a no-op if the background thread was created
-   * successfully.
+   * Cleans up a batch of references. Called whenever a reference is created.
+   * This method is a no-op if the background thread was created successfully
+   * or if this is a polling queue.
    */
   void cleanUp() {
-    if (threadStarted) {
-      return;
+    if (!threadStarted && !polling) {
+      drain(CLEANUP_BATCH_SIZE);
     }
+  }
 
+  /**
+   * Dequeues up to {@code maxReferences} references from the queue and
+   * invokes {@link FinalizableReference#finalizeReferent()} on them. Callers
+   * that hold references from a {@link #newPollingQueue polling queue}
+   * should call this method regularly, when they don't hold any locks that
+   * {@code finalizeReferent()} might need. This method is a no-op if the
+   * background thread serves this queue.
+   *
+   * @param maxReferences the maximum number of references to clean up
+   * @return the number of references cleaned up
+   * @throws IllegalArgumentException if {@code maxReferences} is negative
+   */
+  public int cleanUp(int maxReferences) {
+    if (maxReferences < 0) {
+      throw new IllegalArgumentException(
+          "maxReferences: " + maxReferences);
+    }
+    return threadStarted ? 0 : drain(maxReferences);
+  }
+
+  /**
+   * Repeatedly dequeues references from the queue and invokes
+   * {@link FinalizableReference#finalizeReferent()} on them until the queue
+   * is empty or {@code maxReferences} references were cleaned up. If the
+   * limit was reached, moves the references still in the queue to the
+   * backlog, so that the queue depth counts them.
+   */
+  private int drain(int maxReferences) {
     Reference<?> reference;
-    while ((reference = queue.poll()) != null) {
+    int count = 0;
+    while (count < maxReferences && (reference = poll()) != null) {
       /*
        * This is for the benefit of phantom references. Weak and soft
        * references will have already been cleared by this point.
@@ -161,6 +262,81 @@ public class FinalizableReferenceQueue {
       } catch (Throwable t) {
         logger.log(Level.SEVERE, "Error cleaning up after reference.", t);
       }
+      count++;
+    }
+
+    if (count == maxReferences) {
+      while ((reference = queue.poll()) != null) {
+        backlog.add(reference);
+        backlogSize.incrementAndGet();
+      }
+    }
+
+    long now = System.nanoTime();
+    if (count > 0) {
+      queueDepth = count + backlogSize.get();
+      cleanupLagNanos = now - lastEmptyNanos;
+    }
+    if (count < maxReferences) {
+      // The queue was empty.
+      lastEmptyNanos = now;
+    }
+    return count;
+  }
+
+  /**
+   * Dequeues the next reference to clean up, taking references from the
+   * backlog before those still in the queue.
+   */
+  private Reference<?> poll() {
+    Reference<?> reference = backlog.poll();
+    if (reference != null) {
+      backlogSize.decrementAndGet();
+      return reference;
+    }
+    return queue.poll();
+  }
+
+  /**
+   * Returns the number of references that were waiting in this queue the
+   * last time any were cleaned up, including those left for later by {@link
+   * #cleanUp(int)}'s limit. A depth that keeps growing means that references
+   * are enqueued faster than they're cleaned up. Returns 0 if no references
+   * were cleaned up yet.
+   */
+  public int queueDepth() {
+    long[] statistics = statistics();
+    return (statistics == null) ? queueDepth : (int) statistics[0];
+  }
+
+  /**
+   * Returns an upper bound on how long the last reference cleaned up from
+   * this queue waited after it was enqueued, measured from the last time the
+   * queue was seen empty before then. Returns 0 if no references were
+   * cleaned up yet.
+   */
+  public long cleanupLag(TimeUnit unit) {
+    long[] statistics = statistics();
+    long nanos = (statistics == null) ? cleanupLagNanos : statistics[1];
+    return unit.convert(nanos, TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * Returns the statistics recorded by the background thread, or null if
+   * it isn't serving this queue.
+   */
+  private long[] statistics() {
+    if (!threadStarted || getStatistics == null) {
+      return null;
+    }
+    try {
+      long[] statistics = (long[]) getStatistics.invoke(null, queue);
+      return (statistics == null) ? new long[2] : statistics;
+    } catch (IllegalAccessException e) {
+      // Finalizer.getStatistics() is public.
+      throw new AssertionError(e);
+    } catch (InvocationTargetException e) {
+      throw new AssertionError(e.getCause());
     }
   }
 
@@ -310,4 +486,16 @@ public class FinalizableReferenceQueue {
       throw new AssertionError(e);
     }
   }
+
+  /**
+   * Looks up Finalizer.getStatistics(). Returns null if Finalizer was loaded
+   * from an older version of this library, which doesn't record statistics.
+   */
+  static Method getGetStatistics(Class<?> finalizer) {
+    try {
+      return finalizer.getMethod("getStatistics", ReferenceQueue.class);
+    } catch (NoSuchMethodException e) {
+      return null;
+    }
+  }
 }
@@ -21,6 +21,7 @@ import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 
 import java.io.Serializable;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 import javax.annotation.Nullable;
@@ -282,4 +283,33 @@ public final class Functions {
     }
     private static final long serialVersionUID = 0;
   }
+
+  /**
+   * Applies {@code function} to each of {@code inputs}, returning a map from
+   * each distinct input to its result, in the order in which the inputs were
+   * first encountered. If {@code function} is a {@link BatchFunction}, its
+   * {@link BatchFunction#applyAll} method computes the results; otherwise
+   * {@link Function#apply} is called once for each distinct input.
+   *
+   * <p>The returned map may or may not be modifiable.
+   */
+  public static <F, T> Map<F, T> applyAll(
+      Function<? super F, ? extends T> function, Iterable<? extends F> inputs) {
+    checkNotNull(inputs);
+    if (function instanceof BatchFunction) {
+      // Safe: the keys of the map are the inputs, which are all Fs.
+      @SuppressWarnings("unchecked")
+      Map<F, T> results = (Map<F, T>)
+          ((BatchFunction<? super F, ? extends T>) function).applyAll(inputs);
+      return results;
+    }
+    checkNotNull(function);
+    Map<F, T> results = new LinkedHashMap<F, T>();
+    for (F input : inputs) {
+      if (!results.containsKey(input)) {
+        results.put(input, function.apply(input));
+      }
+    }
+    return results;
+  }
 }
@@ -17,11 +17,16 @@
 package com.google.common.base;
 
 import com.google.common.annotations.GwtCompatible;
+import com.google.common.annotations.GwtIncompatible;
 import static com.google.common.base.Preconditions.checkNotNull;
 
 import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
 import java.util.AbstractList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -153,7 +158,37 @@ import javax.annotation.Nullable;
    * parts}, using the previously configured separator between each.
    */
   public final String join(Iterable<?> parts) {
-    return appendTo(new StringBuilder(), parts).toString();
+    // Converts each part once, then builds the result in a builder of the
+    // exact size. The parts are only iterated once, as iterating a lazy view
+    // twice would compute its elements twice.
+    CharSequence[] texts = new CharSequence[(parts instanceof Collection)
+        ? Math.max(((Collection<?>) parts).size(), 1)
+        : 8];
+    int count = 0;
+    long length = 0;
+    for (Object part : parts) {
+      CharSequence text = textOf(part);
+      if (text != null) {
+        if (count == texts.length) {
+          CharSequence[] grown = new CharSequence[count * 2];
+          System.arraycopy(texts, 0, grown, 0, count);
+          texts = grown;
+        }
+        texts[count++] = text;
+        length += text.length();
+      }
+    }
+    if (count == 0) {
+      return "";
+    }
+    length += (long) separator.length() * (count - 1);
+    StringBuilder builder
+        = new StringBuilder((int) Math.min(length, Integer.MAX_VALUE));
+    builder.append(texts[0]);
+    for (int i = 1; i < count; i++) {
+      builder.append(separator).append(texts[i]);
+    }
+    return builder.toString();
   }
 
   /**
@@ -173,6 +208,62 @@ import javax.annotation.Nullable;
     return join(iterable(first, second, rest));
   }
 
+  /**
+   * Writes the string representation of each of {@code parts}, using the
+   * previously configured separator between each, to {@code writer}. Unlike
+   * {@link Writer#append(CharSequence)}, this doesn't convert parts that are
+   * already character sequences to strings.
+   */
+  @GwtIncompatible("java.io.Writer")
+  public final <W extends Writer> W appendTo(W writer, Iterable<?> parts)
+      throws IOException {
+    appendTo(new WriterAppendable(checkNotNull(writer)), parts);
+    return writer;
+  }
+
+  /**
+   * Puts the string representation of each of {@code parts}, using the
+   * previously configured separator between each, into {@code buffer},
+   * starting at its position, and advances the position past them. Unlike
+   * {@link CharBuffer#append(CharSequence)}, this doesn't convert parts that
+   * are already character sequences to strings.
+   *
+   * @throws java.nio.BufferOverflowException if the buffer doesn't have room
+   *     for the result; its position is then unspecified
+   */
+  @GwtIncompatible("java.nio.CharBuffer")
+  public final CharBuffer appendTo(CharBuffer buffer, Iterable<?> parts) {
+    try {
+      appendTo(new CharBufferAppendable(checkNotNull(buffer)), parts);
+    } catch (IOException impossible) {
+      throw new AssertionError(impossible);
+    }
+    return buffer;
+  }
+
+  /**
+   * Puts the string representation of each of {@code parts}, using the
+   * previously configured separator between each, into {@code buffer},
+   * encoded as UTF-8, starting at its position, and advances the position
+   * past them. The characters are encoded as they're joined, without
+   * building the joined string or any intermediate strings; the bytes are
+   * the same as those of the joined string's {@code getBytes("UTF-8")}.
+   *
+   * @throws java.nio.BufferOverflowException if the buffer doesn't have room
+   *     for the result; its position is then unspecified
+   */
+  @GwtIncompatible("java.nio.ByteBuffer")
+  public final ByteBuffer appendUtf8To(ByteBuffer buffer, Iterable<?> parts) {
+    Utf8Appendable encoder = new Utf8Appendable(checkNotNull(buffer));
+    try {
+      appendTo(encoder, parts);
+    } catch (IOException impossible) {
+      throw new AssertionError(impossible);
+    }
+    encoder.finish();
+    return buffer;
+  }
+
   /**
    * Returns a joiner with the same behavior as this one, except automatically
    * substituting {@code nullText} for any provided null elements.
@@ -221,6 +312,9 @@ import javax.annotation.Nullable;
         }
         return appendable;
       }
+      @Override CharSequence textOf(Object part) {
+        return (part == null) ? null : Joiner.this.toString(part);
+      }
       @Override public Joiner useForNull(String nullText) {
         checkNotNull(nullText); // weird, just to satisfy NullPointerTester!
         throw new UnsupportedOperationException("already specified skipNulls");
@@ -300,7 +394,38 @@ import javax.annotation.Nullable;
      * separator.
      */
     public String join(Map<?, ?> map) {
-      return appendTo(new StringBuilder(), map).toString();
+      // As in Joiner.join, converts each key and value once and sizes the
+      // builder exactly.
+      CharSequence[] texts = new CharSequence[map.size() * 2];
+      int count = 0;
+      long length = 0;
+      for (Map.Entry<?, ?> entry : map.entrySet()) {
+        if (count + 2 > texts.length) {
+          CharSequence[] grown = new CharSequence[count * 2 + 2];
+          System.arraycopy(texts, 0, grown, 0, count);
+          texts = grown;
+        }
+        CharSequence key = joiner.toString(entry.getKey());
+        CharSequence value = joiner.toString(entry.getValue());
+        texts[count++] = key;
+        texts[count++] = value;
+        length += key.length() + value.length();
+      }
+      if (count == 0) {
+        return "";
+      }
+      int entries = count / 2;
+      length += (long) keyValueSeparator.length() * entries
+          + (long) joiner.separator.length() * (entries - 1);
+      StringBuilder builder
+          = new StringBuilder((int) Math.min(length, Integer.MAX_VALUE));
+      for (int i = 0; i < count; i += 2) {
+        if (i > 0) {
+          builder.append(joiner.separator);
+        }
+        builder.append(texts[i]).append(keyValueSeparator).append(texts[i + 1]);
+      }
+      return builder.toString();
     }
 
     /**
@@ -319,6 +444,197 @@ import javax.annotation.Nullable;
         : part.toString();
   }
 
+  /**
+   * Returns what {@link #join} puts in the result for {@code part}, or null
+   * if it leaves the part out.
+   */
+  CharSequence textOf(Object part) {
+    return toString(part);
+  }
+
+  /**
+   * Writes character sequences to a writer without converting them to
+   * strings first.
+   */
+  private static final class WriterAppendable implements Appendable {
+    final Writer writer;
+    char[] chunk;
+
+    WriterAppendable(Writer writer) {
+      this.writer = writer;
+    }
+
+    public Appendable append(CharSequence csq) throws IOException {
+      if (csq == null) {
+        csq = "null";
+      }
+      return append(csq, 0, csq.length());
+    }
+
+    public Appendable append(CharSequence csq, int start, int end)
+        throws IOException {
+      if (csq == null) {
+        csq = "null";
+      }
+      if (csq instanceof String) {
+        writer.write((String) csq, start, end - start);
+        return this;
+      }
+      // grows up to 1024 chars as longer sequences arrive
+      int chunkSize = Math.min(end - start, 1024);
+      if (chunk == null || chunk.length < chunkSize) {
+        chunk = new char[chunkSize];
+      }
+      while (start < end) {
+        int n = Math.min(end - start, chunk.length);
+        for (int i = 0; i < n; i++) {
+          chunk[i] = csq.charAt(start + i);
+        }
+        writer.write(chunk, 0, n);
+        start += n;
+      }
+      return this;
+    }
+
+    public Appendable append(char c) throws IOException {
+      writer.write(c);
+      return this;
+    }
+  }
+
+  /**
+   * Puts character sequences into a buffer without converting them to
+   * strings first.
+   */
+  private static final class CharBufferAppendable implements Appendable {
+    final CharBuffer buffer;
+
+    CharBufferAppendable(CharBuffer buffer) {
+      this.buffer = buffer;
+    }
+
+    public Appendable append(CharSequence csq) {
+      if (csq == null) {
+        csq = "null";
+      }
+      return append(csq, 0, csq.length());
+    }
+
+    public Appendable append(CharSequence csq, int start, int end) {
+      if (csq == null) {
+        csq = "null";
+      }
+      if (csq instanceof String) {
+        buffer.put((String) csq, start, end);
+      } else {
+        for (int i = start; i < end; i++) {
+          buffer.put(csq.charAt(i));
+        }
+      }
+      return this;
+    }
+
+    public Appendable append(char c) {
+      buffer.put(c);
+      return this;
+    }
+  }
+
+  /**
+   * Encodes characters as UTF-8 into a buffer. A surrogate pair may be split
+   * across calls. Unpaired surrogates are encoded as {@code '?'}, as {@link
+   * String#getBytes(String)} does.
+   */
+  private static final class Utf8Appendable implements Appendable {
+    final ByteBuffer buffer;
+
+    /** A high surrogate waiting for its low surrogate, or 0. */
+    char highSurrogate;
+
+    Utf8Appendable(ByteBuffer buffer) {
+      this.buffer = buffer;
+    }
+
+    public Appendable append(CharSequence csq) {
+      if (csq == null) {
+        csq = "null";
+      }
+      return append(csq, 0, csq.length());
+    }
+
+    public Appendable append(CharSequence csq, int start, int end) {
+      if (csq == null) {
+        csq = "null";
+      }
+      int i = start;
+      if (buffer.hasArray() && highSurrogate == 0) {
+        // Copies ASCII straight into the array, up to the first other char.
+        byte[] array = buffer.array();
+        int offset = buffer.arrayOffset();
+        int position = offset + buffer.position();
+        int limit = Math.min(offset + buffer.limit(), position + end - i);
+        char c;
+        while (position < limit && (c = csq.charAt(i)) < 0x80) {
+          array[position++] = (byte) c;
+          i++;
+        }
+        buffer.position(position - offset);
+      }
+      for (; i < end; i++) {
+        char c = csq.charAt(i);
+        if (c < 0x80 && highSurrogate == 0) {
+          buffer.put((byte) c);
+        } else {
+          encode(c);
+        }
+      }
+      return this;
+    }
+
+    public Appendable append(char c) {
+      encode(c);
+      return this;
+    }
+
+    private void encode(char c) {
+      if (highSurrogate != 0) {
+        char high = highSurrogate;
+        highSurrogate = 0;
+        if (Character.isLowSurrogate(c)) {
+          int codePoint = Character.toCodePoint(high, c);
+          buffer.put((byte) (0xf0 | (codePoint >>> 18)));
+          buffer.put((byte) (0x80 | ((codePoint >>> 12) & 0x3f)));
+          buffer.put((byte) (0x80 | ((codePoint >>> 6) & 0x3f)));
+          buffer.put((byte) (0x80 | (codePoint & 0x3f)));
+          return;
+        }
+        buffer.put((byte) '?');
+      }
+      if (c < 0x80) {
+        buffer.put((byte) c);
+      } else if (c < 0x800) {
+        buffer.put((byte) (0xc0 | (c >>> 6)));
+        buffer.put((byte) (0x80 | (c & 0x3f)));
+      } else if (Character.isHighSurrogate(c)) {
+        highSurrogate = c;
+      } else if (Character.isLowSurrogate(c)) {
+        buffer.put((byte) '?');
+      } else {
+        buffer.put((byte) (0xe0 | (c >>> 12)));
+        buffer.put((byte) (0x80 | ((c >>> 6) & 0x3f)));
+        buffer.put((byte) (0x80 | (c & 0x3f)));
+      }
+    }
+
+    /** Encodes a trailing unpaired high surrogate. */
+    void finish() {
+      if (highSurrogate != 0) {
+        highSurrogate = 0;
+        buffer.put((byte) '?');
+      }
+    }
+  }
+
   private static Iterable<Object> iterable(
       final Object first, final Object second, final Object[] rest) {
     checkNotNull(rest);
@@ -24,8 +24,15 @@ import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import javax.annotation.Nullable;
 
@@ -218,6 +225,40 @@ public final class Predicates {
     return new CompositionPredicate<A, B>(predicate, function);
   }
 
+  /**
+   * Returns a predicate equivalent to {@code predicate} that is cheaper to
+   * evaluate, for predicates built by this class that are evaluated many
+   * times. It rewrites the predicate as follows:
+   *
+   * <ul>
+   * <li>Nested {@code and} and {@code or} predicates are flattened, and their
+   *     components are evaluated using an array rather than an iterator.
+   * <li>{@link #alwaysTrue} and {@link #alwaysFalse} are folded into the
+   *     predicates that contain them, and double negations are removed.
+   * <li>The {@link #equalTo}, {@link #isNull} and {@link #in} components of an
+   *     {@code or} are merged into a single hash lookup, or a bit set lookup
+   *     if they only match small integers or constants of one enum type.
+   *     Only {@code in} predicates over lists, {@link java.util.HashSet}s and
+   *     {@link java.util.LinkedHashSet}s are merged.
+   * <li>The components of an {@code and} or {@code or} that {@linkplain
+   *     #compose compose} predicates with the same function are merged, so
+   *     the function is applied once.
+   * <li>Duplicate components are removed, and cheap components, such as null
+   *     checks and equality tests, are evaluated before the others.
+   * </ul>
+   *
+   * <p>The rewritten predicate may evaluate fewer of the component predicates
+   * and functions, and in a different order, so they should be free of side
+   * effects. Collections passed to {@code in} are copied if they're merged,
+   * so later changes to them are no longer reflected. Equality is assumed to
+   * be symmetric and consistent with {@link Object#hashCode}.
+   */
+  public static <T> Predicate<T> optimize(Predicate<T> predicate) {
+    @SuppressWarnings("unchecked") // the rewritten predicate is equivalent
+    Predicate<T> optimized = (Predicate<T>) simplify(checkNotNull(predicate));
+    return optimized;
+  }
+
   /** @see Predicates#alwaysTrue() */
   // Package private for GWT serialization.
   enum AlwaysTruePredicate implements Predicate<Object> {
@@ -509,6 +550,475 @@ public final class Predicates {
     private static final long serialVersionUID = 0;
   }
 
+  // Implementation of optimize()
+
+  /** Returns a predicate equivalent to the given one. */
+  @SuppressWarnings("unchecked") // predicates are only ever applied to T
+  private static Predicate<Object> simplify(Predicate<?> predicate) {
+    if (predicate instanceof NotPredicate<?>) {
+      return simplifyNot(simplify(((NotPredicate<?>) predicate).predicate));
+    } else if (predicate instanceof AndPredicate<?>) {
+      return simplifyJunction(true, ((AndPredicate<?>) predicate).components);
+    } else if (predicate instanceof OrPredicate<?>) {
+      return simplifyJunction(false, ((OrPredicate<?>) predicate).components);
+    } else if (predicate instanceof CompositionPredicate<?, ?>) {
+      CompositionPredicate<Object, Object> composition
+          = (CompositionPredicate<Object, Object>) predicate;
+      Predicate<Object> inner = simplify(composition.p);
+      if (inner == alwaysTrue() || inner == alwaysFalse()) {
+        return inner;
+      }
+      return (inner == composition.p)
+          ? composition
+          : new CompositionPredicate<Object, Object>(inner, composition.f);
+    }
+    return (Predicate<Object>) predicate;
+  }
+
+  private static Predicate<Object> simplifyNot(Predicate<Object> predicate) {
+    if (predicate == alwaysTrue()) {
+      return alwaysFalse();
+    } else if (predicate == alwaysFalse()) {
+      return alwaysTrue();
+    } else if (predicate == IsNullPredicate.INSTANCE) {
+      return notNull();
+    } else if (predicate == NotNullPredicate.INSTANCE) {
+      return isNull();
+    } else if (predicate instanceof NotPredicate<?>) {
+      return ((NotPredicate<Object>) predicate).predicate;
+    }
+    return new NotPredicate<Object>(predicate);
+  }
+
+  /**
+   * Simplifies an {@code and} (if {@code and} is true) or an {@code or} of
+   * the given components.
+   */
+  private static Predicate<Object> simplifyJunction(
+      boolean and, Iterable<? extends Predicate<?>> components) {
+    Predicate<Object> identity = and ? alwaysTrue() : alwaysFalse();
+    Predicate<Object> absorbing = and ? alwaysFalse() : alwaysTrue();
+
+    List<Predicate<Object>> flattened = new ArrayList<Predicate<Object>>();
+    for (Predicate<?> component : components) {
+      Predicate<Object> simplified = simplify(component);
+      if (simplified == absorbing) {
+        return absorbing;
+      } else if (simplified != identity) {
+        addFlattened(and, simplified, flattened);
+      }
+    }
+
+    List<Predicate<Object>> merged = mergeCompositions(and, flattened);
+    if (!and) {
+      merged = mergeMemberships(merged);
+    }
+    if (merged.contains(absorbing)) {
+      return absorbing;
+    }
+    merged.removeAll(Collections.singleton(identity));
+
+    // Remove duplicates, then evaluate cheap components first.
+    List<Predicate<Object>> result = new ArrayList<Predicate<Object>>(
+        new LinkedHashSet<Predicate<Object>>(merged));
+    Collections.sort(result, BY_COST);
+
+    switch (result.size()) {
+      case 0:
+        return identity;
+      case 1:
+        return result.get(0);
+      default:
+        Predicate<Object>[] array = toArray(result);
+        return and
+            ? new ArrayAndPredicate<Object>(array)
+            : new ArrayOrPredicate<Object>(array);
+    }
+  }
+
+  private static void addFlattened(boolean and, Predicate<Object> predicate,
+      List<Predicate<Object>> flattened) {
+    if (and && predicate instanceof ArrayAndPredicate<?>) {
+      flattened.addAll(
+          Arrays.asList(((ArrayAndPredicate<Object>) predicate).components));
+    } else if (!and && predicate instanceof ArrayOrPredicate<?>) {
+      flattened.addAll(
+          Arrays.asList(((ArrayOrPredicate<Object>) predicate).components));
+    } else {
+      flattened.add(predicate);
+    }
+  }
+
+  /**
+   * Replaces the compositions of predicates with the same function by a
+   * single composition with the {@code and} or {@code or} of the predicates.
+   */
+  @SuppressWarnings("unchecked") // predicates are only ever applied to T
+  private static List<Predicate<Object>> mergeCompositions(
+      boolean and, List<Predicate<Object>> components) {
+    Map<Function<Object, ?>, List<Predicate<Object>>> byFunction
+        = new LinkedHashMap<Function<Object, ?>, List<Predicate<Object>>>();
+    for (Predicate<Object> component : components) {
+      if (component instanceof CompositionPredicate<?, ?>) {
+        CompositionPredicate<Object, Object> composition
+            = (CompositionPredicate<Object, Object>) component;
+        List<Predicate<Object>> predicates = byFunction.get(composition.f);
+        if (predicates == null) {
+          predicates = new ArrayList<Predicate<Object>>();
+          byFunction.put((Function<Object, ?>) composition.f, predicates);
+        }
+        predicates.add(composition.p);
+      }
+    }
+
+    List<Predicate<Object>> result = new ArrayList<Predicate<Object>>();
+    for (Predicate<Object> component : components) {
+      if (component instanceof CompositionPredicate<?, ?>) {
+        CompositionPredicate<Object, Object> composition
+            = (CompositionPredicate<Object, Object>) component;
+        List<Predicate<Object>> predicates
+            = byFunction.remove(composition.f);
+        if (predicates == null) {
+          continue; // merged into an earlier component
+        } else if (predicates.size() > 1) {
+          Predicate<Object> inner = simplifyJunction(and, predicates);
+          component = (inner == alwaysTrue() || inner == alwaysFalse())
+              ? inner
+              : new CompositionPredicate<Object, Object>(
+                  inner, composition.f);
+        }
+      }
+      result.add(component);
+    }
+    return result;
+  }
+
+  /**
+   * Replaces the components of an {@code or} that test membership in a set
+   * of values by a single predicate that tests membership in their union.
+   */
+  private static List<Predicate<Object>> mergeMemberships(
+      List<Predicate<Object>> components) {
+    Set<Object> values = new HashSet<Object>();
+    int merged = 0;
+    for (Predicate<Object> component : components) {
+      if (addMembers(component, values)) {
+        merged++;
+      }
+    }
+    if (merged < 2) {
+      return components;
+    }
+
+    List<Predicate<Object>> result = new ArrayList<Predicate<Object>>();
+    boolean added = false;
+    for (Predicate<Object> component : components) {
+      if (!addMembers(component, null)) {
+        result.add(component);
+      } else if (!added) {
+        result.add(membership(values));
+        added = true;
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Returns whether the predicate tests membership in a set of values, and
+   * if so, adds them to {@code values} unless it's null.
+   */
+  private static boolean addMembers(
+      Predicate<Object> predicate, @Nullable Set<Object> values) {
+    if (predicate instanceof IsEqualToPredicate<?>) {
+      if (values != null) {
+        values.add(((IsEqualToPredicate<?>) predicate).target);
+      }
+      return true;
+    } else if (predicate == IsNullPredicate.INSTANCE) {
+      if (values != null) {
+        values.add(null);
+      }
+      return true;
+    } else if (predicate instanceof InPredicate<?>) {
+      Collection<?> target = ((InPredicate<?>) predicate).target;
+      // Only collections whose contains() is based on equals().
+      if (target instanceof List<?> || target.getClass() == HashSet.class
+          || target.getClass() == LinkedHashSet.class) {
+        if (values != null) {
+          values.addAll(target);
+        }
+        return true;
+      }
+    } else if (predicate instanceof MembershipPredicate) {
+      if (values != null) {
+        values.addAll(((MembershipPredicate) predicate).values());
+      }
+      return true;
+    }
+    return false;
+  }
+
+  /** Largest range of integers that's tested using a bit set. */
+  private static final int MAX_BIT_SET_RANGE = 1 << 16;
+
+  /** Returns a predicate that tests membership in the given values. */
+  private static Predicate<Object> membership(Set<Object> values) {
+    if (values.isEmpty()) {
+      return alwaysFalse();
+    } else if (values.contains(null)) {
+      return new HashSetPredicate(values);
+    }
+
+    long min = Long.MAX_VALUE;
+    long max = Long.MIN_VALUE;
+    Class<?> enumClass = null;
+    boolean integers = true;
+    boolean enums = true;
+    for (Object value : values) {
+      if (value instanceof Integer) {
+        min = Math.min(min, (Integer) value);
+        max = Math.max(max, (Integer) value);
+      } else {
+        integers = false;
+      }
+      if (value instanceof Enum<?>) {
+        Class<?> declaringClass = ((Enum<?>) value).getDeclaringClass();
+        if (enumClass == null) {
+          enumClass = declaringClass;
+        } else if (enumClass != declaringClass) {
+          enums = false;
+        }
+      } else {
+        enums = false;
+      }
+    }
+
+    if (integers && max - min < MAX_BIT_SET_RANGE) {
+      int offset = (int) min;
+      long[] words = new long[(int) ((max - min) >>> 6) + 1];
+      for (Object value : values) {
+        int bit = (Integer) value - offset;
+        words[bit >>> 6] |= 1L << bit;
+      }
+      return new IntegerBitSetPredicate(offset, words);
+    } else if (enums) {
+      int maxOrdinal = 0;
+      for (Object value : values) {
+        maxOrdinal = Math.max(maxOrdinal, ((Enum<?>) value).ordinal());
+      }
+      long[] words = new long[(maxOrdinal >>> 6) + 1];
+      for (Object value : values) {
+        int bit = ((Enum<?>) value).ordinal();
+        words[bit >>> 6] |= 1L << bit;
+      }
+      return new EnumBitSetPredicate(enumClass, words);
+    }
+    return new HashSetPredicate(values);
+  }
+
+  /** Orders predicates by how expensive they are to evaluate. */
+  private static final Comparator<Predicate<?>> BY_COST
+      = new Comparator<Predicate<?>>() {
+        public int compare(Predicate<?> a, Predicate<?> b) {
+          return cost(a) - cost(b);
+        }
+      };
+
+  /** Estimates the cost of evaluating a predicate, on a scale of 0 to 3. */
+  private static int cost(Predicate<?> predicate) {
+    if (predicate == IsNullPredicate.INSTANCE
+        || predicate == NotNullPredicate.INSTANCE) {
+      return 0;
+    } else if (predicate instanceof InstanceOfPredicate
+        || predicate instanceof IsEqualToPredicate<?>
+        || predicate instanceof MembershipPredicate) {
+      return 1;
+    } else if (predicate instanceof InPredicate<?>) {
+      return 2;
+    } else if (predicate instanceof NotPredicate<?>) {
+      return cost(((NotPredicate<?>) predicate).predicate);
+    }
+    return 3;
+  }
+
+  @SuppressWarnings("unchecked") // generic array creation
+  private static Predicate<Object>[] toArray(List<Predicate<Object>> list) {
+    return list.toArray(new Predicate[list.size()]);
+  }
+
+  /** @see Predicates#optimize(Predicate) */
+  private static class ArrayAndPredicate<T>
+      implements Predicate<T>, Serializable {
+    private final Predicate<? super T>[] components;
+
+    private ArrayAndPredicate(Predicate<? super T>[] components) {
+      this.components = components;
+    }
+    public boolean apply(T t) {
+      for (int i = 0; i < components.length; i++) {
+        if (!components[i].apply(t)) {
+          return false;
+        }
+      }
+      return true;
+    }
+    @Override public int hashCode() {
+      int result = -1; /* Start with all bits on. */
+      for (Predicate<? super T> predicate : components) {
+        result &= predicate.hashCode();
+      }
+      return result;
+    }
+    @Override public boolean equals(Object obj) {
+      if (obj instanceof ArrayAndPredicate<?>) {
+        ArrayAndPredicate<?> that = (ArrayAndPredicate<?>) obj;
+        return Arrays.equals(components, that.components);
+      }
+      return false;
+    }
+    @Override public String toString() {
+      return "And(" + commaJoiner.join(components) + ")";
+    }
+    private static final long serialVersionUID = 0;
+  }
+
+  /** @see Predicates#optimize(Predicate) */
+  private static class ArrayOrPredicate<T>
+      implements Predicate<T>, Serializable {
+    private final Predicate<? super T>[] components;
+
+    private ArrayOrPredicate(Predicate<? super T>[] components) {
+      this.components = components;
+    }
+    public boolean apply(T t) {
+      for (int i = 0; i < components.length; i++) {
+        if (components[i].apply(t)) {
+          return true;
+        }
+      }
+      return false;
+    }
+    @Override public int hashCode() {
+      int result = 0; /* Start with all bits off. */
+      for (Predicate<? super T> predicate : components) {
+        result |= predicate.hashCode();
+      }
+      return result;
+    }
+    @Override public boolean equals(Object obj) {
+      if (obj instanceof ArrayOrPredicate<?>) {
+        ArrayOrPredicate<?> that = (ArrayOrPredicate<?>) obj;
+        return Arrays.equals(components, that.components);
+      }
+      return false;
+    }
+    @Override public String toString() {
+      return "Or(" + commaJoiner.join(components) + ")";
+    }
+    private static final long serialVersionUID = 0;
+  }
+
+  /**
+   * A predicate that tests membership in a set of values, built by {@link
+   * Predicates#optimize(Predicate)}.
+   */
+  private abstract static class MembershipPredicate
+      implements Predicate<Object>, Serializable {
+    /** Returns the values this predicate matches. */
+    abstract Set<Object> values();
+
+    @Override public int hashCode() {
+      return values().hashCode();
+    }
+    @Override public boolean equals(Object obj) {
+      if (obj instanceof MembershipPredicate) {
+        MembershipPredicate that = (MembershipPredicate) obj;
+        return values().equals(that.values());
+      }
+      return false;
+    }
+    @Override public String toString() {
+      return "In(" + values() + ")";
+    }
+    private static final long serialVersionUID = 0;
+  }
+
+  /** @see Predicates#optimize(Predicate) */
+  private static class HashSetPredicate extends MembershipPredicate {
+    private final HashSet<Object> values;
+
+    private HashSetPredicate(Set<Object> values) {
+      this.values = new HashSet<Object>(values);
+    }
+    public boolean apply(Object o) {
+      return values.contains(o);
+    }
+    @Override Set<Object> values() {
+      return Collections.unmodifiableSet(values);
+    }
+    private static final long serialVersionUID = 0;
+  }
+
+  /** @see Predicates#optimize(Predicate) */
+  private static class IntegerBitSetPredicate extends MembershipPredicate {
+    private final int offset;
+    private final long[] words;
+
+    private IntegerBitSetPredicate(int offset, long[] words) {
+      this.offset = offset;
+      this.words = words;
+    }
+    public boolean apply(Object o) {
+      if (!(o instanceof Integer)) {
+        return false;
+      }
+      long bit = (long) (Integer) o - offset;
+      return bit >= 0 && bit < ((long) words.length << 6)
+          && (words[(int) (bit >>> 6)] & (1L << bit)) != 0;
+    }
+    @Override Set<Object> values() {
+      Set<Object> values = new LinkedHashSet<Object>();
+      for (int bit = 0; bit < words.length << 6; bit++) {
+        if ((words[bit >>> 6] & (1L << bit)) != 0) {
+          values.add(offset + bit);
+        }
+      }
+      return values;
+    }
+    private static final long serialVersionUID = 0;
+  }
+
+  /** @see Predicates#optimize(Predicate) */
+  private static class EnumBitSetPredicate extends MembershipPredicate {
+    private final Class<?> enumClass;
+    private final long[] words;
+
+    private EnumBitSetPredicate(Class<?> enumClass, long[] words) {
+      this.enumClass = enumClass;
+      this.words = words;
+    }
+    public boolean apply(Object o) {
+      if (!(o instanceof Enum<?>)) {
+        return false;
+      }
+      Enum<?> e = (Enum<?>) o;
+      int bit = e.ordinal();
+      return e.getDeclaringClass() == enumClass && bit < words.length << 6
+          && (words[bit >>> 6] & (1L << bit)) != 0;
+    }
+    @Override Set<Object> values() {
+      Set<Object> values = new LinkedHashSet<Object>();
+      for (Object constant : enumClass.getEnumConstants()) {
+        int bit = ((Enum<?>) constant).ordinal();
+        if (bit < words.length << 6 && (words[bit >>> 6] & (1L << bit)) != 0) {
+          values.add(constant);
+        }
+      }
+      return values;
+    }
+    private static final long serialVersionUID = 0;
+  }
+
   /**
    * Determines whether the two Iterables contain equal elements. More
    * specifically, this method returns {@code true} if {@code iterable1} and
@@ -0,0 +1,476 @@
+/*
+ * Copyright (C) 2009 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.base;
+
+import com.google.common.annotations.GwtCompatible;
+import com.google.common.annotations.GwtIncompatible;
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * An object which divides strings (or other instances of {@code
+ * CharSequence}) into substrings, by recognizing a <i>separator</i> (a.k.a.
+ * "delimiter") which can be expressed as a single character, a literal string
+ * or a regular expression. Example: <pre>   {@code
+ *
+ *   Splitter.on(',').trimResults().omitEmptyStrings().split("foo, ,bar")}</pre>
+ *
+ * This returns an iterable over {@code "foo"} and {@code "bar"}. Unlike
+ * {@link String#split}, a splitter doesn't compile a regular expression for a
+ * literal separator, and it splits lazily: each substring is found only when
+ * the iteration reaches it, so no array is allocated for the results and a
+ * caller that stops early doesn't pay for the rest.
+ *
+ * <p>{@link #splitToSequences} goes further and returns views of the input
+ * rather than copies of its characters, so that only the substrings that a
+ * caller keeps (by calling {@code toString()} on them) are copied.
+ *
+ * <p>Splitter instances are immutable; the configuration methods return new
+ * splitters and leave this one unchanged. They're thread-safe, and are best
+ * stored as constants.
+ *
+ * @see Joiner
+ */
+@GwtCompatible public final class Splitter {
+  private final Strategy strategy;
+  private final boolean omitEmptyStrings;
+  private final CharMatcher trimmer;
+  private final int limit;
+
+  private Splitter(Strategy strategy) {
+    this(strategy, false, CharMatcher.NONE, Integer.MAX_VALUE);
+  }
+
+  private Splitter(Strategy strategy, boolean omitEmptyStrings,
+      CharMatcher trimmer, int limit) {
+    this.strategy = strategy;
+    this.omitEmptyStrings = omitEmptyStrings;
+    this.trimmer = trimmer;
+    this.limit = limit;
+  }
+
+  /**
+   * Returns a splitter that uses the given single-character separator. For
+   * example, {@code Splitter.on(',').split("foo,,bar")} returns an iterable
+   * containing {@code ["foo", "", "bar"]}.
+   */
+  public static Splitter on(final char separator) {
+    return new Splitter(new Strategy() {
+      public SplittingIterator iterator(
+          Splitter splitter, CharSequence toSplit, boolean views) {
+        if (toSplit instanceof String) {
+          final String string = (String) toSplit;
+          return new SplittingIterator(splitter, toSplit, views) {
+            @Override int separatorStart(int start) {
+              return string.indexOf(separator, start);
+            }
+            @Override int separatorEnd(int separatorPosition) {
+              return separatorPosition + 1;
+            }
+          };
+        }
+        return new SplittingIterator(splitter, toSplit, views) {
+          @Override int separatorStart(int start) {
+            int length = toSplit.length();
+            for (int i = start; i < length; i++) {
+              if (toSplit.charAt(i) == separator) {
+                return i;
+              }
+            }
+            return -1;
+          }
+          @Override int separatorEnd(int separatorPosition) {
+            return separatorPosition + 1;
+          }
+        };
+      }
+      @Override public String toString() {
+        return "'" + separator + "'";
+      }
+    });
+  }
+
+  /**
+   * Returns a splitter that uses the given fixed string as a separator. For
+   * example, {@code Splitter.on(", ").split("foo, bar, baz,qux")} returns an
+   * iterable containing {@code ["foo", "bar", "baz,qux"]}.
+   *
+   * @throws IllegalArgumentException if {@code separator} is empty
+   */
+  public static Splitter on(final String separator) {
+    checkArgument(separator.length() != 0,
+        "The separator may not be the empty string.");
+    if (separator.length() == 1) {
+      return on(separator.charAt(0));
+    }
+    return new Splitter(new Strategy() {
+      public SplittingIterator iterator(
+          Splitter splitter, CharSequence toSplit, boolean views) {
+        if (toSplit instanceof String) {
+          final String string = (String) toSplit;
+          return new SplittingIterator(splitter, toSplit, views) {
+            @Override int separatorStart(int start) {
+              return string.indexOf(separator, start);
+            }
+            @Override int separatorEnd(int separatorPosition) {
+              return separatorPosition + separator.length();
+            }
+          };
+        }
+        return new SplittingIterator(splitter, toSplit, views) {
+          @Override int separatorStart(int start) {
+            int separatorLength = separator.length();
+            char first = separator.charAt(0);
+            positions:
+            for (int p = start, last = toSplit.length() - separatorLength;
+                p <= last; p++) {
+              if (toSplit.charAt(p) != first) {
+                continue;
+              }
+              for (int i = 1; i < separatorLength; i++) {
+                if (toSplit.charAt(p + i) != separator.charAt(i)) {
+                  continue positions;
+                }
+              }
+              return p;
+            }
+            return -1;
+          }
+          @Override int separatorEnd(int separatorPosition) {
+            return separatorPosition + separator.length();
+          }
+        };
+      }
+      @Override public String toString() {
+        return "\"" + separator + "\"";
+      }
+    });
+  }
+
+  /**
+   * Returns a splitter that considers any subsequence matching {@code
+   * separatorPattern} to be a separator. For example, {@code
+   * Splitter.on(Pattern.compile("\r?\n")).split(entireFile)} splits a string
+   * into lines whether it uses DOS-style or UNIX-style line terminators.
+   *
+   * @throws IllegalArgumentException if {@code separatorPattern} matches the
+   *     empty string
+   */
+  @GwtIncompatible("java.util.regex")
+  public static Splitter on(final Pattern separatorPattern) {
+    checkArgument(!separatorPattern.matcher("").matches(),
+        "The pattern may not match the empty string: %s", separatorPattern);
+    return new Splitter(new Strategy() {
+      public SplittingIterator iterator(
+          Splitter splitter, CharSequence toSplit, boolean views) {
+        final Matcher matcher = separatorPattern.matcher(toSplit);
+        return new SplittingIterator(splitter, toSplit, views) {
+          @Override int separatorStart(int start) {
+            return matcher.find(start) ? matcher.start() : -1;
+          }
+          @Override int separatorEnd(int separatorPosition) {
+            return matcher.end();
+          }
+        };
+      }
+      @Override public String toString() {
+        return "/" + separatorPattern + "/";
+      }
+    });
+  }
+
+  /**
+   * Returns a splitter that considers any subsequence matching the regular
+   * expression {@code separatorPattern} to be a separator. Equivalent to
+   * {@code Splitter.on(Pattern.compile(separatorPattern))}; the pattern is
+   * compiled once, when the splitter is created.
+   *
+   * @throws java.util.regex.PatternSyntaxException if {@code separatorPattern}
+   *     is a malformed expression
+   * @throws IllegalArgumentException if {@code separatorPattern} matches the
+   *     empty string
+   */
+  @GwtIncompatible("java.util.regex")
+  public static Splitter onPattern(String separatorPattern) {
+    return on(Pattern.compile(separatorPattern));
+  }
+
+  /**
+   * Returns a splitter that behaves equivalently to {@code this} splitter, but
+   * automatically omits empty strings from the results. For example, {@code
+   * Splitter.on(',').omitEmptyStrings().split(",a,,,b,c,,")} returns an
+   * iterable containing only {@code ["a", "b", "c"]}.
+   *
+   * <p>If either {@code trimResults} option is also specified when creating a
+   * splitter, that splitter always trims results first before checking for
+   * emptiness. So, for example, {@code
+   * Splitter.on(':').omitEmptyStrings().trimResults().split(": : : ")} returns
+   * an empty iterable.
+   */
+  public Splitter omitEmptyStrings() {
+    return new Splitter(strategy, true, trimmer, limit);
+  }
+
+  /**
+   * Returns a splitter that behaves equivalently to {@code this} splitter, but
+   * automatically removes leading and trailing {@linkplain
+   * Character#isWhitespace whitespace} from each returned substring. For
+   * example, {@code Splitter.on(',').trimResults().split(" a, b ,c ")} returns
+   * an iterable containing {@code ["a", "b", "c"]}.
+   */
+  public Splitter trimResults() {
+    return trimResults(CharMatcher.JAVA_WHITESPACE);
+  }
+
+  /**
+   * Returns a splitter that behaves equivalently to {@code this} splitter, but
+   * removes all leading or trailing characters matching the given {@code
+   * CharMatcher} from each returned substring. For example, {@code
+   * Splitter.on(',').trimResults(CharMatcher.is('_')).split("_a ,_b_ ,c__")}
+   * returns an iterable containing {@code ["a ", "b_ ", "c"]}.
+   *
+   * @param trimmer a {@link CharMatcher} that determines whether a character
+   *     should be removed from the beginning/end of a subsequence
+   */
+  public Splitter trimResults(CharMatcher trimmer) {
+    checkNotNull(trimmer);
+    return new Splitter(strategy, omitEmptyStrings, trimmer, limit);
+  }
+
+  /**
+   * Returns a splitter that behaves equivalently to {@code this} splitter but
+   * stops splitting after it reaches the limit. The limit defines the maximum
+   * number of items returned by the iterator; the last item holds the rest of
+   * the input, separators included. For example, {@code
+   * Splitter.on(',').limit(3).split("a,b,c,d")} returns an iterable containing
+   * {@code ["a", "b", "c,d"]}.
+   *
+   * <p>Omitted empty strings don't count towards the limit, and when results
+   * are trimmed, so is the last item.
+   *
+   * @throws IllegalArgumentException if {@code limit} is not positive
+   */
+  public Splitter limit(int limit) {
+    checkArgument(limit > 0, "must be greater than zero: %s", limit);
+    return new Splitter(strategy, omitEmptyStrings, trimmer, limit);
+  }
+
+  /**
+   * Splits {@code sequence} into string components and makes them available
+   * through an {@link Iterator}, which may be lazily evaluated.
+   */
+  public Iterable<String> split(final CharSequence sequence) {
+    checkNotNull(sequence);
+    return new SplitIterable<String>() {
+      // Safe: without views, each piece is a String.
+      @SuppressWarnings("unchecked")
+      public Iterator<String> iterator() {
+        return (Iterator) strategy.iterator(Splitter.this, sequence, false);
+      }
+    };
+  }
+
+  /**
+   * Splits {@code sequence} like {@link #split}, but returns each component as
+   * a view of {@code sequence}, which shares its characters rather than
+   * copying them. Call {@code toString()} on the components that are to be
+   * kept; the others cost no more than a small, fixed-size object each.
+   *
+   * <p>The components reflect any later changes to a mutable {@code
+   * sequence}, such as a {@link StringBuilder}, so they should be used
+   * before it's changed. Like most {@code CharSequence} implementations, they
+   * don't override {@link Object#equals}.
+   */
+  public Iterable<CharSequence> splitToSequences(final CharSequence sequence) {
+    checkNotNull(sequence);
+    return new SplitIterable<CharSequence>() {
+      public Iterator<CharSequence> iterator() {
+        return strategy.iterator(Splitter.this, sequence, true);
+      }
+    };
+  }
+
+  private abstract static class SplitIterable<T> implements Iterable<T> {
+    @Override public String toString() {
+      return Joiner.on(", ")
+          .appendTo(new StringBuilder().append('['), this)
+          .append(']')
+          .toString();
+    }
+  }
+
+  private interface Strategy {
+    SplittingIterator iterator(
+        Splitter splitter, CharSequence toSplit, boolean views);
+  }
+
+  /**
+   * Finds the components of a sequence, one at a time. Subclasses locate the
+   * separators.
+   */
+  private abstract static class SplittingIterator
+      implements Iterator<CharSequence> {
+    final CharSequence toSplit;
+    final boolean omitEmptyStrings;
+    final CharMatcher trimmer;
+    final boolean views;
+    int limit;
+
+    /**
+     * Where the next piece starts and the search for its separator begins,
+     * or -1 once done.
+     */
+    int offset = 0;
+
+    CharSequence next;
+
+    SplittingIterator(Splitter splitter, CharSequence toSplit, boolean views) {
+      this.toSplit = toSplit;
+      this.omitEmptyStrings = splitter.omitEmptyStrings;
+      this.trimmer = splitter.trimmer;
+      this.limit = splitter.limit;
+      this.views = views;
+    }
+
+    /**
+     * Returns the index of the first separator at or after {@code start}, or
+     * -1 if there is none.
+     */
+    abstract int separatorStart(int start);
+
+    /**
+     * Returns the index just past the separator found at {@code
+     * separatorPosition} by the last call to {@link #separatorStart}.
+     */
+    abstract int separatorEnd(int separatorPosition);
+
+    public boolean hasNext() {
+      if (next == null) {
+        next = computeNext();
+      }
+      return next != null;
+    }
+
+    public CharSequence next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      CharSequence result = next;
+      next = null;
+      return result;
+    }
+
+    public void remove() {
+      throw new UnsupportedOperationException();
+    }
+
+    private CharSequence computeNext() {
+      int nextStart = offset;
+      while (offset != -1) {
+        int start = nextStart;
+        int end;
+        int separatorPosition = separatorStart(offset);
+        if (separatorPosition == -1) {
+          end = toSplit.length();
+          offset = -1;
+        } else {
+          end = separatorPosition;
+          offset = separatorEnd(separatorPosition);
+        }
+        if (offset == nextStart) {
+          // An empty separator at the start of the piece, which a pattern
+          // such as \b can match; look for the next one further along.
+          offset++;
+          if (offset > toSplit.length()) {
+            offset = -1;
+          }
+          continue;
+        }
+
+        while (start < end && trimmer.matches(toSplit.charAt(start))) {
+          start++;
+        }
+        while (end > start && trimmer.matches(toSplit.charAt(end - 1))) {
+          end--;
+        }
+
+        if (omitEmptyStrings && start == end) {
+          nextStart = offset;
+          continue;
+        }
+
+        if (limit == 1) {
+          // The last piece holds the rest of the input.
+          end = toSplit.length();
+          offset = -1;
+          while (end > start && trimmer.matches(toSplit.charAt(end - 1))) {
+            end--;
+          }
+        } else {
+          limit--;
+        }
+
+        return views
+            ? new SubSequence(toSplit, start, end)
+            : toSplit.subSequence(start, end).toString();
+      }
+      return null;
+    }
+  }
+
+  /** A range of another sequence's characters. */
+  private static final class SubSequence implements CharSequence {
+    final CharSequence sequence;
+    final int start;
+    final int end;
+
+    SubSequence(CharSequence sequence, int start, int end) {
+      this.sequence = sequence;
+      this.start = start;
+      this.end = end;
+    }
+
+    public int length() {
+      return end - start;
+    }
+
+    public char charAt(int index) {
+      if (index < 0 || index >= end - start) {
+        throw new IndexOutOfBoundsException(
+            "index " + index + ", length " + (end - start));
+      }
+      return sequence.charAt(start + index);
+    }
+
+    public CharSequence subSequence(int from, int to) {
+      if (from < 0 || from > to || to > end - start) {
+        throw new IndexOutOfBoundsException(
+            "from " + from + ", to " + to + ", length " + (end - start));
+      }
+      return new SubSequence(sequence, start + from, start + to);
+    }
+
+    @Override public String toString() {
+      return sequence.subSequence(start, end).toString();
+    }
+  }
+}
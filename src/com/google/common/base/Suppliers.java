@@ -19,6 +19,11 @@ package com.google.common.base;
 import com.google.common.annotations.VisibleForTesting;
 
 import java.io.Serializable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 import javax.annotation.Nullable;
 
@@ -70,9 +75,10 @@ public final class Suppliers {
    * {@code get()}. See:
    * <a href="http://en.wikipedia.org/wiki/Memoization">memoization</a>
    *
-   * <p>The returned supplier is thread-safe. The supplier's serialized form
-   * does not contain the cached value, which will be recalculated when {@code
-   * get()} is called on the reserialized instance.
+   * <p>The returned supplier is thread-safe. Once the value is cached,
+   * {@code get()} doesn't lock. The supplier's serialized form does not
+   * contain the cached value, which will be recalculated when {@code get()}
+   * is called on the reserialized instance.
    */
   public static <T> Supplier<T> memoize(Supplier<T> delegate) {
     return new MemoizingSupplier<T>(Preconditions.checkNotNull(delegate));
@@ -81,17 +87,92 @@ public final class Suppliers {
   @VisibleForTesting static class MemoizingSupplier<T>
       implements Supplier<T>, Serializable {
     final Supplier<T> delegate;
-    transient boolean initialized;
+    transient volatile boolean initialized;
+    // "value" does not need to be volatile; visibility piggy-backs
+    // on volatile read of "initialized".
     transient T value;
 
     MemoizingSupplier(Supplier<T> delegate) {
       this.delegate = delegate;
     }
 
-    public synchronized T get() {
+    public T get() {
+      // A 2-field variant of Double Checked Locking.
       if (!initialized) {
-        value = delegate.get();
-        initialized = true;
+        synchronized (this) {
+          if (!initialized) {
+            T t = delegate.get();
+            value = t;
+            initialized = true;
+            return t;
+          }
+        }
+      }
+      return value;
+    }
+
+    private static final long serialVersionUID = 0;
+  }
+
+  /**
+   * Returns a supplier that caches the instance supplied by the delegate and
+   * removes the cached value after the specified time has passed. Subsequent
+   * calls to {@code get()} return the cached value if the expiration time has
+   * not passed. After the expiration time, a new value is retrieved, cached,
+   * and returned. See:
+   * <a href="http://en.wikipedia.org/wiki/Memoization">memoization</a>
+   *
+   * <p>The returned supplier is thread-safe. Until the value expires, {@code
+   * get()} doesn't lock. The supplier's serialized form does not contain the
+   * cached value, which will be recalculated when {@code get()} is called on
+   * the reserialized instance.
+   *
+   * @param duration the length of time after a value is created that it
+   *     should stop being returned by subsequent {@code get()} calls
+   * @param unit the unit that {@code duration} is expressed in
+   * @throws IllegalArgumentException if {@code duration} is not positive
+   */
+  public static <T> Supplier<T> memoizeWithExpiration(
+      Supplier<T> delegate, long duration, TimeUnit unit) {
+    return new ExpiringMemoizingSupplier<T>(delegate, duration, unit);
+  }
+
+  @VisibleForTesting static class ExpiringMemoizingSupplier<T>
+      implements Supplier<T>, Serializable {
+    final Supplier<T> delegate;
+    final long durationNanos;
+    transient volatile T value;
+    // The special value 0 means "not yet initialized".
+    transient volatile long expirationNanos;
+
+    ExpiringMemoizingSupplier(
+        Supplier<T> delegate, long duration, TimeUnit unit) {
+      this.delegate = Preconditions.checkNotNull(delegate);
+      this.durationNanos = unit.toNanos(duration);
+      Preconditions.checkArgument(duration > 0);
+    }
+
+    public T get() {
+      // Another variant of Double Checked Locking.
+      //
+      // We use two volatile reads. We could reduce this to one by
+      // putting our fields into a holder class, but (at least on x86)
+      // the extra memory consumption and indirection are more
+      // expensive than the extra volatile reads.
+      long nanos = expirationNanos;
+      long now = System.nanoTime();
+      if (nanos == 0 || now - nanos >= 0) {
+        synchronized (this) {
+          if (nanos == expirationNanos) { // recheck for lost race
+            T t = delegate.get();
+            value = t;
+            nanos = now + durationNanos;
+            // In the very unlikely event that nanos is 0, set it to 1;
+            // no one will notice 1 ns of tardiness.
+            expirationNanos = (nanos == 0) ? 1 : nanos;
+            return t;
+          }
+        }
       }
       return value;
     }
@@ -99,6 +180,107 @@ public final class Suppliers {
     private static final long serialVersionUID = 0;
   }
 
+  /**
+   * Returns a supplier that caches the instance supplied by the delegate and
+   * refreshes it in the background once the specified time has passed since
+   * it was retrieved. The first call to {@code get()} retrieves the value
+   * directly. After that, {@code get()} always returns the cached value
+   * without blocking; the first call after the refresh time has passed also
+   * submits a task to {@code executor} that retrieves a new value and caches
+   * it. Only one refresh is in progress at a time. If a refresh fails, the
+   * failure is logged, the old value is kept, and the next call to {@code
+   * get()} tries again; so does a call after {@code executor} rejects the
+   * task.
+   *
+   * <p>The returned supplier is thread-safe. Once the value is cached, {@code
+   * get()} doesn't lock. Unlike the other memoizing suppliers, it is not
+   * serializable, since it holds on to {@code executor}.
+   *
+   * @param duration the length of time after a value is retrieved that a
+   *     refresh should be started
+   * @param unit the unit that {@code duration} is expressed in
+   * @param executor runs the refreshes
+   * @throws IllegalArgumentException if {@code duration} is not positive
+   */
+  public static <T> Supplier<T> memoizeWithRefresh(Supplier<T> delegate,
+      long duration, TimeUnit unit, Executor executor) {
+    return new RefreshingMemoizingSupplier<T>(
+        delegate, duration, unit, executor);
+  }
+
+  @VisibleForTesting static class RefreshingMemoizingSupplier<T>
+      implements Supplier<T> {
+    private static final Logger logger
+        = Logger.getLogger(RefreshingMemoizingSupplier.class.getName());
+
+    @SuppressWarnings("unchecked") // no generic class literals
+    private static final AtomicIntegerFieldUpdater<RefreshingMemoizingSupplier>
+        refreshingUpdater = AtomicIntegerFieldUpdater.newUpdater(
+            RefreshingMemoizingSupplier.class, "refreshing");
+
+    final Supplier<T> delegate;
+    final long durationNanos;
+    final Executor executor;
+    volatile T value;
+    // The special value 0 means "not yet initialized".
+    volatile long refreshNanos;
+    // 1 while a refresh is in progress.
+    volatile int refreshing;
+
+    RefreshingMemoizingSupplier(Supplier<T> delegate, long duration,
+        TimeUnit unit, Executor executor) {
+      this.delegate = Preconditions.checkNotNull(delegate);
+      this.durationNanos = unit.toNanos(duration);
+      this.executor = Preconditions.checkNotNull(executor);
+      Preconditions.checkArgument(duration > 0);
+    }
+
+    public T get() {
+      long nanos = refreshNanos;
+      if (nanos == 0) {
+        synchronized (this) {
+          if (refreshNanos == 0) {
+            T t = delegate.get();
+            store(t);
+            return t;
+          }
+        }
+      } else if (System.nanoTime() - nanos >= 0 && refreshing == 0
+          && refreshingUpdater.compareAndSet(this, 0, 1)) {
+        try {
+          executor.execute(new Runnable() {
+            public void run() {
+              refresh();
+            }
+          });
+        } catch (RuntimeException e) {
+          refreshing = 0;
+          logger.log(Level.WARNING, "Couldn't schedule a refresh of "
+              + delegate + ". Serving the old value.", e);
+        }
+      }
+      return value;
+    }
+
+    void refresh() {
+      try {
+        store(delegate.get());
+      } catch (RuntimeException e) {
+        logger.log(Level.WARNING, "Couldn't refresh " + delegate
+            + ". Serving the old value.", e);
+      } finally {
+        refreshing = 0;
+      }
+    }
+
+    private void store(T t) {
+      value = t;
+      long nanos = System.nanoTime() + durationNanos;
+      // 0 means "not yet initialized"; no one will notice 1 ns of tardiness.
+      refreshNanos = (nanos == 0) ? 1 : nanos;
+    }
+  }
+
   /**
    * Returns a supplier that always supplies {@code instance}.
    */
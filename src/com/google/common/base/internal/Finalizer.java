@@ -29,6 +29,13 @@ import java.util.logging.Logger;
  * Thread that finalizes referents. All references should implement
  * {@code com.google.common.base.FinalizableReference}.
  *
+ * <p>One thread serves every {@code FinalizableReferenceQueue} that uses this
+ * class. While it serves a single queue, it blocks on that queue. While it
+ * serves several, it drains each of them in turn and then waits on one of
+ * them for up to {@link #POLL_INTERVAL_MILLIS}, so a reference may wait that
+ * long before it's cleaned up. The thread stops once none of its queues
+ * remain, and a new one is started when the next queue is created.
+ *
  * <p>While this class is public, we consider it to be *internal* and not part
  * of our published API. It is public so we can access it reflectively across
  * class loaders in secure environments.
@@ -56,12 +63,29 @@ public class Finalizer extends Thread {
       = "com.google.common.base.FinalizableReference";
 
   /**
-   * Starts the Finalizer thread. FinalizableReferenceQueue calls this method
-   * reflectively.
+   * How long the thread waits on one queue before draining the others again,
+   * when it serves more than one.
+   */
+  public static final long POLL_INTERVAL_MILLIS = 100;
+
+  // The following are guarded by Finalizer.class.
+
+  /** The running thread, or null if none is running. */
+  private static Finalizer thread;
+
+  /** The queues that the thread serves. Replaced rather than modified. */
+  private static Registration[] registrations = new Registration[0];
+
+  /** The registration whose queue the thread is waiting on, or null. */
+  private static Registration waitingOn;
+
+  /**
+   * Registers a queue with the Finalizer thread, starting the thread if it
+   * isn't running. FinalizableReferenceQueue calls this method reflectively.
    *
    * @param finalizableReferenceClass FinalizableReference.class
-   * @param frq reference to instance of FinalizableReferenceQueue that started
-   *  this thread
+   * @param frq reference to instance of FinalizableReferenceQueue that owns
+   *  the returned queue
    * @return ReferenceQueue which Finalizer will poll
    */
   public static ReferenceQueue<Object> startFinalizer(
@@ -72,35 +96,69 @@ public class Finalizer extends Thread {
      * 1) To invoke FinalizableReference.finalizeReferent()
      *
      * 2) To detect when FinalizableReference's class loader has to be garbage
-     * collected, at which point, Finalizer can stop running
+     * collected, at which point, Finalizer can stop serving its queues
      */
     if (!finalizableReferenceClass.getName().equals(FINALIZABLE_REFERENCE)) {
       throw new IllegalArgumentException(
           "Expected " + FINALIZABLE_REFERENCE + ".");
     }
 
-    Finalizer finalizer = new Finalizer(finalizableReferenceClass, frq);
-    finalizer.start();
-    return finalizer.queue;
+    Registration registration
+        = new Registration(finalizableReferenceClass, frq);
+    synchronized (Finalizer.class) {
+      Registration[] previous = registrations;
+      Registration[] grown = new Registration[previous.length + 1];
+      System.arraycopy(previous, 0, grown, 0, previous.length);
+      grown[previous.length] = registration;
+      registrations = grown;
+
+      if (thread == null) {
+        Finalizer finalizer = new Finalizer();
+        try {
+          finalizer.start();
+        } catch (RuntimeException e) {
+          registrations = previous;
+          throw e;
+        } catch (Error e) {
+          registrations = previous;
+          throw e;
+        }
+        thread = finalizer;
+      } else if (waitingOn != null) {
+        // Wake the thread up so that it starts polling the new queue, too.
+        new WakeUp(waitingOn.queue).enqueue();
+        waitingOn = null;
+      }
+    }
+    return registration.queue;
   }
 
-  private final WeakReference<Class<?>> finalizableReferenceClassReference;
-  private final PhantomReference<Object> frqReference;
-  private final ReferenceQueue<Object> queue = new ReferenceQueue<Object>();
+  /**
+   * Returns the depth and cleanup lag, in nanoseconds, most recently
+   * recorded for the given queue, or null if the queue is no longer served.
+   * FinalizableReferenceQueue calls this method reflectively.
+   */
+  public static long[] getStatistics(ReferenceQueue<?> queue) {
+    Registration[] registrations;
+    synchronized (Finalizer.class) {
+      registrations = Finalizer.registrations;
+    }
+    for (Registration registration : registrations) {
+      if (registration.queue == queue) {
+        return new long[] {
+            registration.queueDepth, registration.cleanupLagNanos };
+      }
+    }
+    return null;
+  }
 
   private static final Field inheritableThreadLocals
       = getInheritableThreadLocalsField();
 
   /** Constructs a new finalizer thread. */
-  private Finalizer(Class<?> finalizableReferenceClass, Object frq) {
+  private Finalizer() {
     super(Finalizer.class.getName());
 
-    this.finalizableReferenceClassReference
-        = new WeakReference<Class<?>>(finalizableReferenceClass);
-
-    // Keep track of the FRQ that started us so we know when to stop.
-    this.frqReference = new PhantomReference<Object>(frq, queue);
-
     setDaemon(true);
 
     try {
@@ -116,38 +174,98 @@ public class Finalizer extends Thread {
   }
 
   /**
-   * Loops continuously, pulling references off the queue and cleaning them up.
+   * Loops until no queues remain, pulling references off the queues and
+   * cleaning them up.
    */
-  @SuppressWarnings("InfiniteLoopStatement")
   @Override
   public void run() {
-    try {
-      while (true) {
-        try {
-          cleanUp(queue.remove());
-        } catch (InterruptedException e) { /* ignore */ }
+    int next = 0;
+    while (true) {
+      Registration[] snapshot;
+      synchronized (Finalizer.class) {
+        snapshot = registrations;
+        if (snapshot.length == 0) {
+          thread = null;
+          return;
+        }
+      }
+
+      boolean cleanedUp = false;
+      for (Registration registration : snapshot) {
+        if (registration.finalizableReferenceClassReference.get() == null) {
+          // See getFinalizeReferentMethod().
+          remove(registration);
+          cleanedUp = true;
+          continue;
+        }
+        Reference<?> reference = registration.queue.poll();
+        if (reference != null) {
+          cleanUp(registration, reference);
+          cleanedUp = true;
+        } else {
+          registration.lastEmptyNanos = System.nanoTime();
+        }
       }
-    } catch (ShutDown shutDown) { /* ignore */ }
+      if (cleanedUp) {
+        continue;
+      }
+
+      Registration registration = snapshot[next++ % snapshot.length];
+      synchronized (Finalizer.class) {
+        if (registrations != snapshot) {
+          continue;
+        }
+        waitingOn = registration;
+      }
+      Reference<?> reference = null;
+      try {
+        reference = registration.queue.remove(
+            (snapshot.length == 1) ? 0 : POLL_INTERVAL_MILLIS);
+      } catch (InterruptedException e) { /* ignore */ }
+      synchronized (Finalizer.class) {
+        if (waitingOn == registration) {
+          waitingOn = null;
+        }
+      }
+      if (reference != null) {
+        // The queue was empty until just now.
+        registration.lastEmptyNanos = System.nanoTime();
+        cleanUp(registration, reference);
+      }
+    }
   }
 
   /**
-   * Cleans up a single reference. Catches and logs all throwables.
+   * Cleans up the given reference and any others in its queue. Catches and
+   * logs all throwables. Stops serving the queue if its owner or
+   * FinalizableReference's class loader was reclaimed.
    */
-  private void cleanUp(Reference<?> reference) throws ShutDown {
-    Method finalizeReferentMethod = getFinalizeReferentMethod();
+  private static void cleanUp(
+      Registration registration, Reference<?> reference) {
+    Method finalizeReferentMethod = registration.getFinalizeReferentMethod();
+    if (finalizeReferentMethod == null) {
+      remove(registration);
+      return;
+    }
+    int count = 0;
     do {
+      if (reference instanceof WakeUp) {
+        continue;
+      }
+
       /*
        * This is for the benefit of phantom references. Weak and soft
        * references will have already been cleared by this point.
        */
       reference.clear();
 
-      if (reference == frqReference) {
+      if (reference == registration.frqReference) {
         /*
          * The client no longer has a reference to the
-         * FinalizableReferenceQueue. We can stop.
+         * FinalizableReferenceQueue. We can stop serving it.
          */
-        throw new ShutDown();
+        remove(registration);
+        return;
       }
 
       try {
@@ -155,35 +273,100 @@ public class Finalizer extends Thread {
       } catch (Throwable t) {
         logger.log(Level.SEVERE, "Error cleaning up after reference.", t);
       }
+      count++;
 
       /*
        * Loop as long as we have references available so as not to waste
        * CPU looking up the Method over and over again.
        */
-    } while ((reference = queue.poll()) != null);
+    } while ((reference = registration.queue.poll()) != null);
+
+    long now = System.nanoTime();
+    if (count > 0) {
+      registration.queueDepth = count;
+      registration.cleanupLagNanos = now - registration.lastEmptyNanos;
+    }
+    registration.lastEmptyNanos = now;
+  }
+
+  /** Stops serving a queue. */
+  private static void remove(Registration registration) {
+    synchronized (Finalizer.class) {
+      Registration[] previous = registrations;
+      for (int i = 0; i < previous.length; i++) {
+        if (previous[i] == registration) {
+          Registration[] shrunk = new Registration[previous.length - 1];
+          System.arraycopy(previous, 0, shrunk, 0, i);
+          System.arraycopy(previous, i + 1, shrunk, i, shrunk.length - i);
+          registrations = shrunk;
+          return;
+        }
+      }
+    }
   }
 
   /**
-   * Looks up FinalizableReference.finalizeReferent() method.
+   * A queue served by the thread, along with what's needed to clean up its
+   * references and to know when to stop.
    */
-  private Method getFinalizeReferentMethod() throws ShutDown {
-    Class<?> finalizableReferenceClass
-        = finalizableReferenceClassReference.get();
-    if (finalizableReferenceClass == null) {
-      /*
-       * FinalizableReference's class loader was reclaimed. While there's a
-       * chance that other finalizable references could be enqueued
-       * subsequently (at which point the class loader would be resurrected
-       * by virtue of us having a strong reference to it), we should pretty
-       * much just shut down and make sure we don't keep it alive any longer
-       * than necessary.
-       */
-      throw new ShutDown();
+  private static class Registration {
+    final WeakReference<Class<?>> finalizableReferenceClassReference;
+    final PhantomReference<Object> frqReference;
+    final ReferenceQueue<Object> queue = new ReferenceQueue<Object>();
+
+    /** When the queue was last seen empty. Accessed by the thread only. */
+    long lastEmptyNanos = System.nanoTime();
+
+    /** Number of references cleaned up in the most recent batch. */
+    volatile int queueDepth;
+
+    /**
+     * Upper bound on how long the last reference of the most recent batch
+     * waited, from the time the queue was last seen empty.
+     */
+    volatile long cleanupLagNanos;
+
+    Registration(Class<?> finalizableReferenceClass, Object frq) {
+      this.finalizableReferenceClassReference
+          = new WeakReference<Class<?>>(finalizableReferenceClass);
+
+      // Keep track of the FRQ that owns the queue so we know when to stop.
+      this.frqReference = new PhantomReference<Object>(frq, queue);
     }
-    try {
-      return finalizableReferenceClass.getMethod("finalizeReferent");
-    } catch (NoSuchMethodException e) {
-      throw new AssertionError(e);
+
+    /**
+     * Looks up FinalizableReference.finalizeReferent() method, or returns
+     * null if FinalizableReference's class loader was reclaimed.
+     */
+    Method getFinalizeReferentMethod() {
+      Class<?> finalizableReferenceClass
+          = finalizableReferenceClassReference.get();
+      if (finalizableReferenceClass == null) {
+        /*
+         * FinalizableReference's class loader was reclaimed. While there's a
+         * chance that other finalizable references could be enqueued
+         * subsequently (at which point the class loader would be resurrected
+         * by virtue of us having a strong reference to it), we should pretty
+         * much just stop and make sure we don't keep it alive any longer
+         * than necessary.
+         */
+        return null;
+      }
+      try {
+        return finalizableReferenceClass.getMethod("finalizeReferent");
+      } catch (NoSuchMethodException e) {
+        throw new AssertionError(e);
+      }
+    }
+  }
+
+  /**
+   * Enqueued to wake the thread up when it's waiting on one queue and
+   * another is registered.
+   */
+  private static class WakeUp extends WeakReference<Object> {
+    WakeUp(ReferenceQueue<Object> queue) {
+      super(null, queue);
     }
   }
 
@@ -200,8 +383,4 @@ public class Finalizer extends Thread {
       return null;
     }
   }
-
-  /** Indicates that it's time to shut down the Finalizer. */
-  @SuppressWarnings("serial") // Never serialized or thrown out of this class.
-  private static class ShutDown extends Exception { }
 }
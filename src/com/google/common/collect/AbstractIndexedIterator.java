@@ -0,0 +1,49 @@
+/*
+ * Copyright (C) 2009 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.collect;
+
+import com.google.common.annotations.GwtCompatible;
+
+import java.util.NoSuchElementException;
+
+/**
+ * An iterator over the elements at the indices {@code 0} to {@code size - 1}
+ * of some array-backed collection, which subclasses look up in {@link #get}.
+ */
+@GwtCompatible
+abstract class AbstractIndexedIterator<E> extends UnmodifiableIterator<E> {
+  private final int size;
+  private int index = 0;
+
+  AbstractIndexedIterator(int size) {
+    this.size = size;
+  }
+
+  /** Returns the element at the given index. */
+  abstract E get(int index);
+
+  public boolean hasNext() {
+    return index < size;
+  }
+
+  public E next() {
+    if (!hasNext()) {
+      throw new NoSuchElementException();
+    }
+    return get(index++);
+  }
+}
@@ -0,0 +1,515 @@
+/*
+ * Copyright (C) 2009 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.collect;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.annotations.GwtCompatible;
+
+import java.io.InvalidObjectException;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nullable;
+
+/**
+ * Implementation of the {@link ImmutableMultimap#asMap} of a multimap built
+ * with {@link ImmutableMultimap.Builder#compressedRows}, in a compressed
+ * sparse row layout. The distinct keys are kept in one array and found
+ * through a hash table of indexes into it, and the values of every key are
+ * kept in one flat array, where the values of the key at index {@code i} run
+ * from {@code offsets[i]} to {@code offsets[i + 1]}. No collection is kept for
+ * each key; {@link #get} returns a new view of the key's run of values each
+ * time it's called.
+ *
+ * @param <C> the type of collection that views the values of a key
+ */
+@GwtCompatible
+@SuppressWarnings("serial") // uses writeReplace(), not default serialization
+abstract class CompressedRowImmutableMap<K, C extends ImmutableCollection<?>>
+    extends ImmutableMap<K, C> {
+
+  // the distinct keys, in insertion order
+  final transient Object[] keys;
+
+  /*
+   * An open-addressed hash table. Each slot is either 0, for an empty slot, or
+   * one more than the index of a key in keys.
+   */
+  private final transient int[] table;
+
+  // the values of the key at index i are values[offsets[i]] through
+  // values[offsets[i + 1] - 1]
+  final transient int[] offsets;
+  final transient Object[] values;
+
+  /**
+   * Creates a map of the given keys, which it keeps with the other arrays.
+   * Each key must have at least one value.
+   *
+   * @throws NullPointerException if any key is null
+   * @throws IllegalArgumentException if any two keys are equal
+   */
+  CompressedRowImmutableMap(Object[] keys, int[] offsets, Object[] values) {
+    this.keys = keys;
+    this.offsets = offsets;
+    this.values = values;
+    table = new int[Hashing.chooseTableSize(
+        keys.length, Hashing.MAX_LOAD_FACTOR)];
+    for (int i = 0; i < keys.length; i++) {
+      Object key = checkNotNull(keys[i]);
+      int slot = slotFor(key);
+      if (table[slot] != 0) {
+        throw new IllegalArgumentException("duplicate key: " + key);
+      }
+      table[slot] = i + 1;
+    }
+  }
+
+  /**
+   * Returns the slot of {@link #table} that refers to {@code key}, or the
+   * empty slot where it belongs if no slot does.
+   */
+  private int slotFor(Object key) {
+    int mask = table.length - 1;
+    for (int slot = Hashing.smear(key.hashCode()) & mask; ;
+        slot = (slot + 1) & mask) {
+      int index = table[slot];
+      if (index == 0 || keys[index - 1].equals(key)) {
+        return slot;
+      }
+    }
+  }
+
+  /** Returns the index of {@code key} in {@link #keys}, or -1. */
+  int indexOf(@Nullable Object key) {
+    return (key == null) ? -1 : table[slotFor(key)] - 1;
+  }
+
+  /** Returns a view of the values of the key at {@code index}. */
+  abstract C row(int index);
+
+  /**
+   * Returns the form that an {@link ImmutableListMultimap} or {@link
+   * ImmutableSetMultimap} backed by this map is serialized as.
+   */
+  abstract Object multimapForm();
+
+  @SuppressWarnings("unchecked") // we store only K's in keys
+  K keyAt(int index) {
+    return (K) keys[index];
+  }
+
+  @Override public C get(@Nullable Object key) {
+    int index = indexOf(key);
+    return (index == -1) ? null : row(index);
+  }
+
+  @Override public boolean containsKey(@Nullable Object key) {
+    return indexOf(key) != -1;
+  }
+
+  @Override public boolean containsValue(@Nullable Object value) {
+    if (value instanceof Collection) {
+      for (int i = 0; i < keys.length; i++) {
+        if (row(i).equals(value)) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  public int size() {
+    return keys.length;
+  }
+
+  @Override public boolean isEmpty() {
+    return false;
+  }
+
+  private transient ImmutableSet<Entry<K, C>> entrySet;
+
+  @Override public ImmutableSet<Entry<K, C>> entrySet() {
+    ImmutableSet<Entry<K, C>> es = entrySet;
+    return (es == null) ? (entrySet = new EntrySet<K, C>(this)) : es;
+  }
+
+  private static class EntrySet<K, C extends ImmutableCollection<?>>
+      extends ImmutableSet<Entry<K, C>> {
+    final transient CompressedRowImmutableMap<K, C> map;
+
+    EntrySet(CompressedRowImmutableMap<K, C> map) {
+      this.map = map;
+    }
+
+    public int size() {
+      return map.size();
+    }
+
+    @Override public UnmodifiableIterator<Entry<K, C>> iterator() {
+      return new AbstractIndexedIterator<Entry<K, C>>(map.size()) {
+        @Override Entry<K, C> get(int index) {
+          return Maps.immutableEntry(map.keyAt(index), map.row(index));
+        }
+      };
+    }
+
+    @Override public boolean contains(Object target) {
+      if (target instanceof Entry) {
+        Entry<?, ?> entry = (Entry<?, ?>) target;
+        C mappedValue = map.get(entry.getKey());
+        return mappedValue != null && mappedValue.equals(entry.getValue());
+      }
+      return false;
+    }
+  }
+
+  private transient ImmutableSet<K> keySet;
+
+  @Override public ImmutableSet<K> keySet() {
+    ImmutableSet<K> ks = keySet;
+    return (ks == null) ? (keySet = new KeySet<K>(this)) : ks;
+  }
+
+  private static class KeySet<K> extends ImmutableSet<K> {
+    final CompressedRowImmutableMap<K, ?> map;
+
+    KeySet(CompressedRowImmutableMap<K, ?> map) {
+      this.map = map;
+    }
+
+    public int size() {
+      return map.size();
+    }
+
+    @Override public UnmodifiableIterator<K> iterator() {
+      return new AbstractIndexedIterator<K>(map.size()) {
+        @Override K get(int index) {
+          return map.keyAt(index);
+        }
+      };
+    }
+
+    @Override public boolean contains(Object target) {
+      return map.containsKey(target);
+    }
+  }
+
+  private transient ImmutableCollection<C> valueCollection;
+
+  @Override public ImmutableCollection<C> values() {
+    ImmutableCollection<C> v = valueCollection;
+    return (v == null) ? (valueCollection = new Values<C>(this)) : v;
+  }
+
+  private static class Values<C extends ImmutableCollection<?>>
+      extends ImmutableCollection<C> {
+    final CompressedRowImmutableMap<?, C> map;
+
+    Values(CompressedRowImmutableMap<?, C> map) {
+      this.map = map;
+    }
+
+    public int size() {
+      return map.size();
+    }
+
+    @Override public UnmodifiableIterator<C> iterator() {
+      return new AbstractIndexedIterator<C>(map.size()) {
+        @Override C get(int index) {
+          return map.row(index);
+        }
+      };
+    }
+
+    @Override public boolean contains(Object target) {
+      return map.containsValue(target);
+    }
+  }
+
+  /**
+   * The keys of a multimap that have values, and all of those values,
+   * gathered into the arrays of a map of this class.
+   */
+  static final class Layout {
+    final Object[] keys;
+    final int[] offsets;
+    final Object[] values;
+
+    /**
+     * @throws NullPointerException if any key or value in {@code multimap} is
+     *     null
+     */
+    Layout(Multimap<?, ?> multimap) {
+      Map<?, ? extends Collection<?>> asMap = multimap.asMap();
+      Object[] keys = new Object[asMap.size()];
+      int[] offsets = new int[keys.length + 1];
+      Object[] values = new Object[multimap.size()];
+      int keyCount = 0;
+      int valueCount = 0;
+      for (Map.Entry<?, ? extends Collection<?>> entry : asMap.entrySet()) {
+        for (Object value : entry.getValue()) {
+          values[valueCount++] = checkNotNull(value);
+        }
+        if (valueCount > offsets[keyCount]) {
+          keys[keyCount++] = checkNotNull(entry.getKey());
+          offsets[keyCount] = valueCount;
+        }
+      }
+      if (keyCount < keys.length) {
+        Object[] trimmedKeys = new Object[keyCount];
+        System.arraycopy(keys, 0, trimmedKeys, 0, keyCount);
+        int[] trimmedOffsets = new int[keyCount + 1];
+        System.arraycopy(offsets, 0, trimmedOffsets, 0, keyCount + 1);
+        keys = trimmedKeys;
+        offsets = trimmedOffsets;
+      }
+      this.keys = keys;
+      this.offsets = offsets;
+      this.values = values;
+    }
+  }
+
+  /**
+   * Implementation of the {@code asMap} of an {@link ImmutableListMultimap}.
+   * The list for each key is a sublist of the values array, so {@link #get}
+   * copies nothing.
+   */
+  static final class ListRows<K, V>
+      extends CompressedRowImmutableMap<K, ImmutableList<V>> {
+    /** Returns a map of the keys of {@code multimap} to their values. */
+    static <K, V> ListRows<K, V> copyOf(
+        Multimap<? extends K, ? extends V> multimap) {
+      Layout layout = new Layout(multimap);
+      return new ListRows<K, V>(layout.keys, layout.offsets, layout.values);
+    }
+
+    ListRows(Object[] keys, int[] offsets, Object[] values) {
+      super(keys, offsets, values);
+    }
+
+    @Override ImmutableList<V> row(int index) {
+      int offset = offsets[index];
+      return new RegularImmutableList<V>(
+          values, offset, offsets[index + 1] - offset);
+    }
+
+    @Override Object multimapForm() {
+      return new MultimapForm(false, keys, offsets, values);
+    }
+  }
+
+  /**
+   * Implementation of the {@code asMap} of an {@link ImmutableSetMultimap}.
+   * The set for each key of at most {@link SmallImmutableSet#MAX_SIZE} values
+   * is a view of the values array, which finds a value by scanning its run.
+   * Scanning the values of a key with more would be too slow, so each such
+   * key keeps a hashed {@link ImmutableSet} of its values too.
+   */
+  static final class SetRows<K, V>
+      extends CompressedRowImmutableMap<K, ImmutableSet<V>> {
+    /**
+     * Returns a map of the keys of {@code multimap} to their distinct values.
+     * Repeated values of a key after the first are ignored.
+     */
+    static <K, V> SetRows<K, V> copyOf(
+        Multimap<? extends K, ? extends V> multimap) {
+      Layout layout = new Layout(multimap);
+      return create(layout.keys, layout.offsets, layout.values);
+    }
+
+    /**
+     * Returns a map of the given keys to their distinct values. Repeated
+     * values of a key are removed by moving later values down {@code values}
+     * and {@code offsets} in place.
+     */
+    static <K, V> SetRows<K, V> create(
+        Object[] keys, int[] offsets, Object[] values) {
+      ImmutableMap.Builder<Integer, ImmutableSet<V>> largeRows
+          = ImmutableMap.builder();
+      int valueCount = 0;
+      for (int i = 0; i < keys.length; i++) {
+        int start = offsets[i];
+        int end = offsets[i + 1];
+        offsets[i] = valueCount;
+        if (end - start <= SmallImmutableSet.MAX_SIZE) {
+          int rowStart = valueCount;
+          for (int j = start; j < end; j++) {
+            Object value = values[j];
+            if (indexOf(values, rowStart, valueCount, value) == -1) {
+              values[valueCount++] = value;
+            }
+          }
+        } else {
+          @SuppressWarnings("unchecked") // values holds only V's
+          List<V> row = (List<V>) Arrays.asList(values).subList(start, end);
+          ImmutableSet<V> set = ImmutableSet.copyOf(row);
+          if (set.size() > SmallImmutableSet.MAX_SIZE) {
+            largeRows.put(i, set);
+          }
+          for (V value : set) {
+            values[valueCount++] = value;
+          }
+        }
+      }
+      offsets[keys.length] = valueCount;
+      if (valueCount < values.length) {
+        Object[] trimmedValues = new Object[valueCount];
+        System.arraycopy(values, 0, trimmedValues, 0, valueCount);
+        values = trimmedValues;
+      }
+      return new SetRows<K, V>(keys, offsets, values, largeRows.build());
+    }
+
+    /**
+     * Returns the index of {@code target} in {@code array} from {@code start},
+     * inclusive, to {@code end}, exclusive, or -1 if it's not there.
+     */
+    static int indexOf(Object[] array, int start, int end, Object target) {
+      for (int i = start; i < end; i++) {
+        if (array[i].equals(target)) {
+          return i;
+        }
+      }
+      return -1;
+    }
+
+    // the sets of the keys with more than SmallImmutableSet.MAX_SIZE values,
+    // by key index
+    private final transient ImmutableMap<Integer, ImmutableSet<V>> largeRows;
+
+    private SetRows(Object[] keys, int[] offsets, Object[] values,
+        ImmutableMap<Integer, ImmutableSet<V>> largeRows) {
+      super(keys, offsets, values);
+      this.largeRows = largeRows;
+    }
+
+    @Override ImmutableSet<V> row(int index) {
+      int offset = offsets[index];
+      int size = offsets[index + 1] - offset;
+      return (size > SmallImmutableSet.MAX_SIZE)
+          ? largeRows.get(index)
+          : new RowSet<V>(values, offset, size);
+    }
+
+    @Override Object multimapForm() {
+      return new MultimapForm(true, keys, offsets, values);
+    }
+  }
+
+  /**
+   * A set of the values of one key of a {@link SetRows} map, which finds a
+   * value by scanning them.
+   */
+  private static final class RowSet<E> extends ImmutableSet<E> {
+    final transient Object[] values;
+    final transient int offset;
+    final transient int size;
+
+    RowSet(Object[] values, int offset, int size) {
+      this.values = values;
+      this.offset = offset;
+      this.size = size;
+    }
+
+    public int size() {
+      return size;
+    }
+
+    @Override public boolean isEmpty() {
+      return false;
+    }
+
+    @Override public boolean contains(@Nullable Object target) {
+      return target != null
+          && SetRows.indexOf(values, offset, offset + size, target) != -1;
+    }
+
+    // The fake cast to E is safe because we store only E's
+    @SuppressWarnings("unchecked")
+    @Override public UnmodifiableIterator<E> iterator() {
+      return (UnmodifiableIterator<E>)
+          Iterators.forArray(values, offset, size);
+    }
+
+    @Override public Object[] toArray() {
+      Object[] array = new Object[size];
+      System.arraycopy(values, offset, array, 0, size);
+      return array;
+    }
+  }
+
+  /*
+   * Serializes the multimaps that have maps of this class as the arrays of
+   * the map, so they have the same layout when deserialized.
+   */
+  private static class MultimapForm implements Serializable {
+    final boolean sets;
+    final Object[] keys;
+    final int[] offsets;
+    final Object[] values;
+
+    MultimapForm(boolean sets, Object[] keys, int[] offsets, Object[] values) {
+      this.sets = sets;
+      this.keys = keys;
+      this.offsets = offsets;
+      this.values = values;
+    }
+
+    Object readResolve() throws InvalidObjectException {
+      if (offsets.length != keys.length + 1 || offsets[0] != 0
+          || offsets[keys.length] != values.length) {
+        throw new InvalidObjectException("Invalid offsets");
+      }
+      for (int i = 0; i < keys.length; i++) {
+        if (offsets[i] >= offsets[i + 1]) {
+          throw new InvalidObjectException("Invalid value count for key "
+              + keys[i]);
+        }
+      }
+      for (Object value : values) {
+        if (value == null) {
+          throw new InvalidObjectException("Null value");
+        }
+      }
+      try {
+        if (sets) {
+          SetRows<Object, Object> map = SetRows.create(keys, offsets, values);
+          if (map.values.length != values.length) {
+            throw new InvalidObjectException(
+                "Duplicate key-value pairs exist");
+          }
+          return new ImmutableSetMultimap<Object, Object>(
+              map, values.length);
+        } else {
+          return new ImmutableListMultimap<Object, Object>(
+              new ListRows<Object, Object>(keys, offsets, values),
+              values.length);
+        }
+      } catch (RuntimeException e) {
+        throw (InvalidObjectException)
+            new InvalidObjectException(e.getMessage()).initCause(e);
+      }
+    }
+
+    private static final long serialVersionUID = 0;
+  }
+}
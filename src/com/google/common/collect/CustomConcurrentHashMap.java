@@ -22,17 +22,22 @@ import java.io.IOException;
 import java.io.Serializable;
 import java.lang.reflect.Array;
 import java.lang.reflect.Field;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
 import java.util.AbstractCollection;
 import java.util.AbstractMap;
 import java.util.AbstractSet;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 import java.util.concurrent.locks.ReentrantLock;
 
 import javax.annotation.Nullable;
@@ -98,6 +103,7 @@ import javax.annotation.Nullable;
  *     return entry.next;
  *   }
  *   public int getHash(InternalEntry<K, V> entry) { return entry.hash; }
+ *   public void remove(InternalEntry<K, V> entry) {}
  *   public void setInternals(CustomConcurrentHashMap.Internals<K, V,
  *       InternalEntry<K, V>> internals) {} // ignored
  * }
@@ -144,6 +150,8 @@ final class CustomConcurrentHashMap {
     
     int initialCapacity = UNSET_INITIAL_CAPACITY;
     int concurrencyLevel = UNSET_CONCURRENCY_LEVEL;
+    boolean recordDiagnostics;
+    boolean adaptiveConcurrency;
 
     /**
      * Sets a custom initial capacity (defaults to 16). Resizing this or any
@@ -193,6 +201,40 @@ final class CustomConcurrentHashMap {
       return this;
     }
 
+    /**
+     * Records lock acquisitions, contention and lock hold times for each
+     * segment. Maps built without this option pay nothing for it.
+     *
+     * @throws IllegalStateException if diagnostics were already requested
+     */
+    public Builder recordDiagnostics() {
+      if (recordDiagnostics) {
+        throw new IllegalStateException("diagnostics were already requested");
+      }
+      this.recordDiagnostics = true;
+      return this;
+    }
+
+    /**
+     * Treats the concurrency level as an upper bound instead of a fixed
+     * partitioning. The map starts with a single segment, and a segment
+     * whose lock is repeatedly contended is split in two, up to the number
+     * of segments a fixed concurrency level would have created. Small or
+     * rarely updated maps stay small, while heavily updated maps end up
+     * partitioned where the updates actually happen.
+     *
+     * @throws IllegalStateException if adaptive concurrency was already
+     *     requested
+     */
+    public Builder adaptiveConcurrency() {
+      if (adaptiveConcurrency) {
+        throw new IllegalStateException(
+            "adaptive concurrency was already requested");
+      }
+      this.adaptiveConcurrency = true;
+      return this;
+    }
+
     /**
      * Creates a new concurrent hash map backed by the given strategy.
      *
@@ -405,13 +447,14 @@ final class CustomConcurrentHashMap {
      */
     int getHash(E entry);
 
-// TODO:
-//    /**
-//     * Notifies the strategy that an entry has been removed from the map.
-//     *
-//     * @param entry that was recently removed
-//     */
-//    void remove(E entry);
+    /**
+     * Notifies the strategy that an entry has been removed from the map.
+     * Invoked while holding the lock of the entry's segment, after the
+     * removal is visible. Concurrent readers may still hold the entry.
+     *
+     * @param entry that was recently removed
+     */
+    void remove(E entry);
 
     /**
      * Provides an API for interacting directly with the map's internal
@@ -425,6 +468,20 @@ final class CustomConcurrentHashMap {
     void setInternals(Internals<K, V, E> internals);
   }
 
+  /**
+   * Implemented by strategies that need to do work after the map is
+   * modified, outside of the map's locks, such as cleaning up after
+   * reclaimed references.
+   */
+  interface WriteListener {
+
+    /**
+     * Invoked after each write to the map, once the lock of the written
+     * segment was released.
+     */
+    void afterWrite();
+  }
+
   /**
    * Provides access to a map's internal entries.
    */
@@ -564,6 +621,35 @@ final class CustomConcurrentHashMap {
      */
     static final int RETRIES_BEFORE_LOCK = 2;
 
+    /**
+     * The number of entries at which a bin is converted from a linked list
+     * to a tree. Well-distributed hash codes practically never produce bins
+     * this long, so only pathological or deliberately colliding keys pay the
+     * cost of maintaining trees.
+     */
+    static final int TREEIFY_THRESHOLD = 8;
+
+    /**
+     * The number of entries at or below which a tree bin is converted back
+     * to a linked list. Less than {@link #TREEIFY_THRESHOLD} so that a bin
+     * hovering around the threshold doesn't repeatedly change shape.
+     */
+    static final int UNTREEIFY_THRESHOLD = 6;
+
+    /**
+     * The number of buckets in an {@link InstrumentedSegment}'s lock hold
+     * time histogram. The last bucket counts holds of about a second or more.
+     */
+    static final int HOLD_TIME_BUCKETS = 32;
+
+    /**
+     * The number of contended lock acquisitions after which a segment of a
+     * map with adaptive concurrency is split. Contention is never forgotten,
+     * so a map that sees occasional contention over a long time approaches
+     * the segment count of an ordinary map with the same concurrency level.
+     */
+    static final int SPLIT_THRESHOLD = 32;
+
     /* ---------------- Fields -------------- */
 
     /**
@@ -584,10 +670,19 @@ final class CustomConcurrentHashMap {
     final int segmentShift;
 
     /**
-     * The segments, each of which is a specialized hash table
+     * The segments, each of which is a specialized hash table, indexed by
+     * the upper bits of a key's hash code. Null with adaptive concurrency,
+     * where {@link #splitter} holds the segments instead.
      */
     final Segment[] segments;
 
+    /**
+     * Holds the segments of a map with adaptive concurrency and splits them
+     * under contention, or null. Only such maps pay for a volatile read to
+     * find a key's segment.
+     */
+    final SegmentSplitter splitter;
+
     /**
      * Creates a new, empty map with the specified strategy, initial capacity,
      * load factor and concurrency level.
@@ -609,14 +704,17 @@ final class CustomConcurrentHashMap {
       }
       this.segmentShift = 32 - segmentShift;
       segmentMask = segmentCount - 1;
-      this.segments = newSegmentArray(segmentCount);
+      Segment[] segments = newSegmentArray(segmentCount);
+      boolean adaptive = builder.adaptiveConcurrency;
 
       if (initialCapacity > MAXIMUM_CAPACITY) {
         initialCapacity = MAXIMUM_CAPACITY;
       }
 
-      int segmentCapacity = initialCapacity / segmentCount;
-      if (segmentCapacity * segmentCount < initialCapacity) {
+      // An adaptive map starts with one segment shared by every slot.
+      int initialSegments = adaptive ? 1 : segmentCount;
+      int segmentCapacity = initialCapacity / initialSegments;
+      if (segmentCapacity * initialSegments < initialCapacity) {
         ++segmentCapacity;
       }
 
@@ -624,9 +722,13 @@ final class CustomConcurrentHashMap {
       while (segmentSize < segmentCapacity) {
           segmentSize <<= 1;
       }
-      for (int i = 0; i < this.segments.length; ++i) {
-        this.segments[i] = new Segment(segmentSize);
+      for (int i = 0; i < segments.length; ++i) {
+        segments[i] = (adaptive && i > 0)
+            ? segments[0]
+            : newSegment(segmentSize, builder.recordDiagnostics, adaptive);
       }
+      this.segments = adaptive ? null : segments;
+      this.splitter = adaptive ? new SegmentSplitter(segments) : null;
 
       this.strategy = strategy;
 
@@ -677,6 +779,25 @@ final class CustomConcurrentHashMap {
       return (Segment[]) Array.newInstance(Segment.class, ssize);
     }
 
+    Segment newSegment(
+        int initialCapacity, boolean recordDiagnostics, boolean adaptive) {
+      if (recordDiagnostics) {
+        return new InstrumentedSegment(initialCapacity);
+      }
+      return adaptive
+          ? new ContentionAwareSegment(initialCapacity)
+          : new Segment(initialCapacity);
+    }
+
+    /**
+     * Returns diagnostics for this map, or null if it wasn't built to record
+     * them.
+     */
+    MapDiagnostics diagnostics() {
+      return (slots()[0] instanceof Impl.InstrumentedSegment)
+          ? new MapDiagnostics(this) : null;
+    }
+
     /* ---------------- Small Utilities -------------- */
 
     /**
@@ -686,9 +807,162 @@ final class CustomConcurrentHashMap {
      * @return the segment
      */
     Segment segmentFor(int hash) {
-      return segments[(hash >>> segmentShift) & segmentMask];
+      return slots()[slotFor(hash)];
+    }
+
+    /**
+     * Returns the index in {@link #slots} for the given hash.
+     */
+    int slotFor(int hash) {
+      return (hash >>> segmentShift) & segmentMask;
+    }
+
+    /**
+     * Returns the segment for each slot. With adaptive concurrency, a run of
+     * adjacent slots may share a segment, and splitting the segment
+     * publishes a new array rather than modifying this one, so a reader
+     * always sees a consistent assignment of slots to segments.
+     */
+    Segment[] slots() {
+      Segment[] segments = this.segments;
+      return (segments != null) ? segments : splitter.slots;
     }
 
+    /**
+     * Returns each segment in the given slot array once, in slot order.
+     */
+    Segment[] distinct(Segment[] slots) {
+      if (splitter == null) {
+        return slots;
+      }
+      int n = 0;
+      for (int i = 0; i < slots.length; i++) {
+        if (i == 0 || slots[i] != slots[i - 1]) {
+          n++;
+        }
+      }
+      Segment[] distinct = newSegmentArray(n);
+      n = 0;
+      for (int i = 0; i < slots.length; i++) {
+        if (i == 0 || slots[i] != slots[i - 1]) {
+          distinct[n++] = slots[i];
+        }
+      }
+      return distinct;
+    }
+
+    /**
+     * Returns the current segments, each listed once.
+     */
+    Segment[] distinctSegments() {
+      return distinct(slots());
+    }
+
+    /**
+     * Locks every segment and returns them. Segments split while we wait
+     * for their locks are replaced by their halves.
+     */
+    Segment[] lockAllSegments() {
+      while (true) {
+        Segment[] slots = slots();
+        Segment[] segments = distinct(slots);
+        for (Segment segment : segments) {
+          segment.lock();
+        }
+        if (slots == slots()) {
+          return segments;
+        }
+        unlockAll(segments);
+      }
+    }
+
+    void unlockAll(Segment[] segments) {
+      for (Segment segment : segments) {
+        segment.unlock();
+      }
+    }
+
+    /**
+     * Holds the slot array of a map with adaptive concurrency, which is
+     * replaced whenever a segment is split.
+     */
+    final class SegmentSplitter {
+      volatile Segment[] slots;
+
+      SegmentSplitter(Segment[] slots) {
+        this.slots = slots;
+      }
+
+      /**
+       * Splits a segment shared by more than one slot into two segments,
+       * each serving half of its slots. The segment itself is left untouched
+       * for concurrent readers, and is marked retired so that writers
+       * waiting for its lock move on to its replacements. Call only while
+       * holding the segment's lock.
+       *
+       * @return true if the segment was split, or false if it only serves
+       *     one slot
+       */
+      boolean split(Segment segment) {
+        // Only the holder of a segment's lock splits it, so its slots can't
+        // change under us even though other segments may be split.
+        Segment[] slots = this.slots;
+        int first = 0;
+        while (slots[first] != segment) {
+          first++;
+        }
+        int end = first + 1;
+        while (end < slots.length && slots[end] == segment) {
+          end++;
+        }
+        if (end - first < 2) {
+          return false;
+        }
+        int middle = (first + end) >>> 1;
+
+        // Each half starts with half the table, so the load factor is
+        // unchanged and repeated splits don't multiply the map's footprint.
+        Strategy<K, V, E> s = Impl.this.strategy;
+        boolean instrumented = segment instanceof Impl.InstrumentedSegment;
+        int capacity = Math.max(segment.table.length() >>> 1, 1);
+        Segment lower = newSegment(capacity, instrumented, true);
+        Segment upper = newSegment(capacity, instrumented, true);
+        AtomicReferenceArray<Object> table = segment.table;
+        for (int i = 0; i < table.length(); i++) {
+          Object bin = table.get(i);
+          if (bin instanceof TreeBin) {
+            for (E e : asTree(bin).entries()) {
+              (slotFor(s.getHash(e)) < middle ? lower : upper).addCopy(e);
+            }
+          } else {
+            for (E e = asEntry(bin); e != null; e = s.getNext(e)) {
+              (slotFor(s.getHash(e)) < middle ? lower : upper).addCopy(e);
+            }
+          }
+        }
+
+        while (true) {
+          Segment[] newSlots = slots.clone();
+          for (int i = first; i < end; i++) {
+            newSlots[i] = (i < middle) ? lower : upper;
+          }
+          if (slotsUpdater.compareAndSet(this, slots, newSlots)) {
+            break;
+          }
+          // Another segment was split concurrently.
+          slots = this.slots;
+        }
+        segment.retired = true;
+        return true;
+      }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static final AtomicReferenceFieldUpdater<
+        Impl.SegmentSplitter, Impl.Segment[]> slotsUpdater
+        = AtomicReferenceFieldUpdater.newUpdater(
+            Impl.SegmentSplitter.class, Impl.Segment[].class, "slots");
+
     /* ---------------- Inner Classes -------------- */
 
     /**
@@ -697,7 +971,7 @@ final class CustomConcurrentHashMap {
      * separate construction.
      */
     @SuppressWarnings("serial") // This class is never serialized.
-    final class Segment extends ReentrantLock {
+    class Segment extends ReentrantLock {
 
       /*
        * Segments maintain a table of entry lists that are ALWAYS
@@ -710,6 +984,14 @@ final class CustomConcurrentHashMap {
        * since the bin lists tend to be short. (The average length
        * is less than two for the default load factor threshold.)
        *
+       * Bins whose lists grow past TREEIFY_THRESHOLD, which only
+       * happens with badly distributed or deliberately colliding
+       * hash codes, are replaced by TreeBins. Tree bins are
+       * immutable too: writers build a new tree that shares all
+       * untouched nodes with the old one and then replace the bin,
+       * so the same lock-free reads apply. A table slot therefore
+       * holds either null, the first entry of a list, or a TreeBin.
+       *
        * Read operations can thus proceed without locking, but rely
        * on selected uses of volatiles to ensure that completed
        * write operations performed by other threads are
@@ -757,32 +1039,43 @@ final class CustomConcurrentHashMap {
       int threshold;
 
       /**
-       * The per-segment table.
+       * The per-segment table. Each bin is null, the first entry of a linked
+       * list of entries, or a {@link TreeBin}.
+       */
+      volatile AtomicReferenceArray<Object> table;
+
+      /**
+       * Whether this segment was split and replaced by {@link
+       * SegmentSplitter#split}.
+       * A retired segment is never modified again, so readers that still
+       * hold it see a consistent, if dated, view. Writers must check this
+       * after acquiring the lock and, if set, retry against the current
+       * segment. Guarded by the lock.
        */
-      volatile AtomicReferenceArray<E> table;
+      boolean retired;
 
       Segment(int initialCapacity) {
         setTable(newEntryArray(initialCapacity));
       }
 
-      AtomicReferenceArray<E> newEntryArray(int size) {
-        return new AtomicReferenceArray<E>(size);
+      AtomicReferenceArray<Object> newEntryArray(int size) {
+        return new AtomicReferenceArray<Object>(size);
       }
 
       /**
        * Sets table to new HashEntry array. Call only while holding lock or in
        * constructor.
        */
-      void setTable(AtomicReferenceArray<E> newTable) {
+      void setTable(AtomicReferenceArray<Object> newTable) {
         this.threshold = newTable.length() * 3 / 4;
         this.table = newTable;
       }
 
       /**
-       * Returns properly casted first entry of bin for given hash.
+       * Returns the bin for given hash.
        */
-      E getFirst(int hash) {
-        AtomicReferenceArray<E> table = this.table;
+      Object getBin(int hash) {
+        AtomicReferenceArray<Object> table = this.table;
         return table.get(hash & (table.length() - 1));
       }
 
@@ -791,7 +1084,12 @@ final class CustomConcurrentHashMap {
       public E getEntry(Object key, int hash) {
         Strategy<K, V, E> s = Impl.this.strategy;
         if (count != 0) { // read-volatile
-          for (E e = getFirst(hash); e != null; e = s.getNext(e)) {
+          Object bin = getBin(hash);
+          if (bin instanceof TreeBin) {
+            return asTree(bin).find(hash, key);
+          }
+
+          for (E e = asEntry(bin); e != null; e = s.getNext(e)) {
             if (s.getHash(e) != hash) {
               continue;
             }
@@ -820,45 +1118,30 @@ final class CustomConcurrentHashMap {
       }
 
       boolean containsKey(Object key, int hash) {
-        Strategy<K, V, E> s = Impl.this.strategy;
-        if (count != 0) { // read-volatile
-          for (E e = getFirst(hash); e != null; e = s.getNext(e)) {
-            if (s.getHash(e) != hash) {
-              continue;
-            }
-
-            K entryKey = s.getKey(e);
-            if (entryKey == null) {
-              continue;
-            }
-
-            if (s.equalKeys(entryKey, key)) {
-              // Return true only if this entry has a value.
-              return s.getValue(e) != null;
-            }
-          }
-        }
+        E entry = getEntry(key, hash);
 
-        return false;
+        // Return true only if this entry has a value.
+        return entry != null && strategy.getValue(entry) != null;
       }
 
       boolean containsValue(Object value) {
         Strategy<K, V, E> s = Impl.this.strategy;
         if (count != 0) { // read-volatile
-          AtomicReferenceArray<E> table = this.table;
+          AtomicReferenceArray<Object> table = this.table;
           int length = table.length();
           for (int i = 0; i < length; i++) {
-            for (E e = table.get(i); e != null; e = s.getNext(e)) {
-              V entryValue = s.getValue(e);
-
-              // If the value disappeared, this entry is partially collected,
-              // and we should skip it.
-              if (entryValue == null) {
-                continue;
+            Object bin = table.get(i);
+            if (bin instanceof TreeBin) {
+              for (E e : asTree(bin).entries()) {
+                if (hasValue(e, value)) {
+                  return true;
+                }
               }
-
-              if (s.equalValues(entryValue, value)) {
-                return true;
+            } else {
+              for (E e = asEntry(bin); e != null; e = s.getNext(e)) {
+                if (hasValue(e, value)) {
+                  return true;
+                }
               }
             }
           }
@@ -867,25 +1150,34 @@ final class CustomConcurrentHashMap {
         return false;
       }
 
+      boolean hasValue(E e, Object value) {
+        V entryValue = strategy.getValue(e);
+
+        // If the value disappeared, this entry is partially collected,
+        // and we should skip it.
+        return entryValue != null && strategy.equalValues(entryValue, value);
+      }
+
       boolean replace(K key, int hash, V oldValue, V newValue) {
         Strategy<K, V, E> s = Impl.this.strategy;
         lock();
         try {
-          for (E e = getFirst(hash); e != null; e = s.getNext(e)) {
-            K entryKey = s.getKey(e);
-            if (s.getHash(e) == hash && entryKey != null
-                && s.equalKeys(key, entryKey)) {
-              // If the value disappeared, this entry is partially collected,
-              // and we should pretend like it doesn't exist.
-              V entryValue = s.getValue(e);
-              if (entryValue == null) {
-                return false;
-              }
+          if (retired) {
+            return segmentFor(hash).replace(key, hash, oldValue, newValue);
+          }
 
-              if (s.equalValues(entryValue, oldValue)) {
-                s.setValue(e, newValue);
-                return true;
-              }
+          E e = getEntry(key, hash);
+          if (e != null) {
+            // If the value disappeared, this entry is partially collected,
+            // and we should pretend like it doesn't exist.
+            V entryValue = s.getValue(e);
+            if (entryValue == null) {
+              return false;
+            }
+
+            if (s.equalValues(entryValue, oldValue)) {
+              s.setValue(e, newValue);
+              return true;
             }
           }
 
@@ -899,20 +1191,21 @@ final class CustomConcurrentHashMap {
         Strategy<K, V, E> s = Impl.this.strategy;
         lock();
         try {
-          for (E e = getFirst(hash); e != null; e = s.getNext(e)) {
-            K entryKey = s.getKey(e);
-            if (s.getHash(e) == hash && entryKey != null
-                && s.equalKeys(key, entryKey)) {
-              // If the value disappeared, this entry is partially collected,
-              // and we should pretend like it doesn't exist.
-              V entryValue = s.getValue(e);
-              if (entryValue == null) {
-                return null;
-              }
+          if (retired) {
+            return segmentFor(hash).replace(key, hash, newValue);
+          }
 
-              s.setValue(e, newValue);
-              return entryValue;
+          E e = getEntry(key, hash);
+          if (e != null) {
+            // If the value disappeared, this entry is partially collected,
+            // and we should pretend like it doesn't exist.
+            V entryValue = s.getValue(e);
+            if (entryValue == null) {
+              return null;
             }
+
+            s.setValue(e, newValue);
+            return entryValue;
           }
 
           return null;
@@ -925,52 +1218,173 @@ final class CustomConcurrentHashMap {
         Strategy<K, V, E> s = Impl.this.strategy;
         lock();
         try {
-          int count = this.count;
-          if (count++ > this.threshold) { // ensure capacity
-            expand();
+          if (retired) {
+            return segmentFor(hash).put(key, hash, value, onlyIfAbsent);
           }
 
-          AtomicReferenceArray<E> table = this.table;
-          int index = hash & (table.length() - 1);
-
-          E first = table.get(index);
-
           // Look for an existing entry.
-          for (E e = first; e != null; e = s.getNext(e)) {
-            K entryKey = s.getKey(e);
-            if (s.getHash(e) == hash && entryKey != null
-                && s.equalKeys(key, entryKey)) {
-              // We found an existing entry.
-
-              // If the value disappeared, this entry is partially collected,
-              // and we should pretend like it doesn't exist.
-              V entryValue = s.getValue(e);
-              if (onlyIfAbsent && entryValue != null) {
-                return entryValue;
-              }
-
-              s.setValue(e, value);
+          E e = getEntry(key, hash);
+          if (e != null) {
+            // We found an existing entry.
+
+            // If the value disappeared, this entry is partially collected,
+            // and we should pretend like it doesn't exist.
+            V entryValue = s.getValue(e);
+            if (onlyIfAbsent && entryValue != null) {
               return entryValue;
             }
+
+            s.setValue(e, value);
+            return entryValue;
           }
 
-          // Create a new entry.
-          ++modCount;
-          E newEntry = s.newEntry(key, hash, first);
-          s.setValue(newEntry, value);
-          table.set(index, newEntry);
-          this.count = count; // write-volatile
+          addEntry(key, hash, value);
           return null;
         } finally {
           unlock();
         }
       }
 
+      /**
+       * Creates and publishes an entry for a key that isn't already in this
+       * segment, expanding the table and converting the entry's bin to a
+       * tree as necessary. Call only while holding lock.
+       *
+       * @param value to set on the entry before it becomes visible to other
+       *  threads, or null to leave the entry's initial value in place
+       * @return the new entry
+       */
+      E addEntry(K key, int hash, @Nullable V value) {
+        Strategy<K, V, E> s = Impl.this.strategy;
+        int count = this.count;
+        if (count++ > this.threshold) { // ensure capacity
+          expand();
+        }
+
+        AtomicReferenceArray<Object> table = this.table;
+        int index = hash & (table.length() - 1);
+        Object bin = table.get(index);
+
+        ++modCount;
+        E newEntry;
+        if (bin instanceof TreeBin) {
+          newEntry = s.newEntry(key, hash, null);
+          if (value != null) {
+            s.setValue(newEntry, value);
+          }
+          table.set(index, asTree(bin).with(newEntry));
+        } else {
+          E first = asEntry(bin);
+          if (isLongerThan(first, TREEIFY_THRESHOLD - 1)) {
+            newEntry = s.newEntry(key, hash, null);
+            if (value != null) {
+              s.setValue(newEntry, value);
+            }
+            table.set(index, treeify(first).with(newEntry));
+          } else {
+            newEntry = s.newEntry(key, hash, first);
+            if (value != null) {
+              s.setValue(newEntry, value);
+            }
+            table.set(index, newEntry);
+          }
+        }
+        this.count = count; // write-volatile
+        return newEntry;
+      }
+
+      /**
+       * Adds a copy of an entry from a segment being split into this one.
+       * Call only before this segment is published.
+       */
+      void addCopy(E original) {
+        Strategy<K, V, E> s = Impl.this.strategy;
+        K key = s.getKey(original);
+        if (key == null) {
+          return; // Key was reclaimed. Skip entry.
+        }
+        if (count > threshold) {
+          expand();
+        }
+
+        AtomicReferenceArray<Object> table = this.table;
+        int index = s.getHash(original) & (table.length() - 1);
+        Object bin = table.get(index);
+        if (bin instanceof TreeBin) {
+          table.set(index, asTree(bin).with(s.copyEntry(key, original, null)));
+        } else {
+          E first = asEntry(bin);
+          table.set(index, isLongerThan(first, TREEIFY_THRESHOLD - 1)
+              ? treeify(first).with(s.copyEntry(key, original, null))
+              : s.copyEntry(key, original, first));
+        }
+        count++;
+      }
+
+      /**
+       * Returns true if the list starting at {@code first} has more than
+       * {@code length} entries.
+       */
+      boolean isLongerThan(E first, int length) {
+        Strategy<K, V, E> s = Impl.this.strategy;
+        int n = 0;
+        for (E e = first; e != null; e = s.getNext(e)) {
+          if (++n > length) {
+            return true;
+          }
+        }
+        return false;
+      }
+
+      /**
+       * Creates a tree bin containing copies of the entries in the given
+       * list. The list itself is left untouched for concurrent readers.
+       */
+      TreeBin<K, V, E> treeify(E first) {
+        Strategy<K, V, E> s = Impl.this.strategy;
+        TreeBin<K, V, E> tree = new TreeBin<K, V, E>(s, null, 0, null);
+        for (E e = first; e != null; e = s.getNext(e)) {
+          K key = s.getKey(e);
+          if (key != null) {
+            tree = tree.with(s.copyEntry(key, e, null));
+          } else {
+            // Key was reclaimed. Skip entry.
+          }
+        }
+        return tree;
+      }
+
+      /**
+       * Creates a bin holding the given entries, taken in order from the
+       * given tree. Entries are reused as-is in a tree bin and copied into a
+       * linked bin.
+       */
+      Object newBin(TreeBin<K, V, E> from, List<E> entries) {
+        if (entries.size() > UNTREEIFY_THRESHOLD) {
+          return new TreeBin<K, V, E>(strategy,
+              buildTree(entries, 0, entries.size()), entries.size(),
+              from.comparableClass);
+        }
+
+        Strategy<K, V, E> s = Impl.this.strategy;
+        E first = null;
+        for (int i = entries.size() - 1; i >= 0; i--) {
+          E e = entries.get(i);
+          K key = s.getKey(e);
+          if (key != null) {
+            first = s.copyEntry(key, e, first);
+          } else {
+            // Key was reclaimed. Skip entry.
+          }
+        }
+        return first;
+      }
+
       /**
        * Expands the table if possible.
        */
       void expand() {
-        AtomicReferenceArray<E> oldTable = table;
+        AtomicReferenceArray<Object> oldTable = table;
         int oldCapacity = oldTable.length();
         if (oldCapacity >= MAXIMUM_CAPACITY) {
           return;
@@ -991,14 +1405,29 @@ final class CustomConcurrentHashMap {
          */
 
         Strategy<K, V, E> s = Impl.this.strategy;
-        AtomicReferenceArray<E> newTable = newEntryArray(oldCapacity << 1);
+        AtomicReferenceArray<Object> newTable = newEntryArray(oldCapacity << 1);
         threshold = newTable.length() * 3 / 4;
         int newMask = newTable.length() - 1;
         for (int oldIndex = 0; oldIndex < oldCapacity; oldIndex++) {
           // We need to guarantee that any existing reads of old Map can
           //  proceed. So we cannot yet null out each bin.
-          E head = oldTable.get(oldIndex);
+          Object bin = oldTable.get(oldIndex);
+
+          if (bin instanceof TreeBin) {
+            // Split the tree in order. Entries in a tree have no next
+            // entries, so the halves can reuse them.
+            TreeBin<K, V, E> tree = asTree(bin);
+            List<E> lo = new ArrayList<E>();
+            List<E> hi = new ArrayList<E>();
+            for (E e : tree.entries()) {
+              ((s.getHash(e) & newMask) == oldIndex ? lo : hi).add(e);
+            }
+            newTable.set(oldIndex, newBin(tree, lo));
+            newTable.set(oldIndex + oldCapacity, newBin(tree, hi));
+            continue;
+          }
 
+          E head = asEntry(bin);
           if (head != null) {
             E next = s.getNext(head);
             int headIndex = s.getHash(head) & newMask;
@@ -1027,7 +1456,7 @@ final class CustomConcurrentHashMap {
                 K key = s.getKey(e);
                 if (key != null) {
                   int newIndex = s.getHash(e) & newMask;
-                  E newNext = newTable.get(newIndex);
+                  E newNext = asEntry(newTable.get(newIndex));
                   newTable.set(newIndex, s.copyEntry(key, e, newNext));
                 } else {
                   // Key was reclaimed. Skip entry.
@@ -1039,40 +1468,76 @@ final class CustomConcurrentHashMap {
         table = newTable;
       }
 
-      V remove(Object key, int hash) {
+      /**
+       * Removes an entry known to be in this segment and publishes the
+       * change. Call only while holding lock.
+       */
+      void unlink(E entry, int hash) {
         Strategy<K, V, E> s = Impl.this.strategy;
+        int count = this.count - 1;
+        AtomicReferenceArray<Object> table = this.table;
+        int index = hash & (table.length() - 1);
+        Object bin = table.get(index);
+
+        ++modCount;
+        if (bin instanceof TreeBin) {
+          TreeBin<K, V, E> tree = asTree(bin).without(entry);
+          table.set(index, (tree.size > UNTREEIFY_THRESHOLD)
+              ? tree : newBin(tree, tree.entries()));
+        } else {
+          // All entries following removed node can stay
+          // in list, but all preceding ones need to be
+          // cloned.
+          E first = asEntry(bin);
+          E newFirst = s.getNext(entry);
+          for (E p = first; p != entry; p = s.getNext(p)) {
+            K pKey = s.getKey(p);
+            if (pKey != null) {
+              newFirst = s.copyEntry(pKey, p, newFirst);
+            } else {
+              // Key was reclaimed. Skip entry.
+            }
+          }
+          table.set(index, newFirst);
+        }
+        this.count = count; // write-volatile
+        s.remove(entry);
+      }
+
+      /**
+       * Returns the entry in this segment equal to the given entry, or null
+       * if it has already been removed. Call only while holding lock.
+       */
+      E findEntry(E entry, int hash) {
+        Strategy<K, V, E> s = Impl.this.strategy;
+        Object bin = getBin(hash);
+        if (bin instanceof TreeBin) {
+          return asTree(bin).findEntry(hash, entry);
+        }
+
+        for (E e = asEntry(bin); e != null; e = s.getNext(e)) {
+          if (s.getHash(e) == hash && entry.equals(e)) {
+            return e;
+          }
+        }
+        return null;
+      }
+
+      V remove(Object key, int hash) {
         lock();
         try {
-          int count = this.count - 1;
-          AtomicReferenceArray<E> table = this.table;
-          int index = hash & (table.length() - 1);
-          E first = table.get(index);
+          if (retired) {
+            return segmentFor(hash).remove(key, hash);
+          }
 
-          for (E e = first; e != null; e = s.getNext(e)) {
-            K entryKey = s.getKey(e);
-            if (s.getHash(e) == hash && entryKey != null
-                && s.equalKeys(entryKey, key)) {
-              V entryValue = strategy.getValue(e);
-              // All entries following removed node can stay
-              // in list, but all preceding ones need to be
-              // cloned.
-              ++modCount;
-              E newFirst = s.getNext(e);
-              for (E p = first; p != e; p = s.getNext(p)) {
-                K pKey = s.getKey(p);
-                if (pKey != null) {
-                  newFirst = s.copyEntry(pKey, p, newFirst);
-                } else {
-                  // Key was reclaimed. Skip entry.
-                }
-              }
-              table.set(index, newFirst);
-              this.count = count; // write-volatile
-              return entryValue;
-            }
+          E e = getEntry(key, hash);
+          if (e == null) {
+            return null;
           }
 
-          return null;
+          V entryValue = strategy.getValue(e);
+          unlink(e, hash);
+          return entryValue;
         } finally {
           unlock();
         }
@@ -1082,41 +1547,23 @@ final class CustomConcurrentHashMap {
         Strategy<K, V, E> s = Impl.this.strategy;
         lock();
         try {
-          int count = this.count - 1;
-          AtomicReferenceArray<E> table = this.table;
-          int index = hash & (table.length() - 1);
-          E first = table.get(index);
+          if (retired) {
+            return segmentFor(hash).remove(key, hash, value);
+          }
 
-          for (E e = first; e != null; e = s.getNext(e)) {
-            K entryKey = s.getKey(e);
-            if (s.getHash(e) == hash && entryKey != null
-                && s.equalKeys(entryKey, key)) {
-              V entryValue = strategy.getValue(e);
-              if (value == entryValue || (value != null && entryValue != null
-                  && s.equalValues(entryValue, value))) {
-                // All entries following removed node can stay
-                // in list, but all preceding ones need to be
-                // cloned.
-                ++modCount;
-                E newFirst = s.getNext(e);
-                for (E p = first; p != e; p = s.getNext(p)) {
-                  K pKey = s.getKey(p);
-                  if (pKey != null) {
-                    newFirst = s.copyEntry(pKey, p, newFirst);
-                  } else {
-                    // Key was reclaimed. Skip entry.
-                  }
-                }
-                table.set(index, newFirst);
-                this.count = count; // write-volatile
-                return true;
-              } else {
-                return false;
-              }
-            }
+          E e = getEntry(key, hash);
+          if (e == null) {
+            return false;
           }
 
-          return false;
+          V entryValue = s.getValue(e);
+          if (value == entryValue || (value != null && entryValue != null
+              && s.equalValues(entryValue, value))) {
+            unlink(e, hash);
+            return true;
+          } else {
+            return false;
+          }
         } finally {
           unlock();
         }
@@ -1126,75 +1573,42 @@ final class CustomConcurrentHashMap {
         Strategy<K, V, E> s = Impl.this.strategy;
         lock();
         try {
-          int count = this.count - 1;
-          AtomicReferenceArray<E> table = this.table;
-          int index = hash & (table.length() - 1);
-          E first = table.get(index);
-
-          for (E e = first; e != null; e = s.getNext(e)) {
-            if (s.getHash(e) == hash && entry.equals(e)) {
-              V entryValue = s.getValue(e);
-              if (entryValue == value || (value != null
-                  && s.equalValues(entryValue, value))) {
-                // All entries following removed node can stay
-                // in list, but all preceding ones need to be
-                // cloned.
-                ++modCount;
-                E newFirst = s.getNext(e);
-                for (E p = first; p != e; p = s.getNext(p)) {
-                  K pKey = s.getKey(p);
-                  if (pKey != null) {
-                    newFirst = s.copyEntry(pKey, p, newFirst);
-                  } else {
-                    // Key was reclaimed. Skip entry.
-                  }
-                }
-                table.set(index, newFirst);
-                this.count = count; // write-volatile
-                return true;
-              } else {
-                return false;
-              }
-            }
+          if (retired) {
+            return segmentFor(hash).removeEntry(entry, hash, value);
           }
 
-          return false;
+          E e = findEntry(entry, hash);
+          if (e == null) {
+            return false;
+          }
+
+          V entryValue = s.getValue(e);
+          if (entryValue == value || (value != null
+              && s.equalValues(entryValue, value))) {
+            unlink(e, hash);
+            return true;
+          } else {
+            return false;
+          }
         } finally {
           unlock();
         }
       }
 
       public boolean removeEntry(E entry, int hash) {
-        Strategy<K, V, E> s = Impl.this.strategy;
         lock();
         try {
-          int count = this.count - 1;
-          AtomicReferenceArray<E> table = this.table;
-          int index = hash & (table.length() - 1);
-          E first = table.get(index);
-
-          for (E e = first; e != null; e = s.getNext(e)) {
-            if (s.getHash(e) == hash && entry.equals(e)) {
-              // All entries following removed node can stay
-              // in list, but all preceding ones need to be
-              // cloned.
-              ++modCount;
-              E newFirst = s.getNext(e);
-              for (E p = first; p != e; p = s.getNext(p)) {
-                K pKey = s.getKey(p);
-                if (pKey != null) {
-                  newFirst = s.copyEntry(pKey, p, newFirst);
-                } else {
-                  // Key was reclaimed. Skip entry.
-                }
-              }
-              table.set(index, newFirst);
-              this.count = count; // write-volatile
-              return true;
-            }
+          if (retired) {
+            return segmentFor(hash).removeEntry(entry, hash);
           }
 
-          return false;
+          E e = findEntry(entry, hash);
+          if (e == null) {
+            return false;
+          }
+
+          unlink(e, hash);
+          return true;
         } finally {
           unlock();
         }
@@ -1204,17 +1618,554 @@ final class CustomConcurrentHashMap {
         if (count != 0) {
           lock();
           try {
-            AtomicReferenceArray<E> table = this.table;
-            for (int i = 0; i < table.length(); i++) {
-              table.set(i, null);
+            if (retired) {
+              // Impl.clear() will find the segments that replaced this one.
+              return;
             }
+
+            // Swap in an empty table so the old one can still be walked
+            // to notify the strategy.
+            Strategy<K, V, E> s = Impl.this.strategy;
+            AtomicReferenceArray<Object> table = this.table;
+            this.table = newEntryArray(table.length());
             ++modCount;
             count = 0; // write-volatile
+
+            for (int i = 0; i < table.length(); i++) {
+              Object bin = table.get(i);
+              if (bin instanceof TreeBin) {
+                for (E e : asTree(bin).entries()) {
+                  s.remove(e);
+                }
+              } else {
+                for (E e = asEntry(bin); e != null; e = s.getNext(e)) {
+                  s.remove(e);
+                }
+              }
+            }
           } finally {
             unlock();
           }
         }
       }
+
+      /**
+       * Returns a histogram of bin sizes, where element {@code i} is the
+       * number of bins holding {@code i} entries, and the last element
+       * counts all larger bins. Reads without locking, so the result may not
+       * reflect a single point in time.
+       */
+      long[] binSizeHistogram(int buckets) {
+        Strategy<K, V, E> s = Impl.this.strategy;
+        long[] histogram = new long[buckets];
+        AtomicReferenceArray<Object> table = this.table;
+        for (int i = 0; i < table.length(); i++) {
+          Object bin = table.get(i);
+          int size = 0;
+          if (bin instanceof TreeBin) {
+            size = asTree(bin).size;
+          } else {
+            for (E e = asEntry(bin); e != null; e = s.getNext(e)) {
+              size++;
+            }
+          }
+          histogram[Math.min(size, buckets - 1)]++;
+        }
+        return histogram;
+      }
+    }
+
+    /**
+     * A segment that notices when acquiring its lock blocks, and splits after
+     * {@link #SPLIT_THRESHOLD} such acquisitions if the map has adaptive
+     * concurrency. Other maps use plain segments, whose locks aren't
+     * overridden, unless they record diagnostics.
+     */
+    @SuppressWarnings("serial") // This class is never serialized.
+    class ContentionAwareSegment extends Segment {
+
+      /**
+       * The number of contended lock acquisitions counted towards splitting
+       * this segment. Guarded by the lock.
+       */
+      int contention;
+
+      ContentionAwareSegment(int initialCapacity) {
+        super(initialCapacity);
+      }
+
+      @Override public void lock() {
+        if (!tryLock()) {
+          super.lock();
+          contended();
+        }
+      }
+
+      /**
+       * Called after acquiring the lock when another thread was holding it.
+       */
+      void contended() {
+        if (splitter != null && ++contention == SPLIT_THRESHOLD) {
+          contention = splitter.split(this) ? 0 : Integer.MIN_VALUE;
+        }
+      }
+    }
+
+    /**
+     * A segment that records how often its lock is acquired, how often
+     * acquiring it blocks, and how long it's held. Counters are only written
+     * while holding the lock, and are read without it.
+     */
+    @SuppressWarnings("serial") // This class is never serialized.
+    final class InstrumentedSegment extends ContentionAwareSegment {
+      volatile long lockCount;
+      volatile long contendedLockCount;
+
+      /**
+       * Element {@code i} counts lock holds that lasted less than
+       * {@code 2^i} nanoseconds but no less than half that. The last element
+       * counts all longer holds.
+       */
+      final long[] holdTimeHistogram = new long[HOLD_TIME_BUCKETS];
+
+      /** When the current holder acquired the lock. */
+      long lockedAt;
+
+      InstrumentedSegment(int initialCapacity) {
+        super(initialCapacity);
+      }
+
+      @Override public void lock() {
+        super.lock();
+        if (getHoldCount() == 1) {
+          lockCount++;
+          lockedAt = System.nanoTime();
+        }
+      }
+
+      @Override void contended() {
+        contendedLockCount++;
+        super.contended();
+      }
+
+      @Override public void unlock() {
+        if (getHoldCount() == 1) {
+          long heldNanos = System.nanoTime() - lockedAt;
+          int bucket = 64 - Long.numberOfLeadingZeros(Math.max(heldNanos, 0));
+          holdTimeHistogram[Math.min(bucket, HOLD_TIME_BUCKETS - 1)]++;
+        }
+        super.unlock();
+      }
+    }
+
+    /* ---------------- Tree Bins -------------- */
+
+    @SuppressWarnings("unchecked") // bins that aren't trees are entries
+    E asEntry(Object bin) {
+      return (E) bin;
+    }
+
+    @SuppressWarnings("unchecked") // a map only holds its own tree bins
+    TreeBin<K, V, E> asTree(Object bin) {
+      return (TreeBin<K, V, E>) bin;
+    }
+
+    /**
+     * A bin whose entries are kept in a height-balanced binary tree instead
+     * of a linked list, so that lookups in bins full of colliding hashes
+     * take logarithmic rather than linear time. Entries are ordered by hash,
+     * then by the class names of their keys, then by natural order if their
+     * keys are of the same {@link Comparable} class, and finally by identity
+     * hash code, so that every insertion has one place to go (see {@link
+     * #tieBreakOrder}). A lookup can't reproduce the identity order, or
+     * compare against a reclaimed key, so it searches both sides of such a
+     * node, and a tree never does worse than the equivalent list.
+     *
+     * <p>Tree bins are immutable. Insertions and removals copy the path
+     * from the root to the affected node and share every other node with the
+     * previous tree. Entries in a tree bin are always created with a null
+     * next entry, so they can be moved between trees without copying.
+     */
+    static final class TreeBin<K, V, E> {
+      final Strategy<K, V, E> strategy;
+      final TreeNode<E> root;
+      final int size;
+
+      /**
+       * A class known to be comparable to itself, typically the class of
+       * the keys in this tree, or null. Saves reflection in the usual case
+       * where all colliding keys are of the same class.
+       */
+      final Class<?> comparableClass;
+
+      TreeBin(Strategy<K, V, E> strategy, TreeNode<E> root, int size,
+          @Nullable Class<?> comparableClass) {
+        this.strategy = strategy;
+        this.root = root;
+        this.size = size;
+        this.comparableClass = comparableClass;
+      }
+
+      Class<?> comparableClassOf(@Nullable Object key) {
+        return (key != null && key.getClass() == comparableClass)
+            ? comparableClass : comparableClassFor(key);
+      }
+
+      /**
+       * Returns the live entry for the given key, or null if none exists.
+       */
+      E find(int hash, Object key) {
+        return find(root, hash, key, comparableClassOf(key));
+      }
+
+      E find(TreeNode<E> p, int hash, Object key, Class<?> keyClass) {
+        Strategy<K, V, E> s = strategy;
+        while (p != null) {
+          if (hash < p.hash) {
+            p = p.left;
+          } else if (hash > p.hash) {
+            p = p.right;
+          } else {
+            K entryKey = s.getKey(p.entry);
+            if (entryKey != null && s.equalKeys(entryKey, key)) {
+              return p.entry;
+            }
+            int dir = compare(keyClass, key, entryKey);
+            if (dir < 0) {
+              p = p.left;
+            } else if (dir > 0) {
+              p = p.right;
+            } else {
+              E e = find(p.right, hash, key, keyClass);
+              if (e != null) {
+                return e;
+              }
+              p = p.left;
+            }
+          }
+        }
+        return null;
+      }
+
+      /**
+       * Returns the entry in this tree equal to the given entry, or null if
+       * none exists. Works even if the entry's key was reclaimed.
+       */
+      E findEntry(int hash, E entry) {
+        K key = strategy.getKey(entry);
+        return findEntry(root, hash, entry, key, comparableClassOf(key));
+      }
+
+      E findEntry(TreeNode<E> p, int hash, E entry, @Nullable K key,
+          Class<?> keyClass) {
+        while (p != null) {
+          if (hash < p.hash) {
+            p = p.left;
+          } else if (hash > p.hash) {
+            p = p.right;
+          } else if (entry.equals(p.entry)) {
+            return p.entry;
+          } else {
+            int dir = compare(keyClass, key, strategy.getKey(p.entry));
+            if (dir < 0) {
+              p = p.left;
+            } else if (dir > 0) {
+              p = p.right;
+            } else {
+              E e = findEntry(p.right, hash, entry, key, keyClass);
+              if (e != null) {
+                return e;
+              }
+              p = p.left;
+            }
+          }
+        }
+        return null;
+      }
+
+      /**
+       * Returns a tree containing this tree's entries plus the given entry,
+       * whose key must not already be present.
+       */
+      TreeBin<K, V, E> with(E entry) {
+        Strategy<K, V, E> s = strategy;
+        K key = s.getKey(entry);
+        Class<?> keyClass = comparableClassOf(key);
+        TreeNode<E> newRoot = insert(
+            root, entry, s.getHash(entry), key, keyClass);
+        return new TreeBin<K, V, E>(s, newRoot, size + 1,
+            (keyClass != null) ? keyClass : comparableClass);
+      }
+
+      TreeNode<E> insert(TreeNode<E> p, E entry, int hash, K key,
+          Class<?> keyClass) {
+        if (p == null) {
+          return new TreeNode<E>(entry, hash, null, null);
+        }
+        boolean left = (hash != p.hash) ? hash < p.hash
+            : insertionOrder(p, hash, key, keyClass) < 0;
+        return left
+            ? TreeNode.balance(p.entry, p.hash,
+                insert(p.left, entry, hash, key, keyClass), p.right)
+            : TreeNode.balance(p.entry, p.hash,
+                p.left, insert(p.right, entry, hash, key, keyClass));
+      }
+
+      /**
+       * Returns which side of the given node, whose hash equals {@code hash},
+       * a new key belongs on: negative for left, positive for right. If the
+       * node's key was reclaimed, its place in the order is unknown, so the
+       * key goes left unless that would put it before a smaller live key in
+       * the node's right subtree.
+       */
+      int insertionOrder(TreeNode<E> p, int hash, K key, Class<?> keyClass) {
+        K treeKey = strategy.getKey(p.entry);
+        if (treeKey != null) {
+          int dir = compare(keyClass, key, treeKey);
+          return (dir != 0) ? dir : tieBreakOrder(key, treeKey);
+        }
+        return (orderOfFirstLive(p.right, hash, key, keyClass) > 0) ? 1 : -1;
+      }
+
+      /**
+       * Returns the order of a new key relative to the first entry, in tree
+       * order, of the given subtree whose key hasn't been reclaimed, or 0 if
+       * there is no such entry.
+       */
+      int orderOfFirstLive(TreeNode<E> p, int hash, K key, Class<?> keyClass) {
+        if (p == null) {
+          return 0;
+        }
+        int dir = orderOfFirstLive(p.left, hash, key, keyClass);
+        if (dir != 0) {
+          return dir;
+        }
+        if (hash != p.hash) {
+          return (hash < p.hash) ? -1 : 1;
+        }
+        K treeKey = strategy.getKey(p.entry);
+        if (treeKey != null) {
+          dir = compare(keyClass, key, treeKey);
+          return (dir != 0) ? dir : tieBreakOrder(key, treeKey);
+        }
+        return orderOfFirstLive(p.right, hash, key, keyClass);
+      }
+
+      /**
+       * Returns a tree containing this tree's entries minus the given entry,
+       * which must be present.
+       */
+      TreeBin<K, V, E> without(E entry) {
+        Strategy<K, V, E> s = strategy;
+        K key = s.getKey(entry);
+        TreeNode<E> newRoot = remove(
+            root, entry, s.getHash(entry), key, comparableClassOf(key));
+        return new TreeBin<K, V, E>(s, newRoot, size - 1, comparableClass);
+      }
+
+      /**
+       * Removes the entry from the given subtree. Returns the subtree itself
+       * if the entry isn't in it.
+       */
+      TreeNode<E> remove(TreeNode<E> p, E entry, int hash, @Nullable K key,
+          Class<?> keyClass) {
+        if (p == null) {
+          return null;
+        }
+        int dir;
+        if (hash != p.hash) {
+          dir = (hash < p.hash) ? -1 : 1;
+        } else if (entry == p.entry) {
+          return TreeNode.removeRoot(p);
+        } else {
+          dir = compare(keyClass, key, strategy.getKey(p.entry));
+        }
+
+        if (dir <= 0) {
+          TreeNode<E> left = remove(p.left, entry, hash, key, keyClass);
+          if (left != p.left) {
+            return TreeNode.balance(p.entry, p.hash, left, p.right);
+          }
+        }
+        if (dir >= 0) {
+          TreeNode<E> right = remove(p.right, entry, hash, key, keyClass);
+          if (right != p.right) {
+            return TreeNode.balance(p.entry, p.hash, p.left, right);
+          }
+        }
+        return p;
+      }
+
+      /**
+       * Returns the entries in this tree in tree order.
+       */
+      List<E> entries() {
+        List<E> entries = new ArrayList<E>(size);
+        TreeNode.addEntries(root, entries);
+        return entries;
+      }
+    }
+
+    /**
+     * Builds a perfectly balanced tree from entries already in tree order.
+     */
+    TreeNode<E> buildTree(List<E> entries, int from, int to) {
+      if (from >= to) {
+        return null;
+      }
+      int mid = (from + to) >>> 1;
+      E entry = entries.get(mid);
+      return new TreeNode<E>(entry, strategy.getHash(entry),
+          buildTree(entries, from, mid), buildTree(entries, mid + 1, to));
+    }
+
+    /**
+     * Returns the class of the given key if it is of the form
+     * {@code class C implements Comparable<C>}, otherwise null.
+     */
+    static Class<?> comparableClassFor(@Nullable Object key) {
+      if (key instanceof Comparable) {
+        Class<?> c = key.getClass();
+        if (c == String.class) { // bypass checks
+          return c;
+        }
+        for (Type t : c.getGenericInterfaces()) {
+          if (t instanceof ParameterizedType) {
+            ParameterizedType p = (ParameterizedType) t;
+            Type[] args = p.getActualTypeArguments();
+            if (p.getRawType() == Comparable.class
+                && args.length == 1 && args[0] == c) {
+              return c;
+            }
+          }
+        }
+      }
+      return null;
+    }
+
+    /**
+     * Compares a key, whose class is {@code keyClass} if it's comparable to
+     * itself, against a key already in a tree: by class name, then by natural
+     * order if both are of {@code keyClass}. Returns 0 if the keys can't be
+     * ordered this way, or if either was reclaimed, in which case a lookup
+     * has to search both sides.
+     */
+    @SuppressWarnings("unchecked") // keyClass is Comparable to itself
+    static int compare(@Nullable Class<?> keyClass, @Nullable Object key,
+        @Nullable Object treeKey) {
+      if (key == null || treeKey == null) {
+        return 0;
+      }
+      Class<?> treeClass = treeKey.getClass();
+      if (treeClass != key.getClass()) {
+        return key.getClass().getName().compareTo(treeClass.getName());
+      }
+      return (treeClass == keyClass)
+          ? ((Comparable<Object>) key).compareTo(treeKey) : 0;
+    }
+
+    /**
+     * Orders two keys that {@link #compare} can't, so that insertions have
+     * a total order to follow: by class name, then by identity hash code.
+     * Never returns 0; keys with equal identity hash codes go left.
+     */
+    static int tieBreakOrder(Object key, Object treeKey) {
+      int dir = key.getClass().getName().compareTo(
+          treeKey.getClass().getName());
+      if (dir == 0) {
+        dir = (System.identityHashCode(key)
+            <= System.identityHashCode(treeKey)) ? -1 : 1;
+      }
+      return dir;
+    }
+
+    /**
+     * An immutable AVL tree node wrapping an entry.
+     */
+    static final class TreeNode<E> {
+      final E entry;
+      final int hash;
+      final TreeNode<E> left;
+      final TreeNode<E> right;
+      final int height;
+
+      TreeNode(E entry, int hash, TreeNode<E> left, TreeNode<E> right) {
+        this.entry = entry;
+        this.hash = hash;
+        this.left = left;
+        this.right = right;
+        this.height = Math.max(height(left), height(right)) + 1;
+      }
+
+      static int height(@Nullable TreeNode<?> node) {
+        return (node == null) ? 0 : node.height;
+      }
+
+      /**
+       * Creates a node with the given children, rotating as necessary to
+       * restore balance. The children's heights may differ by at most two.
+       */
+      static <E> TreeNode<E> balance(
+          E entry, int hash, TreeNode<E> left, TreeNode<E> right) {
+        int leftHeight = height(left);
+        int rightHeight = height(right);
+        if (leftHeight > rightHeight + 1) {
+          if (height(left.left) >= height(left.right)) {
+            return new TreeNode<E>(left.entry, left.hash, left.left,
+                new TreeNode<E>(entry, hash, left.right, right));
+          }
+          TreeNode<E> pivot = left.right;
+          return new TreeNode<E>(pivot.entry, pivot.hash,
+              new TreeNode<E>(left.entry, left.hash, left.left, pivot.left),
+              new TreeNode<E>(entry, hash, pivot.right, right));
+        }
+        if (rightHeight > leftHeight + 1) {
+          if (height(right.right) >= height(right.left)) {
+            return new TreeNode<E>(right.entry, right.hash,
+                new TreeNode<E>(entry, hash, left, right.left), right.right);
+          }
+          TreeNode<E> pivot = right.left;
+          return new TreeNode<E>(pivot.entry, pivot.hash,
+              new TreeNode<E>(entry, hash, left, pivot.left),
+              new TreeNode<E>(right.entry, right.hash, pivot.right,
+                  right.right));
+        }
+        return new TreeNode<E>(entry, hash, left, right);
+      }
+
+      /**
+       * Returns the given subtree without its root node.
+       */
+      static <E> TreeNode<E> removeRoot(TreeNode<E> node) {
+        if (node.left == null) {
+          return node.right;
+        }
+        if (node.right == null) {
+          return node.left;
+        }
+        TreeNode<E> successor = node.right;
+        while (successor.left != null) {
+          successor = successor.left;
+        }
+        return balance(successor.entry, successor.hash,
+            node.left, removeMin(node.right));
+      }
+
+      static <E> TreeNode<E> removeMin(TreeNode<E> node) {
+        if (node.left == null) {
+          return node.right;
+        }
+        return balance(node.entry, node.hash, removeMin(node.left), node.right);
+      }
+
+      static <E> void addEntries(
+          @Nullable TreeNode<E> node, List<? super E> entries) {
+        if (node != null) {
+          addEntries(node.left, entries);
+          entries.add(node.entry);
+          addEntries(node.right, entries);
+        }
+      }
     }
 
     /* ---------------- Public operations -------------- */
@@ -1225,7 +2176,8 @@ final class CustomConcurrentHashMap {
      * @return {@code true} if this map contains no key-value mappings
      */
     @Override public boolean isEmpty() {
-      final Segment[] segments = this.segments;
+      final Segment[] slots = slots();
+      final Segment[] segments = distinct(slots);
       /*
        * We keep track of per-segment modCounts to avoid ABA
        * problems in which an element in one segment was added and
@@ -1254,6 +2206,9 @@ final class CustomConcurrentHashMap {
             return false;
           }
         }
+        if (slots != slots()) {
+          return false;
+        }
       }
       return true;
     }
@@ -1266,7 +2221,8 @@ final class CustomConcurrentHashMap {
      * @return the number of key-value mappings in this map
      */
     @Override public int size() {
-      final Segment[] segments = this.segments;
+      final Segment[] slots = slots();
+      final Segment[] segments = distinct(slots);
       long sum = 0;
       long check = 0;
       int[] mc = new int[segments.length];
@@ -1289,21 +2245,20 @@ final class CustomConcurrentHashMap {
             }
           }
         }
+        if (slots != slots()) {
+          check = -1; // a segment was split; force retry
+        }
         if (check == sum) {
           break;
         }
       }
       if (check != sum) { // Resort to locking all segments
         sum = 0;
-        for (Segment segment : segments) {
-          segment.lock();
-        }
-        for (Segment segment : segments) {
+        Segment[] locked = lockAllSegments();
+        for (Segment segment : locked) {
           sum += segment.count;
         }
-        for (Segment segment : segments) {
-          segment.unlock();
-        }
+        unlockAll(locked);
       }
       if (sum > Integer.MAX_VALUE) {
         return Integer.MAX_VALUE;
@@ -1365,7 +2320,8 @@ final class CustomConcurrentHashMap {
 
       // See explanation of modCount use above
 
-      final Segment[] segments = this.segments;
+      final Segment[] slots = slots();
+      final Segment[] segments = distinct(slots);
       int[] mc = new int[segments.length];
 
       // Try a few times without locking
@@ -1390,26 +2346,25 @@ final class CustomConcurrentHashMap {
             }
           }
         }
+        if (slots != slots()) {
+          cleanSweep = false;
+        }
         if (cleanSweep) {
           return false;
         }
       }
       // Resort to locking all segments
-      for (Segment segment : segments) {
-        segment.lock();
-      }
+      Segment[] locked = lockAllSegments();
       boolean found = false;
       try {
-        for (Segment segment : segments) {
+        for (Segment segment : locked) {
           if (segment.containsValue(value)) {
             found = true;
             break;
           }
         }
       } finally {
-        for (Segment segment : segments) {
-          segment.unlock();
-        }
+        unlockAll(locked);
       }
       return found;
     }
@@ -1435,7 +2390,9 @@ final class CustomConcurrentHashMap {
         throw new NullPointerException("value");
       }
       int hash = hash(key);
-      return segmentFor(hash).put(key, hash, value, false);
+      V previous = segmentFor(hash).put(key, hash, value, false);
+      afterWrite();
+      return previous;
     }
 
     /**
@@ -1453,7 +2410,9 @@ final class CustomConcurrentHashMap {
         throw new NullPointerException("value");
       }
       int hash = hash(key);
-      return segmentFor(hash).put(key, hash, value, true);
+      V previous = segmentFor(hash).put(key, hash, value, true);
+      afterWrite();
+      return previous;
     }
 
     /**
@@ -1483,7 +2442,9 @@ final class CustomConcurrentHashMap {
         throw new NullPointerException("key");
       }
       int hash = hash(key);
-      return segmentFor(hash).remove(key, hash);
+      V previous = segmentFor(hash).remove(key, hash);
+      afterWrite();
+      return previous;
     }
 
     /**
@@ -1496,7 +2457,9 @@ final class CustomConcurrentHashMap {
         throw new NullPointerException("key");
       }
       int hash = hash(key);
-      return segmentFor(hash).remove(key, hash, value);
+      boolean removed = segmentFor(hash).remove(key, hash, value);
+      afterWrite();
+      return removed;
     }
 
     /**
@@ -1515,7 +2478,10 @@ final class CustomConcurrentHashMap {
         throw new NullPointerException("newValue");
       }
       int hash = hash(key);
-      return segmentFor(hash).replace(key, hash, oldValue, newValue);
+      boolean replaced
+          = segmentFor(hash).replace(key, hash, oldValue, newValue);
+      afterWrite();
+      return replaced;
     }
 
     /**
@@ -1533,15 +2499,32 @@ final class CustomConcurrentHashMap {
         throw new NullPointerException("value");
       }
       int hash = hash(key);
-      return segmentFor(hash).replace(key, hash, value);
+      V previous = segmentFor(hash).replace(key, hash, value);
+      afterWrite();
+      return previous;
     }
 
     /**
      * Removes all of the mappings from this map.
      */
     @Override public void clear() {
-      for (Segment segment : segments) {
-        segment.clear();
+      Segment[] slots;
+      do {
+        slots = slots();
+        for (Segment segment : distinct(slots)) {
+          segment.clear();
+        }
+      } while (slots != slots()); // a segment was split; clear again
+      afterWrite();
+    }
+
+    /**
+     * Lets the strategy do work after a write, if it asked to. Must not be
+     * called while holding a segment's lock.
+     */
+    void afterWrite() {
+      if (strategy instanceof WriteListener) {
+        ((WriteListener) strategy).afterWrite();
       }
     }
 
@@ -1615,10 +2598,13 @@ final class CustomConcurrentHashMap {
 
     abstract class HashIterator {
 
+      final Segment[] segments = distinctSegments();
       int nextSegmentIndex;
       int nextTableIndex;
-      AtomicReferenceArray<E> currentTable;
+      AtomicReferenceArray<Object> currentTable;
       E nextEntry;
+      List<E> currentTree;
+      int nextTreeIndex;
       WriteThroughEntry nextExternal;
       WriteThroughEntry lastReturned;
 
@@ -1635,6 +2621,10 @@ final class CustomConcurrentHashMap {
       final void advance() {
         nextExternal = null;
 
+        if (nextInTree()) {
+          return;
+        }
+
         if (nextInChain()) {
           return;
         }
@@ -1672,13 +2662,37 @@ final class CustomConcurrentHashMap {
         return false;
       }
 
+      /**
+       * Finds the next entry in the current tree bin. Returns true if an
+       * entry was found.
+       */
+      boolean nextInTree() {
+        if (currentTree != null) {
+          while (nextTreeIndex < currentTree.size()) {
+            if (advanceTo(currentTree.get(nextTreeIndex++))) {
+              return true;
+            }
+          }
+          currentTree = null;
+        }
+        return false;
+      }
+
       /**
        * Finds the next entry in the current table. Returns true if an entry
        * was found.
        */
       boolean nextInTable() {
         while (nextTableIndex >= 0) {
-          if ((nextEntry = currentTable.get(nextTableIndex--)) != null) {
+          Object bin = currentTable.get(nextTableIndex--);
+          if (bin instanceof TreeBin) {
+            nextEntry = null;
+            currentTree = asTree(bin).entries();
+            nextTreeIndex = 0;
+            if (nextInTree()) {
+              return true;
+            }
+          } else if ((nextEntry = asEntry(bin)) != null) {
             if (advanceTo(nextEntry) || nextInChain()) {
               return true;
             }
@@ -1886,7 +2900,7 @@ final class CustomConcurrentHashMap {
     private void writeObject(java.io.ObjectOutputStream out)
         throws IOException {
       out.writeInt(size());
-      out.writeInt(segments.length); // concurrencyLevel
+      out.writeInt(slots().length); // concurrencyLevel
       out.writeObject(strategy);
       for (Entry<K, V> entry : entrySet()) {
         out.writeObject(entry.getKey());
@@ -1939,7 +2953,7 @@ final class CustomConcurrentHashMap {
         }
         Fields.segmentShift.set(this, 32 - segmentShift);
         Fields.segmentMask.set(this, segmentCount - 1);
-        Fields.segments.set(this, newSegmentArray(segmentCount));
+        Segment[] segments = newSegmentArray(segmentCount);
 
         if (initialCapacity > MAXIMUM_CAPACITY) {
           initialCapacity = MAXIMUM_CAPACITY;
@@ -1954,9 +2968,10 @@ final class CustomConcurrentHashMap {
         while (segmentSize < segmentCapacity) {
             segmentSize <<= 1;
         }
-        for (int i = 0; i < this.segments.length; ++i) {
-          this.segments[i] = new Segment(segmentSize);
+        for (int i = 0; i < segments.length; ++i) {
+          segments[i] = new Segment(segmentSize);
         }
+        Fields.segments.set(this, segments);
 
         Fields.strategy.set(this, strategy);
 
@@ -2010,29 +3025,23 @@ final class CustomConcurrentHashMap {
       }
 
       int hash = hash(key);
-      Segment segment = segmentFor(hash);
       outer: while (true) {
+        Segment segment = segmentFor(hash);
         E entry = segment.getEntry(key, hash);
         if (entry == null) {
           boolean created = false;
           segment.lock();
           try {
+            if (segment.retired) {
+              continue outer;
+            }
+
             // Try again--an entry could have materialized in the interim.
             entry = segment.getEntry(key, hash);
             if (entry == null) {
               // Create a new entry.
               created = true;
-              int count = segment.count;
-              if (count++ > segment.threshold) { // ensure capacity
-                segment.expand();
-              }
-              AtomicReferenceArray<E> table = segment.table;
-              int index = hash & (table.length() - 1);
-              E first = table.get(index);
-              ++segment.modCount;
-              entry = computingStrategy.newEntry(key, hash, first);
-              table.set(index, entry);
-              segment.count = count; // write-volatile
+              entry = segment.addEntry(key, hash, null);
             }
           } finally {
             segment.unlock();
@@ -2048,6 +3057,7 @@ final class CustomConcurrentHashMap {
                     "compute() returned null unexpectedly");
               }
               success = true;
+              afterWrite();
               return value;
             } finally {
               if (!success) {
@@ -2136,6 +3146,7 @@ final class CustomConcurrentHashMap {
     public int getHash(SimpleInternalEntry<K, V> entry) {
       return entry.hash;
     }
+    public void remove(SimpleInternalEntry<K, V> entry) {}
     public void setInternals(
         Internals<K, V, SimpleInternalEntry<K, V>> internals) {
       // ignore?
@@ -28,7 +28,7 @@ final class EmptyImmutableMultiset extends ImmutableMultiset<Object> {
   static final EmptyImmutableMultiset INSTANCE = new EmptyImmutableMultiset();
 
   private EmptyImmutableMultiset() {
-    super(ImmutableMap.<Object, Integer>of(), 0);
+    super(new Object[0], new int[0], 0);
   }
 
   Object readResolve() {
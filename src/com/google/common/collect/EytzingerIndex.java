@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2009 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.collect;
+
+import com.google.common.annotations.GwtCompatible;
+
+import java.util.Comparator;
+import java.util.Map.Entry;
+
+/**
+ * A search index over the keys of a sorted array, which holds a copy of the
+ * keys in the breadth-first order of an implicit balanced binary search tree
+ * (the "Eytzinger" layout, as in a binary heap). The root is at index 1 and
+ * the children of index {@code k} are at {@code 2k} and {@code 2k + 1}.
+ *
+ * <p>A binary search of the sorted array jumps across the whole array on its
+ * first probes, so on a large array nearly every probe is a cache miss. In
+ * this layout the first probes all fall at the start of the array, which
+ * stays in cache, and the keys that the next few probes may visit lie next to
+ * each other. The descent always runs to a leaf and picks the next index
+ * arithmetically rather than by branching on the comparison, so its memory
+ * accesses are easy for the processor to predict.
+ *
+ * <p>The index doesn't change the sorted array, which still serves iteration
+ * and subranges; it maps each tree position back to its index in that array.
+ */
+@GwtCompatible
+final class EytzingerIndex {
+
+  /** The keys in breadth-first order, starting at index 1. */
+  private final Object[] tree;
+
+  /** The index in the sorted array of the key at each position of the tree. */
+  private final int[] ranks;
+
+  private final Comparator<?> comparator;
+
+  private EytzingerIndex(Object[] tree, int[] ranks, Comparator<?> comparator) {
+    this.tree = tree;
+    this.ranks = ranks;
+    this.comparator = comparator;
+  }
+
+  /** Returns an index over {@code keys}, which must be sorted and distinct. */
+  static EytzingerIndex create(Object[] keys, Comparator<?> comparator) {
+    Object[] tree = new Object[keys.length + 1];
+    int[] ranks = new int[keys.length + 1];
+    fill(keys, tree, ranks, 1, 0);
+    return new EytzingerIndex(tree, ranks, comparator);
+  }
+
+  /**
+   * Returns an index over the keys of {@code entries}, which must be sorted
+   * by distinct keys.
+   */
+  static EytzingerIndex forEntries(
+      Entry<?, ?>[] entries, Comparator<?> comparator) {
+    Object[] keys = new Object[entries.length];
+    for (int i = 0; i < entries.length; i++) {
+      keys[i] = entries[i].getKey();
+    }
+    return create(keys, comparator);
+  }
+
+  /**
+   * Places the keys starting at {@code rank} in the subtree rooted at {@code
+   * position}, in order, and returns the rank of the first key left over.
+   */
+  private static int fill(
+      Object[] keys, Object[] tree, int[] ranks, int position, int rank) {
+    if (position < tree.length) {
+      rank = fill(keys, tree, ranks, 2 * position, rank);
+      tree[position] = keys[rank];
+      ranks[position] = rank;
+      rank = fill(keys, tree, ranks, 2 * position + 1, rank + 1);
+    }
+    return rank;
+  }
+
+  /**
+   * Searches the range {@code [fromIndex, toIndex)} of the sorted array for
+   * {@code key}, with the result of {@link java.util.Arrays#binarySearch}: the
+   * index of the key if it's in the range, or otherwise {@code (-(insertion
+   * point) - 1)}, where the insertion point lies within the range.
+   *
+   * @throws ClassCastException if the comparator can't compare {@code key}
+   *     with the keys
+   */
+  int binarySearch(Object key, int fromIndex, int toIndex) {
+    Object[] tree = this.tree;
+    int n = tree.length - 1;
+    int k = 1;
+    while (k <= n) {
+      int c = ImmutableSortedSet.unsafeCompare(comparator, key, tree[k]);
+      k = 2 * k + (c > 0 ? 1 : 0);
+    }
+    // Undo the right turns taken since the last left turn, and that left
+    // turn, to reach the first key not less than the key (or 0 if none).
+    k >>= Integer.numberOfTrailingZeros(~k) + 1;
+
+    int rank;
+    boolean found;
+    if (k == 0) {
+      rank = n;
+      found = false;
+    } else {
+      rank = ranks[k];
+      found = ImmutableSortedSet.unsafeCompare(comparator, key, tree[k]) == 0;
+    }
+    if (rank < fromIndex) {
+      return -fromIndex - 1;
+    } else if (rank >= toIndex) {
+      return -toIndex - 1;
+    }
+    return found ? rank : -rank - 1;
+  }
+}
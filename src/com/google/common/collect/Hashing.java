@@ -39,12 +39,29 @@ final class Hashing {
     return hashCode ^ (hashCode >>> 7) ^ (hashCode >>> 4);
   }
 
+  /**
+   * Returns how many slots past its home slot, the one {@code smearedHash}
+   * masks to, an entry sits at {@code index} in an open-addressed table with
+   * the given mask. Tables built by Robin Hood insertion keep the entries of
+   * each probe sequence in order of this distance, so a lookup can stop at
+   * the first entry that is closer to home than the lookup has probed.
+   */
+  static int probeDistance(int smearedHash, int index, int mask) {
+    return (index - smearedHash) & mask;
+  }
+
   // We use power-of-2 tables, and this is the highest int that's a power of 2
   private static final int MAX_TABLE_SIZE = 1 << 30;
 
   // If the set has this many elements, it will "max out" the table size
   private static final int CUTOFF = 1 << 29;
 
+  /**
+   * The highest load factor a builder may ask for. Past it, probe sequences
+   * grow quickly even with Robin Hood insertion.
+   */
+  static final float MAX_LOAD_FACTOR = 0.75f;
+
   // Size the table to be at most 50% full, if possible
   static int chooseTableSize(int setSize) {
     if (setSize < CUTOFF) {
@@ -55,4 +72,35 @@ final class Hashing {
     checkArgument(setSize < MAX_TABLE_SIZE, "collection too large");
     return MAX_TABLE_SIZE;
   }
+
+  /**
+   * Returns the smallest table size that keeps {@code setSize} entries at
+   * most {@code maxLoadFactor} full, if possible. A {@code maxLoadFactor} of
+   * zero means that none was requested, and returns {@link
+   * #chooseTableSize(int)}.
+   */
+  static int chooseTableSize(int setSize, float maxLoadFactor) {
+    if (maxLoadFactor == 0) {
+      return chooseTableSize(setSize);
+    }
+    int tableSize = Integer.highestOneBit(setSize);
+    while (tableSize < MAX_TABLE_SIZE
+        && setSize > (double) tableSize * maxLoadFactor) {
+      tableSize <<= 1;
+    }
+    checkArgument(setSize < tableSize, "collection too large");
+    return tableSize;
+  }
+
+  /**
+   * Returns the longest probe sequence, in slots past the home slot, that a
+   * table of the given size may have when built with a requested load
+   * factor. With well-spread hash codes, Robin Hood insertion at a load
+   * factor of 0.75 keeps the longest sequence within a few slots of the
+   * base-2 logarithm of the table size, so exceeding twice that points to
+   * clustered hash codes, and the table should be rebuilt larger.
+   */
+  static int maxProbeDistance(int tableSize) {
+    return 2 * Integer.numberOfTrailingZeros(tableSize);
+  }
 }
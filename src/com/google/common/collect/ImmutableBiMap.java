@@ -160,6 +160,21 @@ public abstract class ImmutableBiMap<K, V> extends ImmutableMap<K, V>
       return this;
     }
 
+    @Override public Builder<K, V> perfectHashing() {
+      super.perfectHashing();
+      return this;
+    }
+
+    @Override public Builder<K, V> maxLoadFactor(float loadFactor) {
+      super.maxLoadFactor(loadFactor);
+      return this;
+    }
+
+    @Override public Builder<K, V> compact() {
+      super.compact();
+      return this;
+    }
+
     /**
      * Returns a newly-created immutable bimap.
      *
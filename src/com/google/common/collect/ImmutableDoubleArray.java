@@ -0,0 +1,383 @@
+/*
+ * Copyright (C) 2009 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.collect;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkElementIndex;
+import static com.google.common.base.Preconditions.checkPositionIndexes;
+
+import com.google.common.annotations.GwtCompatible;
+
+import java.io.Serializable;
+import java.util.Collection;
+
+import javax.annotation.Nullable;
+
+/**
+ * An immutable array of {@code double} values. Unlike an {@code
+ * ImmutableList<Double>}, which refers to a {@code Double} object for each
+ * element, it keeps the values themselves in a {@code double[]}, and reads
+ * them without unboxing. {@link #asList} views it as an {@link ImmutableList}
+ * for code that needs one.
+ *
+ * <p>Values are compared as {@link Double#equals} compares them, so that the
+ * array and its list view agree: NaN is equal to itself, and 0.0 is not
+ * equal to -0.0.
+ *
+ * @see ImmutableIntArray
+ * @see ImmutableLongArray
+ */
+@GwtCompatible
+public final class ImmutableDoubleArray implements Serializable {
+  private static final ImmutableDoubleArray EMPTY
+      = new ImmutableDoubleArray(new double[0]);
+
+  /** Returns the empty array. */
+  public static ImmutableDoubleArray of() {
+    return EMPTY;
+  }
+
+  /** Returns an array containing the given values, in order. */
+  public static ImmutableDoubleArray of(double... values) {
+    return copyOf(values);
+  }
+
+  /** Returns an array containing the given values, in order. */
+  public static ImmutableDoubleArray copyOf(double[] values) {
+    return (values.length == 0)
+        ? EMPTY
+        : new ImmutableDoubleArray(values.clone());
+  }
+
+  /**
+   * Returns an array containing the given values, in order.
+   *
+   * @throws NullPointerException if any of {@code values} is null
+   */
+  public static ImmutableDoubleArray copyOf(Iterable<Double> values) {
+    if (values instanceof Collection) {
+      return builder(((Collection<?>) values).size()).addAll(values).build();
+    }
+    return builder().addAll(values).build();
+  }
+
+  /** Returns a new builder. */
+  public static Builder builder() {
+    return new Builder(10);
+  }
+
+  /**
+   * Returns a new builder with room for {@code initialCapacity} values
+   * before it needs to grow. The arrays a builder builds share its storage
+   * rather than copying it, so giving the exact number of values also keeps
+   * them from holding unused room.
+   *
+   * @throws IllegalArgumentException if {@code initialCapacity} is negative
+   */
+  public static Builder builder(int initialCapacity) {
+    checkArgument(initialCapacity >= 0, "Invalid initialCapacity: %s",
+        initialCapacity);
+    return new Builder(initialCapacity);
+  }
+
+  /**
+   * A builder for {@link ImmutableDoubleArray} instances. A builder can be
+   * reused: {@link #build} may be called several times, and later values
+   * don't change the arrays already built.
+   */
+  public static final class Builder {
+    private double[] array;
+    private int count = 0;
+
+    Builder(int initialCapacity) {
+      array = new double[initialCapacity];
+    }
+
+    /** Adds {@code value} to the end of the array. */
+    public Builder add(double value) {
+      ensureRoomFor(1);
+      array[count++] = value;
+      return this;
+    }
+
+    /** Adds {@code values} to the end of the array, in order. */
+    public Builder addAll(double[] values) {
+      ensureRoomFor(values.length);
+      System.arraycopy(values, 0, array, count, values.length);
+      count += values.length;
+      return this;
+    }
+
+    /**
+     * Adds {@code values} to the end of the array, in order.
+     *
+     * @throws NullPointerException if any of {@code values} is null
+     */
+    public Builder addAll(Iterable<Double> values) {
+      if (values instanceof Collection) {
+        ensureRoomFor(((Collection<?>) values).size());
+      }
+      for (Double value : values) {
+        add(value);
+      }
+      return this;
+    }
+
+    /** Adds {@code values} to the end of the array, in order. */
+    public Builder addAll(ImmutableDoubleArray values) {
+      ensureRoomFor(values.length());
+      System.arraycopy(
+          values.array, values.start, array, count, values.length());
+      count += values.length();
+      return this;
+    }
+
+    private void ensureRoomFor(int more) {
+      int newCount = count + more;
+      if (newCount > array.length) {
+        double[] newArray
+            = new double[Math.max(newCount, array.length * 3 / 2 + 1)];
+        System.arraycopy(array, 0, newArray, 0, count);
+        array = newArray;
+      }
+    }
+
+    /** Returns an array of the values added so far. */
+    public ImmutableDoubleArray build() {
+      if (count == 0) {
+        return EMPTY;
+      }
+      // Later values go past count, so the built array can share ours.
+      return (count == array.length)
+          ? new ImmutableDoubleArray(array)
+          : new ImmutableDoubleArray(array, 0, count);
+    }
+  }
+
+  // The values are array[start] through array[end - 1].
+  private final double[] array;
+  private final int start;
+  private final int end;
+
+  private ImmutableDoubleArray(double[] array) {
+    this(array, 0, array.length);
+  }
+
+  private ImmutableDoubleArray(double[] array, int start, int end) {
+    this.array = array;
+    this.start = start;
+    this.end = end;
+  }
+
+  /** Returns the number of values. */
+  public int length() {
+    return end - start;
+  }
+
+  /** Returns whether there are no values. */
+  public boolean isEmpty() {
+    return end == start;
+  }
+
+  /**
+   * Returns the value at {@code index}.
+   *
+   * @throws IndexOutOfBoundsException if {@code index} is negative or not
+   *     less than {@link #length}
+   */
+  public double get(int index) {
+    checkElementIndex(index, length());
+    return array[start + index];
+  }
+
+  /**
+   * Returns the smallest index of {@code target}, or -1 if it's not in the
+   * array.
+   */
+  public int indexOf(double target) {
+    for (int i = start; i < end; i++) {
+      if (areEqual(array[i], target)) {
+        return i - start;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Returns the largest index of {@code target}, or -1 if it's not in the
+   * array.
+   */
+  public int lastIndexOf(double target) {
+    for (int i = end - 1; i >= start; i--) {
+      if (areEqual(array[i], target)) {
+        return i - start;
+      }
+    }
+    return -1;
+  }
+
+  /** Returns whether {@code target} is in the array. */
+  public boolean contains(double target) {
+    return indexOf(target) != -1;
+  }
+
+  /** Returns a new {@code double[]} of the values. */
+  public double[] toArray() {
+    double[] result = new double[length()];
+    System.arraycopy(array, start, result, 0, result.length);
+    return result;
+  }
+
+  /**
+   * Returns the values from {@code startIndex}, inclusive, to {@code
+   * endIndex}, exclusive. The result shares this array's storage rather than
+   * copying it.
+   */
+  public ImmutableDoubleArray subArray(int startIndex, int endIndex) {
+    checkPositionIndexes(startIndex, endIndex, length());
+    return (startIndex == endIndex)
+        ? EMPTY
+        : new ImmutableDoubleArray(array, start + startIndex, start + endIndex);
+  }
+
+  /**
+   * Returns an immutable list view of the values, which boxes each value as
+   * it is read. The view is created in constant time, and its {@code
+   * subList} is a view of a {@link #subArray}.
+   */
+  public ImmutableList<Double> asList() {
+    return isEmpty() ? ImmutableList.<Double>of() : new AsList(this);
+  }
+
+  @SuppressWarnings("serial") // uses writeReplace(), not default serialization
+  private static class AsList extends IndexedImmutableList<Double> {
+    final ImmutableDoubleArray parent;
+
+    AsList(ImmutableDoubleArray parent) {
+      this.parent = parent;
+    }
+
+    public int size() {
+      return parent.length();
+    }
+
+    public Double get(int index) {
+      return parent.get(index);
+    }
+
+    @Override public int indexOf(@Nullable Object target) {
+      return (target instanceof Double)
+          ? parent.indexOf((Double) target) : -1;
+    }
+
+    @Override public int lastIndexOf(@Nullable Object target) {
+      return (target instanceof Double)
+          ? parent.lastIndexOf((Double) target) : -1;
+    }
+
+    @Override public ImmutableList<Double> subList(
+        int fromIndex, int toIndex) {
+      return parent.subArray(fromIndex, toIndex).asList();
+    }
+
+    @Override public boolean equals(@Nullable Object object) {
+      if (object instanceof AsList) {
+        return parent.equals(((AsList) object).parent);
+      }
+      return super.equals(object);
+    }
+
+    @Override public int hashCode() {
+      return parent.hashCode();
+    }
+  }
+
+  /**
+   * Returns whether {@code object} is an {@code ImmutableDoubleArray} with the
+   * same values in the same order.
+   */
+  @Override public boolean equals(@Nullable Object object) {
+    if (object == this) {
+      return true;
+    }
+    if (!(object instanceof ImmutableDoubleArray)) {
+      return false;
+    }
+    ImmutableDoubleArray that = (ImmutableDoubleArray) object;
+    if (length() != that.length()) {
+      return false;
+    }
+    for (int i = start, j = that.start; i < end; i++, j++) {
+      if (!areEqual(array[i], that.array[j])) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /** Returns the hash code of {@link #asList}. */
+  @Override public int hashCode() {
+    int hashCode = 1;
+    for (int i = start; i < end; i++) {
+      hashCode = 31 * hashCode + hashCodeOf(array[i]);
+    }
+    return hashCode;
+  }
+
+  /**
+   * Returns whether two values are equal as {@code Double} objects are: NaN
+   * equals itself, but not 0.0 equals -0.0.
+   */
+  private static boolean areEqual(double a, double b) {
+    return Double.doubleToLongBits(a) == Double.doubleToLongBits(b);
+  }
+
+  /** Returns the hash code of {@code value} as a {@code Double}. */
+  private static int hashCodeOf(double value) {
+    long bits = Double.doubleToLongBits(value);
+    return (int) (bits ^ (bits >>> 32));
+  }
+
+  /** Returns the values in the format of {@link #asList}. */
+  @Override public String toString() {
+    if (isEmpty()) {
+      return "[]";
+    }
+    StringBuilder sb = new StringBuilder(length() * 8);
+    sb.append('[').append(array[start]);
+    for (int i = start + 1; i < end; i++) {
+      sb.append(", ").append(array[i]);
+    }
+    return sb.append(']').toString();
+  }
+
+  /**
+   * Serializes only the values in range, rather than all of a storage array
+   * shared with a builder or another array.
+   */
+  private Object writeReplace() {
+    return (start == 0 && end == array.length)
+        ? this
+        : new ImmutableDoubleArray(toArray());
+  }
+
+  private Object readResolve() {
+    return isEmpty() ? EMPTY : this;
+  }
+
+  private static final long serialVersionUID = 0;
+}
@@ -0,0 +1,750 @@
+/*
+ * Copyright (C) 2009 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.collect;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.annotations.GwtCompatible;
+
+import java.io.Serializable;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import javax.annotation.Nullable;
+
+/**
+ * An immutable, hash-based {@link Map} that can make a modified copy of
+ * itself cheaply. Does not permit null keys or values.
+ *
+ * <p>{@link #with} and {@link #without} return a new map that differs from
+ * this one in a single key, in time and new memory proportional to the
+ * logarithm of the map's size; the new map shares all the rest of its
+ * structure with this one, which doesn't change. That makes this class
+ * suited to a series of versions of a map, such as snapshots of a
+ * configuration, where copying an {@link ImmutableMap} on every change would
+ * take time and garbage proportional to its size. For many changes at once,
+ * {@link #edit} returns an {@link Editor}, which makes its changes in place
+ * on the parts of the map that it has already copied.
+ *
+ * <p>The map is a hash array mapped trie: each level of the trie picks one of
+ * up to 32 children with five bits of a key's hash code, and each node keeps
+ * only the children that are present. Finding a key takes at most about
+ * log<sub>32</sub>(size) steps for well-spread hash codes.
+ *
+ * <p><b>Note</b>: Unlike other {@code ImmutableMap} implementations, this map
+ * does not iterate in insertion order. Its entries are in an order determined
+ * by the hash codes of its keys, which is the same for any two maps with the
+ * same keys. {@link #entrySet}, {@link #keySet} and {@link #values} all
+ * iterate in that order.
+ */
+@GwtCompatible(serializable = true)
+public final class ImmutableHashTrieMap<K, V> extends ImmutableMap<K, V> {
+
+  private static final ImmutableHashTrieMap<Object, Object> EMPTY
+      = new ImmutableHashTrieMap<Object, Object>(null, 0);
+
+  /** Returns the empty map. */
+  // Casting to any type is safe because the map will never hold any entries.
+  @SuppressWarnings("unchecked")
+  public static <K, V> ImmutableHashTrieMap<K, V> of() {
+    return (ImmutableHashTrieMap<K, V>) EMPTY;
+  }
+
+  /**
+   * Returns a map containing the same entries as {@code map}. If {@code map}
+   * is an {@code ImmutableHashTrieMap}, it is returned instead of a copy.
+   *
+   * @throws NullPointerException if any key or value in {@code map} is null
+   */
+  public static <K, V> ImmutableHashTrieMap<K, V> copyOf(
+      Map<? extends K, ? extends V> map) {
+    if (map instanceof ImmutableHashTrieMap) {
+      @SuppressWarnings("unchecked") // safe since map is not writable
+      ImmutableHashTrieMap<K, V> kvMap = (ImmutableHashTrieMap<K, V>) map;
+      return kvMap;
+    }
+    return ImmutableHashTrieMap.<K, V>of().edit().putAll(map).build();
+  }
+
+  @Nullable private final transient Node root;
+  private final transient int size;
+
+  private ImmutableHashTrieMap(@Nullable Node root, int size) {
+    this.root = root;
+    this.size = size;
+  }
+
+  /**
+   * Returns a map with the entries of this map, except that {@code key} maps
+   * to {@code value}. Returns this map if it already maps {@code key} to
+   * {@code value} (the same instance).
+   *
+   * @throws NullPointerException if {@code key} or {@code value} is null
+   */
+  public ImmutableHashTrieMap<K, V> with(K key, V value) {
+    checkNotNull(key);
+    checkNotNull(value);
+    Change change = new Change();
+    Node newRoot = (root == null)
+        ? BitmapNode.EMPTY.with(null, 0, hash(key), key, value, change)
+        : root.with(null, 0, hash(key), key, value, change);
+    if (newRoot == root) {
+      return this;
+    }
+    return new ImmutableHashTrieMap<K, V>(
+        newRoot, change.sizeChanged ? size + 1 : size);
+  }
+
+  /**
+   * Returns a map with the entries of this map, except for any entry whose
+   * key is {@code key}. Returns this map if it has no such entry.
+   */
+  public ImmutableHashTrieMap<K, V> without(@Nullable Object key) {
+    if (key == null || root == null) {
+      return this;
+    }
+    Node newRoot = root.without(null, 0, hash(key), key, new Change());
+    if (newRoot == root) {
+      return this;
+    } else if (newRoot == null) {
+      return of();
+    }
+    return new ImmutableHashTrieMap<K, V>(newRoot, size - 1);
+  }
+
+  /**
+   * Returns an editor whose changes start from the entries of this map,
+   * which itself never changes.
+   */
+  public Editor<K, V> edit() {
+    return new Editor<K, V>(root, size);
+  }
+
+  /**
+   * Makes changes to a copy of an {@link ImmutableHashTrieMap}, and creates
+   * maps with the result. Where a change needs to copy a part of the trie,
+   * the editor keeps the copy and makes later changes to that part in place,
+   * so a batch of changes costs much less than the same calls to {@link
+   * ImmutableHashTrieMap#with} and {@link ImmutableHashTrieMap#without}.
+   *
+   * <p>An editor can be reused: it's safe to call {@link #build} several
+   * times while making changes, and each map reflects the changes made up to
+   * its call. Later changes copy whatever parts of the trie they touch again,
+   * so maps already built never change. An editor is not thread-safe.
+   */
+  public static final class Editor<K, V> {
+    /**
+     * Marks the trie nodes that this editor has created since {@link #build}
+     * was last called. Only those nodes may be changed in place.
+     */
+    private Object owner = new Object();
+    @Nullable private Node root;
+    private int size;
+
+    Editor(@Nullable Node root, int size) {
+      this.root = root;
+      this.size = size;
+    }
+
+    /**
+     * Maps {@code key} to {@code value}, replacing any value that {@code key}
+     * mapped to.
+     *
+     * @throws NullPointerException if {@code key} or {@code value} is null
+     */
+    public Editor<K, V> put(K key, V value) {
+      checkNotNull(key);
+      checkNotNull(value);
+      Change change = new Change();
+      root = (root == null)
+          ? BitmapNode.EMPTY.with(owner, 0, hash(key), key, value, change)
+          : root.with(owner, 0, hash(key), key, value, change);
+      if (change.sizeChanged) {
+        size++;
+      }
+      return this;
+    }
+
+    /**
+     * Maps each key of {@code map} to its value, replacing any values that
+     * those keys mapped to.
+     *
+     * @throws NullPointerException if any key or value in {@code map} is null
+     */
+    public Editor<K, V> putAll(Map<? extends K, ? extends V> map) {
+      for (Entry<? extends K, ? extends V> entry : map.entrySet()) {
+        put(entry.getKey(), entry.getValue());
+      }
+      return this;
+    }
+
+    /** Removes any entry whose key is {@code key}. */
+    public Editor<K, V> remove(@Nullable Object key) {
+      if (key != null && root != null) {
+        Change change = new Change();
+        root = root.without(owner, 0, hash(key), key, change);
+        if (change.sizeChanged) {
+          size--;
+        }
+      }
+      return this;
+    }
+
+    /** Returns the value that {@code key} maps to, or null if none. */
+    public V get(@Nullable Object key) {
+      return ImmutableHashTrieMap.<V>get(root, key);
+    }
+
+    /** Returns the number of entries. */
+    public int size() {
+      return size;
+    }
+
+    /** Returns a map of the entries as they are now. */
+    public ImmutableHashTrieMap<K, V> build() {
+      // Nodes that belong to the new map must not change from now on.
+      owner = new Object();
+      return (root == null)
+          ? ImmutableHashTrieMap.<K, V>of()
+          : new ImmutableHashTrieMap<K, V>(root, size);
+    }
+  }
+
+  static int hash(Object key) {
+    return Hashing.smear(key.hashCode());
+  }
+
+  @SuppressWarnings("unchecked") // we store only V's as values
+  private static <V> V get(@Nullable Node root, @Nullable Object key) {
+    if (key == null || root == null) {
+      return null;
+    }
+    return (V) root.get(0, hash(key), key);
+  }
+
+  @Override public V get(@Nullable Object key) {
+    return ImmutableHashTrieMap.<V>get(root, key);
+  }
+
+  public int size() {
+    return size;
+  }
+
+  @Override public boolean isEmpty() {
+    return size == 0;
+  }
+
+  @Override public boolean containsValue(@Nullable Object value) {
+    if (value == null) {
+      return false;
+    }
+    for (V v : values()) {
+      if (v.equals(value)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /** Records whether an operation on the trie added or removed an entry. */
+  private static final class Change {
+    boolean sizeChanged;
+  }
+
+  /**
+   * A node of the trie. Its array holds, for each of its children, either a
+   * key followed by that key's value, or null followed by a child node.
+   */
+  abstract static class Node {
+    /** The editor that may change this node in place, or null if none. */
+    @Nullable final Object owner;
+    Object[] array;
+
+    Node(@Nullable Object owner, Object[] array) {
+      this.owner = owner;
+      this.array = array;
+    }
+
+    /**
+     * Returns the value of {@code key}, whose smeared hash code is {@code
+     * hash}, or null if none. The node is at the level of the trie that
+     * consumes the bits of {@code hash} starting at {@code shift}.
+     */
+    abstract Object get(int shift, int hash, Object key);
+
+    /**
+     * Returns this node, changed in place if {@code owner} owns it or copied
+     * otherwise, so that {@code key} maps to {@code value}. Returns this node
+     * unchanged if it already maps {@code key} to {@code value}.
+     */
+    abstract Node with(@Nullable Object owner, int shift, int hash,
+        Object key, Object value, Change change);
+
+    /**
+     * Returns this node without any entry for {@code key}, changed in place
+     * if {@code owner} owns it or copied otherwise, or null if that leaves it
+     * empty.
+     */
+    @Nullable abstract Node without(@Nullable Object owner, int shift,
+        int hash, Object key, Change change);
+
+    /** Returns whether this node holds a single entry and no child nodes. */
+    boolean isSingleEntry() {
+      return array.length == 2 && array[0] != null;
+    }
+  }
+
+  /**
+   * A node whose children are the keys and nodes at the positions of the one
+   * bits of a bitmap, each position being five bits of a hash code.
+   */
+  static final class BitmapNode extends Node {
+    static final BitmapNode EMPTY = new BitmapNode(null, 0, new Object[0]);
+
+    int bitmap;
+
+    BitmapNode(@Nullable Object owner, int bitmap, Object[] array) {
+      super(owner, array);
+      this.bitmap = bitmap;
+    }
+
+    static int bit(int hash, int shift) {
+      return 1 << ((hash >>> shift) & 31);
+    }
+
+    /** Returns the index in the array of the child at {@code bit}. */
+    int index(int bit) {
+      return Integer.bitCount(bitmap & (bit - 1)) * 2;
+    }
+
+    @Override Object get(int shift, int hash, Object key) {
+      int bit = bit(hash, shift);
+      if ((bitmap & bit) == 0) {
+        return null;
+      }
+      int index = index(bit);
+      Object childKey = array[index];
+      Object child = array[index + 1];
+      if (childKey == null) {
+        return ((Node) child).get(shift + 5, hash, key);
+      }
+      return key.equals(childKey) ? child : null;
+    }
+
+    @Override Node with(@Nullable Object owner, int shift, int hash,
+        Object key, Object value, Change change) {
+      int bit = bit(hash, shift);
+      int index = index(bit);
+      if ((bitmap & bit) == 0) {
+        change.sizeChanged = true;
+        Object[] newArray = new Object[array.length + 2];
+        System.arraycopy(array, 0, newArray, 0, index);
+        newArray[index] = key;
+        newArray[index + 1] = value;
+        System.arraycopy(
+            array, index, newArray, index + 2, array.length - index);
+        if (owns(owner)) {
+          bitmap |= bit;
+          array = newArray;
+          return this;
+        }
+        return new BitmapNode(owner, bitmap | bit, newArray);
+      }
+
+      Object childKey = array[index];
+      Object child = array[index + 1];
+      if (childKey == null) {
+        Node newChild = ((Node) child).with(
+            owner, shift + 5, hash, key, value, change);
+        return (newChild == child) ? this : set(owner, index, null, newChild);
+      } else if (key.equals(childKey)) {
+        return (value == child) ? this : set(owner, index, childKey, value);
+      }
+      change.sizeChanged = true;
+      Node newChild = createNode(owner, shift + 5,
+          childKey, child, hash(childKey), key, value, hash);
+      return set(owner, index, null, newChild);
+    }
+
+    @Override Node without(@Nullable Object owner, int shift, int hash,
+        Object key, Change change) {
+      int bit = bit(hash, shift);
+      if ((bitmap & bit) == 0) {
+        return this;
+      }
+      int index = index(bit);
+      Object childKey = array[index];
+      Object child = array[index + 1];
+      if (childKey == null) {
+        Node newChild = ((Node) child).without(
+            owner, shift + 5, hash, key, change);
+        if (newChild == child) {
+          return this;
+        } else if (newChild == null) {
+          return remove(owner, bit, index);
+        } else if (newChild.isSingleEntry()) {
+          // Keep the entry here rather than in a node of its own.
+          return set(owner, index, newChild.array[0], newChild.array[1]);
+        }
+        return set(owner, index, null, newChild);
+      } else if (key.equals(childKey)) {
+        change.sizeChanged = true;
+        return remove(owner, bit, index);
+      }
+      return this;
+    }
+
+    boolean owns(@Nullable Object owner) {
+      return owner != null && owner == this.owner;
+    }
+
+    /** Returns this node with the child at {@code index} replaced. */
+    private BitmapNode set(@Nullable Object owner, int index,
+        @Nullable Object childKey, Object child) {
+      BitmapNode node = owns(owner)
+          ? this
+          : new BitmapNode(owner, bitmap, Platform.clone(array));
+      node.array[index] = childKey;
+      node.array[index + 1] = child;
+      return node;
+    }
+
+    /** Returns this node without the child at {@code bit}, or null. */
+    @Nullable private BitmapNode remove(
+        @Nullable Object owner, int bit, int index) {
+      if (bitmap == bit) {
+        return null;
+      }
+      Object[] newArray = new Object[array.length - 2];
+      System.arraycopy(array, 0, newArray, 0, index);
+      System.arraycopy(
+          array, index + 2, newArray, index, newArray.length - index);
+      if (owns(owner)) {
+        bitmap &= ~bit;
+        array = newArray;
+        return this;
+      }
+      return new BitmapNode(owner, bitmap & ~bit, newArray);
+    }
+
+    /**
+     * Returns a node at the level consuming the hash bits at {@code shift}
+     * that holds two entries with different keys.
+     */
+    private static Node createNode(@Nullable Object owner, int shift,
+        Object key1, Object value1, int hash1,
+        Object key2, Object value2, int hash2) {
+      if (hash1 == hash2) {
+        return new CollisionNode(
+            owner, hash1, new Object[] { key1, value1, key2, value2 });
+      }
+      int bit1 = bit(hash1, shift);
+      int bit2 = bit(hash2, shift);
+      if (bit1 == bit2) {
+        Node child = createNode(
+            owner, shift + 5, key1, value1, hash1, key2, value2, hash2);
+        return new BitmapNode(owner, bit1, new Object[] { null, child });
+      }
+      // Children are in the order of their bits' positions.
+      Object[] array = (((hash1 >>> shift) & 31) < ((hash2 >>> shift) & 31))
+          ? new Object[] { key1, value1, key2, value2 }
+          : new Object[] { key2, value2, key1, value1 };
+      return new BitmapNode(owner, bit1 | bit2, array);
+    }
+  }
+
+  /** A node holding entries whose keys have the same smeared hash code. */
+  static final class CollisionNode extends Node {
+    final int hash;
+
+    CollisionNode(@Nullable Object owner, int hash, Object[] array) {
+      super(owner, array);
+      this.hash = hash;
+    }
+
+    private int indexOf(Object key) {
+      for (int i = 0; i < array.length; i += 2) {
+        if (key.equals(array[i])) {
+          return i;
+        }
+      }
+      return -1;
+    }
+
+    @Override Object get(int shift, int hash, Object key) {
+      if (hash != this.hash) {
+        return null;
+      }
+      int index = indexOf(key);
+      return (index == -1) ? null : array[index + 1];
+    }
+
+    @Override Node with(@Nullable Object owner, int shift, int hash,
+        Object key, Object value, Change change) {
+      if (hash != this.hash) {
+        // Move this node down a level, beside the new entry.
+        Node parent = new BitmapNode(owner, BitmapNode.bit(this.hash, shift),
+            new Object[] { null, this });
+        return parent.with(owner, shift, hash, key, value, change);
+      }
+      int index = indexOf(key);
+      Object[] newArray;
+      if (index == -1) {
+        change.sizeChanged = true;
+        newArray = new Object[array.length + 2];
+        System.arraycopy(array, 0, newArray, 0, array.length);
+        newArray[array.length] = key;
+        newArray[array.length + 1] = value;
+      } else if (array[index + 1] == value) {
+        return this;
+      } else {
+        newArray = Platform.clone(array);
+        newArray[index + 1] = value;
+      }
+      if (owner != null && owner == this.owner) {
+        array = newArray;
+        return this;
+      }
+      return new CollisionNode(owner, hash, newArray);
+    }
+
+    @Override Node without(@Nullable Object owner, int shift, int hash,
+        Object key, Change change) {
+      if (hash != this.hash) {
+        return this;
+      }
+      int index = indexOf(key);
+      if (index == -1) {
+        return this;
+      }
+      change.sizeChanged = true;
+      if (array.length == 2) {
+        return null;
+      }
+      Object[] newArray = new Object[array.length - 2];
+      System.arraycopy(array, 0, newArray, 0, index);
+      System.arraycopy(
+          array, index + 2, newArray, index, newArray.length - index);
+      if (owner != null && owner == this.owner) {
+        array = newArray;
+        return this;
+      }
+      return new CollisionNode(owner, hash, newArray);
+    }
+  }
+
+  /** Iterates over the entries of a trie, depth first. */
+  private abstract static class TrieIterator<T>
+      extends UnmodifiableIterator<T> {
+    // Seven levels of bitmap nodes consume a 32-bit hash, and a collision
+    // node may lie below them.
+    final Object[][] arrays = new Object[8][];
+    final int[] indexes = new int[8];
+    int depth;
+    Object nextKey;
+    Object nextValue;
+
+    TrieIterator(@Nullable Node root) {
+      if (root == null) {
+        depth = -1;
+      } else {
+        arrays[0] = root.array;
+      }
+      advance();
+    }
+
+    private void advance() {
+      while (depth >= 0) {
+        Object[] array = arrays[depth];
+        int index = indexes[depth];
+        if (index == array.length) {
+          depth--;
+          continue;
+        }
+        indexes[depth] = index + 2;
+        Object key = array[index];
+        Object value = array[index + 1];
+        if (key == null) {
+          depth++;
+          arrays[depth] = ((Node) value).array;
+          indexes[depth] = 0;
+        } else {
+          nextKey = key;
+          nextValue = value;
+          return;
+        }
+      }
+      nextKey = null;
+      nextValue = null;
+    }
+
+    abstract T output(Object key, Object value);
+
+    public boolean hasNext() {
+      return nextKey != null;
+    }
+
+    public T next() {
+      if (nextKey == null) {
+        throw new NoSuchElementException();
+      }
+      T result = output(nextKey, nextValue);
+      advance();
+      return result;
+    }
+  }
+
+  private transient ImmutableSet<Entry<K, V>> entrySet;
+
+  @Override public ImmutableSet<Entry<K, V>> entrySet() {
+    ImmutableSet<Entry<K, V>> es = entrySet;
+    return (es == null) ? (entrySet = new EntrySet<K, V>(this)) : es;
+  }
+
+  @SuppressWarnings("serial") // uses writeReplace(), not default serialization
+  private static class EntrySet<K, V> extends ImmutableSet<Entry<K, V>> {
+    final transient ImmutableHashTrieMap<K, V> map;
+
+    EntrySet(ImmutableHashTrieMap<K, V> map) {
+      this.map = map;
+    }
+
+    public int size() {
+      return map.size();
+    }
+
+    @Override public UnmodifiableIterator<Entry<K, V>> iterator() {
+      return new TrieIterator<Entry<K, V>>(map.root) {
+        // we store only K's as keys and V's as values
+        @SuppressWarnings("unchecked")
+        @Override Entry<K, V> output(Object key, Object value) {
+          return Maps.immutableEntry((K) key, (V) value);
+        }
+      };
+    }
+
+    @Override public boolean contains(Object target) {
+      if (target instanceof Entry) {
+        Entry<?, ?> entry = (Entry<?, ?>) target;
+        V mappedValue = map.get(entry.getKey());
+        return mappedValue != null && mappedValue.equals(entry.getValue());
+      }
+      return false;
+    }
+  }
+
+  private transient ImmutableSet<K> keySet;
+
+  @Override public ImmutableSet<K> keySet() {
+    ImmutableSet<K> ks = keySet;
+    return (ks == null) ? (keySet = new KeySet<K, V>(this)) : ks;
+  }
+
+  @SuppressWarnings("serial") // uses writeReplace(), not default serialization
+  private static class KeySet<K, V> extends ImmutableSet<K> {
+    final ImmutableHashTrieMap<K, V> map;
+
+    KeySet(ImmutableHashTrieMap<K, V> map) {
+      this.map = map;
+    }
+
+    public int size() {
+      return map.size();
+    }
+
+    @Override public UnmodifiableIterator<K> iterator() {
+      return new TrieIterator<K>(map.root) {
+        @SuppressWarnings("unchecked") // we store only K's as keys
+        @Override K output(Object key, Object value) {
+          return (K) key;
+        }
+      };
+    }
+
+    @Override public boolean contains(Object target) {
+      return map.containsKey(target);
+    }
+  }
+
+  private transient ImmutableCollection<V> values;
+
+  @Override public ImmutableCollection<V> values() {
+    ImmutableCollection<V> v = values;
+    return (v == null) ? (values = new Values<V>(this)) : v;
+  }
+
+  @SuppressWarnings("serial") // uses writeReplace(), not default serialization
+  private static class Values<V> extends ImmutableCollection<V> {
+    final ImmutableHashTrieMap<?, V> map;
+
+    Values(ImmutableHashTrieMap<?, V> map) {
+      this.map = map;
+    }
+
+    public int size() {
+      return map.size();
+    }
+
+    @Override public UnmodifiableIterator<V> iterator() {
+      return new TrieIterator<V>(map.root) {
+        @SuppressWarnings("unchecked") // we store only V's as values
+        @Override V output(Object key, Object value) {
+          return (V) value;
+        }
+      };
+    }
+
+    @Override public boolean contains(Object target) {
+      return map.containsValue(target);
+    }
+  }
+
+  /**
+   * Serialized type for all ImmutableHashTrieMap instances. It captures the
+   * entries and rebuilds the map through an editor.
+   */
+  private static class SerializedForm implements Serializable {
+    private final Object[] keys;
+    private final Object[] values;
+    SerializedForm(ImmutableHashTrieMap<?, ?> map) {
+      keys = new Object[map.size()];
+      values = new Object[map.size()];
+      int i = 0;
+      for (Entry<?, ?> entry : map.entrySet()) {
+        keys[i] = entry.getKey();
+        values[i] = entry.getValue();
+        i++;
+      }
+    }
+    Object readResolve() {
+      Editor<Object, Object> editor = ImmutableHashTrieMap.of().edit();
+      for (int i = 0; i < keys.length; i++) {
+        editor.put(keys[i], values[i]);
+      }
+      return editor.build();
+    }
+    private static final long serialVersionUID = 0;
+  }
+
+  @Override Object writeReplace() {
+    return new SerializedForm(this);
+  }
+
+  // This class is never actually serialized directly, but we have to make the
+  // warning go away (and suppressing would suppress for all nested classes too)
+  private static final long serialVersionUID = 0;
+}
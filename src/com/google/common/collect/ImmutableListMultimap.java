@@ -200,6 +200,11 @@ public class ImmutableListMultimap<K, V>
       return this;
     }
 
+    @Override public Builder<K, V> compressedRows() {
+      super.compressedRows();
+      return this;
+    }
+
     /**
      * Returns a newly-created immutable multimap.
      */
@@ -248,6 +253,23 @@ public class ImmutableListMultimap<K, V>
     return new ImmutableListMultimap<K, V>(builder.build(), size);
   }
 
+  /**
+   * Returns an immutable multimap of the mappings of {@code multimap}, in the
+   * layout described by {@link Builder#compressedRows}.
+   *
+   * @throws NullPointerException if any key or value in {@code multimap} is
+   *     null
+   */
+  static <K, V> ImmutableListMultimap<K, V> compressedCopyOf(
+      Multimap<? extends K, ? extends V> multimap) {
+    if (multimap.isEmpty()) {
+      return of();
+    }
+    CompressedRowImmutableMap.ListRows<K, V> map
+        = CompressedRowImmutableMap.ListRows.copyOf(multimap);
+    return new ImmutableListMultimap<K, V>(map, map.values.length);
+  }
+
   ImmutableListMultimap(ImmutableMap<K, ImmutableList<V>> map, int size) {
     super(map, size);
   }
@@ -285,6 +307,16 @@ public class ImmutableListMultimap<K, V>
     throw new UnsupportedOperationException();
   }
 
+  /**
+   * Serializes multimaps in the compressed row layout as their arrays, so
+   * that they have that layout when deserialized.
+   */
+  private Object writeReplace() {
+    return (map instanceof CompressedRowImmutableMap)
+        ? ((CompressedRowImmutableMap<?, ?>) map).multimapForm()
+        : this;
+  }
+
   /**
    * @serialData number of distinct keys, and then for each distinct key: the
    *     key, the number of values for that key, and the key's values
@@ -0,0 +1,285 @@
+/*
+ * Copyright (C) 2009 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.collect;
+
+import com.google.common.annotations.GwtCompatible;
+
+import java.io.Serializable;
+import java.util.Collection;
+
+import javax.annotation.Nullable;
+
+/**
+ * An immutable set of {@code long} values, in the order they were first
+ * added. Unlike an {@code ImmutableSet<Long>}, which refers to a {@code
+ * Long} object for each element, it keeps the values themselves in a {@code
+ * long[]}, and finds them through a hash table of indexes into that
+ * array, without unboxing. {@link #asArray} and {@link #asList} view the
+ * values in order.
+ *
+ * @see ImmutableIntSet
+ * @see ImmutableLongArray
+ */
+@GwtCompatible
+public final class ImmutableLongSet implements Serializable {
+  private static final ImmutableLongSet EMPTY
+      = new ImmutableLongSet(ImmutableLongArray.of(), new int[1]);
+
+  /**
+   * The most that the hash table is filled. Each slot is an {@code int}, so a
+   * fuller table than {@link ImmutableSet}'s costs fewer bytes per value.
+   */
+  private static final float MAX_LOAD_FACTOR = 0.75f;
+
+  /** Returns the empty set. */
+  public static ImmutableLongSet of() {
+    return EMPTY;
+  }
+
+  /**
+   * Returns a set containing the given values, in order. Repeated values are
+   * ignored.
+   */
+  public static ImmutableLongSet of(long... values) {
+    return copyOf(values);
+  }
+
+  /**
+   * Returns a set containing the given values, in order. Repeated values are
+   * ignored.
+   */
+  public static ImmutableLongSet copyOf(long[] values) {
+    return create(values, 0, values.length);
+  }
+
+  /**
+   * Returns a set containing the given values, in order. Repeated values are
+   * ignored.
+   */
+  public static ImmutableLongSet copyOf(ImmutableLongArray values) {
+    return create(values.array, values.start, values.end);
+  }
+
+  /**
+   * Returns a set containing the given values, in order. Repeated values are
+   * ignored.
+   *
+   * @throws NullPointerException if any of {@code values} is null
+   */
+  public static ImmutableLongSet copyOf(Iterable<Long> values) {
+    int capacity = (values instanceof Collection)
+        ? ((Collection<?>) values).size() : 10;
+    return new Builder(capacity).addAll(values).build();
+  }
+
+  /** Returns a new builder. */
+  public static Builder builder() {
+    return new Builder(10);
+  }
+
+  /**
+   * A builder for {@link ImmutableLongSet} instances. Values already added are
+   * ignored, and the set keeps the order in which values were first added.
+   */
+  public static final class Builder {
+    private final ImmutableLongArray.Builder values;
+
+    Builder(int initialCapacity) {
+      values = ImmutableLongArray.builder(initialCapacity);
+    }
+
+    /** Adds {@code value} to the set. */
+    public Builder add(long value) {
+      values.add(value);
+      return this;
+    }
+
+    /** Adds each of {@code values} to the set. */
+    public Builder addAll(long[] values) {
+      this.values.addAll(values);
+      return this;
+    }
+
+    /**
+     * Adds each of {@code values} to the set.
+     *
+     * @throws NullPointerException if any of {@code values} is null
+     */
+    public Builder addAll(Iterable<Long> values) {
+      this.values.addAll(values);
+      return this;
+    }
+
+    /** Returns a set of the values added so far. */
+    public ImmutableLongSet build() {
+      ImmutableLongArray array = values.build();
+      return create(array.array, array.start, array.end);
+    }
+  }
+
+  /**
+   * Returns a set of {@code values[start]} through {@code values[end - 1]}.
+   * The set doesn't keep {@code values}.
+   */
+  private static ImmutableLongSet create(long[] values, int start, int end) {
+    int count = end - start;
+    if (count == 0) {
+      return EMPTY;
+    }
+    long[] elements = new long[count];
+    int[] table = new int[Hashing.chooseTableSize(count, MAX_LOAD_FACTOR)];
+    int size = 0;
+    for (int i = start; i < end; i++) {
+      long value = values[i];
+      int slot = slotFor(elements, table, value);
+      if (table[slot] == 0) {
+        elements[size] = value;
+        table[slot] = ++size;
+      }
+    }
+    if (size < count) {
+      long[] trimmed = new long[size];
+      System.arraycopy(elements, 0, trimmed, 0, size);
+      elements = trimmed;
+      int tableSize = Hashing.chooseTableSize(size, MAX_LOAD_FACTOR);
+      if (tableSize < table.length) {
+        table = new int[tableSize];
+        for (int i = 0; i < size; i++) {
+          table[slotFor(elements, table, elements[i])] = i + 1;
+        }
+      }
+    }
+    return new ImmutableLongSet(new ImmutableLongArray(elements), table);
+  }
+
+  /**
+   * Returns the slot of {@code table} that refers to {@code value}, or the
+   * empty slot where it belongs if no slot does.
+   */
+  private static int slotFor(long[] elements, int[] table, long value) {
+    int mask = table.length - 1;
+    int hash = Hashing.smear((int) (value ^ (value >>> 32)));
+    for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+      int index = table[slot];
+      if (index == 0 || elements[index - 1] == value) {
+        return slot;
+      }
+    }
+  }
+
+  /** The values, in the order they were first added. */
+  private final transient ImmutableLongArray elements;
+
+  /**
+   * An open-addressed hash table. Each slot is either 0, for an empty slot,
+   * or one more than the index of a value in {@link #elements}.
+   */
+  private final transient int[] table;
+
+  private ImmutableLongSet(ImmutableLongArray elements, int[] table) {
+    this.elements = elements;
+    this.table = table;
+  }
+
+  /** Returns the number of values. */
+  public int size() {
+    return elements.length();
+  }
+
+  /** Returns whether there are no values. */
+  public boolean isEmpty() {
+    return elements.isEmpty();
+  }
+
+  /** Returns whether {@code value} is in the set. */
+  public boolean contains(long value) {
+    return table[slotFor(elements.array, table, value)] != 0;
+  }
+
+  /** Returns the values, in order, as an array. */
+  public ImmutableLongArray asArray() {
+    return elements;
+  }
+
+  /** Returns an immutable list view of the values, in order. */
+  public ImmutableList<Long> asList() {
+    return elements.asList();
+  }
+
+  /** Returns a new {@code long[]} of the values, in order. */
+  public long[] toArray() {
+    return elements.toArray();
+  }
+
+  /**
+   * Returns whether {@code object} is an {@code ImmutableLongSet} with the
+   * same values, in any order.
+   */
+  @Override public boolean equals(@Nullable Object object) {
+    if (object == this) {
+      return true;
+    }
+    if (!(object instanceof ImmutableLongSet)) {
+      return false;
+    }
+    ImmutableLongSet that = (ImmutableLongSet) object;
+    if (size() != that.size()) {
+      return false;
+    }
+    for (long value : elements.array) {
+      if (!that.contains(value)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /** Returns the hash code of a {@code Set<Long>} of the same values. */
+  @Override public int hashCode() {
+    int hashCode = 0;
+    for (long value : elements.array) {
+      hashCode += (int) (value ^ (value >>> 32));
+    }
+    return hashCode;
+  }
+
+  /** Returns the values in the format of {@link #asList}. */
+  @Override public String toString() {
+    return elements.toString();
+  }
+
+  /*
+   * Serializes ImmutableLongSets as their values, and rebuilds the hash table
+   * when deserialized.
+   */
+  private static class SerializedForm implements Serializable {
+    final long[] elements;
+    SerializedForm(long[] elements) {
+      this.elements = elements;
+    }
+    Object readResolve() {
+      return copyOf(elements);
+    }
+    private static final long serialVersionUID = 0;
+  }
+
+  private Object writeReplace() {
+    return new SerializedForm(elements.array);
+  }
+
+  private static final long serialVersionUID = 0;
+}
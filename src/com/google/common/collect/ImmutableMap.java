@@ -17,10 +17,12 @@
 package com.google.common.collect;
 
 import com.google.common.annotations.GwtCompatible;
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.collect.Iterables.getOnlyElement;
 
 import java.io.Serializable;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
@@ -78,7 +80,7 @@ public abstract class ImmutableMap<K, V> implements Map<K, V>, Serializable {
    * @throws IllegalArgumentException if duplicate keys are provided
    */
   public static <K, V> ImmutableMap<K, V> of(K k1, V v1, K k2, V v2) {
-    return new RegularImmutableMap<K, V>(entryOf(k1, v1), entryOf(k2, v2));
+    return new SmallImmutableMap<K, V>(k1, v1, k2, v2);
   }
 
   /**
@@ -88,8 +90,7 @@ public abstract class ImmutableMap<K, V> implements Map<K, V>, Serializable {
    */
   public static <K, V> ImmutableMap<K, V> of(
       K k1, V v1, K k2, V v2, K k3, V v3) {
-    return new RegularImmutableMap<K, V>(
-        entryOf(k1, v1), entryOf(k2, v2), entryOf(k3, v3));
+    return new SmallImmutableMap<K, V>(k1, v1, k2, v2, k3, v3);
   }
 
   /**
@@ -99,8 +100,7 @@ public abstract class ImmutableMap<K, V> implements Map<K, V>, Serializable {
    */
   public static <K, V> ImmutableMap<K, V> of(
       K k1, V v1, K k2, V v2, K k3, V v3, K k4, V v4) {
-    return new RegularImmutableMap<K, V>(
-        entryOf(k1, v1), entryOf(k2, v2), entryOf(k3, v3), entryOf(k4, v4));
+    return new SmallImmutableMap<K, V>(k1, v1, k2, v2, k3, v3, k4, v4);
   }
 
   /**
@@ -110,8 +110,8 @@ public abstract class ImmutableMap<K, V> implements Map<K, V>, Serializable {
    */
   public static <K, V> ImmutableMap<K, V> of(
       K k1, V v1, K k2, V v2, K k3, V v3, K k4, V v4, K k5, V v5) {
-    return new RegularImmutableMap<K, V>(entryOf(k1, v1),
-        entryOf(k2, v2), entryOf(k3, v3), entryOf(k4, v4), entryOf(k5, v5));
+    return new SmallImmutableMap<K, V>(
+        k1, v1, k2, v2, k3, v3, k4, v4, k5, v5);
   }
 
   // looking for of() with > 5 entries? Use the builder instead.
@@ -155,6 +155,8 @@ public abstract class ImmutableMap<K, V> implements Map<K, V>, Serializable {
    */
   public static class Builder<K, V> {
     final List<Entry<K, V>> entries = Lists.newArrayList();
+    boolean perfectHashing;
+    float maxLoadFactor;
 
     /**
      * Creates a new builder. The returned builder is equivalent to the builder
@@ -184,6 +186,70 @@ public abstract class ImmutableMap<K, V> implements Map<K, V>, Serializable {
       return this;
     }
 
+    /**
+     * Makes the built maps look keys up in a minimal perfect hash, rather
+     * than the usual hash table. Such a map stores its keys and values side
+     * by side in one array of exactly twice its size, plus an {@code int} and
+     * about two bytes per entry, in about a quarter of the memory of a map
+     * with a hash table. It finds a key with a single probe, though computing
+     * the slot costs more than hashing into a table.
+     *
+     * <p>Building the perfect hash takes several times as long as building
+     * a hash table, so use this for large maps that are built once and kept
+     * for a long time. Builders of sorted maps ignore this option, and so
+     * do maps of at most eight entries, which keep their keys and values in
+     * one array without any hash table.
+     */
+    public Builder<K, V> perfectHashing() {
+      perfectHashing = true;
+      return this;
+    }
+
+    /**
+     * Makes the built maps size their hash tables to be at most {@code
+     * loadFactor} full, rather than between a quarter and half full. Tables
+     * have a power-of-two size, so a table ends up between half of {@code
+     * loadFactor} and {@code loadFactor} full. Fuller tables take less
+     * memory but need longer probes to find a key; if the hash codes cluster
+     * so much that some probe would pass about twice the base-2 logarithm of
+     * the table size, the table is rebuilt at twice the size, up to the
+     * usual size. This has no effect on maps built with {@link
+     * #perfectHashing}, whose tables have no empty slots, on maps of at most
+     * eight entries, which have no table, or on sorted maps.
+     *
+     * <p>Approximate bytes per entry, not counting keys and values, on a
+     * virtual machine with four-byte references:
+     *
+     * <table>
+     * <tr><th>entries <th>default <th>{@link #compact}
+     *     <th>{@link #perfectHashing}
+     * <tr><td>1,000 <td>53 <td>53 <td>15
+     * <tr><td>10,000 <td>67 <td>48 <td>14
+     * <tr><td>100,000 <td>60 <td>60 <td>14
+     * <tr><td>600,000 <td>70 <td>49 <td>14
+     * <tr><td>1,000,000 <td>53 <td>53 <td>14
+     * <tr><td>any <td>52-76 <td>44-60 <td>14-15
+     * </table>
+     *
+     * @param loadFactor the highest fraction of table slots to fill, greater
+     *     than zero and at most 0.75
+     * @throws IllegalArgumentException if {@code loadFactor} is out of range
+     */
+    public Builder<K, V> maxLoadFactor(float loadFactor) {
+      checkArgument(loadFactor > 0 && loadFactor <= Hashing.MAX_LOAD_FACTOR,
+          "load factor out of range: %s", loadFactor);
+      maxLoadFactor = loadFactor;
+      return this;
+    }
+
+    /**
+     * Makes the built maps use the fullest hash tables allowed, as if by
+     * {@code maxLoadFactor(0.75f)}.
+     */
+    public Builder<K, V> compact() {
+      return maxLoadFactor(Hashing.MAX_LOAD_FACTOR);
+    }
+
     // TODO: Should build() and the ImmutableBiMap & ImmutableSortedMap versions
     // throw an IllegalStateException instead?
 
@@ -193,11 +259,13 @@ public abstract class ImmutableMap<K, V> implements Map<K, V>, Serializable {
      * @throws IllegalArgumentException if duplicate keys were added
      */
     public ImmutableMap<K, V> build() {
-      return fromEntryList(entries);
+      return (perfectHashing && entries.size() > SmallImmutableMap.MAX_SIZE)
+          ? new PerfectHashImmutableMap<K, V>(entries)
+          : fromEntryList(entries, maxLoadFactor);
     }
 
     private static <K, V> ImmutableMap<K, V> fromEntryList(
-        List<Entry<K, V>> entries) {
+        List<Entry<K, V>> entries, float maxLoadFactor) {
       int size = entries.size();
       switch (size) {
         case 0:
@@ -205,9 +273,12 @@ public abstract class ImmutableMap<K, V> implements Map<K, V>, Serializable {
         case 1:
           return new SingletonImmutableMap<K, V>(getOnlyElement(entries));
         default:
+          if (size <= SmallImmutableMap.MAX_SIZE) {
+            return SmallImmutableMap.copyOf(entries);
+          }
           Entry<?, ?>[] entryArray
               = entries.toArray(new Entry<?, ?>[entries.size()]);
-          return new RegularImmutableMap<K, V>(entryArray);
+          return new RegularImmutableMap<K, V>(maxLoadFactor, entryArray);
       }
     }
   }
@@ -241,6 +312,9 @@ public abstract class ImmutableMap<K, V> implements Map<K, V>, Serializable {
         return new SingletonImmutableMap<K, V>(entryOf(
             entries[0].getKey(), entries[0].getValue()));
       default:
+        if (entries.length <= SmallImmutableMap.MAX_SIZE) {
+          return SmallImmutableMap.copyOf(Arrays.asList(entries));
+        }
         for (int i = 0; i < entries.length; i++) {
           K k = entries[i].getKey();
           V v = entries[i].getValue();
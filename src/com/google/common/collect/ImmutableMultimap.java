@@ -135,6 +135,7 @@ public abstract class ImmutableMultimap<K, V>
    */
   public static class Builder<K, V> {
     private final Multimap<K, V> builderMultimap = new BuilderMultimap<K, V>();
+    boolean compressedRows;
 
     /**
      * Creates a new builder. The returned builder is equivalent to the builder
@@ -192,11 +193,35 @@ public abstract class ImmutableMultimap<K, V>
       return this;
     }
 
+    /**
+     * Makes the built multimaps keep their mappings in a compressed sparse
+     * row layout: the distinct keys in one array, with a hash table of {@code
+     * int} indexes into it, the values of all keys in one array, and an
+     * {@code int} offset for each key that says where its values start. The
+     * usual layout keeps a map entry and a collection, with its own array or
+     * hash table, for each key, which for keys with only a few values can
+     * take several times the memory of the values themselves.
+     *
+     * <p>Such a multimap keeps no collection for each key; {@link #get} and
+     * the {@link ImmutableMultimap#asMap} view create a view of the key's
+     * values, without copying them, each time they're called. A list view
+     * shares the values array; a set view of at most eight values finds a
+     * value by scanning them, and a key with more values keeps a hashed set
+     * of them as well. Use this for large multimaps with few values per key
+     * that are kept for a long time.
+     */
+    public Builder<K, V> compressedRows() {
+      compressedRows = true;
+      return this;
+    }
+
     /**
      * Returns a newly-created immutable multimap.
      */
     public ImmutableMultimap<K, V> build() {
-      return copyOf(builderMultimap);
+      return compressedRows
+          ? ImmutableListMultimap.compressedCopyOf(builderMultimap)
+          : copyOf(builderMultimap);
     }
   }
 
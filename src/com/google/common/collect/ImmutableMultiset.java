@@ -26,7 +26,7 @@ import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.util.Arrays;
 import java.util.Iterator;
-import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
 
 import javax.annotation.Nullable;
@@ -39,6 +39,10 @@ import javax.annotation.Nullable;
  * multiset contains multiple instances of an element, those instances are
  * consecutive in the iteration order.
  *
+ * <p>The distinct elements are kept in one array, found through a hash table
+ * of {@code int} indexes into it, and their counts in an {@code int[]} beside
+ * it, so neither counts nor entries are kept as objects.
+ *
  * @author Jared Levy
  */
 @GwtCompatible(serializable = true)
@@ -104,15 +108,17 @@ public class ImmutableMultiset<E> extends ImmutableCollection<E>
 
   private static <E> ImmutableMultiset<E> copyOfInternal(
       Multiset<? extends E> multiset) {
+    Set<? extends Entry<? extends E>> entries = multiset.entrySet();
+    Object[] elements = new Object[entries.size()];
+    int[] counts = new int[elements.length];
+    int distinct = 0;
     long size = 0;
-    ImmutableMap.Builder<E, Integer> builder = ImmutableMap.builder();
 
-    for (Entry<? extends E> entry : multiset.entrySet()) {
+    for (Entry<? extends E> entry : entries) {
       int count = entry.getCount();
       if (count > 0) {
-        // Since ImmutableMap.Builder throws an NPE if an element is null, no
-        // other null checks are needed.
-        builder.put(entry.getElement(), count);
+        elements[distinct] = checkNotNull(entry.getElement());
+        counts[distinct++] = count;
         size += count;
       }
     }
@@ -120,8 +126,16 @@ public class ImmutableMultiset<E> extends ImmutableCollection<E>
     if (size == 0) {
       return of();
     }
+    if (distinct < elements.length) {
+      Object[] trimmedElements = new Object[distinct];
+      System.arraycopy(elements, 0, trimmedElements, 0, distinct);
+      int[] trimmedCounts = new int[distinct];
+      System.arraycopy(counts, 0, trimmedCounts, 0, distinct);
+      elements = trimmedElements;
+      counts = trimmedCounts;
+    }
     return new ImmutableMultiset<E>(
-        builder.build(), (int) Math.min(size, Integer.MAX_VALUE));
+        elements, counts, (int) Math.min(size, Integer.MAX_VALUE));
   }
 
   /**
@@ -141,7 +155,18 @@ public class ImmutableMultiset<E> extends ImmutableCollection<E>
     return copyOfInternal(multiset);
   }
 
-  private final transient ImmutableMap<E, Integer> map;
+  // the distinct elements, in the order of their first occurrence
+  private final transient Object[] elements;
+
+  // the count of each element of elements, at the same index
+  private final transient int[] counts;
+
+  /*
+   * An open-addressed hash table. Each slot is either 0, for an empty slot, or
+   * one more than the index of an element in elements.
+   */
+  private final transient int[] table;
+
   private final transient int size;
 
   // These constants allow the deserialization code to set final fields. This
@@ -150,42 +175,100 @@ public class ImmutableMultiset<E> extends ImmutableCollection<E>
   @SuppressWarnings("unchecked")
   // eclipse doesn't like the raw types here, but they're harmless
   private static class FieldSettersHolder {
-    static final FieldSetter<ImmutableMultiset> MAP_FIELD_SETTER
-        = Serialization.getFieldSetter(ImmutableMultiset.class, "map");
+    static final FieldSetter<ImmutableMultiset> ELEMENTS_FIELD_SETTER
+        = Serialization.getFieldSetter(ImmutableMultiset.class, "elements");
+    static final FieldSetter<ImmutableMultiset> COUNTS_FIELD_SETTER
+        = Serialization.getFieldSetter(ImmutableMultiset.class, "counts");
+    static final FieldSetter<ImmutableMultiset> TABLE_FIELD_SETTER
+        = Serialization.getFieldSetter(ImmutableMultiset.class, "table");
     static final FieldSetter<ImmutableMultiset> SIZE_FIELD_SETTER
         = Serialization.getFieldSetter(ImmutableMultiset.class, "size");
   }
 
-  ImmutableMultiset(ImmutableMap<E, Integer> map, int size) {
-    this.map = map;
+  /**
+   * Creates a multiset of the given distinct elements, each with the count at
+   * the same index of {@code counts}, and keeps both arrays.
+   *
+   * @throws IllegalArgumentException if any two elements are equal
+   */
+  ImmutableMultiset(Object[] elements, int[] counts, int size) {
+    this.elements = elements;
+    this.counts = counts;
+    this.table = createTable(elements);
     this.size = size;
   }
 
+  /**
+   * Returns a hash table of the indexes of {@code elements}.
+   *
+   * @throws IllegalArgumentException if any two elements are equal
+   */
+  private static int[] createTable(Object[] elements) {
+    if (elements.length == 0) {
+      return new int[1];
+    }
+    int[] table = new int[Hashing.chooseTableSize(
+        elements.length, Hashing.MAX_LOAD_FACTOR)];
+    for (int i = 0; i < elements.length; i++) {
+      int slot = slotFor(elements, table, elements[i]);
+      if (table[slot] != 0) {
+        throw new IllegalArgumentException(
+            "duplicate element: " + elements[i]);
+      }
+      table[slot] = i + 1;
+    }
+    return table;
+  }
+
+  /**
+   * Returns the slot of {@code table} that refers to {@code element}, or the
+   * empty slot where it belongs if no slot does.
+   */
+  private static int slotFor(Object[] elements, int[] table, Object element) {
+    int mask = table.length - 1;
+    for (int slot = Hashing.smear(element.hashCode()) & mask; ;
+        slot = (slot + 1) & mask) {
+      int index = table[slot];
+      if (index == 0 || elements[index - 1].equals(element)) {
+        return slot;
+      }
+    }
+  }
+
+  /** Returns the index of {@code element} in {@link #elements}, or -1. */
+  private int indexOf(@Nullable Object element) {
+    return (element == null)
+        ? -1 : table[slotFor(elements, table, element)] - 1;
+  }
+
+  @SuppressWarnings("unchecked") // we store only E's in elements
+  private E elementAt(int index) {
+    return (E) elements[index];
+  }
+
   public int count(@Nullable Object element) {
-    Integer value = map.get(element);
-    return (value == null) ? 0 : value;
+    int index = indexOf(element);
+    return (index == -1) ? 0 : counts[index];
   }
 
   @Override public UnmodifiableIterator<E> iterator() {
-    final Iterator<Map.Entry<E, Integer>> mapIterator
-        = map.entrySet().iterator();
-
     return new UnmodifiableIterator<E>() {
+      int index = -1;
       int remaining;
-      E element;
 
       public boolean hasNext() {
-        return (remaining > 0) || mapIterator.hasNext();
+        return (remaining > 0) || (index + 1 < elements.length);
       }
 
       public E next() {
         if (remaining <= 0) {
-          Map.Entry<E, Integer> entry = mapIterator.next();
-          element = entry.getKey();
-          remaining = entry.getValue();
+          if (index + 1 >= elements.length) {
+            throw new NoSuchElementException();
+          }
+          remaining = counts[++index];
         }
         remaining--;
-        return element;
+        return elementAt(index);
       }
     };
   }
@@ -195,7 +278,7 @@ public class ImmutableMultiset<E> extends ImmutableCollection<E>
   }
 
   @Override public boolean contains(@Nullable Object element) {
-    return map.containsKey(element);
+    return indexOf(element) != -1;
   }
 
   /**
@@ -255,7 +338,11 @@ public class ImmutableMultiset<E> extends ImmutableCollection<E>
 
   @Override public int hashCode() {
     // could cache this, but not considered worthwhile to do so
-    return map.hashCode();
+    int hashCode = 0;
+    for (int i = 0; i < elements.length; i++) {
+      hashCode += elements[i].hashCode() ^ counts[i];
+    }
+    return hashCode;
   }
 
   @Override public String toString() {
@@ -266,12 +353,45 @@ public class ImmutableMultiset<E> extends ImmutableCollection<E>
   // deserialization should call multiset.elementSet(). Then
   // reserialized(multiset).elementSet() == reserialized(multiset.elementSet())
   // Currently, those object references differ.
+  private transient ImmutableSet<E> elementSet;
+
   public Set<E> elementSet() {
-    return map.keySet();
+    ImmutableSet<E> es = elementSet;
+    return (es == null) ? (elementSet = new ElementSet<E>(this)) : es;
+  }
+
+  private static class ElementSet<E> extends ImmutableSet<E> {
+    final ImmutableMultiset<E> multiset;
+
+    ElementSet(ImmutableMultiset<E> multiset) {
+      this.multiset = multiset;
+    }
+
+    @Override public UnmodifiableIterator<E> iterator() {
+      return new AbstractIndexedIterator<E>(multiset.elements.length) {
+        @Override E get(int index) {
+          return multiset.elementAt(index);
+        }
+      };
+    }
+
+    public int size() {
+      return multiset.elements.length;
+    }
+
+    @Override public boolean contains(@Nullable Object target) {
+      return multiset.contains(target);
+    }
+
+    private static final long serialVersionUID = 0;
   }
 
   private transient ImmutableSet<Entry<E>> entrySet;
 
+  /**
+   * Returns a view of the elements and their counts. Its entries are created
+   * as it's iterated; the multiset itself keeps no entry objects.
+   */
   public Set<Entry<E>> entrySet() {
     ImmutableSet<Entry<E>> es = entrySet;
     return (es == null) ? (entrySet = new EntrySet<E>(this)) : es;
@@ -285,22 +405,16 @@ public class ImmutableMultiset<E> extends ImmutableCollection<E>
     }
 
     @Override public UnmodifiableIterator<Entry<E>> iterator() {
-      final Iterator<Map.Entry<E, Integer>> mapIterator
-          = multiset.map.entrySet().iterator();
-      return new UnmodifiableIterator<Entry<E>>() {
-        public boolean hasNext() {
-          return mapIterator.hasNext();
-        }
-        public Entry<E> next() {
-          Map.Entry<E, Integer> mapEntry = mapIterator.next();
-          return
-              Multisets.immutableEntry(mapEntry.getKey(), mapEntry.getValue());
+      return new AbstractIndexedIterator<Entry<E>>(multiset.elements.length) {
+        @Override Entry<E> get(int index) {
+          return Multisets.immutableEntry(
+              multiset.elementAt(index), multiset.counts[index]);
         }
       };
     }
 
     public int size() {
-      return multiset.map.size();
+      return multiset.elements.length;
     }
 
     @Override public boolean contains(Object o) {
@@ -316,7 +430,7 @@ public class ImmutableMultiset<E> extends ImmutableCollection<E>
     }
 
     @Override public int hashCode() {
-      return multiset.map.hashCode();
+      return multiset.hashCode();
     }
 
     @Override Object writeReplace() {
@@ -339,20 +453,37 @@ public class ImmutableMultiset<E> extends ImmutableCollection<E>
       throws IOException, ClassNotFoundException {
     stream.defaultReadObject();
     int entryCount = stream.readInt();
-    ImmutableMap.Builder<E, Integer> builder = ImmutableMap.builder();
+    if (entryCount < 0) {
+      throw new InvalidObjectException("Invalid entry count " + entryCount);
+    }
+    Object[] tmpElements = new Object[entryCount];
+    int[] tmpCounts = new int[entryCount];
     long tmpSize = 0;
     for (int i = 0; i < entryCount; i++) {
-      @SuppressWarnings("unchecked") // reading data stored by writeMultiset
-      E element = (E) stream.readObject();
+      Object element = stream.readObject();
+      if (element == null) {
+        throw new InvalidObjectException("Null element");
+      }
       int count = stream.readInt();
       if (count <= 0) {
         throw new InvalidObjectException("Invalid count " + count);
       }
-      builder.put(element, count);
+      tmpElements[i] = element;
+      tmpCounts[i] = count;
       tmpSize += count;
     }
 
-    FieldSettersHolder.MAP_FIELD_SETTER.set(this, builder.build());
+    int[] tmpTable;
+    try {
+      tmpTable = createTable(tmpElements);
+    } catch (IllegalArgumentException e) {
+      throw (InvalidObjectException)
+          new InvalidObjectException(e.getMessage()).initCause(e);
+    }
+
+    FieldSettersHolder.ELEMENTS_FIELD_SETTER.set(this, tmpElements);
+    FieldSettersHolder.COUNTS_FIELD_SETTER.set(this, tmpCounts);
+    FieldSettersHolder.TABLE_FIELD_SETTER.set(this, tmpTable);
     FieldSettersHolder.SIZE_FIELD_SETTER.set(
         this, (int) Math.min(tmpSize, Integer.MAX_VALUE));
   }
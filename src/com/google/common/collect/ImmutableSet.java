@@ -17,6 +17,7 @@
 package com.google.common.collect;
 
 import com.google.common.annotations.GwtCompatible;
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 
 import java.io.Serializable;
@@ -248,42 +249,92 @@ public abstract class ImmutableSet<E> extends ImmutableCollection<E>
 
   private static <E> ImmutableSet<E> create(
       Iterable<? extends E> iterable, int count) {
+    return create(iterable, count, 0);
+  }
+
+  private static <E> ImmutableSet<E> create(
+      Iterable<? extends E> iterable, int count, float maxLoadFactor) {
     // count is always the (nonzero) number of elements in the iterable
-    int tableSize = Hashing.chooseTableSize(count);
+    if (count <= SmallImmutableSet.MAX_SIZE) {
+      return createSmall(iterable, count);
+    }
+    int tableSize = Hashing.chooseTableSize(count, maxLoadFactor);
     Object[] table = new Object[tableSize];
+    int[] hashes = new int[tableSize];
     int mask = tableSize - 1;
 
     List<E> elements = new ArrayList<E>(count);
     int hashCode = 0;
+    int longestDistance = 0;
 
     for (E element : iterable) {
       checkNotNull(element); // for GWT
       int hash = element.hashCode();
-      for (int i = Hashing.smear(hash); true; i++) {
-        int index = i & mask;
-        Object value = table[index];
-        if (value == null) {
-          // Came to an empty bucket. Put the element here.
-          table[index] = element;
-          elements.add(element);
-          hashCode += hash;
-          break;
-        } else if (value.equals(element)) {
-          break; // Found a duplicate. Nothing to do.
-        }
-      }
+      int distance = RegularImmutableSet.insert(
+          table, hashes, mask, element, Hashing.smear(hash));
+      if (distance >= 0) {
+        elements.add(element);
+        hashCode += hash;
+        longestDistance = Math.max(longestDistance, distance);
+      } // else it's a duplicate; nothing to do.
     }
 
     if (elements.size() == 1) {
       // The iterable contained only duplicates of the same element.
       return new SingletonImmutableSet<E>(elements.get(0), hashCode); 
-    } else if (tableSize > Hashing.chooseTableSize(elements.size())) {
-      // Resize the table when the iterable includes too many duplicates.
-      return create(elements, elements.size()); 
+    } else if (elements.size() <= SmallImmutableSet.MAX_SIZE || tableSize
+        > Hashing.chooseTableSize(elements.size(), maxLoadFactor)) {
+      // Resize the table when the iterable includes too many duplicates, and
+      // keep a RegularImmutableSet larger than any SmallImmutableSet.
+      return create(elements, elements.size(), maxLoadFactor); 
+    } else if (longestDistance > Hashing.maxProbeDistance(tableSize)
+        && tableSize < Hashing.chooseTableSize(elements.size())) {
+      // The hash codes cluster too much for a table this full; halving the
+      // load factor doubles the table.
+      return create(elements, elements.size(), maxLoadFactor / 2);
     } else {
       return new RegularImmutableSet<E>(
-          elements.toArray(), hashCode, table, mask);
+          elements.toArray(), hashCode, table, hashes, mask);
+    }
+  }
+
+  /**
+   * Creates a set of at most {@link SmallImmutableSet#MAX_SIZE} elements,
+   * which needs no hash table.
+   */
+  private static <E> ImmutableSet<E> createSmall(
+      Iterable<? extends E> iterable, int count) {
+    Object[] elements = new Object[count];
+    int[] hashes = new int[count];
+    int size = 0;
+    int hashCode = 0;
+
+    for (E element : iterable) {
+      checkNotNull(element); // for GWT
+      int hash = element.hashCode();
+      if (SmallImmutableSet.indexOf(elements, hashes, size, element, hash)
+          == -1) {
+        elements[size] = element;
+        hashes[size] = hash;
+        size++;
+        hashCode += hash;
+      } // else it's a duplicate; nothing to do.
+    }
+
+    if (size == 1) {
+      // The iterable contained only duplicates of the same element.
+      @SuppressWarnings("unchecked") // we put only E's into the array
+      E element = (E) elements[0];
+      return new SingletonImmutableSet<E>(element, hashCode);
+    } else if (size < count) {
+      Object[] trimmedElements = new Object[size];
+      System.arraycopy(elements, 0, trimmedElements, 0, size);
+      int[] trimmedHashes = new int[size];
+      System.arraycopy(hashes, 0, trimmedHashes, 0, size);
+      elements = trimmedElements;
+      hashes = trimmedHashes;
     }
+    return new SmallImmutableSet<E>(elements, hashes, hashCode);
   }
 
   abstract static class ArrayImmutableSet<E> extends ImmutableSet<E> {
@@ -456,6 +507,8 @@ public abstract class ImmutableSet<E> extends ImmutableCollection<E>
   public static class Builder<E> extends ImmutableCollection.Builder<E> {
     // accessed directly by ImmutableSortedSet
     final ArrayList<E> contents = Lists.newArrayList();
+    boolean perfectHashing;
+    float maxLoadFactor;
 
     /**
      * Creates a new builder. The returned builder is equivalent to the builder
@@ -525,12 +578,81 @@ public abstract class ImmutableSet<E> extends ImmutableCollection<E>
       return this;
     }
 
+    /**
+     * Makes the built sets look elements up in a minimal perfect hash,
+     * rather than the usual hash table. Such a set stores its elements in an
+     * array of exactly its size, plus an {@code int} and about two bytes per
+     * element, in about a third of the memory of a set with a hash table. It
+     * finds an element with a single probe, though computing the slot costs
+     * more than hashing into a table.
+     *
+     * <p>Building the perfect hash takes several times as long as building
+     * a hash table, so use this for large sets that are built once and kept
+     * for a long time. Builders of sorted sets ignore this option, and so
+     * do sets of at most eight elements, which keep their elements in one
+     * array without any hash table.
+     */
+    public Builder<E> perfectHashing() {
+      perfectHashing = true;
+      return this;
+    }
+
+    /**
+     * Makes the built sets size their hash tables to be at most {@code
+     * loadFactor} full, rather than between a quarter and half full. Tables
+     * have a power-of-two size, so a table ends up between half of {@code
+     * loadFactor} and {@code loadFactor} full. Fuller tables take less
+     * memory but need longer probes to find an element; if the hash codes
+     * cluster so much that some probe would pass about twice the base-2
+     * logarithm of the table size, the table is rebuilt at twice the size,
+     * up to the usual size. This has no effect on sets built with {@link
+     * #perfectHashing}, whose tables have no empty slots, on sets of at most
+     * eight elements, which have no table, or on sorted sets.
+     *
+     * <p>Approximate bytes per element, not counting the elements, on a
+     * virtual machine with four-byte references:
+     *
+     * <table>
+     * <tr><th>elements <th>default <th>{@link #compact}
+     *     <th>{@link #perfectHashing}
+     * <tr><td>1,000 <td>20 <td>20 <td>11
+     * <tr><td>10,000 <td>30 <td>17 <td>10
+     * <tr><td>100,000 <td>25 <td>25 <td>10
+     * <tr><td>600,000 <td>32 <td>18 <td>10
+     * <tr><td>1,000,000 <td>21 <td>21 <td>10
+     * <tr><td>any <td>20-36 <td>15-25 <td>10-11
+     * </table>
+     *
+     * @param loadFactor the highest fraction of table slots to fill, greater
+     *     than zero and at most 0.75
+     * @throws IllegalArgumentException if {@code loadFactor} is out of range
+     */
+    public Builder<E> maxLoadFactor(float loadFactor) {
+      checkArgument(loadFactor > 0 && loadFactor <= Hashing.MAX_LOAD_FACTOR,
+          "load factor out of range: %s", loadFactor);
+      maxLoadFactor = loadFactor;
+      return this;
+    }
+
+    /**
+     * Makes the built sets use the fullest hash tables allowed, as if by
+     * {@code maxLoadFactor(0.75f)}.
+     */
+    public Builder<E> compact() {
+      return maxLoadFactor(Hashing.MAX_LOAD_FACTOR);
+    }
+
     /**
      * Returns a newly-created {@code ImmutableSet} based on the contents of
      * the {@code Builder}.
      */
     @Override public ImmutableSet<E> build() {
-      return copyOf(contents);
+      if (contents.size() < 2) {
+        return copyOf(contents);
+      }
+      return (perfectHashing && contents.size() > SmallImmutableSet.MAX_SIZE)
+          ? PerfectHashImmutableSet.<E>create(contents.toArray())
+          : ImmutableSet.<E>create(contents, contents.size(), maxLoadFactor);
     }
   }
 }
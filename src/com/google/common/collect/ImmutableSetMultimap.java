@@ -227,11 +227,18 @@ public class ImmutableSetMultimap<K, V>
       return this;
     }
 
+    @Override public Builder<K, V> compressedRows() {
+      super.compressedRows();
+      return this;
+    }
+
     /**
      * Returns a newly-created immutable set multimap.
      */
     @Override public ImmutableSetMultimap<K, V> build() {
-      return copyOf(builderMultimap);
+      return compressedRows
+          ? compressedCopyOf(builderMultimap)
+          : copyOf(builderMultimap);
     }
   }
 
@@ -279,6 +286,24 @@ public class ImmutableSetMultimap<K, V>
     return new ImmutableSetMultimap<K, V>(builder.build(), size);
   }
 
+  /**
+   * Returns an immutable set multimap of the mappings of {@code multimap}, in
+   * the layout described by {@link Builder#compressedRows}. Repeated
+   * occurrences of an entry in the multimap after the first are ignored.
+   *
+   * @throws NullPointerException if any key or value in {@code multimap} is
+   *     null
+   */
+  static <K, V> ImmutableSetMultimap<K, V> compressedCopyOf(
+      Multimap<? extends K, ? extends V> multimap) {
+    if (multimap.isEmpty()) {
+      return of();
+    }
+    CompressedRowImmutableMap.SetRows<K, V> map
+        = CompressedRowImmutableMap.SetRows.copyOf(multimap);
+    return new ImmutableSetMultimap<K, V>(map, map.values.length);
+  }
+
   ImmutableSetMultimap(ImmutableMap<K, ImmutableSet<V>> map, int size) {
     super(map, size);
   }
@@ -331,6 +356,16 @@ public class ImmutableSetMultimap<K, V>
         : result;
   }
 
+  /**
+   * Serializes multimaps in the compressed row layout as their arrays, so
+   * that they have that layout when deserialized.
+   */
+  private Object writeReplace() {
+    return (map instanceof CompressedRowImmutableMap)
+        ? ((CompressedRowImmutableMap<?, ?>) map).multimapForm()
+        : this;
+  }
+
   /**
    * @serialData number of distinct keys, and then for each distinct key: the
    *     key, the number of values for that key, and the key's values
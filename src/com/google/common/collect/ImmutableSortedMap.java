@@ -322,6 +322,7 @@ public class ImmutableSortedMap<K, V>
    */
   public static final class Builder<K, V> extends ImmutableMap.Builder<K, V> {
     private final Comparator<? super K> comparator;
+    private boolean eytzingerLayout;
 
     /**
      * Creates a new builder. The returned builder is equivalent to the builder
@@ -355,6 +356,27 @@ public class ImmutableSortedMap<K, V>
       return this;
     }
 
+    /**
+     * Makes the built maps search for keys in an array of just the keys, laid
+     * out as an implicit binary search tree in breadth-first order, rather
+     * than by a binary search of the sorted entries. A search then reads no
+     * entries until it has found its key, its first steps read the same few
+     * cache lines, and each later step reads next to where the one before it
+     * did, so {@code get} and the bounds of {@code headMap}, {@code tailMap}
+     * and {@code subMap} take far fewer cache misses on large maps. Iteration
+     * is unchanged, and the {@code keySet()} of a built map shares the array.
+     *
+     * <p>The array costs one reference and one {@code int} per entry, so use
+     * this for large maps that are searched often. A search always takes
+     * about log<sub>2</sub>(size) + 1 comparisons, where a binary search may
+     * stop early on a match; with a slow comparator, that can outweigh the
+     * saved cache misses.
+     */
+    public Builder<K, V> eytzingerLayout() {
+      eytzingerLayout = true;
+      return this;
+    }
+
     /**
      * Returns a newly-created immutable sorted map.
      *
@@ -366,7 +388,11 @@ public class ImmutableSortedMap<K, V>
           = entries.toArray(new Entry<?, ?>[entries.size()]);
       sortEntries(entryArray, comparator);
       validateEntries(entryArray, comparator);
-      return new ImmutableSortedMap<K, V>(entryArray, comparator);
+      EytzingerIndex index = (eytzingerLayout && entryArray.length > 0)
+          ? EytzingerIndex.forEntries(entryArray, comparator)
+          : null;
+      return new ImmutableSortedMap<K, V>(
+          entryArray, comparator, 0, entryArray.length, index);
     }
   }
 
@@ -374,9 +400,15 @@ public class ImmutableSortedMap<K, V>
   private final transient Comparator<? super K> comparator;
   private final transient int fromIndex;
   private final transient int toIndex;
+  /**
+   * An index over the keys of all of {@link #entries} that searches use in
+   * place of a binary search, or null if the map was built without one.
+   */
+  @Nullable private final transient EytzingerIndex index;
 
   private ImmutableSortedMap(Entry<?, ?>[] entries,
-      Comparator<? super K> comparator, int fromIndex, int toIndex) {
+      Comparator<? super K> comparator, int fromIndex, int toIndex,
+      @Nullable EytzingerIndex index) {
     // each of the callers carefully put only Entry<K, V>s into the array!
     @SuppressWarnings("unchecked")
     Entry<K, V>[] tmp = (Entry<K, V>[]) entries;
@@ -384,11 +416,12 @@ public class ImmutableSortedMap<K, V>
     this.comparator = comparator;
     this.fromIndex = fromIndex;
     this.toIndex = toIndex;
+    this.index = index;
   }
 
   ImmutableSortedMap(Entry<?, ?>[] entries,
       Comparator<? super K> comparator) {
-    this(entries, comparator, 0, entries.length);
+    this(entries, comparator, 0, entries.length, null);
   }
 
   public int size() {
@@ -409,6 +442,9 @@ public class ImmutableSortedMap<K, V>
   }
 
   private int binarySearch(Object key) {
+    if (index != null) {
+      return index.binarySearch(key, fromIndex, toIndex);
+    }
     int lower = fromIndex;
     int upper = toIndex - 1;
 
@@ -517,7 +553,10 @@ public class ImmutableSortedMap<K, V>
     for (int i = fromIndex; i < toIndex; i++) {
       array[i - fromIndex] = entries[i].getKey();
     }
-    return new RegularImmutableSortedSet<K>(array, comparator);
+    // The index only fits a key array that holds all of the entries' keys.
+    return (index != null && fromIndex == 0 && toIndex == entries.length)
+        ? new RegularImmutableSortedSet<K>(array, comparator, index)
+        : new RegularImmutableSortedSet<K>(array, comparator);
   }
 
   private transient ImmutableCollection<V> values;
@@ -659,7 +698,7 @@ public class ImmutableSortedMap<K, V>
       int newFromIndex, int newToIndex) {
     if (newFromIndex < newToIndex) {
       return new ImmutableSortedMap<K, V>(entries, comparator,
-          newFromIndex, newToIndex);
+          newFromIndex, newToIndex, index);
     } else {
       return emptyMap(comparator);
     }
@@ -293,7 +293,7 @@ public abstract class ImmutableSortedSet<E>
     // Unsafe, see ImmutableSortedSetFauxverideShim.
     @SuppressWarnings("unchecked")
     Ordering<E> naturalOrder = (Ordering) Ordering.<Comparable>natural();
-    return copyOfInternal(naturalOrder, elements);
+    return copyOfInternal(naturalOrder, elements, false);
   }
 
   /**
@@ -326,7 +326,7 @@ public abstract class ImmutableSortedSet<E>
   public static <E> ImmutableSortedSet<E> copyOf(
       Comparator<? super E> comparator, Iterator<? extends E> elements) {
     checkNotNull(comparator);
-    return copyOfInternal(comparator, elements);
+    return copyOfInternal(comparator, elements, false);
   }
 
   /**
@@ -387,7 +387,8 @@ public abstract class ImmutableSortedSet<E>
   }
 
   private static <E> ImmutableSortedSet<E> copyOfInternal(
-      Comparator<? super E> comparator, Iterator<? extends E> elements) {
+      Comparator<? super E> comparator, Iterator<? extends E> elements,
+      boolean eytzingerLayout) {
     if (!elements.hasNext()) {
       return emptySet(comparator);
     }
@@ -398,7 +399,8 @@ public abstract class ImmutableSortedSet<E>
     Object[] array = list.toArray();
     sort(array, comparator);
     array = removeDupes(array, comparator);
-    return new RegularImmutableSortedSet<E>(array, comparator);
+    return new RegularImmutableSortedSet<E>(array, comparator,
+        eytzingerLayout ? EytzingerIndex.create(array, comparator) : null);
   }
 
   /**
@@ -480,6 +482,7 @@ public abstract class ImmutableSortedSet<E>
    */
   public static final class Builder<E> extends ImmutableSet.Builder<E> {
     private final Comparator<? super E> comparator;
+    private boolean eytzingerLayout;
 
     /**
      * Creates a new builder. The returned builder is equivalent to the builder
@@ -543,12 +546,32 @@ public abstract class ImmutableSortedSet<E>
       return this;
     }
 
+    /**
+     * Makes the built sets search for elements in a copy of their elements
+     * laid out as an implicit binary search tree in breadth-first order,
+     * rather than by a binary search of the sorted elements. The first steps
+     * of every search then read the same few cache lines, and each later step
+     * reads next to where the one before it did, so {@code contains} and the
+     * bounds of {@code headSet}, {@code tailSet} and {@code subSet} take far
+     * fewer cache misses on large sets. Iteration is unchanged.
+     *
+     * <p>The copy costs one reference and one {@code int} per element, so use
+     * this for large sets that are searched often. A search always takes
+     * about log<sub>2</sub>(size) + 1 comparisons, where a binary search may
+     * stop early on a match; with a slow comparator, that can outweigh the
+     * saved cache misses.
+     */
+    public Builder<E> eytzingerLayout() {
+      eytzingerLayout = true;
+      return this;
+    }
+
     /**
      * Returns a newly-created {@code ImmutableSortedSet} based on the contents
      * of the {@code Builder} and its comparator.
      */
     @Override public ImmutableSortedSet<E> build() {
-      return copyOfInternal(comparator, contents.iterator());
+      return copyOfInternal(comparator, contents.iterator(), eytzingerLayout);
     }
   }
 
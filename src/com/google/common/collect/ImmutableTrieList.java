@@ -0,0 +1,486 @@
+/*
+ * Copyright (C) 2009 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.collect;
+
+import static com.google.common.base.Preconditions.checkElementIndex;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkPositionIndex;
+import static com.google.common.base.Preconditions.checkPositionIndexes;
+
+import com.google.common.annotations.GwtCompatible;
+
+import java.io.Serializable;
+import java.util.Iterator;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.NoSuchElementException;
+
+import javax.annotation.Nullable;
+
+/**
+ * An immutable list that can make a modified copy of itself cheaply. Does not
+ * permit null elements.
+ *
+ * <p>{@link #append} returns a new list with one more element, in constant
+ * amortized time, and {@link #with} returns a new list with one element
+ * replaced, in time proportional to the logarithm of the list's size. Both
+ * share all the rest of their structure with this list, which doesn't change.
+ * That makes this class suited to a series of versions of a list, such as
+ * snapshots of a history that only grows, where copying an {@link
+ * ImmutableList} on every change would take time and garbage proportional to
+ * its size. {@link #appendAll} takes time proportional to the number of
+ * elements appended, and {@link #subList} takes constant time and shares the
+ * structure of this list.
+ *
+ * <p>The list is a trie of arrays of 32 elements or children: each level of
+ * the trie picks a child with five bits of an element's index. The last
+ * elements, up to 32 of them, are kept apart from the trie in an array of
+ * their own, so that most appends copy only that array. Finding an element
+ * takes at most about log<sub>32</sub>(size) steps.
+ */
+@GwtCompatible(serializable = true)
+@SuppressWarnings("serial") // uses writeReplace(), not default serialization
+public final class ImmutableTrieList<E> extends ImmutableList<E> {
+
+  private static final ImmutableTrieList<Object> EMPTY
+      = new ImmutableTrieList<Object>(0, 0, 5, null, new Object[0], 0);
+
+  /** Returns the empty list. */
+  // Casting to any type is safe because the list will never hold any elements.
+  @SuppressWarnings("unchecked")
+  public static <E> ImmutableTrieList<E> of() {
+    return (ImmutableTrieList<E>) EMPTY;
+  }
+
+  /**
+   * Returns a list containing the given elements, in order. If {@code
+   * elements} is an {@code ImmutableTrieList}, it is returned instead of a
+   * copy.
+   *
+   * @throws NullPointerException if any of {@code elements} is null
+   */
+  public static <E> ImmutableTrieList<E> copyOf(
+      Iterable<? extends E> elements) {
+    if (elements instanceof ImmutableTrieList) {
+      @SuppressWarnings("unchecked") // all supported methods are covariant
+      ImmutableTrieList<E> list = (ImmutableTrieList<E>) elements;
+      return list;
+    }
+    return ImmutableTrieList.<E>of().appendAll(elements.iterator());
+  }
+
+  /**
+   * Returns a list containing the given elements, in order.
+   *
+   * @throws NullPointerException if any of {@code elements} is null
+   */
+  public static <E> ImmutableTrieList<E> copyOf(
+      Iterator<? extends E> elements) {
+    return ImmutableTrieList.<E>of().appendAll(elements);
+  }
+
+  /*
+   * The elements are at positions offset through offset + size - 1 of the
+   * trie. Positions from tailStart on are in the tail, and those before it
+   * under the root, whose children are picked by the bits of a position
+   * starting at shift. A list made by subList may hold positions outside its
+   * range, which it never reads. The tail has no unused slots, and tailStart
+   * is the multiple of 32 just below the end, so that the tail holds 1 to 32
+   * elements, except in the empty list.
+   */
+  private final transient int offset;
+  private final transient int size;
+  private final transient int shift;
+  @Nullable private final transient Object[] root;
+  private final transient Object[] tail;
+  private final transient int tailStart;
+
+  private ImmutableTrieList(int offset, int size, int shift,
+      @Nullable Object[] root, Object[] tail, int tailStart) {
+    this.offset = offset;
+    this.size = size;
+    this.shift = shift;
+    this.root = root;
+    this.tail = tail;
+    this.tailStart = tailStart;
+  }
+
+  /**
+   * Returns a list with the elements of this list followed by {@code
+   * element}.
+   *
+   * @throws NullPointerException if {@code element} is null
+   */
+  public ImmutableTrieList<E> append(E element) {
+    checkNotNull(element);
+    if (tail.length < 32) {
+      Object[] newTail = new Object[tail.length + 1];
+      System.arraycopy(tail, 0, newTail, 0, tail.length);
+      newTail[tail.length] = element;
+      return new ImmutableTrieList<E>(
+          offset, size + 1, shift, root, newTail, tailStart);
+    }
+    int newShift = shiftFor(shift, tailStart);
+    Object[] newRoot = pushLeaf(
+        grow(root, shift, newShift), newShift, tailStart, tail);
+    return new ImmutableTrieList<E>(offset, size + 1, newShift, newRoot,
+        new Object[] { element }, tailStart + 32);
+  }
+
+  /**
+   * Returns a list with the elements of this list followed by {@code
+   * elements}, in order.
+   *
+   * @throws NullPointerException if any of {@code elements} is null
+   */
+  public ImmutableTrieList<E> appendAll(Iterable<? extends E> elements) {
+    return appendAll(elements.iterator());
+  }
+
+  private ImmutableTrieList<E> appendAll(Iterator<? extends E> elements) {
+    if (!elements.hasNext()) {
+      return this;
+    }
+    int newSize = size;
+    int newShift = shift;
+    Object[] newRoot = root;
+    int newTailStart = tailStart;
+    Object[] buffer = new Object[32];
+    int length = tail.length;
+    System.arraycopy(tail, 0, buffer, 0, length);
+    while (elements.hasNext()) {
+      E element = checkNotNull(elements.next());
+      if (length == 32) {
+        int grownShift = shiftFor(newShift, newTailStart);
+        newRoot = pushLeaf(grow(newRoot, newShift, grownShift), grownShift,
+            newTailStart, buffer);
+        newShift = grownShift;
+        newTailStart += 32;
+        buffer = new Object[32];
+        length = 0;
+      }
+      buffer[length++] = element;
+      newSize++;
+    }
+    Object[] newTail = buffer;
+    if (length < 32) {
+      newTail = new Object[length];
+      System.arraycopy(buffer, 0, newTail, 0, length);
+    }
+    return new ImmutableTrieList<E>(
+        offset, newSize, newShift, newRoot, newTail, newTailStart);
+  }
+
+  /**
+   * Returns a list with the elements of this list, except that {@code
+   * element} is at {@code index}. Returns this list if {@code element} (the
+   * same instance) is already there.
+   *
+   * @throws IndexOutOfBoundsException if {@code index} is negative or not
+   *     less than the size of the list
+   * @throws NullPointerException if {@code element} is null
+   */
+  public ImmutableTrieList<E> with(int index, E element) {
+    checkElementIndex(index, size);
+    checkNotNull(element);
+    int position = offset + index;
+    if (leafFor(position)[position & 31] == element) {
+      return this;
+    }
+    if (position >= tailStart) {
+      Object[] newTail = Platform.clone(tail);
+      newTail[position & 31] = element;
+      return new ImmutableTrieList<E>(
+          offset, size, shift, root, newTail, tailStart);
+    }
+    return new ImmutableTrieList<E>(offset, size, shift,
+        set(root, shift, position, element), tail, tailStart);
+  }
+
+  /**
+   * Returns the smallest shift, no smaller than {@code shift}, of a root
+   * that can hold a leaf at {@code position}.
+   */
+  private static int shiftFor(int shift, int position) {
+    while (shift < 30 && (position >>> (shift + 5)) != 0) {
+      shift += 5;
+    }
+    return shift;
+  }
+
+  /** Returns {@code root} under enough new levels to have {@code newShift}. */
+  @Nullable private static Object[] grow(
+      @Nullable Object[] root, int shift, int newShift) {
+    for (; shift < newShift && root != null; shift += 5) {
+      Object[] newRoot = new Object[32];
+      newRoot[0] = root;
+      root = newRoot;
+    }
+    return root;
+  }
+
+  /**
+   * Returns a copy of {@code node}, or a new node if it's null, with {@code
+   * leaf} at {@code position} beneath it.
+   */
+  private static Object[] pushLeaf(
+      @Nullable Object[] node, int level, int position, Object[] leaf) {
+    Object[] copy = (node == null) ? new Object[32] : Platform.clone(node);
+    int i = (position >>> level) & 31;
+    copy[i] = (level == 5)
+        ? leaf
+        : pushLeaf((Object[]) copy[i], level - 5, position, leaf);
+    return copy;
+  }
+
+  /**
+   * Returns a copy of {@code node} with {@code element} at {@code position}.
+   */
+  private static Object[] set(
+      Object[] node, int level, int position, Object element) {
+    Object[] copy = Platform.clone(node);
+    if (level == 0) {
+      copy[position & 31] = element;
+    } else {
+      int i = (position >>> level) & 31;
+      copy[i] = set((Object[]) node[i], level - 5, position, element);
+    }
+    return copy;
+  }
+
+  /**
+   * Returns the array holding the element at {@code position}, at index
+   * {@code position & 31}.
+   */
+  private Object[] leafFor(int position) {
+    if (position >= tailStart) {
+      return tail;
+    }
+    Object[] node = root;
+    for (int level = shift; level > 0; level -= 5) {
+      node = (Object[]) node[(position >>> level) & 31];
+    }
+    return node;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  @Override public boolean isEmpty() {
+    return size == 0;
+  }
+
+  // The fake cast to E is safe because the creation methods only allow E's
+  @SuppressWarnings("unchecked")
+  public E get(int index) {
+    checkElementIndex(index, size);
+    int position = offset + index;
+    return (E) leafFor(position)[position & 31];
+  }
+
+  @Override public boolean contains(@Nullable Object target) {
+    return indexOf(target) != -1;
+  }
+
+  @Override public int indexOf(@Nullable Object target) {
+    if (target != null) {
+      int index = 0;
+      for (E element : this) {
+        if (element.equals(target)) {
+          return index;
+        }
+        index++;
+      }
+    }
+    return -1;
+  }
+
+  @Override public int lastIndexOf(@Nullable Object target) {
+    if (target != null) {
+      Object[] leaf = null;
+      for (int position = offset + size - 1; position >= offset; position--) {
+        if (leaf == null || (position & 31) == 31) {
+          leaf = leafFor(position);
+        }
+        if (leaf[position & 31].equals(target)) {
+          return position - offset;
+        }
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * <p>The returned list shares the trie of this list, and keeps it from
+   * being garbage collected.
+   */
+  @Override public ImmutableTrieList<E> subList(int fromIndex, int toIndex) {
+    checkPositionIndexes(fromIndex, toIndex, size);
+    if (fromIndex == toIndex) {
+      return of();
+    } else if (fromIndex == 0 && toIndex == size) {
+      return this;
+    }
+    int newOffset = offset + fromIndex;
+    int newEnd = offset + toIndex;
+    int newTailStart = (newEnd - 1) & ~31;
+    Object[] leaf = leafFor(newTailStart);
+    Object[] newTail = leaf;
+    if (leaf.length != newEnd - newTailStart) {
+      newTail = new Object[newEnd - newTailStart];
+      System.arraycopy(leaf, 0, newTail, 0, newTail.length);
+    }
+    Object[] newRoot = null;
+    int newShift = 5;
+    if (newOffset < newTailStart) {
+      // Drop the levels of the root that only ever pick their first child.
+      newRoot = root;
+      newShift = shift;
+      while (newShift > 5 && newTailStart <= (1 << newShift)) {
+        newRoot = (Object[]) newRoot[0];
+        newShift -= 5;
+      }
+    }
+    return new ImmutableTrieList<E>(newOffset, toIndex - fromIndex, newShift,
+        newRoot, newTail, newTailStart);
+  }
+
+  @Override public UnmodifiableIterator<E> iterator() {
+    return new UnmodifiableIterator<E>() {
+      int position = offset;
+      Object[] leaf;
+
+      public boolean hasNext() {
+        return position < offset + size;
+      }
+
+      // The fake cast to E is safe because the creation methods only allow
+      // E's
+      @SuppressWarnings("unchecked")
+      public E next() {
+        if (!hasNext()) {
+          throw new NoSuchElementException();
+        }
+        if (leaf == null || (position & 31) == 0) {
+          leaf = leafFor(position);
+        }
+        return (E) leaf[position++ & 31];
+      }
+    };
+  }
+
+  public ListIterator<E> listIterator() {
+    return listIterator(0);
+  }
+
+  public ListIterator<E> listIterator(final int start) {
+    checkPositionIndex(start, size);
+
+    return new ListIterator<E>() {
+      int index = start;
+
+      public boolean hasNext() {
+        return index < size;
+      }
+      public boolean hasPrevious() {
+        return index > 0;
+      }
+
+      public int nextIndex() {
+        return index;
+      }
+      public int previousIndex() {
+        return index - 1;
+      }
+
+      public E next() {
+        E result;
+        try {
+          result = get(index);
+        } catch (IndexOutOfBoundsException rethrown) {
+          throw new NoSuchElementException();
+        }
+        index++;
+        return result;
+      }
+      public E previous() {
+        E result;
+        try {
+          result = get(index - 1);
+        } catch (IndexOutOfBoundsException rethrown) {
+          throw new NoSuchElementException();
+        }
+        index--;
+        return result;
+      }
+
+      public void set(E o) {
+        throw new UnsupportedOperationException();
+      }
+      public void add(E o) {
+        throw new UnsupportedOperationException();
+      }
+      public void remove() {
+        throw new UnsupportedOperationException();
+      }
+    };
+  }
+
+  @Override public boolean equals(@Nullable Object object) {
+    if (object == this) {
+      return true;
+    }
+    if (!(object instanceof List)) {
+      return false;
+    }
+    List<?> that = (List<?>) object;
+    return size == that.size() && Iterators.elementsEqual(iterator(),
+        that.iterator());
+  }
+
+  @Override public int hashCode() {
+    // not caching hash code since it could change if the elements are mutable
+    // in a way that modifies their hash codes
+    int hashCode = 1;
+    for (E element : this) {
+      hashCode = 31 * hashCode + element.hashCode();
+    }
+    return hashCode;
+  }
+
+  /*
+   * Serializes ImmutableTrieLists as their elements, which the deserialized
+   * form appends to an empty list.
+   */
+  private static class SerializedForm implements Serializable {
+    final Object[] elements;
+    SerializedForm(Object[] elements) {
+      this.elements = elements;
+    }
+    Object readResolve() {
+      return copyOf(Iterators.forArray(elements));
+    }
+    private static final long serialVersionUID = 0;
+  }
+
+  @Override Object writeReplace() {
+    return new SerializedForm(toArray());
+  }
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright (C) 2009 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.collect;
+
+import static com.google.common.base.Preconditions.checkPositionIndex;
+
+import com.google.common.annotations.GwtCompatible;
+
+import java.util.List;
+import java.util.ListIterator;
+import java.util.NoSuchElementException;
+
+import javax.annotation.Nullable;
+
+/**
+ * Skeletal implementation of a nonempty {@link ImmutableList} whose elements
+ * are computed from an index, such as a view of an array of primitives.
+ * Subclasses implement {@link #get}, {@link #size} and {@link #subList}, and
+ * may override the searching methods with faster ones.
+ */
+@GwtCompatible
+@SuppressWarnings("serial") // uses writeReplace(), not default serialization
+abstract class IndexedImmutableList<E> extends ImmutableList<E> {
+
+  @Override public boolean isEmpty() {
+    return false;
+  }
+
+  @Override public boolean contains(@Nullable Object target) {
+    return indexOf(target) != -1;
+  }
+
+  @Override public int indexOf(@Nullable Object target) {
+    if (target != null) {
+      for (int i = 0, size = size(); i < size; i++) {
+        if (get(i).equals(target)) {
+          return i;
+        }
+      }
+    }
+    return -1;
+  }
+
+  @Override public int lastIndexOf(@Nullable Object target) {
+    if (target != null) {
+      for (int i = size() - 1; i >= 0; i--) {
+        if (get(i).equals(target)) {
+          return i;
+        }
+      }
+    }
+    return -1;
+  }
+
+  @Override public UnmodifiableIterator<E> iterator() {
+    return new UnmodifiableIterator<E>() {
+      int index = 0;
+
+      public boolean hasNext() {
+        return index < size();
+      }
+
+      public E next() {
+        if (!hasNext()) {
+          throw new NoSuchElementException();
+        }
+        return get(index++);
+      }
+    };
+  }
+
+  public ListIterator<E> listIterator() {
+    return listIterator(0);
+  }
+
+  public ListIterator<E> listIterator(final int start) {
+    checkPositionIndex(start, size());
+
+    return new ListIterator<E>() {
+      int index = start;
+
+      public boolean hasNext() {
+        return index < size();
+      }
+      public boolean hasPrevious() {
+        return index > 0;
+      }
+
+      public int nextIndex() {
+        return index;
+      }
+      public int previousIndex() {
+        return index - 1;
+      }
+
+      public E next() {
+        if (!hasNext()) {
+          throw new NoSuchElementException();
+        }
+        return get(index++);
+      }
+      public E previous() {
+        if (!hasPrevious()) {
+          throw new NoSuchElementException();
+        }
+        return get(--index);
+      }
+
+      public void set(E o) {
+        throw new UnsupportedOperationException();
+      }
+      public void add(E o) {
+        throw new UnsupportedOperationException();
+      }
+      public void remove() {
+        throw new UnsupportedOperationException();
+      }
+    };
+  }
+
+  @Override public boolean equals(@Nullable Object object) {
+    if (object == this) {
+      return true;
+    }
+    if (!(object instanceof List)) {
+      return false;
+    }
+    List<?> that = (List<?>) object;
+    return size() == that.size()
+        && Iterators.elementsEqual(iterator(), that.iterator());
+  }
+
+  @Override public int hashCode() {
+    int hashCode = 1;
+    for (int i = 0, size = size(); i < size; i++) {
+      hashCode = 31 * hashCode + get(i).hashCode();
+    }
+    return hashCode;
+  }
+}
@@ -0,0 +1,204 @@
+/*
+ * Copyright (C) 2009 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.common.collect;
+
+import com.google.common.base.FinalizableReferenceQueue;
+import com.google.common.base.FinalizableWeakReference;
+import static com.google.common.base.Preconditions.checkNotNull;
+import com.google.common.collect.CustomConcurrentHashMap.Internals;
+import com.google.common.collect.CustomConcurrentHashMap.Strategy;
+import com.google.common.collect.CustomConcurrentHashMap.WriteListener;
+
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Contains static methods pertaining to instances of {@link Interner}.
+ */
+public final class Interners {
+  private Interners() {}
+
+  /**
+   * Returns a new thread-safe interner which retains a strong reference to
+   * each instance it has interned, thus preventing these instances from being
+   * garbage-collected. If this retention is acceptable, this implementation
+   * may perform better than {@link #newWeakInterner}.
+   */
+  public static <E> Interner<E> newStrongInterner() {
+    final ConcurrentMap<E, E> map = new MapMaker().makeMap();
+    return new Interner<E>() {
+      public E intern(E sample) {
+        E canonical = map.putIfAbsent(checkNotNull(sample), sample);
+        return (canonical == null) ? sample : canonical;
+      }
+    };
+  }
+
+  /**
+   * Returns a new thread-safe interner which retains a weak reference to each
+   * instance it has interned, and so does not prevent these instances from
+   * being garbage-collected. This most likely does not perform as well as
+   * {@link #newStrongInterner}, but is the best alternative when the memory
+   * usage of that implementation is unacceptable.
+   *
+   * <p>Each interned instance costs one weak reference entry in the
+   * underlying table. Unlike a weak-keyed {@link MapMaker} map whose values
+   * are its keys, there is no separate reference object for the value.
+   */
+  public static <E> Interner<E> newWeakInterner() {
+    return new WeakInterner<E>();
+  }
+
+  /**
+   * Maximum number of reclaimed references cleaned up after each write, when
+   * the references queue has no thread of its own.
+   */
+  private static final int CLEANUP_BATCH_SIZE = 16;
+
+  /** Wrapper class ensures that queue isn't created until it's used. */
+  private static class QueueHolder {
+    static final FinalizableReferenceQueue queue
+        = new FinalizableReferenceQueue();
+  }
+
+  /** The single value of every entry in a weak interner's map. */
+  private enum Dummy { VALUE }
+
+  /**
+   * A weak interner, backed by a {@link CustomConcurrentHashMap} whose
+   * entries are weak references to the interned instances. Each entry is its
+   * own key, and its value is always {@link Dummy#VALUE}.
+   */
+  private static class WeakInterner<E> implements Interner<E>,
+      Strategy<E, Dummy, InternReference<E>>, WriteListener {
+    final ConcurrentMap<E, Dummy> map
+        = new CustomConcurrentHashMap.Builder().buildMap(this);
+    Internals<E, Dummy, InternReference<E>> internals;
+
+    public E intern(E sample) {
+      checkNotNull(sample);
+      while (true) {
+        InternReference<E> entry = internals.getEntry(sample);
+        if (entry != null) {
+          E canonical = entry.get();
+          if (canonical != null) {
+            return canonical;
+          }
+        }
+
+        // Either no equal instance was interned, or it was reclaimed after
+        // we looked it up; retry if another thread interns one first.
+        if (map.putIfAbsent(sample, Dummy.VALUE) == null) {
+          return sample;
+        }
+      }
+    }
+
+    public InternReference<E> newEntry(
+        E key, int hash, InternReference<E> next) {
+      return (next == null)
+          ? new InternReference<E>(internals, key, hash)
+          : new LinkedInternReference<E>(internals, key, hash, next);
+    }
+
+    public InternReference<E> copyEntry(E key,
+        InternReference<E> original, InternReference<E> newNext) {
+      return newEntry(key, original.hash, newNext);
+    }
+
+    public void setValue(InternReference<E> entry, Dummy value) {}
+
+    public Dummy getValue(InternReference<E> entry) {
+      return Dummy.VALUE;
+    }
+
+    public boolean equalKeys(E a, Object b) {
+      return a.equals(b);
+    }
+
+    public boolean equalValues(Dummy a, Object b) {
+      return a == b;
+    }
+
+    public int hashKey(Object key) {
+      return key.hashCode();
+    }
+
+    public E getKey(InternReference<E> entry) {
+      return entry.get();
+    }
+
+    public InternReference<E> getNext(InternReference<E> entry) {
+      return entry.getNext();
+    }
+
+    public int getHash(InternReference<E> entry) {
+      return entry.hash;
+    }
+
+    public void remove(InternReference<E> entry) {}
+
+    public void setInternals(
+        Internals<E, Dummy, InternReference<E>> internals) {
+      this.internals = internals;
+    }
+
+    /**
+     * Cleans up a batch of reclaimed instances if the references queue has
+     * no thread to do it.
+     */
+    public void afterWrite() {
+      QueueHolder.queue.cleanUp(CLEANUP_BATCH_SIZE);
+    }
+  }
+
+  /** An entry in a weak interner's map: a weak reference to an instance. */
+  private static class InternReference<E>
+      extends FinalizableWeakReference<E> {
+    final Internals<E, Dummy, InternReference<E>> internals;
+    final int hash;
+
+    InternReference(Internals<E, Dummy, InternReference<E>> internals,
+        E key, int hash) {
+      super(key, QueueHolder.queue);
+      this.internals = internals;
+      this.hash = hash;
+    }
+
+    public void finalizeReferent() {
+      internals.removeEntry(this);
+    }
+
+    InternReference<E> getNext() {
+      return null;
+    }
+  }
+
+  private static class LinkedInternReference<E> extends InternReference<E> {
+    final InternReference<E> next;
+
+    LinkedInternReference(Internals<E, Dummy, InternReference<E>> internals,
+        E key, int hash, InternReference<E> next) {
+      super(internals, key, hash);
+      this.next = next;
+    }
+
+    @Override InternReference<E> getNext() {
+      return next;
+    }
+  }
+}
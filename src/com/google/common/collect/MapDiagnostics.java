@@ -0,0 +1,165 @@
+/*
+ * Copyright (C) 2009 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.collect;
+
+import com.google.common.collect.CustomConcurrentHashMap.Impl;
+
+/**
+ * Lock contention and hash table statistics for a concurrent map created by
+ * a {@link MapMaker} configured with {@link MapMaker#recordDiagnostics()}.
+ * Obtain an instance using {@link MapMaker#diagnostics}.
+ *
+ * <p>The map is internally partitioned into segments, each of which is a hash
+ * table guarded by its own lock. Every method returns an array with one
+ * element per segment. Each call takes a new snapshot, which is read without
+ * locking and therefore may not reflect a single point in time.
+ *
+ * <p>This class implements {@link MapDiagnosticsMBean}, so it can be exported
+ * over JMX: <pre>   {@code
+ *
+ *   ManagementFactory.getPlatformMBeanServer().registerMBean(
+ *       MapMaker.diagnostics(map),
+ *       new ObjectName("com.example:type=Cache,name=graphs"));}</pre>
+ */
+public final class MapDiagnostics implements MapDiagnosticsMBean {
+
+  /**
+   * The number of elements in each histogram returned by {@link
+   * #getBinSizeHistograms}.
+   */
+  public static final int BIN_SIZE_BUCKETS = 16;
+
+  private final Impl<?, ?, ?> map;
+
+  MapDiagnostics(Impl<?, ?, ?> map) {
+    this.map = map;
+  }
+
+  /**
+   * Returns the map's current segments. Maps with adaptive concurrency may
+   * gain segments between calls, so each getter takes its own snapshot.
+   */
+  private Impl<?, ?, ?>.Segment[] segments() {
+    return map.distinctSegments();
+  }
+
+  private static Impl<?, ?, ?>.InstrumentedSegment instrumented(
+      Impl<?, ?, ?>.Segment segment) {
+    return (Impl<?, ?, ?>.InstrumentedSegment) segment;
+  }
+
+  /**
+   * Returns the number of segments in the map.
+   */
+  public int getSegmentCount() {
+    return segments().length;
+  }
+
+  /**
+   * Returns the number of times each segment's lock was acquired by an
+   * update or bulk read. Reentrant acquisitions aren't counted.
+   */
+  public long[] getLockAcquisitions() {
+    Impl<?, ?, ?>.Segment[] segments = segments();
+    long[] result = new long[segments.length];
+    for (int i = 0; i < segments.length; i++) {
+      result[i] = instrumented(segments[i]).lockCount;
+    }
+    return result;
+  }
+
+  /**
+   * Returns the number of times each segment's lock was held by another
+   * thread when a thread tried to acquire it, forcing that thread to wait.
+   */
+  public long[] getContendedLockAcquisitions() {
+    Impl<?, ?, ?>.Segment[] segments = segments();
+    long[] result = new long[segments.length];
+    for (int i = 0; i < segments.length; i++) {
+      result[i] = instrumented(segments[i]).contendedLockCount;
+    }
+    return result;
+  }
+
+  /**
+   * Returns a histogram of lock hold times for each segment. Element {@code
+   * j} of a histogram counts the times the lock was held for less than
+   * {@code 2^j} nanoseconds but no less than half that; the last element
+   * also counts all longer holds.
+   */
+  public long[][] getLockHoldTimeHistograms() {
+    Impl<?, ?, ?>.Segment[] segments = segments();
+    long[][] result = new long[segments.length][];
+    for (int i = 0; i < segments.length; i++) {
+      result[i] = instrumented(segments[i]).holdTimeHistogram.clone();
+    }
+    return result;
+  }
+
+  /**
+   * Returns the number of bins in each segment's hash table.
+   */
+  public int[] getTableSizes() {
+    Impl<?, ?, ?>.Segment[] segments = segments();
+    int[] result = new int[segments.length];
+    for (int i = 0; i < segments.length; i++) {
+      result[i] = segments[i].table.length();
+    }
+    return result;
+  }
+
+  /**
+   * Returns the number of entries in each segment, including any entries
+   * whose keys or values were reclaimed but not yet removed.
+   */
+  public int[] getEntryCounts() {
+    Impl<?, ?, ?>.Segment[] segments = segments();
+    int[] result = new int[segments.length];
+    for (int i = 0; i < segments.length; i++) {
+      result[i] = segments[i].count;
+    }
+    return result;
+  }
+
+  /**
+   * Returns the ratio of entries to bins in each segment. A segment's table
+   * doubles in size when this exceeds 0.75.
+   */
+  public double[] getLoadFactors() {
+    Impl<?, ?, ?>.Segment[] segments = segments();
+    double[] result = new double[segments.length];
+    for (int i = 0; i < segments.length; i++) {
+      result[i] = (double) segments[i].count / segments[i].table.length();
+    }
+    return result;
+  }
+
+  /**
+   * Returns a histogram of bin sizes for each segment. Element {@code j} of
+   * a histogram is the number of bins holding {@code j} entries; the last
+   * element, {@code BIN_SIZE_BUCKETS - 1}, also counts all larger bins.
+   * Large bins indicate keys with poorly distributed hash codes.
+   */
+  public long[][] getBinSizeHistograms() {
+    Impl<?, ?, ?>.Segment[] segments = segments();
+    long[][] result = new long[segments.length][];
+    for (int i = 0; i < segments.length; i++) {
+      result[i] = segments[i].binSizeHistogram(BIN_SIZE_BUCKETS);
+    }
+    return result;
+  }
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright (C) 2009 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.collect;
+
+/**
+ * The management interface of {@link MapDiagnostics}, which allows it to be
+ * registered as a standard MBean. See {@link MapDiagnostics} for the meaning
+ * of each attribute.
+ */
+public interface MapDiagnosticsMBean {
+  int getSegmentCount();
+
+  long[] getLockAcquisitions();
+
+  long[] getContendedLockAcquisitions();
+
+  long[][] getLockHoldTimeHistograms();
+
+  int[] getTableSizes();
+
+  int[] getEntryCounts();
+
+  double[] getLoadFactors();
+
+  long[][] getBinSizeHistograms();
+}
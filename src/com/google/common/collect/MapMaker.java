@@ -18,25 +18,35 @@ package com.google.common.collect;
 
 import com.google.common.annotations.GwtCompatible;
 import com.google.common.annotations.GwtIncompatible;
+import com.google.common.base.BatchFunction;
 import com.google.common.base.FinalizableReferenceQueue;
 import com.google.common.base.FinalizableSoftReference;
 import com.google.common.base.FinalizableWeakReference;
 import com.google.common.base.Function;
+import com.google.common.base.Functions;
 import com.google.common.collect.CustomConcurrentHashMap.ComputingStrategy;
 import com.google.common.collect.CustomConcurrentHashMap.Internals;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.lang.ref.Reference;
 import java.lang.ref.SoftReference;
 import java.lang.ref.WeakReference;
 import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.TimerTask;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 
 /**
  * A {@link ConcurrentMap} builder, providing any combination of these
@@ -99,6 +109,10 @@ public final class MapMaker {
   private Strength valueStrength = Strength.STRONG;
   private long expirationNanos = 0;
   private boolean useCustomMap;
+  private ValueSerializer<?> valueSerializer;
+  private File overflowDirectory;
+  private long overflowMaxBytes;
+  private ValueSerializer<?> overflowSerializer;
   private final CustomConcurrentHashMap.Builder builder
       = new CustomConcurrentHashMap.Builder();
 
@@ -147,6 +161,27 @@ public final class MapMaker {
     return this;
   }
 
+  /**
+   * Treats the {@linkplain #concurrencyLevel concurrency level} as an upper
+   * bound rather than a fixed partitioning. The map starts with a single
+   * partition, and splits any partition whose lock is repeatedly contended,
+   * until it has as many partitions as the concurrency level would have
+   * created up front. Small maps therefore stay small, and a generous
+   * concurrency level only costs memory in maps that are updated by many
+   * threads at once. Readers are never blocked by a split.
+   *
+   * <p>Maps built with this option don't keep it when serialized.
+   *
+   * @throws IllegalStateException if adaptive concurrency was already
+   *     requested
+   */
+  @GwtIncompatible("java.util.concurrent.ConcurrentHashMap concurrencyLevel")
+  public MapMaker adaptiveConcurrency() {
+    builder.adaptiveConcurrency();
+    useCustomMap = true;
+    return this;
+  }
+
   /**
    * Specifies that each key (not value) stored in the map should be
    * wrapped in a {@link WeakReference} (by default, strong references
@@ -190,6 +225,12 @@ public final class MapMaker {
       throw new IllegalStateException("Key strength was already set to "
           + keyStrength + ".");
     }
+    if (valueSerializer != null) {
+      throw new IllegalStateException("Off-heap values require strong keys.");
+    }
+    if (overflowSerializer != null) {
+      throw new IllegalStateException("Disk overflow requires strong keys.");
+    }
     keyStrength = strength;
     useCustomMap = true;
     return this;
@@ -246,11 +287,110 @@ public final class MapMaker {
       throw new IllegalStateException("Value strength was already set to "
           + valueStrength + ".");
     }
+    if (valueSerializer != null) {
+      throw new IllegalStateException("Value strength can't be set for "
+          + "off-heap values.");
+    }
     valueStrength = strength;
     useCustomMap = true;
     return this;
   }
 
+  /**
+   * Specifies that values should be serialized and stored in direct
+   * {@link java.nio.ByteBuffer}s outside the Java heap, so that large maps
+   * don't add to garbage collection time. The map's entries only hold a
+   * handle to each value's memory. Memory is allocated from large slabs
+   * divided into blocks of a range of sizes, and a value's block is reused
+   * as soon as its entry is removed or its value replaced.
+   *
+   * <p>Every read deserializes the value, so values retrieved from the map
+   * are never the same instance that was stored, and values are compared
+   * using {@link Object#equals(Object) equals}. The serializer reads
+   * directly from the off-heap memory, without copying it.
+   *
+   * <p>Off-heap storage can't be combined with weak or soft keys or values.
+   * Maps built with this option store their values on the heap once
+   * serialized and deserialized.
+   *
+   * @param serializer converts values to and from bytes; the returned map's
+   *     value type must be the serializer's value type
+   * @throws IllegalStateException if off-heap values were already requested
+   *     or if weak or soft keys or values were requested
+   */
+  @GwtIncompatible("java.nio.ByteBuffer")
+  public MapMaker offHeapValues(ValueSerializer<?> serializer) {
+    if (serializer == null) {
+      throw new NullPointerException("serializer");
+    }
+    if (valueSerializer != null) {
+      throw new IllegalStateException(
+          "off-heap values were already requested");
+    }
+    if (keyStrength != Strength.STRONG || valueStrength != Strength.STRONG) {
+      throw new IllegalStateException(
+          "Off-heap values require strong keys and values.");
+    }
+    this.valueSerializer = serializer;
+    useCustomMap = true;
+    return this;
+  }
+
+  /**
+   * Specifies that a computing map should keep a serialized copy of each
+   * value it computes in a memory-mapped log file in {@code directory}, and
+   * consult that file before computing a value again. Combined with {@link
+   * #softValues} or {@link #weakValues}, this keeps values that the garbage
+   * collector reclaims available at the cost of a disk read, so a cache can
+   * hold many more values than fit in memory.
+   *
+   * <p>The file is an append-only log, indexed by an in-memory map from keys
+   * to file offsets. It never grows beyond {@code maxBytes}: once it's full,
+   * it is compacted, keeping only the most recently computed values that
+   * fit in half that space. Values larger than a quarter of {@code maxBytes}
+   * aren't written. Removing an entry, or replacing its value by any means
+   * other than computation, removes the value from the file too. If the
+   * file can't be written, a warning is logged and the map carries on
+   * without it. Files replaced by compaction are deleted; the current one is
+   * left in {@code directory} when the virtual machine exits.
+   *
+   * <p>Disk overflow requires strong keys, applies only to maps built with
+   * {@link #makeComputingMap}, and is not retained when the map is
+   * serialized.
+   *
+   * @param directory where to create the log file
+   * @param maxBytes the maximum size of the log file
+   * @param serializer converts values to and from bytes; the returned map's
+   *     value type must be the serializer's value type
+   * @throws IllegalArgumentException if {@code maxBytes} is not positive
+   * @throws IllegalStateException if disk overflow was already requested or
+   *     if weak or soft keys were requested
+   */
+  @GwtIncompatible("java.nio.MappedByteBuffer")
+  public MapMaker overflowToDisk(
+      File directory, long maxBytes, ValueSerializer<?> serializer) {
+    if (directory == null) {
+      throw new NullPointerException("directory");
+    }
+    if (serializer == null) {
+      throw new NullPointerException("serializer");
+    }
+    if (maxBytes <= 0) {
+      throw new IllegalArgumentException("invalid maxBytes: " + maxBytes);
+    }
+    if (overflowSerializer != null) {
+      throw new IllegalStateException("disk overflow was already requested");
+    }
+    if (keyStrength != Strength.STRONG) {
+      throw new IllegalStateException("Disk overflow requires strong keys.");
+    }
+    this.overflowDirectory = directory;
+    this.overflowMaxBytes = maxBytes;
+    this.overflowSerializer = serializer;
+    useCustomMap = true;
+    return this;
+  }
+
   /**
    * Specifies that each entry should be automatically removed from the
    * map once a fixed duration has passed since the entry's creation.
@@ -274,6 +414,43 @@ public final class MapMaker {
     return this;
   }
 
+  /**
+   * Specifies that the map should record lock acquisitions, lock contention
+   * and lock hold times, which can then be read, along with statistics about
+   * the shape of the map's hash tables, using {@link #diagnostics}. Maps
+   * built without this option pay no cost for it.
+   *
+   * <p>Diagnostics are not retained when the map is serialized.
+   *
+   * @throws IllegalStateException if diagnostics were already requested
+   */
+  @GwtIncompatible("MapDiagnostics")
+  public MapMaker recordDiagnostics() {
+    builder.recordDiagnostics();
+    useCustomMap = true;
+    return this;
+  }
+
+  /**
+   * Returns a live view of the lock contention and hash table statistics of
+   * a map built by a {@code MapMaker} configured with {@link
+   * #recordDiagnostics}.
+   *
+   * @throws IllegalArgumentException if {@code map} wasn't built by a {@code
+   *     MapMaker} that records diagnostics
+   */
+  @GwtIncompatible("MapDiagnostics")
+  public static MapDiagnostics diagnostics(ConcurrentMap<?, ?> map) {
+    MapDiagnostics diagnostics = (map instanceof CustomConcurrentHashMap.Impl)
+        ? ((CustomConcurrentHashMap.Impl<?, ?, ?>) map).diagnostics()
+        : null;
+    if (diagnostics == null) {
+      throw new IllegalArgumentException(
+          "map does not record diagnostics: " + map.getClass());
+    }
+    return diagnostics;
+  }
+
   /**
    * Builds the final map, without on-demand computation of values. This method
    * does not alter the state of this {@code MapMaker} instance, so it can be
@@ -282,8 +459,13 @@ public final class MapMaker {
    * @param <K> the type of keys to be stored in the returned map
    * @param <V> the type of values to be stored in the returned map
    * @return a concurrent map having the requested features
+   * @throws IllegalStateException if disk overflow was requested
    */
   public <K, V> ConcurrentMap<K, V> makeMap() {
+    if (overflowSerializer != null) {
+      throw new IllegalStateException(
+          "Disk overflow only applies to computing maps.");
+    }
     return useCustomMap
         ? new StrategyImpl<K, V>(this).map
         : new ConcurrentHashMap<K, V>(builder.getInitialCapacity(),
@@ -335,6 +517,99 @@ public final class MapMaker {
     return new StrategyImpl<K, V>(this, computingFunction).map;
   }
 
+  /**
+   * Returns a function that remembers the results of {@code function} in a
+   * computing map built by this {@code MapMaker}, so that the map's
+   * expiration, reference strength and other settings bound how long, and
+   * how many, results are kept. Usage example: <pre> {@code
+   *
+   *   Function<String, Document> parser = new MapMaker()
+   *       .softValues()
+   *       .expiration(10, TimeUnit.MINUTES)
+   *       .makeMemoizingFunction(expensiveParser);}</pre>
+   *
+   * The returned function behaves like {@link Map#get} on the map returned by
+   * {@link #makeComputingMap}: it's thread-safe, it computes each result
+   * once even when several threads ask for it at the same time, and it
+   * throws {@link NullPointerException} for null inputs and null results and
+   * {@link ComputationException} when {@code function} throws.
+   *
+   * <p>The returned function is a {@link BatchFunction}. When it's applied
+   * to many inputs with {@link Functions#applyAll}, the inputs whose results
+   * aren't remembered are passed to {@code function} in a single call to
+   * {@link Functions#applyAll}, so that a {@code function} that is itself a
+   * {@code BatchFunction} computes them all at once.
+   *
+   * <p>This method does not alter the state of this {@code MapMaker} instance,
+   * so it can be invoked again to create multiple independent functions.
+   */
+  public <K, V> Function<K, V> makeMemoizingFunction(
+      Function<? super K, ? extends V> function) {
+    if (function == null) {
+      throw new NullPointerException("function");
+    }
+    return new MemoizingFunction<K, V>(
+        function, this.<K, V>makeComputingMap(function));
+  }
+
+  private static class MemoizingFunction<K, V>
+      implements BatchFunction<K, V>, Serializable {
+    final Function<? super K, ? extends V> function;
+    final ConcurrentMap<K, V> results;
+
+    MemoizingFunction(Function<? super K, ? extends V> function,
+        ConcurrentMap<K, V> results) {
+      this.function = function;
+      this.results = results;
+    }
+
+    public V apply(K key) {
+      return results.get(key);
+    }
+
+    public Map<K, V> applyAll(Iterable<? extends K> keys) {
+      // keys may only be iterable once
+      List<K> keyList = Lists.newArrayList(keys);
+      Set<K> missing = new LinkedHashSet<K>();
+      for (K key : keyList) {
+        if (!results.containsKey(key)) {
+          missing.add(key);
+        }
+      }
+      if (missing.size() > 1 && function instanceof BatchFunction) {
+        try {
+          for (Map.Entry<? extends K, ? extends V> entry
+              : Functions.applyAll(function, missing).entrySet()) {
+            // A null result is left for get() to report.
+            if (entry.getKey() != null && entry.getValue() != null) {
+              results.putIfAbsent(entry.getKey(), entry.getValue());
+            }
+          }
+        } catch (ComputationException e) {
+          throw e;
+        } catch (Throwable t) {
+          throw new ComputationException(t);
+        }
+      }
+
+      // Also computes results that are missing from the batch, or that were
+      // reclaimed since.
+      Map<K, V> values = new LinkedHashMap<K, V>();
+      for (K key : keyList) {
+        if (!values.containsKey(key)) {
+          values.put(key, results.get(key));
+        }
+      }
+      return values;
+    }
+
+    @Override public String toString() {
+      return "memoize(" + function + ")";
+    }
+
+    private static final long serialVersionUID = 0;
+  }
+
   // Remainder of this file is private implementation details
 
   private enum Strength {
@@ -460,17 +735,26 @@ public final class MapMaker {
   }
 
   private static class StrategyImpl<K, V> implements Serializable,
-      ComputingStrategy<K, V, ReferenceEntry<K, V>> {
+      ComputingStrategy<K, V, ReferenceEntry<K, V>>,
+      CustomConcurrentHashMap.WriteListener {
     final Strength keyStrength;
     final Strength valueStrength;
     final ConcurrentMap<K, V> map;
     final long expirationNanos;
     Internals<K, V, ReferenceEntry<K, V>> internals;
 
+    /** Stores values off the heap, or null to use valueStrength. */
+    final transient OffHeapStorage<V> offHeap;
+
+    /** Keeps computed values on disk, or null. */
+    final transient OverflowLog<K, V> overflow;
+
     StrategyImpl(MapMaker maker) {
       this.keyStrength = maker.keyStrength;
       this.valueStrength = maker.valueStrength;
       this.expirationNanos = maker.expirationNanos;
+      this.offHeap = OffHeapStorage.create(maker.valueSerializer);
+      this.overflow = null;
 
       map = maker.builder.buildMap(this);
     }
@@ -480,18 +764,54 @@ public final class MapMaker {
       this.keyStrength = maker.keyStrength;
       this.valueStrength = maker.valueStrength;
       this.expirationNanos = maker.expirationNanos;
+      this.offHeap = OffHeapStorage.create(maker.valueSerializer);
+      this.overflow = createOverflow(maker);
 
       map = maker.builder.buildComputingMap(this, computer);
     }
 
+    @SuppressWarnings("unchecked") // the serializer's type is documented
+    static <K, V> OverflowLog<K, V> createOverflow(MapMaker maker) {
+      return (maker.overflowSerializer == null) ? null
+          : new OverflowLog<K, V>(maker.overflowDirectory,
+              maker.overflowMaxBytes,
+              (ValueSerializer<V>) maker.overflowSerializer);
+    }
+
     public void setValue(ReferenceEntry<K, V> entry, V value) {
-      setValueReference(
-          entry, valueStrength.referenceValue(entry, value));
+      if (overflow != null) {
+        // The computed value on disk is stale now.
+        overflow.invalidate(entry.getKey());
+      }
+      storeValue(entry, value);
+    }
+
+    void storeValue(ReferenceEntry<K, V> entry, V value) {
+      if (offHeap == null) {
+        setValueReference(
+            entry, valueStrength.referenceValue(entry, value));
+      } else {
+        ValueReference<K, V> oldReference = entry.getValueReference();
+        setValueReference(entry, offHeap.<K>store(value));
+        OffHeapStorage.release(oldReference);
+      }
       if (expirationNanos > 0) {
         scheduleRemoval(entry.getKey(), value);
       }
     }
 
+    /**
+     * Cleans up a batch of reclaimed keys and values if the references
+     * queue has no thread to do it. Called after writes, outside the map's
+     * locks, since cleaning up removes entries from their maps.
+     */
+    public void afterWrite() {
+      if (keyStrength != Strength.STRONG
+          || valueStrength != Strength.STRONG) {
+        QueueHolder.queue.cleanUp(CLEANUP_BATCH_SIZE);
+      }
+    }
+
     void scheduleRemoval(K key, V value) {
       /*
        * TODO: Keep weak reference to map, too. Build a priority
@@ -536,6 +856,27 @@ public final class MapMaker {
       return entry.getHash();
     }
 
+    public void remove(ReferenceEntry<K, V> entry) {
+      ValueReference<K, V> valueReference = entry.getValueReference();
+      if (offHeap != null) {
+        OffHeapStorage.release(valueReference);
+      }
+      if (overflow != null && !isReclaimed(valueReference)) {
+        overflow.invalidate(entry.getKey());
+      }
+    }
+
+    /**
+     * Returns true if the entry is being removed because the garbage
+     * collector reclaimed its value, in which case the value stays on disk.
+     * A value may also be reclaimed just as its entry is removed explicitly;
+     * we then keep a copy that the map no longer has, which is harmless.
+     */
+    static boolean isReclaimed(ValueReference<?, ?> valueReference) {
+      return valueReference instanceof Reference
+          && ((Reference<?>) valueReference).get() == null;
+    }
+
     public ReferenceEntry<K, V> newEntry(
         K key, int hash, ReferenceEntry<K, V> next) {
       return keyStrength.newEntry(internals, key, hash, next);
@@ -573,7 +914,12 @@ public final class MapMaker {
           }
         }
       }
-      return valueReference.waitForValue();
+      V value = valueReference.waitForValue();
+      if (value == null && offHeap != null) {
+        // The value may have been replaced and its memory reused.
+        value = getValue(entry);
+      }
+      return value;
     }
 
     /**
@@ -582,11 +928,42 @@ public final class MapMaker {
      */
     public V getValue(ReferenceEntry<K, V> entry) {
       ValueReference<K, V> valueReference = entry.getValueReference();
-      return valueReference.get();
+      V value = valueReference.get();
+      while (value == null && offHeap != null) {
+        // An off-heap value that's replaced while we read it is freed
+        // before we can pin it. Read the replacement instead.
+        ValueReference<K, V> current = entry.getValueReference();
+        if (current == valueReference) {
+          // The entry may be a stale copy left behind by a resize, whose
+          // shared memory was freed when the live copy was written to.
+          K key = entry.getKey();
+          ReferenceEntry<K, V> latest
+              = (key == null) ? null : internals.getEntry(key);
+          if (latest == null || latest == entry) {
+            break;
+          }
+          entry = latest;
+          current = latest.getValueReference();
+          if (current == valueReference) {
+            break;
+          }
+        }
+        valueReference = current;
+        value = valueReference.get();
+      }
+      return value;
     }
 
     public V compute(K key, final ReferenceEntry<K, V> entry,
         Function<? super K, ? extends V> computer) {
+      if (overflow != null) {
+        V value = overflow.get(key);
+        if (value != null) {
+          storeValue(entry, value);
+          return value;
+        }
+      }
+
       V value;
       try {
         value = computer.apply(key);
@@ -609,7 +986,10 @@ public final class MapMaker {
             entry, new NullOutputExceptionReference<K, V>(message));
         throw new NullOutputException(message);
       } else {
-        setValue(entry, value);
+        storeValue(entry, value);
+        if (overflow != null) {
+          overflow.put(key, value);
+        }
       }
       return value;
     }
@@ -831,6 +1211,12 @@ public final class MapMaker {
     }
   }
 
+  /**
+   * Maximum number of reclaimed references cleaned up after each write, when
+   * the references queue has no thread of its own.
+   */
+  private static final int CLEANUP_BATCH_SIZE = 16;
+
   /** Wrapper class ensures that queue isn't created until it's used. */
   private static class QueueHolder {
     static final FinalizableReferenceQueue queue
@@ -1115,4 +1501,136 @@ public final class MapMaker {
       return get();
     }
   }
+
+  /** Stores values in off-heap memory. */
+  private static class OffHeapStorage<V> {
+    final ValueSerializer<V> serializer;
+    final SlabAllocator allocator = new SlabAllocator();
+
+    OffHeapStorage(ValueSerializer<V> serializer) {
+      this.serializer = serializer;
+    }
+
+    @SuppressWarnings("unchecked") // the map's value type is unchecked
+    static <V> OffHeapStorage<V> create(ValueSerializer<?> serializer) {
+      return (serializer == null)
+          ? null : new OffHeapStorage<V>((ValueSerializer<V>) serializer);
+    }
+
+    <K> ValueReference<K, V> store(V value) {
+      int size = serializer.serializedSize(value);
+      long handle = allocator.allocate(size);
+      boolean success = false;
+      try {
+        ByteBuffer buffer = allocator.buffer(handle, size);
+        serializer.write(value, buffer);
+        if (buffer.hasRemaining()) {
+          throw new IllegalStateException(serializer + " wrote "
+              + (size - buffer.remaining()) + " bytes instead of " + size);
+        }
+        success = true;
+      } finally {
+        if (!success) {
+          allocator.free(handle, size);
+        }
+      }
+      return new OffHeapValueReference<K, V>(this, handle, size);
+    }
+
+    /** Frees the given reference's memory if it's off-heap. */
+    static void release(ValueReference<?, ?> valueReference) {
+      if (valueReference instanceof OffHeapValueReference) {
+        ((OffHeapValueReference<?, ?>) valueReference).release();
+      }
+    }
+  }
+
+  /**
+   * References a value in off-heap memory. Readers pin the memory while
+   * deserializing, so that it isn't reused until they're done with it even
+   * if the value is removed in the meantime.
+   */
+  private static class OffHeapValueReference<K, V>
+      implements ValueReference<K, V> {
+    final OffHeapStorage<V> storage;
+    final long handle;
+    final int size;
+
+    /**
+     * The number of readers, with the sign bit set once the value has been
+     * released. The memory is freed when both are true of the last reader.
+     */
+    volatile int pins;
+
+    @SuppressWarnings("unchecked")
+    static final AtomicIntegerFieldUpdater<OffHeapValueReference> pinsUpdater
+        = AtomicIntegerFieldUpdater.newUpdater(
+            OffHeapValueReference.class, "pins");
+
+    OffHeapValueReference(OffHeapStorage<V> storage, long handle, int size) {
+      this.storage = storage;
+      this.handle = handle;
+      this.size = size;
+    }
+
+    public V get() {
+      if (!pin()) {
+        return null;
+      }
+      try {
+        return storage.serializer.read(
+            storage.allocator.readOnlyBuffer(handle, size));
+      } finally {
+        unpin();
+      }
+    }
+
+    public ValueReference<K, V> copyFor(ReferenceEntry<K, V> entry) {
+      // Copied entries replace the original, so they can share the memory.
+      // A reader still holding the original when the copy's value is
+      // replaced finds the memory freed; getValue() then rereads the key.
+      return this;
+    }
+
+    public V waitForValue() {
+      return get();
+    }
+
+    boolean pin() {
+      while (true) {
+        int pins = this.pins;
+        if (pins < 0) {
+          return false;
+        }
+        if (pinsUpdater.compareAndSet(this, pins, pins + 1)) {
+          return true;
+        }
+      }
+    }
+
+    void unpin() {
+      if (pinsUpdater.decrementAndGet(this) == Integer.MIN_VALUE) {
+        free();
+      }
+    }
+
+    void release() {
+      while (true) {
+        int pins = this.pins;
+        if (pins < 0) {
+          return;
+        }
+        if (pinsUpdater.compareAndSet(this, pins, pins | Integer.MIN_VALUE)) {
+          if (pins == 0) {
+            free();
+          }
+          return;
+        }
+      }
+    }
+
+    void free() {
+      storage.allocator.free(handle, size);
+    }
+  }
 }
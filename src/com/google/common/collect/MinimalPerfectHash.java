@@ -0,0 +1,337 @@
+/*
+ * Copyright (C) 2009 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.common.collect;
+
+import com.google.common.annotations.GwtCompatible;
+
+import java.util.Arrays;
+
+import javax.annotation.Nullable;
+
+/**
+ * A minimal perfect hash over a fixed set of distinct keys: it gives each key
+ * a slot of its own in a table with one slot per key, finds a key's slot with
+ * a single probe, and needs about two bytes per key besides the table.
+ *
+ * <p>It's built by the "hash, displace and compress" (CHD) algorithm of
+ * Belazzougui, Botelho and Dietzfelbinger, without the compression. Keys are
+ * hashed into buckets of about {@link #AVERAGE_BUCKET_SIZE} keys. Buckets are
+ * placed largest first, while most slots are free; each gets the first seed
+ * that sends all of its keys to distinct free slots. A bucket with a single
+ * key records that key's slot instead. Each slot also keeps eight bits of its
+ * key's hash, so that most lookups of absent keys end without touching the
+ * key in the slot.
+ *
+ * <p>The hashes derive from {@link Object#hashCode}, so unequal keys with the
+ * same hash code can't be told apart. The first key with each hash code gets
+ * a slot; the others go to overflow slots past the end of the table, which
+ * are found through an ordinary hash table. So are the keys of the rare
+ * bucket for which no seed works, which leaves unused slots in the table.
+ */
+@GwtCompatible
+final class MinimalPerfectHash {
+
+  /** The average number of keys per bucket. */
+  static final int AVERAGE_BUCKET_SIZE = 3;
+
+  /** The number of seeds to try for a bucket before giving up on it. */
+  private static final int MAX_SEED = 1 << 16;
+
+  /**
+   * The keys in slot order, with the overflow keys last. The key of each
+   * slot is followed by {@link #stride} - 1 free elements, where a map keeps
+   * the key's value.
+   */
+  final Object[] table;
+
+  /** The number of elements of {@link #table} per slot. */
+  final int stride;
+
+  /**
+   * For each bucket, the seed of its keys' slot hashes, or the bitwise
+   * complement of the slot of its only key.
+   */
+  private final int[] displacements;
+
+  /**
+   * The low eight bits of the mixed hash of the key in each slot of the
+   * table, which has one slot per element of this array.
+   */
+  private final byte[] fingerprints;
+
+  /** The slot of each overflow key, or null if there are none. */
+  @Nullable private final ImmutableMap<Object, Integer> overflow;
+
+  private MinimalPerfectHash(Object[] table, int stride, int[] displacements,
+      byte[] fingerprints, @Nullable ImmutableMap<Object, Integer> overflow) {
+    this.table = table;
+    this.stride = stride;
+    this.displacements = displacements;
+    this.fingerprints = fingerprints;
+    this.overflow = overflow;
+  }
+
+  /** Returns the slot of the given key, or -1 if it isn't a key. */
+  int indexOf(@Nullable Object key) {
+    if (key == null) {
+      return -1;
+    }
+    int hash = key.hashCode();
+    long mixed = mix(hash);
+    int slot = slot(hash, displacements[reduce(mixed, displacements.length)],
+        fingerprints.length);
+    if (fingerprints[slot] == (byte) mixed) {
+      Object candidate = table[slot * stride];
+      if (candidate != null && candidate.equals(key)) {
+        return slot;
+      }
+    }
+    if (overflow != null) {
+      Integer overflowSlot = overflow.get(key);
+      if (overflowSlot != null) {
+        return overflowSlot;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Builds a perfect hash over the given non-null keys. Stores the slot of
+   * {@code keys[i]} in {@code slots[i]}, or -1 if {@code keys[i]} equals an
+   * earlier key; such duplicates get no slot.
+   *
+   * @param stride the number of elements of the table per slot
+   */
+  static MinimalPerfectHash build(Object[] keys, int[] slots, int stride) {
+    int n = keys.length;
+    int[] hashes = new int[n];
+    for (int i = 0; i < n; i++) {
+      hashes[i] = keys[i].hashCode();
+    }
+
+    // Group the keys by bucket.
+    int bucketCount = Math.max(1, n / AVERAGE_BUCKET_SIZE);
+    int[] bucketStart = new int[bucketCount + 1];
+    for (int i = 0; i < n; i++) {
+      bucketStart[bucket(hashes[i], bucketCount) + 1]++;
+    }
+    int maxGroupSize = 0;
+    for (int b = 0; b < bucketCount; b++) {
+      maxGroupSize = Math.max(maxGroupSize, bucketStart[b + 1]);
+      bucketStart[b + 1] += bucketStart[b];
+    }
+    int[] members = new int[n];
+    int[] bucketSize = new int[bucketCount];
+    for (int i = 0; i < n; i++) {
+      int b = bucket(hashes[i], bucketCount);
+      members[bucketStart[b] + bucketSize[b]++] = i;
+    }
+
+    // Move the first key with each hash code to the front of its bucket, and
+    // mark the others as duplicates (-1) or overflow keys (0).
+    long[] scratch = new long[maxGroupSize];
+    int duplicateCount = 0;
+    int maxBucketSize = 0;
+    for (int b = 0; b < bucketCount; b++) {
+      int start = bucketStart[b];
+      int end = bucketStart[b + 1];
+      int size = separateCollisions(
+          keys, hashes, members, start, end, slots, scratch);
+      for (int j = start + size; j < end; j++) {
+        if (slots[members[j]] == -1) {
+          duplicateCount++;
+        }
+      }
+      bucketSize[b] = size;
+      maxBucketSize = Math.max(maxBucketSize, size);
+    }
+
+    // Place the buckets, largest first.
+    int tableSize = 0;
+    for (int size : bucketSize) {
+      tableSize += size;
+    }
+    int[] displacements = new int[bucketCount];
+    long[] occupied = new long[(tableSize + 63) / 64];
+    int[] candidates = new int[maxBucketSize];
+    int nextFree = 0;
+    for (int b : bucketsBySize(bucketSize, maxBucketSize)) {
+      int start = bucketStart[b];
+      int size = bucketSize[b];
+      int seed = (size == 1) ? MAX_SEED : findSeed(
+          hashes, members, start, size, occupied, tableSize, candidates);
+      if (seed < MAX_SEED) {
+        displacements[b] = seed;
+        for (int j = 0; j < size; j++) {
+          int slot = candidates[j];
+          occupied[slot >>> 6] |= 1L << slot;
+          slots[members[start + j]] = slot;
+        }
+      } else {
+        // The first key takes any free slot; the others overflow.
+        while ((occupied[nextFree >>> 6] & (1L << nextFree)) != 0) {
+          nextFree++;
+        }
+        occupied[nextFree >>> 6] |= 1L << nextFree;
+        displacements[b] = ~nextFree;
+        slots[members[start]] = nextFree;
+        bucketSize[b] = 1;
+      }
+    }
+
+    // Lay out the keys, giving each overflow key a slot past the table.
+    int overflowCount = n - duplicateCount;
+    for (int size : bucketSize) {
+      overflowCount -= size;
+    }
+    Object[] table = new Object[(tableSize + overflowCount) * stride];
+    byte[] fingerprints = new byte[tableSize];
+    ImmutableMap.Builder<Object, Integer> overflow = ImmutableMap.builder();
+    int nextOverflow = tableSize;
+    for (int b = 0; b < bucketCount; b++) {
+      int start = bucketStart[b];
+      for (int j = start; j < bucketStart[b + 1]; j++) {
+        int i = members[j];
+        if (j < start + bucketSize[b]) {
+          table[slots[i] * stride] = keys[i];
+          fingerprints[slots[i]] = (byte) mix(hashes[i]);
+        } else if (slots[i] != -1) {
+          slots[i] = nextOverflow;
+          table[nextOverflow * stride] = keys[i];
+          overflow.put(keys[i], nextOverflow++);
+        }
+      }
+    }
+    return new MinimalPerfectHash(table, stride, displacements, fingerprints,
+        (overflowCount == 0) ? null : overflow.build());
+  }
+
+  /**
+   * Reorders the members of a bucket so that the first key with each hash
+   * code comes first, and returns how many such keys there are. Marks each
+   * other key as a duplicate (-1) if it equals an earlier key, and as an
+   * overflow key (0) otherwise.
+   */
+  private static int separateCollisions(Object[] keys, int[] hashes,
+      int[] members, int start, int end, int[] slots, long[] scratch) {
+    // Sort the members by hash code, then by position.
+    int count = end - start;
+    for (int j = 0; j < count; j++) {
+      int i = members[start + j];
+      scratch[j] = ((long) hashes[i] << 32) | i;
+    }
+    Arrays.sort(scratch, 0, count);
+
+    int size = 0;
+    int rest = end;
+    for (int j = 0; j < count; j++) {
+      int i = (int) scratch[j];
+      int runStart = j;
+      while (runStart > 0 && (scratch[runStart - 1] >>> 32)
+          == (scratch[j] >>> 32)) {
+        runStart--;
+      }
+      if (runStart == j) {
+        slots[i] = 0;
+        members[start + size++] = i;
+        continue;
+      }
+      slots[i] = 0;
+      for (int k = runStart; k < j; k++) {
+        int earlier = (int) scratch[k];
+        if (slots[earlier] != -1 && keys[earlier].equals(keys[i])) {
+          slots[i] = -1;
+          break;
+        }
+      }
+      members[--rest] = i;
+    }
+    return size;
+  }
+
+  /**
+   * Returns the buckets in decreasing order of size, leaving out empty ones.
+   */
+  private static int[] bucketsBySize(int[] bucketSize, int maxBucketSize) {
+    int[] start = new int[maxBucketSize + 2];
+    for (int size : bucketSize) {
+      start[maxBucketSize - size + 1]++;
+    }
+    for (int s = 0; s <= maxBucketSize; s++) {
+      start[s + 1] += start[s];
+    }
+    int[] order = new int[start[maxBucketSize]];
+    for (int b = 0; b < bucketSize.length; b++) {
+      int size = bucketSize[b];
+      if (size > 0) {
+        order[start[maxBucketSize - size]++] = b;
+      }
+    }
+    return order;
+  }
+
+  /**
+   * Returns the first seed that sends each key of a bucket to a distinct
+   * free slot, storing those slots in {@code candidates}, or {@link
+   * #MAX_SEED} if there's none.
+   */
+  private static int findSeed(int[] hashes, int[] members, int start,
+      int size, long[] occupied, int tableSize, int[] candidates) {
+    seeds:
+    for (int seed = 0; seed < MAX_SEED; seed++) {
+      for (int j = 0; j < size; j++) {
+        int slot = slot(hashes[members[start + j]], seed, tableSize);
+        if ((occupied[slot >>> 6] & (1L << slot)) != 0) {
+          continue seeds;
+        }
+        for (int k = 0; k < j; k++) {
+          if (candidates[k] == slot) {
+            continue seeds;
+          }
+        }
+        candidates[j] = slot;
+      }
+      return seed;
+    }
+    return MAX_SEED;
+  }
+
+  private static final long GOLDEN_RATIO = 0x9e3779b97f4a7c15L;
+
+  private static int bucket(int hash, int bucketCount) {
+    return reduce(mix(hash), bucketCount);
+  }
+
+  private static int slot(int hash, int displacement, int tableSize) {
+    return (displacement < 0)
+        ? ~displacement
+        : reduce(mix(hash + (displacement + 1) * GOLDEN_RATIO), tableSize);
+  }
+
+  /** The 64-bit finalizer of MurmurHash3. */
+  private static long mix(long x) {
+    x = (x ^ (x >>> 33)) * 0xff51afd7ed558ccdL;
+    x = (x ^ (x >>> 33)) * 0xc4ceb9fe1a85ec53L;
+    return x ^ (x >>> 33);
+  }
+
+  /** Maps a mixed hash to {@code [0, size)} using its high bits. */
+  private static int reduce(long mixed, int size) {
+    return (int) (((mixed >>> 32) * size) >>> 32);
+  }
+}
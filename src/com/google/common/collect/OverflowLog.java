@@ -0,0 +1,401 @@
+/*
+ * Copyright (C) 2009 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.collect;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A second tier for a computing map, which keeps serialized values in an
+ * append-only, memory-mapped log file, indexed by an in-memory map from keys
+ * to their values' locations. Values are written once and read in place.
+ *
+ * <p>The log occupies at most {@code maxBytes} of disk. When it's full, it
+ * is compacted: the most recently written live values, up to half of
+ * {@code maxBytes}, are copied to a new file, and the rest are dropped.
+ * Values larger than a quarter of {@code maxBytes} are never written.
+ *
+ * <p>Reads don't lock. Writes and compaction are serialized. Readers may
+ * still be reading from a file that was replaced by compaction; it's
+ * unmapped and deleted once the last of them is done with it.
+ *
+ * <p>The log is only a cache: if the file can't be written, values simply
+ * aren't kept. Nothing is registered for deletion when the virtual machine
+ * exits, since that would keep every replaced file's name until then; the
+ * current file is left behind unless the log is closed.
+ */
+final class OverflowLog<K, V> {
+
+  private static final Logger logger
+      = Logger.getLogger(OverflowLog.class.getName());
+
+  static final int DEFAULT_REGION_SIZE = 16 << 20;
+
+  private final File directory;
+  private final long maxBytes;
+  private final int regionSize;
+  private final ValueSerializer<V> serializer;
+
+  private final ConcurrentMap<K, Record> index
+      = new ConcurrentHashMap<K, Record>();
+
+  // Guarded by this.
+  private LogFile file;
+  private long nextSequence;
+  private boolean failed;
+
+  OverflowLog(File directory, long maxBytes, ValueSerializer<V> serializer) {
+    this(directory, maxBytes, serializer,
+        (int) Math.min(DEFAULT_REGION_SIZE, Math.max(maxBytes / 8, 1)));
+  }
+
+  OverflowLog(File directory, long maxBytes, ValueSerializer<V> serializer,
+      int regionSize) {
+    this.directory = directory;
+    this.maxBytes = maxBytes;
+    this.serializer = serializer;
+    this.regionSize = regionSize;
+  }
+
+  /**
+   * Returns the value logged for {@code key}, or null if there's none.
+   */
+  V get(Object key) {
+    while (true) {
+      Record record = index.get(key);
+      if (record == null) {
+        return null;
+      }
+      if (record.file.pin()) {
+        try {
+          return serializer.read(record.readOnlyBuffer());
+        } finally {
+          record.file.unpin();
+        }
+      }
+      // The file was deleted after its records were moved or dropped.
+    }
+  }
+
+  /**
+   * Logs {@code value} for {@code key}, replacing any value already logged.
+   * Does nothing if the value is too large to keep or the log can't be
+   * written.
+   */
+  void put(K key, V value) {
+    int size = serializer.serializedSize(value);
+    if (size > maxBytes / 4) {
+      index.remove(key);
+      return;
+    }
+
+    Record record;
+    synchronized (this) {
+      if (failed) {
+        return;
+      }
+      try {
+        if (file == null) {
+          file = new LogFile(directory, regionSize);
+        } else if (file.wouldExceed(size, maxBytes)) {
+          compact(size);
+        }
+        record = file.append(size, nextSequence++);
+      } catch (IOException e) {
+        logger.log(Level.WARNING, "Can't write to " + directory
+            + ". Values will no longer overflow to disk.", e);
+        failed = true;
+        close();
+        return;
+      }
+      ByteBuffer buffer = record.buffer();
+      serializer.write(value, buffer);
+      if (buffer.hasRemaining()) {
+        throw new IllegalStateException(serializer + " wrote "
+            + (size - buffer.remaining()) + " bytes instead of " + size);
+      }
+      // Inside the lock, so that compaction can't miss the record.
+      index.put(key, record);
+    }
+  }
+
+  /**
+   * Forgets the value logged for {@code key}, if any.
+   */
+  void invalidate(Object key) {
+    index.remove(key);
+  }
+
+  /** Returns the number of logged values. */
+  int size() {
+    return index.size();
+  }
+
+  /** Returns the size of the current log file, in bytes. */
+  synchronized long fileSize() {
+    return (file == null) ? 0 : file.mappedBytes;
+  }
+
+  /**
+   * Copies the newest values, up to half of the maximum size less {@code
+   * incoming}, into a new file and switches to it.
+   */
+  private void compact(int incoming) throws IOException {
+    List<Map.Entry<K, Record>> entries
+        = new ArrayList<Map.Entry<K, Record>>(index.entrySet());
+    Collections.sort(entries, NEWEST_FIRST);
+
+    LogFile newFile = new LogFile(directory, regionSize);
+    long budget = maxBytes / 2 - incoming;
+    long kept = 0;
+    try {
+      for (Map.Entry<K, Record> entry : entries) {
+        Record record = entry.getValue();
+        if (kept + record.length > budget) {
+          index.remove(entry.getKey(), record);
+          continue;
+        }
+        Record copy = newFile.append(record.length, record.sequence);
+        copy.buffer().put(record.readOnlyBuffer());
+        // If the value was replaced or invalidated meanwhile, leave it be.
+        if (index.replace(entry.getKey(), record, copy)) {
+          kept += record.length;
+        }
+      }
+    } catch (IOException e) {
+      // Some records may already refer to the new file.
+      index.clear();
+      newFile.delete();
+      throw e;
+    }
+    // No record in the index refers to the old file any more.
+    file.delete();
+    file = newFile;
+  }
+
+  private static final Comparator<Map.Entry<?, Record>> NEWEST_FIRST
+      = new Comparator<Map.Entry<?, Record>>() {
+        public int compare(Map.Entry<?, Record> a, Map.Entry<?, Record> b) {
+          long x = a.getValue().sequence;
+          long y = b.getValue().sequence;
+          return (x > y) ? -1 : ((x < y) ? 1 : 0);
+        }
+      };
+
+  /** Deletes the current file. */
+  synchronized void close() {
+    // Before deleting, so that readers don't find records in a deleted file.
+    index.clear();
+    if (file != null) {
+      file.delete();
+      file = null;
+    }
+  }
+
+  /** The location of a logged value. */
+  private static final class Record {
+    final LogFile file;
+    final MappedByteBuffer region;
+    final int offset;
+    final int length;
+
+    /** Orders records by when their values were first logged. */
+    final long sequence;
+
+    Record(LogFile file, MappedByteBuffer region, int offset, int length,
+        long sequence) {
+      this.file = file;
+      this.region = region;
+      this.offset = offset;
+      this.length = length;
+      this.sequence = sequence;
+    }
+
+    ByteBuffer buffer() {
+      return slice(region.duplicate());
+    }
+
+    ByteBuffer readOnlyBuffer() {
+      return slice(region.asReadOnlyBuffer());
+    }
+
+    private ByteBuffer slice(ByteBuffer buffer) {
+      buffer.limit(offset + length).position(offset);
+      return buffer;
+    }
+  }
+
+  /**
+   * A log file, mapped into memory in regions as it grows. Records never
+   * span regions; a record larger than a region gets a region of its own.
+   */
+  private static final class LogFile {
+    final File path;
+    final FileChannel channel;
+    final int regionSize;
+    final List<MappedByteBuffer> regions = new ArrayList<MappedByteBuffer>();
+    MappedByteBuffer region;
+    int regionUsed;
+    long mappedBytes;
+
+    /**
+     * The number of readers, with the sign bit set once the file has been
+     * deleted. It's unmapped when both are true of the last reader.
+     */
+    final AtomicInteger pins = new AtomicInteger();
+
+    LogFile(File directory, int regionSize) throws IOException {
+      this.path = File.createTempFile("MapMaker", ".overflow", directory);
+      this.channel = new RandomAccessFile(path, "rw").getChannel();
+      this.regionSize = regionSize;
+    }
+
+    boolean wouldExceed(int size, long maxBytes) {
+      return needsRegion(size)
+          && mappedBytes + Math.max(size, regionSize) > maxBytes;
+    }
+
+    Record append(int size, long sequence) throws IOException {
+      if (needsRegion(size)) {
+        int newRegionSize = Math.max(size, regionSize);
+        region = channel.map(
+            FileChannel.MapMode.READ_WRITE, mappedBytes, newRegionSize);
+        regions.add(region);
+        mappedBytes += newRegionSize;
+        regionUsed = 0;
+      }
+      Record record = new Record(this, region, regionUsed, size, sequence);
+      regionUsed += size;
+      return record;
+    }
+
+    private boolean needsRegion(int size) {
+      return region == null || region.capacity() - regionUsed < size;
+    }
+
+    boolean pin() {
+      while (true) {
+        int pins = this.pins.get();
+        if (pins < 0) {
+          return false;
+        }
+        if (this.pins.compareAndSet(pins, pins + 1)) {
+          return true;
+        }
+      }
+    }
+
+    void unpin() {
+      if (pins.decrementAndGet() == Integer.MIN_VALUE) {
+        free();
+      }
+    }
+
+    /**
+     * Closes the file and deletes it once no reader is using it. Readers that
+     * haven't pinned it yet won't be able to.
+     */
+    void delete() {
+      try {
+        channel.close();
+      } catch (IOException e) {
+        logger.log(Level.WARNING, "Can't close " + path, e);
+      }
+      while (true) {
+        int pins = this.pins.get();
+        if (pins < 0) {
+          return;
+        }
+        if (this.pins.compareAndSet(pins, pins | Integer.MIN_VALUE)) {
+          if (pins == 0) {
+            free();
+          }
+          return;
+        }
+      }
+    }
+
+    private void free() {
+      for (MappedByteBuffer mapped : regions) {
+        unmap(mapped);
+      }
+      regions.clear();
+      region = null;
+      if (!path.delete()) {
+        logger.log(Level.WARNING, "Can't delete " + path);
+      }
+    }
+  }
+
+  /**
+   * Unmaps {@code buffer} now rather than when it's garbage collected, where
+   * the virtual machine allows it. The buffer must not be used afterwards.
+   */
+  static void unmap(MappedByteBuffer buffer) {
+    try {
+      if (invokeCleaner != null) {
+        invokeCleaner.invoke(unsafe, buffer);
+      } else {
+        Method cleaner = buffer.getClass().getMethod("cleaner");
+        cleaner.setAccessible(true);
+        Object instance = cleaner.invoke(buffer);
+        if (instance != null) {
+          instance.getClass().getMethod("clean").invoke(instance);
+        }
+      }
+    } catch (Exception e) {
+      // Unmapped when the buffer is garbage collected instead.
+      logger.log(Level.FINE, "Can't unmap a replaced overflow file", e);
+    }
+  }
+
+  private static final Object unsafe;
+  private static final Method invokeCleaner;
+
+  static {
+    Object theUnsafe = null;
+    Method method = null;
+    try {
+      Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+      Field field = unsafeClass.getDeclaredField("theUnsafe");
+      field.setAccessible(true);
+      method = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+      theUnsafe = field.get(null);
+    } catch (Exception e) {
+      // Before Java 9, DirectByteBuffer.cleaner() is used instead.
+      method = null;
+    }
+    unsafe = theUnsafe;
+    invokeCleaner = method;
+  }
+}
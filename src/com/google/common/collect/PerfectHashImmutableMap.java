@@ -0,0 +1,226 @@
+/*
+ * Copyright (C) 2009 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.common.collect;
+
+import com.google.common.annotations.GwtCompatible;
+
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Implementation of {@link ImmutableMap} with more than {@link
+ * SmallImmutableMap#MAX_SIZE} entries, backed by a {@link MinimalPerfectHash}
+ * whose table holds each value right after its key. Keeps no entry objects. Built by {@link
+ * ImmutableMap.Builder#perfectHashing}.
+ */
+@GwtCompatible(serializable = true)
+final class PerfectHashImmutableMap<K, V> extends ImmutableMap<K, V> {
+  private final transient MinimalPerfectHash hash;
+  // alternating keys and values, in slot order
+  private final transient Object[] table;
+  // the slot of each entry, in insertion order
+  private final transient int[] order;
+
+  PerfectHashImmutableMap(List<? extends Entry<? extends K, ? extends V>>
+      entries) {
+    int size = entries.size();
+    Object[] keys = new Object[size];
+    for (int i = 0; i < size; i++) {
+      keys[i] = entries.get(i).getKey();
+    }
+    order = new int[size];
+    hash = MinimalPerfectHash.build(keys, order, 2);
+    table = hash.table;
+    for (int i = 0; i < size; i++) {
+      if (order[i] == -1) {
+        throw new IllegalArgumentException("duplicate key: " + keys[i]);
+      }
+      table[order[i] * 2 + 1] = entries.get(i).getValue();
+    }
+  }
+
+  @Override public V get(Object key) {
+    int slot = hash.indexOf(key);
+    if (slot == -1) {
+      return null;
+    }
+    // we're careful to store only V's at odd indices
+    @SuppressWarnings("unchecked")
+    V value = (V) table[slot * 2 + 1];
+    return value;
+  }
+
+  public int size() {
+    return order.length;
+  }
+
+  @Override public boolean isEmpty() {
+    return false;
+  }
+
+  @Override public boolean containsValue(Object value) {
+    if (value == null) {
+      return false;
+    }
+    for (int slot : order) {
+      if (table[slot * 2 + 1].equals(value)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  @SuppressWarnings("unchecked") // we store only K's at even indices
+  K keyAt(int slot) {
+    return (K) table[slot * 2];
+  }
+
+  @SuppressWarnings("unchecked") // we store only V's at odd indices
+  V valueAt(int slot) {
+    return (V) table[slot * 2 + 1];
+  }
+
+  /** Iterates over the slots of the entries, in insertion order. */
+  private abstract static class SlotIterator<T>
+      extends UnmodifiableIterator<T> {
+    final int[] order;
+    int index = 0;
+
+    SlotIterator(int[] order) {
+      this.order = order;
+    }
+
+    abstract T get(int slot);
+
+    public boolean hasNext() {
+      return index < order.length;
+    }
+
+    public T next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      return get(order[index++]);
+    }
+  }
+
+  private transient ImmutableSet<Entry<K, V>> entrySet;
+
+  @Override public ImmutableSet<Entry<K, V>> entrySet() {
+    ImmutableSet<Entry<K, V>> es = entrySet;
+    return (es == null) ? (entrySet = new EntrySet<K, V>(this)) : es;
+  }
+
+  @SuppressWarnings("serial") // uses writeReplace(), not default serialization
+  private static class EntrySet<K, V> extends ImmutableSet<Entry<K, V>> {
+    final transient PerfectHashImmutableMap<K, V> map;
+
+    EntrySet(PerfectHashImmutableMap<K, V> map) {
+      this.map = map;
+    }
+
+    public int size() {
+      return map.size();
+    }
+
+    @Override public UnmodifiableIterator<Entry<K, V>> iterator() {
+      return new SlotIterator<Entry<K, V>>(map.order) {
+        @Override Entry<K, V> get(int slot) {
+          return entryOf(map.keyAt(slot), map.valueAt(slot));
+        }
+      };
+    }
+
+    @Override public boolean contains(Object target) {
+      if (target instanceof Entry) {
+        Entry<?, ?> entry = (Entry<?, ?>) target;
+        V mappedValue = map.get(entry.getKey());
+        return mappedValue != null && mappedValue.equals(entry.getValue());
+      }
+      return false;
+    }
+  }
+
+  private transient ImmutableSet<K> keySet;
+
+  @Override public ImmutableSet<K> keySet() {
+    ImmutableSet<K> ks = keySet;
+    return (ks == null) ? (keySet = new KeySet<K, V>(this)) : ks;
+  }
+
+  @SuppressWarnings("serial") // uses writeReplace(), not default serialization
+  private static class KeySet<K, V> extends ImmutableSet<K> {
+    final PerfectHashImmutableMap<K, V> map;
+
+    KeySet(PerfectHashImmutableMap<K, V> map) {
+      this.map = map;
+    }
+
+    public int size() {
+      return map.size();
+    }
+
+    @Override public UnmodifiableIterator<K> iterator() {
+      return new SlotIterator<K>(map.order) {
+        @Override K get(int slot) {
+          return map.keyAt(slot);
+        }
+      };
+    }
+
+    @Override public boolean contains(Object target) {
+      return map.containsKey(target);
+    }
+  }
+
+  private transient ImmutableCollection<V> valuesView;
+
+  @Override public ImmutableCollection<V> values() {
+    ImmutableCollection<V> v = valuesView;
+    return (v == null) ? (valuesView = new Values<V>(this)) : v;
+  }
+
+  @SuppressWarnings("serial") // uses writeReplace(), not default serialization
+  private static class Values<V> extends ImmutableCollection<V> {
+    final PerfectHashImmutableMap<?, V> map;
+
+    Values(PerfectHashImmutableMap<?, V> map) {
+      this.map = map;
+    }
+
+    public int size() {
+      return map.size();
+    }
+
+    @Override public UnmodifiableIterator<V> iterator() {
+      return new SlotIterator<V>(map.order) {
+        @Override V get(int slot) {
+          return map.valueAt(slot);
+        }
+      };
+    }
+
+    @Override public boolean contains(Object target) {
+      return map.containsValue(target);
+    }
+  }
+
+  // This class is never actually serialized directly, but we have to make the
+  // warning go away (and suppressing would suppress for all nested classes too)
+  private static final long serialVersionUID = 0;
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2009 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.common.collect;
+
+import com.google.common.annotations.GwtCompatible;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Implementation of {@link ImmutableSet} with more than {@link
+ * SmallImmutableSet#MAX_SIZE} elements, backed by a {@link
+ * MinimalPerfectHash}. Built by {@link ImmutableSet.Builder#perfectHashing}.
+ */
+@GwtCompatible(serializable = true)
+@SuppressWarnings("serial") // uses writeReplace(), not default serialization
+final class PerfectHashImmutableSet<E> extends ImmutableSet<E> {
+  private final transient MinimalPerfectHash hash;
+  // the slot of each element, in insertion order
+  private final transient int[] order;
+  private final transient int hashCode;
+
+  private PerfectHashImmutableSet(
+      MinimalPerfectHash hash, int[] order, int hashCode) {
+    this.hash = hash;
+    this.order = order;
+    this.hashCode = hashCode;
+  }
+
+  /**
+   * Returns an immutable set of the distinct elements in the given array,
+   * which must contain at least one element, in order.
+   */
+  static <E> ImmutableSet<E> create(Object[] elements) {
+    int[] slots = new int[elements.length];
+    MinimalPerfectHash hash = MinimalPerfectHash.build(elements, slots, 1);
+    int size = 0;
+    int hashCode = 0;
+    for (int i = 0; i < elements.length; i++) {
+      if (slots[i] != -1) {
+        slots[size++] = slots[i];
+        hashCode += elements[i].hashCode();
+      }
+    }
+    if (size <= SmallImmutableSet.MAX_SIZE) {
+      // the array contained so many duplicates that a small set holds the
+      // rest; keeps every PerfectHashImmutableSet larger than those.
+      @SuppressWarnings("unchecked") // we only store E's
+      List<E> list = (List<E>) Arrays.asList(elements);
+      return ImmutableSet.copyOf(list);
+    }
+    int[] order = new int[size];
+    System.arraycopy(slots, 0, order, 0, size);
+    return new PerfectHashImmutableSet<E>(hash, order, hashCode);
+  }
+
+  public int size() {
+    return order.length;
+  }
+
+  @Override public boolean isEmpty() {
+    return false;
+  }
+
+  @Override public boolean contains(Object target) {
+    return hash.indexOf(target) != -1;
+  }
+
+  @Override public UnmodifiableIterator<E> iterator() {
+    return new UnmodifiableIterator<E>() {
+      int index = 0;
+
+      public boolean hasNext() {
+        return index < order.length;
+      }
+
+      public E next() {
+        if (!hasNext()) {
+          throw new NoSuchElementException();
+        }
+        @SuppressWarnings("unchecked") // we only store E's
+        E element = (E) hash.table[order[index++]];
+        return element;
+      }
+    };
+  }
+
+  @Override public int hashCode() {
+    return hashCode;
+  }
+
+  @Override boolean isHashCodeFast() {
+    return true;
+  }
+}
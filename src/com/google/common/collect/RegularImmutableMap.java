@@ -31,56 +31,125 @@ final class RegularImmutableMap<K, V> extends ImmutableMap<K, V> {
 
   private final transient Entry<K, V>[] entries; // entries in insertion order
   private final transient Object[] table; // alternating keys and values
+  // the smeared hash code of the key at each position of the table
+  private final transient int[] hashes;
   // 'and' with an int then shift to get a table index
   private final transient int mask;
   private final transient int keySetHashCode;
 
   RegularImmutableMap(Entry<?, ?>... immutableEntries) {
+    this(0, immutableEntries);
+  }
+
+  /**
+   * Creates a map whose table is at most {@code maxLoadFactor} full, or
+   * sized as usual if {@code maxLoadFactor} is zero.
+   */
+  RegularImmutableMap(float maxLoadFactor, Entry<?, ?>... immutableEntries) {
     // each of our 6 callers carefully put only Entry<K, V>s into the array!
     @SuppressWarnings("unchecked")
     Entry<K, V>[] tmp = (Entry<K, V>[]) immutableEntries;
     this.entries = tmp;
 
-    int tableSize = Hashing.chooseTableSize(immutableEntries.length);
-    table = new Object[tableSize * 2];
+    int size = immutableEntries.length;
+    int tableSize = Hashing.chooseTableSize(size, maxLoadFactor);
+    Object[] tableMutable;
+    int[] hashesMutable;
+    int keySetHashCodeMutable;
+    while (true) {
+      tableMutable = new Object[tableSize * 2];
+      hashesMutable = new int[tableSize];
+      keySetHashCodeMutable = 0;
+      int longestDistance = 0;
+      for (Entry<K, V> entry : this.entries) {
+        K key = entry.getKey();
+        int keyHashCode = key.hashCode();
+        longestDistance = Math.max(longestDistance,
+            insert(tableMutable, hashesMutable, tableSize - 1, key,
+                entry.getValue(), Hashing.smear(keyHashCode)));
+        keySetHashCodeMutable += keyHashCode;
+      }
+      if (longestDistance <= Hashing.maxProbeDistance(tableSize)
+          || tableSize >= Hashing.chooseTableSize(size)) {
+        break;
+      }
+      // The hash codes cluster too much for a table this full.
+      tableSize *= 2;
+    }
+    table = tableMutable;
+    hashes = hashesMutable;
     mask = tableSize - 1;
+    keySetHashCode = keySetHashCodeMutable;
+  }
 
-    int keySetHashCodeMutable = 0;
-    for (Entry<K, V> entry : this.entries) {
-      K key = entry.getKey();
-      int keyHashCode = key.hashCode();
-      for (int i = Hashing.smear(keyHashCode); true; i++) {
-        int index = (i & mask) * 2;
-        Object existing = table[index];
-        if (existing == null) {
-          V value = entry.getValue();
-          table[index] = key;
-          table[index + 1] = value;
-          keySetHashCodeMutable += keyHashCode;
-          break;
-        } else if (existing.equals(key)) {
-          throw new IllegalArgumentException("duplicate key: " + key);
-        }
+  /**
+   * Adds a mapping to a table being built for a new map, by Robin Hood
+   * insertion: a key takes the slot of any key it finds closer to that key's
+   * home slot, which then moves further along. That bounds the variance of
+   * probe lengths and lets {@link #get} stop early.
+   *
+   * @return the longest distance from its home slot at which this placed a
+   *     key
+   * @throws IllegalArgumentException if the table already contains the key
+   */
+  private static int insert(Object[] table, int[] hashes, int mask,
+      Object key, Object value, int smearedHash) {
+    boolean displacing = false;
+    int longestDistance = 0;
+    for (int i = smearedHash & mask, distance = 0; true;
+        i = (i + 1) & mask, distance++) {
+      int index = i * 2;
+      Object existing = table[index];
+      if (existing == null) {
+        table[index] = key;
+        table[index + 1] = value;
+        hashes[i] = smearedHash;
+        return Math.max(longestDistance, distance);
+      }
+      int existingHash = hashes[i];
+      if (!displacing && existingHash == smearedHash && existing.equals(key)) {
+        throw new IllegalArgumentException("duplicate key: " + key);
+      }
+      int existingDistance = Hashing.probeDistance(existingHash, i, mask);
+      if (existingDistance < distance) {
+        // Take this slot and move the displaced mapping further along. It
+        // differs from every key in the table, so skip the equality check.
+        Object existingValue = table[index + 1];
+        table[index] = key;
+        table[index + 1] = value;
+        hashes[i] = smearedHash;
+        longestDistance = Math.max(longestDistance, distance);
+        key = existing;
+        value = existingValue;
+        smearedHash = existingHash;
+        distance = existingDistance;
+        displacing = true;
       }
     }
-    keySetHashCode = keySetHashCodeMutable;
   }
 
   @Override public V get(Object key) {
     if (key == null) {
       return null;
     }
-    for (int i = Hashing.smear(key.hashCode()); true; i++) {
-      int index = (i & mask) * 2;
+    int smearedHash = Hashing.smear(key.hashCode());
+    for (int i = smearedHash & mask, distance = 0; true;
+        i = (i + 1) & mask, distance++) {
+      int index = i * 2;
       Object candidate = table[index];
       if (candidate == null) {
         return null;
       }
-      if (candidate.equals(key)) {
-        // we're careful to store only V's at odd indices
-        @SuppressWarnings("unchecked")
-        V value = (V) table[index + 1];
-        return value;
+      int candidateHash = hashes[i];
+      if (candidateHash == smearedHash) {
+        if (candidate.equals(key)) {
+          // we're careful to store only V's at odd indices
+          @SuppressWarnings("unchecked")
+          V value = (V) table[index + 1];
+          return value;
+        }
+      } else if (Hashing.probeDistance(candidateHash, i, mask) < distance) {
+        return null;
       }
     }
   }
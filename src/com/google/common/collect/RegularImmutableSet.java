@@ -30,29 +30,85 @@ import com.google.common.collect.ImmutableSet.ArrayImmutableSet;
 final class RegularImmutableSet<E> extends ArrayImmutableSet<E> {
   // the same elements in hashed positions (plus nulls)
   @VisibleForTesting final transient Object[] table;
+  // the smeared hash code of the element at each position of the table
+  private final transient int[] hashes;
   // 'and' with an int to get a valid table index.
   private final transient int mask;
   private final transient int hashCode;
 
-  RegularImmutableSet(
-      Object[] elements, int hashCode, Object[] table, int mask) {
+  RegularImmutableSet(Object[] elements, int hashCode, Object[] table,
+      int[] hashes, int mask) {
     super(elements);
     this.table = table;
+    this.hashes = hashes;
     this.mask = mask;
     this.hashCode = hashCode;
   }
 
+  /**
+   * Adds an element to a table being built for a new set, unless the table
+   * already contains an equal element. The table is built by Robin Hood
+   * insertion: an element takes the slot of any element it finds closer to
+   * that element's home slot, which then moves further along. That bounds
+   * the variance of probe lengths and lets {@link #contains} stop early.
+   *
+   * @param smearedHash the element's hash code, passed through {@link
+   *     Hashing#smear}
+   * @return the longest distance from its home slot at which this placed an
+   *     element, or -1 if the element was already present
+   */
+  static int insert(
+      Object[] table, int[] hashes, int mask, Object element, int smearedHash) {
+    boolean displacing = false;
+    int longestDistance = 0;
+    for (int index = smearedHash & mask, distance = 0; true;
+        index = (index + 1) & mask, distance++) {
+      Object existing = table[index];
+      if (existing == null) {
+        table[index] = element;
+        hashes[index] = smearedHash;
+        return Math.max(longestDistance, distance);
+      }
+      int existingHash = hashes[index];
+      if (!displacing && existingHash == smearedHash
+          && existing.equals(element)) {
+        return -1;
+      }
+      int existingDistance = Hashing.probeDistance(existingHash, index, mask);
+      if (existingDistance < distance) {
+        // Take this slot and move the displaced element further along. It
+        // differs from every element in the table, so skip the equality
+        // check.
+        table[index] = element;
+        hashes[index] = smearedHash;
+        longestDistance = Math.max(longestDistance, distance);
+        element = existing;
+        smearedHash = existingHash;
+        distance = existingDistance;
+        displacing = true;
+      }
+    }
+  }
+
   @Override public boolean contains(Object target) {
     if (target == null) {
       return false;
     }
-    for (int i = Hashing.smear(target.hashCode()); true; i++) {
-      Object candidate = table[i & mask];
+    int smearedHash = Hashing.smear(target.hashCode());
+    for (int index = smearedHash & mask, distance = 0; true;
+        index = (index + 1) & mask, distance++) {
+      Object candidate = table[index];
       if (candidate == null) {
         return false;
       }
-      if (candidate.equals(target)) {
-        return true;
+      int candidateHash = hashes[index];
+      if (candidateHash == smearedHash) {
+        if (candidate.equals(target)) {
+          return true;
+        }
+      } else if (Hashing.probeDistance(candidateHash, index, mask)
+          < distance) {
+        return false;
       }
     }
   }
@@ -48,21 +48,30 @@ final class RegularImmutableSortedSet<E>
    * index).
    */
   private final int toIndex;
+  /**
+   * An index over all of {@link #elements} that searches use in place of a
+   * binary search, or null if the set was built without one.
+   */
+  @Nullable private final EytzingerIndex index;
 
   RegularImmutableSortedSet(Object[] elements,
       Comparator<? super E> comparator) {
-    super(comparator);
-    this.elements = elements;
-    this.fromIndex = 0;
-    this.toIndex = elements.length;
+    this(elements, comparator, 0, elements.length, null);
   }
 
   RegularImmutableSortedSet(Object[] elements,
-      Comparator<? super E> comparator, int fromIndex, int toIndex) {
+      Comparator<? super E> comparator, @Nullable EytzingerIndex index) {
+    this(elements, comparator, 0, elements.length, index);
+  }
+
+  RegularImmutableSortedSet(Object[] elements,
+      Comparator<? super E> comparator, int fromIndex, int toIndex,
+      @Nullable EytzingerIndex index) {
     super(comparator);
     this.elements = elements;
     this.fromIndex = fromIndex;
     this.toIndex = toIndex;
+    this.index = index;
   }
 
   // The factory methods ensure that every element is an E.
@@ -128,6 +137,9 @@ final class RegularImmutableSortedSet<E>
   }
 
   private int binarySearch(Object key) {
+    if (index != null) {
+      return index.binarySearch(key, fromIndex, toIndex);
+    }
     int lower = fromIndex;
     int upper = toIndex - 1;
 
@@ -241,7 +253,7 @@ final class RegularImmutableSortedSet<E>
       int newFromIndex, int newToIndex) {
     if (newFromIndex < newToIndex) {
       return new RegularImmutableSortedSet<E>(elements, comparator,
-          newFromIndex, newToIndex);
+          newFromIndex, newToIndex, index);
     } else {
       return emptySet(comparator);
     }
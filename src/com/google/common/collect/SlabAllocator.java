@@ -0,0 +1,229 @@
+/*
+ * Copyright (C) 2009 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.collect;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Allocates blocks of off-heap memory from large direct {@link ByteBuffer}
+ * slabs. Each slab is dedicated to one size class, and each size class is
+ * about 25% larger than the previous one, so no more than about a fifth of
+ * an allocated block is wasted. Freed blocks are kept on a free list for
+ * their size class and reused before any new slab is allocated. Slabs
+ * themselves are never released; they're reclaimed along with the
+ * allocator. Requests larger than a slab get a dedicated buffer, which is
+ * released when freed.
+ *
+ * <p>A block is identified by a {@code long} handle encoding the index of
+ * its slab and its offset in that slab. Handles are only valid until they're
+ * freed; the allocator doesn't detect use after free.
+ *
+ * <p>This class is thread-safe.
+ */
+final class SlabAllocator {
+
+  static final int DEFAULT_SLAB_SIZE = 1 << 20;
+
+  private static final int MIN_BLOCK_SIZE = 16;
+
+  private final int slabSize;
+
+  /** Block size of each size class, in increasing order. */
+  private final int[] blockSizes;
+
+  private final SizeClass[] sizeClasses;
+
+  /**
+   * Slabs by index. Slots of released dedicated buffers are null and are
+   * listed in {@link #freeSlabIndexes}. Guarded by {@code this} for writes.
+   * Readers need no lock: a handle is always published to them after its
+   * slab was stored here, and the array is replaced only when it grows.
+   */
+  private volatile ByteBuffer[] slabs = new ByteBuffer[16];
+  private int slabCount;
+  private int[] freeSlabIndexes = new int[0];
+  private int freeSlabIndexCount;
+
+  SlabAllocator() {
+    this(DEFAULT_SLAB_SIZE);
+  }
+
+  SlabAllocator(int slabSize) {
+    if (slabSize < MIN_BLOCK_SIZE) {
+      throw new IllegalArgumentException("slab size: " + slabSize);
+    }
+    this.slabSize = slabSize;
+
+    int count = 0;
+    for (int size = MIN_BLOCK_SIZE; size < slabSize; size = nextSize(size)) {
+      count++;
+    }
+    blockSizes = new int[count];
+    for (int i = 0, size = MIN_BLOCK_SIZE; i < count; i++) {
+      blockSizes[i] = size;
+      size = nextSize(size);
+    }
+    sizeClasses = new SizeClass[count];
+    for (int i = 0; i < count; i++) {
+      sizeClasses[i] = new SizeClass(blockSizes[i]);
+    }
+  }
+
+  /** Grows a block size by about 25%, keeping it a multiple of eight. */
+  private static int nextSize(int size) {
+    return Math.max(size + 8, (size + (size >>> 2) + 7) & ~7);
+  }
+
+  /**
+   * Allocates a block of at least {@code size} bytes and returns its handle.
+   */
+  long allocate(int size) {
+    SizeClass sizeClass = sizeClassFor(size);
+    return (sizeClass == null)
+        ? handle(addSlab(ByteBuffer.allocateDirect(size)), 0)
+        : sizeClass.allocate();
+  }
+
+  /**
+   * Frees a block previously allocated with the given size.
+   */
+  void free(long handle, int size) {
+    SizeClass sizeClass = sizeClassFor(size);
+    if (sizeClass == null) {
+      removeSlab(slabIndex(handle));
+    } else {
+      sizeClass.free(handle);
+    }
+  }
+
+  /**
+   * Returns a buffer whose remaining bytes are the first {@code size} bytes
+   * of the given block. The buffer is independent of any other buffer
+   * returned by this method.
+   */
+  ByteBuffer buffer(long handle, int size) {
+    return slice(slabs[slabIndex(handle)].duplicate(), handle, size);
+  }
+
+  /**
+   * Returns a read-only buffer whose remaining bytes are the first {@code
+   * size} bytes of the given block. The bytes aren't copied.
+   */
+  ByteBuffer readOnlyBuffer(long handle, int size) {
+    return slice(slabs[slabIndex(handle)].asReadOnlyBuffer(), handle, size);
+  }
+
+  private static ByteBuffer slice(ByteBuffer buffer, long handle, int size) {
+    int offset = offset(handle);
+    buffer.limit(offset + size).position(offset);
+    return buffer;
+  }
+
+  /** Returns the number of slabs and dedicated buffers in use. */
+  synchronized int slabCount() {
+    return slabCount - freeSlabIndexCount;
+  }
+
+  private SizeClass sizeClassFor(int size) {
+    if (size > blockSizes[blockSizes.length - 1]) {
+      return null;
+    }
+    int i = Arrays.binarySearch(blockSizes, size);
+    return sizeClasses[(i >= 0) ? i : -i - 1];
+  }
+
+  private synchronized int addSlab(ByteBuffer slab) {
+    int index;
+    if (freeSlabIndexCount > 0) {
+      index = freeSlabIndexes[--freeSlabIndexCount];
+    } else {
+      index = slabCount++;
+    }
+    ByteBuffer[] slabs = this.slabs;
+    if (index == slabs.length) {
+      ByteBuffer[] grown = new ByteBuffer[index * 2];
+      System.arraycopy(slabs, 0, grown, 0, index);
+      slabs = grown;
+    }
+    slabs[index] = slab;
+    this.slabs = slabs;
+    return index;
+  }
+
+  private synchronized void removeSlab(int index) {
+    slabs[index] = null;
+    if (freeSlabIndexCount == freeSlabIndexes.length) {
+      int[] grown = new int[Math.max(freeSlabIndexCount * 2, 4)];
+      System.arraycopy(freeSlabIndexes, 0, grown, 0, freeSlabIndexCount);
+      freeSlabIndexes = grown;
+    }
+    freeSlabIndexes[freeSlabIndexCount++] = index;
+  }
+
+  private static long handle(int slabIndex, int offset) {
+    return ((long) slabIndex << 32) | offset;
+  }
+
+  private static int slabIndex(long handle) {
+    return (int) (handle >>> 32);
+  }
+
+  private static int offset(long handle) {
+    return (int) handle;
+  }
+
+  /** The blocks of one size. */
+  private final class SizeClass {
+    final int blockSize;
+
+    /** The slab that new blocks are carved from, or -1 if none. */
+    int currentSlab = -1;
+
+    /** Offset of the next unused block in the current slab. */
+    int nextOffset;
+
+    long[] freeBlocks = new long[0];
+    int freeBlockCount;
+
+    SizeClass(int blockSize) {
+      this.blockSize = blockSize;
+    }
+
+    synchronized long allocate() {
+      if (freeBlockCount > 0) {
+        return freeBlocks[--freeBlockCount];
+      }
+      if (currentSlab == -1 || nextOffset + blockSize > slabSize) {
+        currentSlab = addSlab(ByteBuffer.allocateDirect(slabSize));
+        nextOffset = 0;
+      }
+      long handle = handle(currentSlab, nextOffset);
+      nextOffset += blockSize;
+      return handle;
+    }
+
+    synchronized void free(long handle) {
+      if (freeBlockCount == freeBlocks.length) {
+        long[] grown = new long[Math.max(freeBlockCount * 2, 4)];
+        System.arraycopy(freeBlocks, 0, grown, 0, freeBlockCount);
+        freeBlocks = grown;
+      }
+      freeBlocks[freeBlockCount++] = handle;
+    }
+  }
+}
@@ -0,0 +1,307 @@
+/*
+ * Copyright (C) 2009 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.collect;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.annotations.GwtCompatible;
+
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nullable;
+
+/**
+ * Implementation of {@link ImmutableMap} with two to {@link #MAX_SIZE}
+ * entries, which keeps its keys and values side by side in one array and
+ * finds a key by scanning it. The hash code of each key is kept too, so the
+ * scan calls {@code equals} only on keys with a matching hash code. Keeps no
+ * entry objects; {@link #entrySet} creates them as it's iterated.
+ */
+@GwtCompatible(serializable = true)
+final class SmallImmutableMap<K, V> extends ImmutableMap<K, V> {
+
+  /**
+   * The most entries a map of this class holds. Up to this size, a scan of
+   * the hash codes costs no more than probing a hash table.
+   */
+  static final int MAX_SIZE = 8;
+
+  // alternating keys and values, in insertion order
+  private final transient Object[] keysAndValues;
+  // the hash code of each key
+  private final transient int[] hashes;
+
+  /**
+   * Creates a map from alternating keys and values, which it keeps.
+   *
+   * @throws NullPointerException if any key or value is null
+   * @throws IllegalArgumentException if any two keys are equal
+   */
+  SmallImmutableMap(Object... keysAndValues) {
+    for (Object keyOrValue : keysAndValues) {
+      checkNotNull(keyOrValue);
+    }
+    this.keysAndValues = keysAndValues;
+    int size = keysAndValues.length / 2;
+    hashes = new int[size];
+    for (int i = 0; i < size; i++) {
+      Object key = keysAndValues[i * 2];
+      int hash = key.hashCode();
+      if (indexOf(key, hash, i) != -1) {
+        throw new IllegalArgumentException("duplicate key: " + key);
+      }
+      hashes[i] = hash;
+    }
+  }
+
+  /**
+   * Creates a map with the keys and values of {@code entries}, without
+   * keeping the entries.
+   */
+  static <K, V> SmallImmutableMap<K, V> copyOf(
+      List<? extends Entry<? extends K, ? extends V>> entries) {
+    Object[] keysAndValues = new Object[entries.size() * 2];
+    int i = 0;
+    for (Entry<? extends K, ? extends V> entry : entries) {
+      keysAndValues[i++] = entry.getKey();
+      keysAndValues[i++] = entry.getValue();
+    }
+    return new SmallImmutableMap<K, V>(keysAndValues);
+  }
+
+  /**
+   * Returns the index of the entry among the first {@code limit} whose key is
+   * {@code key}, which has the given hash code, or -1 if there's none.
+   */
+  private int indexOf(Object key, int hash, int limit) {
+    for (int i = 0; i < limit; i++) {
+      if (hashes[i] == hash && keysAndValues[i * 2].equals(key)) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  @Override public V get(@Nullable Object key) {
+    if (key == null) {
+      return null;
+    }
+    int i = indexOf(key, key.hashCode(), hashes.length);
+    return (i == -1) ? null : valueAt(i);
+  }
+
+  public int size() {
+    return hashes.length;
+  }
+
+  @Override public boolean isEmpty() {
+    return false;
+  }
+
+  @Override public boolean containsValue(@Nullable Object value) {
+    if (value == null) {
+      return false;
+    }
+    for (int i = 1; i < keysAndValues.length; i += 2) {
+      if (keysAndValues[i].equals(value)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  @SuppressWarnings("unchecked") // we store only K's at even indices
+  K keyAt(int i) {
+    return (K) keysAndValues[i * 2];
+  }
+
+  @SuppressWarnings("unchecked") // we store only V's at odd indices
+  V valueAt(int i) {
+    return (V) keysAndValues[i * 2 + 1];
+  }
+
+  private transient ImmutableSet<Entry<K, V>> entrySet;
+
+  @Override public ImmutableSet<Entry<K, V>> entrySet() {
+    ImmutableSet<Entry<K, V>> es = entrySet;
+    return (es == null) ? (entrySet = new EntrySet<K, V>(this)) : es;
+  }
+
+  @SuppressWarnings("serial") // uses writeReplace(), not default serialization
+  private static class EntrySet<K, V> extends ImmutableSet<Entry<K, V>> {
+    final transient SmallImmutableMap<K, V> map;
+
+    EntrySet(SmallImmutableMap<K, V> map) {
+      this.map = map;
+    }
+
+    public int size() {
+      return map.size();
+    }
+
+    @Override public UnmodifiableIterator<Entry<K, V>> iterator() {
+      return new AbstractIndexedIterator<Entry<K, V>>(map.size()) {
+        @Override Entry<K, V> get(int index) {
+          return Maps.immutableEntry(map.keyAt(index), map.valueAt(index));
+        }
+      };
+    }
+
+    @Override public boolean contains(Object target) {
+      if (target instanceof Entry) {
+        Entry<?, ?> entry = (Entry<?, ?>) target;
+        V mappedValue = map.get(entry.getKey());
+        return mappedValue != null && mappedValue.equals(entry.getValue());
+      }
+      return false;
+    }
+
+    @Override public int hashCode() {
+      return map.hashCode();
+    }
+  }
+
+  private transient ImmutableSet<K> keySet;
+
+  @Override public ImmutableSet<K> keySet() {
+    ImmutableSet<K> ks = keySet;
+    return (ks == null) ? (keySet = new KeySet<K, V>(this)) : ks;
+  }
+
+  @SuppressWarnings("serial") // uses writeReplace(), not default serialization
+  private static class KeySet<K, V> extends ImmutableSet<K> {
+    final SmallImmutableMap<K, V> map;
+
+    KeySet(SmallImmutableMap<K, V> map) {
+      this.map = map;
+    }
+
+    public int size() {
+      return map.size();
+    }
+
+    @Override public UnmodifiableIterator<K> iterator() {
+      return new AbstractIndexedIterator<K>(map.size()) {
+        @Override K get(int index) {
+          return map.keyAt(index);
+        }
+      };
+    }
+
+    @Override public boolean contains(Object target) {
+      return map.containsKey(target);
+    }
+
+    @Override public int hashCode() {
+      int hashCode = 0;
+      for (int hash : map.hashes) {
+        hashCode += hash;
+      }
+      return hashCode;
+    }
+
+    @Override boolean isHashCodeFast() {
+      return true;
+    }
+  }
+
+  private transient ImmutableCollection<V> values;
+
+  @Override public ImmutableCollection<V> values() {
+    ImmutableCollection<V> v = values;
+    return (v == null) ? (values = new Values<V>(this)) : v;
+  }
+
+  @SuppressWarnings("serial") // uses writeReplace(), not default serialization
+  private static class Values<V> extends ImmutableCollection<V> {
+    final SmallImmutableMap<?, V> map;
+
+    Values(SmallImmutableMap<?, V> map) {
+      this.map = map;
+    }
+
+    public int size() {
+      return map.size();
+    }
+
+    @Override public UnmodifiableIterator<V> iterator() {
+      return new AbstractIndexedIterator<V>(map.size()) {
+        @Override V get(int index) {
+          return map.valueAt(index);
+        }
+      };
+    }
+
+    @Override public boolean contains(Object target) {
+      return map.containsValue(target);
+    }
+  }
+
+  // equals, hashCode and toString read the array directly, rather than
+  // creating entries to go through entrySet()
+
+  @Override public boolean equals(@Nullable Object object) {
+    if (object == this) {
+      return true;
+    }
+    if (!(object instanceof Map)) {
+      return false;
+    }
+    Map<?, ?> that = (Map<?, ?>) object;
+    if (that.size() != size()) {
+      return false;
+    }
+    try {
+      for (int i = 0; i < keysAndValues.length; i += 2) {
+        if (!keysAndValues[i + 1].equals(that.get(keysAndValues[i]))) {
+          return false;
+        }
+      }
+      return true;
+    } catch (ClassCastException e) {
+      return false;
+    } catch (NullPointerException e) {
+      return false;
+    }
+  }
+
+  @Override public int hashCode() {
+    // not caching hash code since it could change if map values are mutable
+    // in a way that modifies their hash codes
+    int hashCode = 0;
+    for (int i = 0; i < hashes.length; i++) {
+      hashCode += hashes[i] ^ keysAndValues[i * 2 + 1].hashCode();
+    }
+    return hashCode;
+  }
+
+  @Override public String toString() {
+    StringBuilder result = new StringBuilder(size() * 16).append('{');
+    for (int i = 0; i < keysAndValues.length; i += 2) {
+      if (i > 0) {
+        result.append(", ");
+      }
+      result.append(keysAndValues[i]).append('=').append(keysAndValues[i + 1]);
+    }
+    return result.append('}').toString();
+  }
+
+  // This class is never actually serialized directly, but we have to make the
+  // warning go away (and suppressing would suppress for all nested classes too)
+  private static final long serialVersionUID = 0;
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2009 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.collect;
+
+import com.google.common.annotations.GwtCompatible;
+import com.google.common.collect.ImmutableSet.ArrayImmutableSet;
+
+/**
+ * Implementation of {@link ImmutableSet} with two to {@link #MAX_SIZE}
+ * elements, which finds an element by scanning its array of elements rather
+ * than through a hash table. The hash code of each element is kept too, so
+ * the scan calls {@code equals} only on elements with a matching hash code.
+ */
+@GwtCompatible(serializable = true)
+@SuppressWarnings("serial") // uses writeReplace(), not default serialization
+final class SmallImmutableSet<E> extends ArrayImmutableSet<E> {
+
+  /**
+   * The most elements a set of this class holds. Up to this size, a scan of
+   * the hash codes costs no more than probing a hash table.
+   */
+  static final int MAX_SIZE = 8;
+
+  // the hash code of each element
+  private final transient int[] hashes;
+  private final transient int hashCode;
+
+  SmallImmutableSet(Object[] elements, int[] hashes, int hashCode) {
+    super(elements);
+    this.hashes = hashes;
+    this.hashCode = hashCode;
+  }
+
+  /**
+   * Returns the index of the element among the first {@code limit} that
+   * equals {@code target}, which has the given hash code, or -1 if there's
+   * none.
+   */
+  static int indexOf(
+      Object[] elements, int[] hashes, int limit, Object target, int hash) {
+    for (int i = 0; i < limit; i++) {
+      if (hashes[i] == hash && elements[i].equals(target)) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  @Override public boolean contains(Object target) {
+    if (target == null) {
+      return false;
+    }
+    return indexOf(elements, hashes, hashes.length, target, target.hashCode())
+        != -1;
+  }
+
+  @Override public int hashCode() {
+    return hashCode;
+  }
+
+  @Override boolean isHashCodeFast() {
+    return true;
+  }
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright (C) 2009 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.collect;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Converts values to and from bytes so that a map can store them outside
+ * the Java heap. See {@link MapMaker#offHeapValues}.
+ *
+ * @param <V> the type of values that this serializer handles
+ */
+public interface ValueSerializer<V> {
+
+  /**
+   * Returns the exact number of bytes that {@link #write} will produce for
+   * {@code value}.
+   */
+  int serializedSize(V value);
+
+  /**
+   * Writes {@code value} to {@code buffer}, starting at its position. The
+   * buffer has exactly {@link #serializedSize serializedSize(value)} bytes
+   * remaining, all of which must be written.
+   */
+  void write(V value, ByteBuffer buffer);
+
+  /**
+   * Reads a value from {@code buffer}, whose remaining bytes are exactly
+   * those written by {@link #write}. The buffer is a read-only view of
+   * off-heap memory rather than a copy, so fields can be decoded straight
+   * from it. It is only valid for the duration of the call: once an entry is
+   * removed or replaced, its memory is reused for other values, so the
+   * returned value must not retain the buffer or any view of it.
+   */
+  V read(ByteBuffer buffer);
+}
@@ -0,0 +1,197 @@
+/*
+ * Copyright (C) 2009 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.common.hash;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkPositionIndexes;
+
+/**
+ * A convenience base class for hashers of functions that process their
+ * input in fixed-size chunks. Puts are collected, in little-endian order,
+ * in a small array, which is handed to {@link #process} as soon as it holds
+ * a whole chunk; large byte arrays are processed in place.
+ */
+abstract class AbstractStreamingHasher implements Hasher {
+  private final int chunkSize;
+
+  /**
+   * Holds up to a chunk and seven more bytes, so that any primitive fits
+   * after a partial chunk.
+   */
+  private final byte[] buffer;
+  private int position;
+
+  AbstractStreamingHasher(int chunkSize) {
+    this.chunkSize = chunkSize;
+    this.buffer = new byte[chunkSize + 7];
+  }
+
+  /**
+   * Processes the {@code chunkSize} bytes of {@code bytes} starting at
+   * {@code offset}.
+   */
+  abstract void process(byte[] bytes, int offset);
+
+  /**
+   * Processes the last, incomplete chunk: the {@code length} bytes of {@code
+   * bytes} starting at {@code offset}, of which there are at least one and
+   * fewer than {@code chunkSize}.
+   */
+  abstract void processRemaining(byte[] bytes, int offset, int length);
+
+  /** Returns the hash code, once all input was processed. */
+  abstract HashCode makeHash();
+
+  public final Hasher putByte(byte b) {
+    buffer[position++] = b;
+    munchIfFull();
+    return this;
+  }
+
+  public final Hasher putBytes(byte[] bytes) {
+    return putBytes(bytes, 0, bytes.length);
+  }
+
+  public final Hasher putBytes(byte[] bytes, int offset, int length) {
+    checkPositionIndexes(offset, offset + length, bytes.length);
+    if (position + length < chunkSize) {
+      System.arraycopy(bytes, offset, buffer, position, length);
+      position += length;
+      return this;
+    }
+
+    // Complete the buffered chunk, then process whole chunks in place.
+    int end = offset + length;
+    if (position > 0) {
+      int bytesToCopy = chunkSize - position;
+      System.arraycopy(bytes, offset, buffer, position, bytesToCopy);
+      process(buffer, 0);
+      position = 0;
+      offset += bytesToCopy;
+    }
+    for (; end - offset >= chunkSize; offset += chunkSize) {
+      process(bytes, offset);
+    }
+    System.arraycopy(bytes, offset, buffer, 0, end - offset);
+    position = end - offset;
+    return this;
+  }
+
+  public final Hasher putShort(short s) {
+    buffer[position] = (byte) s;
+    buffer[position + 1] = (byte) (s >> 8);
+    position += 2;
+    munchIfFull();
+    return this;
+  }
+
+  public final Hasher putInt(int i) {
+    buffer[position] = (byte) i;
+    buffer[position + 1] = (byte) (i >> 8);
+    buffer[position + 2] = (byte) (i >> 16);
+    buffer[position + 3] = (byte) (i >> 24);
+    position += 4;
+    munchIfFull();
+    return this;
+  }
+
+  public final Hasher putLong(long l) {
+    for (int i = 0; i < 8; i++) {
+      buffer[position + i] = (byte) (l >> (i * 8));
+    }
+    position += 8;
+    munchIfFull();
+    return this;
+  }
+
+  public final Hasher putFloat(float f) {
+    return putInt(Float.floatToRawIntBits(f));
+  }
+
+  public final Hasher putDouble(double d) {
+    return putLong(Double.doubleToRawLongBits(d));
+  }
+
+  public final Hasher putBoolean(boolean b) {
+    return putByte(b ? (byte) 1 : (byte) 0);
+  }
+
+  public final Hasher putChar(char c) {
+    buffer[position] = (byte) c;
+    buffer[position + 1] = (byte) (c >> 8);
+    position += 2;
+    munchIfFull();
+    return this;
+  }
+
+  public final Hasher putString(CharSequence charSequence) {
+    for (int i = 0, length = charSequence.length(); i < length; i++) {
+      putChar(charSequence.charAt(i));
+    }
+    return this;
+  }
+
+  public final <T> Hasher putObject(T instance, Funnel<? super T> funnel) {
+    checkNotNull(funnel).funnel(instance, this);
+    return this;
+  }
+
+  public final HashCode hash() {
+    if (position > 0) {
+      processRemaining(buffer, 0, position);
+    }
+    return makeHash();
+  }
+
+  /** Processes the buffered whole chunks, if any. */
+  private void munchIfFull() {
+    if (position >= chunkSize) {
+      int offset = 0;
+      do {
+        process(buffer, offset);
+        offset += chunkSize;
+      } while (position - offset >= chunkSize);
+      position -= offset;
+      for (int i = 0; i < position; i++) {
+        buffer[i] = buffer[offset + i];
+      }
+    }
+  }
+
+  static int getIntLittleEndian(byte[] bytes, int offset) {
+    return (bytes[offset] & 0xff)
+        | (bytes[offset + 1] & 0xff) << 8
+        | (bytes[offset + 2] & 0xff) << 16
+        | bytes[offset + 3] << 24;
+  }
+
+  static long getLongLittleEndian(byte[] bytes, int offset) {
+    return (getIntLittleEndian(bytes, offset) & 0xffffffffL)
+        | (long) getIntLittleEndian(bytes, offset + 4) << 32;
+  }
+
+  /**
+   * Returns the {@code length} bytes, at most eight, of {@code bytes}
+   * starting at {@code offset}, as a little-endian long.
+   */
+  static long getPartialLittleEndian(byte[] bytes, int offset, int length) {
+    long value = 0;
+    for (int i = length - 1; i >= 0; i--) {
+      value = (value << 8) | (bytes[offset + i] & 0xff);
+    }
+    return value;
+  }
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright (C) 2009 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.hash;
+
+/**
+ * An object which can send data from an object of type {@code T} into a
+ * {@link Hasher}, as primitive values. A funnel for a value class typically
+ * puts each of its significant fields in turn: <pre>   {@code
+ *
+ *   public enum PersonFunnel implements Funnel<Person> {
+ *     INSTANCE;
+ *     public void funnel(Person person, Hasher into) {
+ *       into.putString(person.getName()).putInt(person.getAge());
+ *     }
+ *   }}</pre>
+ *
+ * <p>Two objects that are equal should put the same values in the same
+ * order; otherwise they won't hash to the same code.
+ *
+ * @param <T> the type of object this funnel accepts
+ */
+public interface Funnel<T> {
+
+  /**
+   * Sends a stream of data from the {@code from} object into the hasher
+   * {@code into}.
+   */
+  void funnel(T from, Hasher into);
+}
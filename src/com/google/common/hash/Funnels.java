@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2009 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.common.hash;
+
+/**
+ * Funnels for common types. All are stateless singletons.
+ */
+public final class Funnels {
+  private Funnels() {}
+
+  /**
+   * Returns a funnel that puts each byte of an array, as {@link
+   * Hasher#putBytes(byte[])} does.
+   */
+  public static Funnel<byte[]> byteArrayFunnel() {
+    return ByteArrayFunnel.INSTANCE;
+  }
+
+  // enum singleton pattern
+  private enum ByteArrayFunnel implements Funnel<byte[]> {
+    INSTANCE;
+
+    public void funnel(byte[] from, Hasher into) {
+      into.putBytes(from);
+    }
+
+    @Override public String toString() {
+      return "Funnels.byteArrayFunnel()";
+    }
+  }
+
+  /**
+   * Returns a funnel that puts the chars of a character sequence, as {@link
+   * Hasher#putString} does.
+   */
+  public static Funnel<CharSequence> stringFunnel() {
+    return StringFunnel.INSTANCE;
+  }
+
+  // enum singleton pattern
+  private enum StringFunnel implements Funnel<CharSequence> {
+    INSTANCE;
+
+    public void funnel(CharSequence from, Hasher into) {
+      into.putString(from);
+    }
+
+    @Override public String toString() {
+      return "Funnels.stringFunnel()";
+    }
+  }
+
+  /** Returns a funnel that puts an integer, as {@link Hasher#putInt} does. */
+  public static Funnel<Integer> integerFunnel() {
+    return IntegerFunnel.INSTANCE;
+  }
+
+  // enum singleton pattern
+  private enum IntegerFunnel implements Funnel<Integer> {
+    INSTANCE;
+
+    public void funnel(Integer from, Hasher into) {
+      into.putInt(from);
+    }
+
+    @Override public String toString() {
+      return "Funnels.integerFunnel()";
+    }
+  }
+
+  /** Returns a funnel that puts a long, as {@link Hasher#putLong} does. */
+  public static Funnel<Long> longFunnel() {
+    return LongFunnel.INSTANCE;
+  }
+
+  // enum singleton pattern
+  private enum LongFunnel implements Funnel<Long> {
+    INSTANCE;
+
+    public void funnel(Long from, Hasher into) {
+      into.putLong(from);
+    }
+
+    @Override public String toString() {
+      return "Funnels.longFunnel()";
+    }
+  }
+}
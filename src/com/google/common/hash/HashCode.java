@@ -0,0 +1,183 @@
+/*
+ * Copyright (C) 2009 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.common.hash;
+
+import java.util.Arrays;
+
+/**
+ * An immutable hash code of arbitrary bit length, as returned by a {@link
+ * HashFunction}. Two hash codes are equal if they have the same bits.
+ */
+public abstract class HashCode {
+  HashCode() {}
+
+  /**
+   * Returns the first four bytes of this hash code, taken as a little-endian
+   * int.
+   *
+   * @throws IllegalStateException if {@code bits() < 32}
+   */
+  public abstract int asInt();
+
+  /**
+   * Returns the first eight bytes of this hash code, taken as a
+   * little-endian long.
+   *
+   * @throws IllegalStateException if {@code bits() < 64}
+   */
+  public abstract long asLong();
+
+  /**
+   * Returns the bytes of this hash code, in order. Changes to the array
+   * don't affect this hash code.
+   */
+  public abstract byte[] asBytes();
+
+  /** Returns the number of bits in this hash code. */
+  public abstract int bits();
+
+  @Override public boolean equals(Object object) {
+    if (object instanceof HashCode) {
+      HashCode that = (HashCode) object;
+      return bits() == that.bits() && Arrays.equals(asBytes(), that.asBytes());
+    }
+    return false;
+  }
+
+  /**
+   * Returns a Java hash code, which is the first four bytes of this hash code
+   * as a little-endian int, or fewer if this hash code is shorter.
+   */
+  @Override public int hashCode() {
+    if (bits() >= 32) {
+      return asInt();
+    }
+    byte[] bytes = asBytes();
+    int value = 0;
+    for (int i = 0; i < bytes.length; i++) {
+      value |= (bytes[i] & 0xff) << (i * 8);
+    }
+    return value;
+  }
+
+  /**
+   * Returns the bytes of this hash code as lowercase hexadecimal digits, in
+   * order.
+   */
+  @Override public String toString() {
+    byte[] bytes = asBytes();
+    StringBuilder builder = new StringBuilder(bytes.length * 2);
+    for (byte b : bytes) {
+      builder.append(HEX_DIGITS[(b >> 4) & 0xf]).append(HEX_DIGITS[b & 0xf]);
+    }
+    return builder.toString();
+  }
+
+  private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+  static HashCode fromInt(int hash) {
+    return new IntHashCode(hash);
+  }
+
+  static HashCode fromLong(long hash) {
+    return new TwoLongHashCode(hash, 0, 64);
+  }
+
+  static HashCode fromLongs(long first, long second) {
+    return new TwoLongHashCode(first, second, 128);
+  }
+
+  private static final class IntHashCode extends HashCode {
+    final int hash;
+
+    IntHashCode(int hash) {
+      this.hash = hash;
+    }
+
+    @Override public int bits() {
+      return 32;
+    }
+
+    @Override public int asInt() {
+      return hash;
+    }
+
+    @Override public long asLong() {
+      throw new IllegalStateException(
+          "this HashCode only has 32 bits; cannot create a long");
+    }
+
+    @Override public byte[] asBytes() {
+      return new byte[] {
+          (byte) hash, (byte) (hash >> 8), (byte) (hash >> 16),
+          (byte) (hash >> 24)};
+    }
+
+    @Override public boolean equals(Object object) {
+      if (object instanceof IntHashCode) {
+        return hash == ((IntHashCode) object).hash;
+      }
+      return super.equals(object);
+    }
+  }
+
+  /**
+   * A 128-bit hash code, or its first 64 bits when {@code bits} is 64.
+   */
+  private static final class TwoLongHashCode extends HashCode {
+    final long first;
+    final long second;
+    final int bits;
+
+    TwoLongHashCode(long first, long second, int bits) {
+      this.first = first;
+      this.second = second;
+      this.bits = bits;
+    }
+
+    @Override public int bits() {
+      return bits;
+    }
+
+    @Override public int asInt() {
+      return (int) first;
+    }
+
+    @Override public long asLong() {
+      return first;
+    }
+
+    @Override public byte[] asBytes() {
+      byte[] bytes = new byte[bits / 8];
+      for (int i = 0; i < 8; i++) {
+        bytes[i] = (byte) (first >> (i * 8));
+      }
+      for (int i = 8; i < bytes.length; i++) {
+        bytes[i] = (byte) (second >> ((i - 8) * 8));
+      }
+      return bytes;
+    }
+
+    @Override public boolean equals(Object object) {
+      if (object instanceof TwoLongHashCode) {
+        TwoLongHashCode that = (TwoLongHashCode) object;
+        return bits == that.bits && first == that.first
+            && (bits == 64 || second == that.second);
+      }
+      return super.equals(object);
+    }
+  }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright (C) 2009 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.hash;
+
+/**
+ * A hash function, which maps arbitrary streams of data to fixed-length
+ * {@link HashCode}s. Data can be hashed all at once with one of the {@code
+ * hash} methods, or piece by piece with a {@link Hasher} from {@link
+ * #newHasher}. The two agree: for example, {@code hashInt(i)} equals {@code
+ * newHasher().putInt(i).hash()}. The one-shot methods may be faster.
+ *
+ * <p>Hash functions are immutable and thread-safe. Unlike {@link
+ * Object#hashCode}, their results are stable across runs and virtual
+ * machines, so they may be persisted or sent to other processes.
+ *
+ * @see Hashing
+ */
+public interface HashFunction {
+
+  /** Begins a new hash code computation. */
+  Hasher newHasher();
+
+  /** Returns the hash code of the four bytes of {@code input}. */
+  HashCode hashInt(int input);
+
+  /** Returns the hash code of the eight bytes of {@code input}. */
+  HashCode hashLong(long input);
+
+  /** Returns the hash code of {@code input}. */
+  HashCode hashBytes(byte[] input);
+
+  /**
+   * Returns the hash code of the {@code length} bytes of {@code input}
+   * starting at {@code offset}.
+   *
+   * @throws IndexOutOfBoundsException if {@code offset} or {@code length} is
+   *     negative, or {@code offset + length > input.length}
+   */
+  HashCode hashBytes(byte[] input, int offset, int length);
+
+  /**
+   * Returns the hash code of the chars of {@code input}, as {@link
+   * Hasher#putString} puts them.
+   */
+  HashCode hashString(CharSequence input);
+
+  /** Returns the hash code of {@code instance}, using the given funnel. */
+  <T> HashCode hashObject(T instance, Funnel<? super T> funnel);
+
+  /** Returns the number of bits in each hash code this function returns. */
+  int bits();
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2009 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.hash;
+
+/**
+ * An object which accepts a stream of primitive values, strings, bytes and
+ * objects, and computes their hash code once the stream is done. Multi-byte
+ * values are taken in little-endian byte order, so that, for example, {@code
+ * putInt(i)} is equivalent to four calls to {@link #putByte}, starting with
+ * the lowest byte of {@code i}. None of the methods box their argument or
+ * allocate per call.
+ *
+ * <p>A hasher may only be used once: after {@link #hash} is called, the
+ * result of any further call is undefined. Hashers aren't thread-safe.
+ */
+public interface Hasher {
+
+  /** Puts a byte into this hasher. */
+  Hasher putByte(byte b);
+
+  /** Puts each byte of {@code bytes} into this hasher, in order. */
+  Hasher putBytes(byte[] bytes);
+
+  /**
+   * Puts {@code length} bytes of {@code bytes}, starting at {@code offset},
+   * into this hasher, in order.
+   *
+   * @throws IndexOutOfBoundsException if {@code offset} or {@code length} is
+   *     negative, or {@code offset + length > bytes.length}
+   */
+  Hasher putBytes(byte[] bytes, int offset, int length);
+
+  /** Puts the two bytes of a short into this hasher. */
+  Hasher putShort(short s);
+
+  /** Puts the four bytes of an int into this hasher. */
+  Hasher putInt(int i);
+
+  /** Puts the eight bytes of a long into this hasher. */
+  Hasher putLong(long l);
+
+  /**
+   * Puts the bits of a float into this hasher, as {@code
+   * putInt(Float.floatToRawIntBits(f))} does.
+   */
+  Hasher putFloat(float f);
+
+  /**
+   * Puts the bits of a double into this hasher, as {@code
+   * putLong(Double.doubleToRawLongBits(d))} does.
+   */
+  Hasher putDouble(double d);
+
+  /** Puts a boolean into this hasher, as a byte that is 1 or 0. */
+  Hasher putBoolean(boolean b);
+
+  /** Puts the two bytes of a char into this hasher. */
+  Hasher putChar(char c);
+
+  /**
+   * Puts each char of {@code charSequence} into this hasher, as {@link
+   * #putChar} does. The chars aren't encoded, so this is faster than putting
+   * their UTF-8 bytes, but hashes differ from those of any encoding.
+   */
+  Hasher putString(CharSequence charSequence);
+
+  /** Puts an object into this hasher, using the given funnel. */
+  <T> Hasher putObject(T instance, Funnel<? super T> funnel);
+
+  /**
+   * Computes the hash code of everything put into this hasher. This method
+   * may only be called once.
+   */
+  HashCode hash();
+}
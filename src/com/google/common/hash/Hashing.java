@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2009 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.common.hash;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Static methods to obtain {@link HashFunction} instances, and other static
+ * hashing-related utilities.
+ *
+ * <p>The Murmur3 functions are fast, well-distributed, non-cryptographic
+ * hash functions, suitable for hash tables, sharding and checksums of data
+ * that isn't adversarial. Their results are stable: they won't change in
+ * future releases.
+ */
+public final class Hashing {
+  private Hashing() {}
+
+  private static final HashFunction MURMUR3_32 = new Murmur3_32HashFunction(0);
+  private static final HashFunction MURMUR3_64
+      = new Murmur3_128HashFunction(0, 64);
+  private static final HashFunction MURMUR3_128
+      = new Murmur3_128HashFunction(0, 128);
+
+  /**
+   * Returns a hash function implementing the 32-bit murmur3 algorithm, x86
+   * variant (little-endian variant), using a seed value of zero.
+   */
+  public static HashFunction murmur3_32() {
+    return MURMUR3_32;
+  }
+
+  /**
+   * Returns a hash function implementing the 32-bit murmur3 algorithm, x86
+   * variant (little-endian variant), using the given seed value.
+   */
+  public static HashFunction murmur3_32(int seed) {
+    return new Murmur3_32HashFunction(seed);
+  }
+
+  /**
+   * Returns a hash function whose hash codes are the first 64 bits of those
+   * of {@link #murmur3_128()}. Murmur3 has no 64-bit variant of its own;
+   * this is the usual choice when 32 bits are too few.
+   */
+  public static HashFunction murmur3_64() {
+    return MURMUR3_64;
+  }
+
+  /**
+   * Returns a hash function whose hash codes are the first 64 bits of those
+   * of {@link #murmur3_128(int)} with the given seed value.
+   */
+  public static HashFunction murmur3_64(int seed) {
+    return new Murmur3_128HashFunction(seed, 64);
+  }
+
+  /**
+   * Returns a hash function implementing the 128-bit murmur3 algorithm, x64
+   * variant (little-endian variant), using a seed value of zero.
+   */
+  public static HashFunction murmur3_128() {
+    return MURMUR3_128;
+  }
+
+  /**
+   * Returns a hash function implementing the 128-bit murmur3 algorithm, x64
+   * variant (little-endian variant), using the given seed value.
+   */
+  public static HashFunction murmur3_128(int seed) {
+    return new Murmur3_128HashFunction(seed, 128);
+  }
+
+  /**
+   * Assigns to {@code input} a "bucket" in the range {@code [0, buckets)}, in
+   * a uniform manner that minimizes the need for remapping as {@code buckets}
+   * grows. That is, {@code consistentHash(h, n)} equals:
+   *
+   * <ul>
+   * <li>{@code n - 1}, with approximate probability {@code 1/n}
+   * <li>{@code consistentHash(h, n - 1)}, otherwise (probability {@code
+   *     1 - 1/n})
+   * </ul>
+   *
+   * <p>So when a shard is added, only the keys that move to it change
+   * buckets. This uses the "jump" consistent hash of Lamping and Veach, which
+   * needs no memory and runs in time logarithmic in {@code buckets}. The
+   * input should already be well distributed, such as a hash code from one
+   * of the functions above.
+   *
+   * @throws IllegalArgumentException if {@code buckets} is not positive
+   */
+  public static int consistentHash(long input, int buckets) {
+    checkArgument(buckets > 0, "buckets must be positive: %s", buckets);
+    long key = input;
+    long candidate = 0;
+    long next = 0;
+    // Each step picks the next bucket count at which this key would jump.
+    while (next < buckets) {
+      candidate = next;
+      key = 2862933555777941757L * key + 1;
+      next = (long) ((candidate + 1)
+          * ((double) (1L << 31) / (double) ((key >>> 33) + 1)));
+    }
+    return (int) candidate;
+  }
+
+  /**
+   * Assigns to {@code hashCode} a "bucket" in the range {@code [0, buckets)},
+   * as {@link #consistentHash(long, int)} does for its first 64 bits, or for
+   * its first 32 bits if it's shorter.
+   *
+   * @throws IllegalArgumentException if {@code buckets} is not positive
+   */
+  public static int consistentHash(HashCode hashCode, int buckets) {
+    long input = (hashCode.bits() >= 64)
+        ? hashCode.asLong()
+        : hashCode.asInt() & 0xffffffffL;
+    return consistentHash(input, buckets);
+  }
+}
@@ -0,0 +1,196 @@
+/*
+ * Copyright (C) 2009 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.common.hash;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkPositionIndexes;
+
+import java.io.Serializable;
+
+/**
+ * Austin Appleby's MurmurHash3, x64 128-bit variant. When {@code bits} is 64,
+ * hash codes are the first 64 bits of the 128-bit hash.
+ */
+final class Murmur3_128HashFunction implements HashFunction, Serializable {
+  private static final long C1 = 0x87c37b91114253d5L;
+  private static final long C2 = 0x4cf5ad432745937fL;
+
+  private final int seed;
+  private final int bits;
+
+  Murmur3_128HashFunction(int seed, int bits) {
+    this.seed = seed;
+    this.bits = bits;
+  }
+
+  public int bits() {
+    return bits;
+  }
+
+  public Hasher newHasher() {
+    return new Murmur3_128Hasher(seed, bits);
+  }
+
+  public HashCode hashInt(int input) {
+    return hashTail(input & 0xffffffffL, 0, 4);
+  }
+
+  public HashCode hashLong(long input) {
+    return hashTail(input, 0, 8);
+  }
+
+  /** Hashes an input of fewer than 16 bytes. */
+  private HashCode hashTail(long k1, long k2, int length) {
+    long h1 = seed & 0xffffffffL;
+    long h2 = h1;
+    h1 ^= mixK1(k1);
+    h2 ^= mixK2(k2);
+    return makeHash(h1, h2, length, bits);
+  }
+
+  public HashCode hashBytes(byte[] input) {
+    return hashBytes(input, 0, input.length);
+  }
+
+  public HashCode hashBytes(byte[] input, int offset, int length) {
+    checkPositionIndexes(offset, offset + length, input.length);
+    long h1 = seed & 0xffffffffL;
+    long h2 = h1;
+    int end = offset + length;
+    int p = offset;
+    for (; end - p >= 16; p += 16) {
+      h1 ^= mixK1(AbstractStreamingHasher.getLongLittleEndian(input, p));
+      h1 = Long.rotateLeft(h1, 27);
+      h1 += h2;
+      h1 = h1 * 5 + 0x52dce729;
+      h2 ^= mixK2(AbstractStreamingHasher.getLongLittleEndian(input, p + 8));
+      h2 = Long.rotateLeft(h2, 31);
+      h2 += h1;
+      h2 = h2 * 5 + 0x38495ab5;
+    }
+    int remaining = end - p;
+    if (remaining > 0) {
+      h1 ^= mixK1(AbstractStreamingHasher.getPartialLittleEndian(
+          input, p, Math.min(remaining, 8)));
+      if (remaining > 8) {
+        h2 ^= mixK2(AbstractStreamingHasher.getPartialLittleEndian(
+            input, p + 8, remaining - 8));
+      }
+    }
+    return makeHash(h1, h2, length, bits);
+  }
+
+  public HashCode hashString(CharSequence input) {
+    return newHasher().putString(input).hash();
+  }
+
+  public <T> HashCode hashObject(T instance, Funnel<? super T> funnel) {
+    return newHasher().putObject(instance, checkNotNull(funnel)).hash();
+  }
+
+  @Override public boolean equals(Object object) {
+    if (object instanceof Murmur3_128HashFunction) {
+      Murmur3_128HashFunction that = (Murmur3_128HashFunction) object;
+      return seed == that.seed && bits == that.bits;
+    }
+    return false;
+  }
+
+  @Override public int hashCode() {
+    return getClass().hashCode() ^ seed ^ bits;
+  }
+
+  @Override public String toString() {
+    return "Hashing.murmur3_" + bits + "(" + seed + ")";
+  }
+
+  private static long mixK1(long k1) {
+    k1 *= C1;
+    k1 = Long.rotateLeft(k1, 31);
+    k1 *= C2;
+    return k1;
+  }
+
+  private static long mixK2(long k2) {
+    k2 *= C2;
+    k2 = Long.rotateLeft(k2, 33);
+    k2 *= C1;
+    return k2;
+  }
+
+  private static long fmix64(long k) {
+    k ^= k >>> 33;
+    k *= 0xff51afd7ed558ccdL;
+    k ^= k >>> 33;
+    k *= 0xc4ceb9fe1a85ec53L;
+    k ^= k >>> 33;
+    return k;
+  }
+
+  private static HashCode makeHash(long h1, long h2, long length, int bits) {
+    h1 ^= length;
+    h2 ^= length;
+    h1 += h2;
+    h2 += h1;
+    h1 = fmix64(h1);
+    h2 = fmix64(h2);
+    h1 += h2;
+    h2 += h1;
+    return (bits == 64) ? HashCode.fromLong(h1) : HashCode.fromLongs(h1, h2);
+  }
+
+  private static final class Murmur3_128Hasher extends AbstractStreamingHasher {
+    final int bits;
+    long h1;
+    long h2;
+    long length;
+
+    Murmur3_128Hasher(int seed, int bits) {
+      super(16);
+      this.bits = bits;
+      this.h1 = seed & 0xffffffffL;
+      this.h2 = h1;
+    }
+
+    @Override void process(byte[] bytes, int offset) {
+      long k1 = getLongLittleEndian(bytes, offset);
+      long k2 = getLongLittleEndian(bytes, offset + 8);
+      h1 ^= mixK1(k1);
+      h1 = Long.rotateLeft(h1, 27);
+      h1 += h2;
+      h1 = h1 * 5 + 0x52dce729;
+      h2 ^= mixK2(k2);
+      h2 = Long.rotateLeft(h2, 31);
+      h2 += h1;
+      h2 = h2 * 5 + 0x38495ab5;
+      length += 16;
+    }
+
+    @Override void processRemaining(byte[] bytes, int offset, int length) {
+      this.length += length;
+      h1 ^= mixK1(getPartialLittleEndian(bytes, offset, Math.min(length, 8)));
+      if (length > 8) {
+        h2 ^= mixK2(getPartialLittleEndian(bytes, offset + 8, length - 8));
+      }
+    }
+
+    @Override HashCode makeHash() {
+      return Murmur3_128HashFunction.makeHash(h1, h2, length, bits);
+    }
+  }
+
+  private static final long serialVersionUID = 0;
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright (C) 2009 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.common.hash;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkPositionIndexes;
+
+import java.io.Serializable;
+
+/**
+ * Austin Appleby's MurmurHash3, x86 32-bit variant. The one-shot methods
+ * mix their input directly, without a {@link Hasher}.
+ */
+final class Murmur3_32HashFunction implements HashFunction, Serializable {
+  private static final int C1 = 0xcc9e2d51;
+  private static final int C2 = 0x1b873593;
+
+  private final int seed;
+
+  Murmur3_32HashFunction(int seed) {
+    this.seed = seed;
+  }
+
+  public int bits() {
+    return 32;
+  }
+
+  public Hasher newHasher() {
+    return new Murmur3_32Hasher(seed);
+  }
+
+  public HashCode hashInt(int input) {
+    int h1 = mixH1(seed, mixK1(input));
+    return HashCode.fromInt(fmix(h1, 4));
+  }
+
+  public HashCode hashLong(long input) {
+    int h1 = mixH1(seed, mixK1((int) input));
+    h1 = mixH1(h1, mixK1((int) (input >>> 32)));
+    return HashCode.fromInt(fmix(h1, 8));
+  }
+
+  public HashCode hashBytes(byte[] input) {
+    return hashBytes(input, 0, input.length);
+  }
+
+  public HashCode hashBytes(byte[] input, int offset, int length) {
+    checkPositionIndexes(offset, offset + length, input.length);
+    int h1 = seed;
+    int end = offset + length;
+    int p = offset;
+    for (; end - p >= 4; p += 4) {
+      int k1 = AbstractStreamingHasher.getIntLittleEndian(input, p);
+      h1 = mixH1(h1, mixK1(k1));
+    }
+    if (p < end) {
+      h1 ^= mixK1((int) AbstractStreamingHasher.getPartialLittleEndian(
+          input, p, end - p));
+    }
+    return HashCode.fromInt(fmix(h1, length));
+  }
+
+  public HashCode hashString(CharSequence input) {
+    int h1 = seed;
+    int length = input.length();
+    // Two chars make a block.
+    for (int i = 1; i < length; i += 2) {
+      int k1 = input.charAt(i - 1) | (input.charAt(i) << 16);
+      h1 = mixH1(h1, mixK1(k1));
+    }
+    if ((length & 1) == 1) {
+      h1 ^= mixK1(input.charAt(length - 1));
+    }
+    return HashCode.fromInt(fmix(h1, 2 * length));
+  }
+
+  public <T> HashCode hashObject(T instance, Funnel<? super T> funnel) {
+    return newHasher().putObject(instance, checkNotNull(funnel)).hash();
+  }
+
+  @Override public boolean equals(Object object) {
+    return object instanceof Murmur3_32HashFunction
+        && seed == ((Murmur3_32HashFunction) object).seed;
+  }
+
+  @Override public int hashCode() {
+    return getClass().hashCode() ^ seed;
+  }
+
+  @Override public String toString() {
+    return "Hashing.murmur3_32(" + seed + ")";
+  }
+
+  private static int mixK1(int k1) {
+    k1 *= C1;
+    k1 = Integer.rotateLeft(k1, 15);
+    k1 *= C2;
+    return k1;
+  }
+
+  private static int mixH1(int h1, int k1) {
+    h1 ^= k1;
+    h1 = Integer.rotateLeft(h1, 13);
+    h1 = h1 * 5 + 0xe6546b64;
+    return h1;
+  }
+
+  /** Finalization mix: forces all bits of a hash block to avalanche. */
+  private static int fmix(int h1, int length) {
+    h1 ^= length;
+    h1 ^= h1 >>> 16;
+    h1 *= 0x85ebca6b;
+    h1 ^= h1 >>> 13;
+    h1 *= 0xc2b2ae35;
+    h1 ^= h1 >>> 16;
+    return h1;
+  }
+
+  private static final class Murmur3_32Hasher extends AbstractStreamingHasher {
+    int h1;
+    int length;
+
+    Murmur3_32Hasher(int seed) {
+      super(4);
+      this.h1 = seed;
+    }
+
+    @Override void process(byte[] bytes, int offset) {
+      h1 = mixH1(h1, mixK1(getIntLittleEndian(bytes, offset)));
+      length += 4;
+    }
+
+    @Override void processRemaining(byte[] bytes, int offset, int length) {
+      this.length += length;
+      h1 ^= mixK1((int) getPartialLittleEndian(bytes, offset, length));
+    }
+
+    @Override HashCode makeHash() {
+      return HashCode.fromInt(fmix(h1, length));
+    }
+  }
+
+  private static final long serialVersionUID = 0;
+}
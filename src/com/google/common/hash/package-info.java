@@ -0,0 +1,23 @@
+/*
+ * Copyright (C) 2009 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Hash functions and related structures: streaming {@link
+ * com.google.common.hash.Hasher}s, which accept primitives, bytes and
+ * objects without boxing, the Murmur3 family of hash functions and
+ * consistent hashing. See {@link com.google.common.hash.Hashing}.
+ */
+package com.google.common.hash;
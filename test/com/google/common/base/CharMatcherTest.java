@@ -0,0 +1,274 @@
+/*
+ * Copyright (C) 2009 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.common.base;
+
+import com.google.common.testutils.NullPointerTester;
+
+import junit.framework.TestCase;
+
+import static com.google.common.base.CharMatcher.ANY;
+import static com.google.common.base.CharMatcher.ASCII;
+import static com.google.common.base.CharMatcher.JAVA_DIGIT;
+import static com.google.common.base.CharMatcher.JAVA_ISO_CONTROL;
+import static com.google.common.base.CharMatcher.JAVA_LETTER;
+import static com.google.common.base.CharMatcher.JAVA_WHITESPACE;
+import static com.google.common.base.CharMatcher.NONE;
+import static com.google.common.base.CharMatcher.WHITESPACE;
+import static com.google.common.base.CharMatcher.anyOf;
+import static com.google.common.base.CharMatcher.forPredicate;
+import static com.google.common.base.CharMatcher.inRange;
+import static com.google.common.base.CharMatcher.is;
+import static com.google.common.base.CharMatcher.isNot;
+import static com.google.common.base.CharMatcher.noneOf;
+
+/**
+ * Unit test for {@link CharMatcher}.
+ */
+public class CharMatcherTest extends TestCase {
+
+  private static final CharMatcher[] SAMPLE_MATCHERS = {
+      ANY, NONE, WHITESPACE, ASCII, JAVA_DIGIT, JAVA_LETTER, JAVA_WHITESPACE,
+      JAVA_ISO_CONTROL, is('a'), isNot('a'), anyOf("x-z"), noneOf("abc"),
+      inRange('a', 'e'), anyOf(""), anyOf("q"),
+      JAVA_LETTER.and(ASCII), is('a').or(JAVA_DIGIT),
+      forPredicate(new Predicate<Character>() {
+        public boolean apply(Character c) {
+          return c % 3 == 0;
+        }
+      }),
+  };
+
+  private static final String[] SAMPLE_STRINGS = {
+      "", " ", "a", "aa", "bazaar", " a b ", "\t\u3000x9\u00a0", "123abc",
+      "x-yz\u0000\u007f\u0080", "aaabaaa", "\u2000a\u2001", "zzz"
+  };
+
+  public void testStaticMatchers() {
+    assertTrue(WHITESPACE.matches(' '));
+    assertTrue(WHITESPACE.matches('\u3000'));
+    assertTrue(WHITESPACE.matches('\u2005'));
+    assertTrue(WHITESPACE.matches('\u00a0'));
+    assertFalse(WHITESPACE.matches('\u200b'));
+    assertFalse(WHITESPACE.matches('a'));
+    assertFalse(JAVA_WHITESPACE.matches('\u00a0'));
+    assertTrue(ASCII.matches('\u007f'));
+    assertFalse(ASCII.matches('\u0080'));
+    assertTrue(JAVA_ISO_CONTROL.matches('\u0085'));
+    assertFalse(JAVA_ISO_CONTROL.matches(' '));
+    assertTrue(ANY.matches('\uffff'));
+    assertFalse(NONE.matches('\0'));
+  }
+
+  public void testFactories() {
+    assertTrue(is('a').matches('a'));
+    assertFalse(is('a').matches('b'));
+    assertTrue(isNot('a').matches('b'));
+    assertTrue(anyOf("xy").matches('y'));
+    assertFalse(anyOf("xy").matches('z'));
+    assertSame(NONE, anyOf(""));
+    assertTrue(noneOf("xy").matches('z'));
+    assertTrue(inRange('a', 'c').matches('c'));
+    assertFalse(inRange('a', 'c').matches('d'));
+    try {
+      inRange('c', 'a');
+      fail();
+    } catch (IllegalArgumentException expected) {}
+    assertSame(JAVA_DIGIT, forPredicate(JAVA_DIGIT));
+    assertTrue(JAVA_DIGIT.apply('5'));
+  }
+
+  public void testComposition() {
+    CharMatcher vowel = anyOf("aeiou");
+    CharMatcher consonant = JAVA_LETTER.and(ASCII).and(vowel.negate());
+    assertTrue(consonant.matches('b'));
+    assertFalse(consonant.matches('a'));
+    assertFalse(consonant.matches('\u00e9'));
+    assertTrue(vowel.or(JAVA_DIGIT).matches('7'));
+    assertSame(vowel, vowel.negate().negate());
+    assertSame(NONE, ANY.negate());
+    assertSame(ANY, NONE.negate());
+  }
+
+  public void testPrecomputed() {
+    CharMatcher precomputed = JAVA_LETTER.or(is('_')).precomputed();
+    assertSame(precomputed, precomputed.precomputed());
+    for (int c = Character.MIN_VALUE; c <= Character.MAX_VALUE; c++) {
+      assertEquals(Character.isLetter(c) || c == '_',
+          precomputed.matches((char) c));
+      assertEquals(!Character.isLetter(c) && c != '_',
+          precomputed.negate().matches((char) c));
+    }
+    assertEquals("CharMatcher.or(CharMatcher.JAVA_LETTER, CharMatcher.is(_))"
+        + ".precomputed()", precomputed.toString());
+  }
+
+  public void testPrecomputedComposition() {
+    CharMatcher letters = JAVA_LETTER.precomputed();
+    CharMatcher ascii = ASCII.precomputed();
+    CharMatcher both = letters.and(ascii);
+    CharMatcher either = letters.or(ascii);
+    CharMatcher mixed = letters.and(is('x'));
+    for (int c = Character.MIN_VALUE; c <= Character.MAX_VALUE; c++) {
+      char ch = (char) c;
+      assertEquals(both.matches(ch), letters.matches(ch) && ascii.matches(ch));
+      assertEquals(
+          either.matches(ch), letters.matches(ch) || ascii.matches(ch));
+      assertEquals(mixed.matches(ch), ch == 'x');
+    }
+    assertSame(both, both.precomputed());
+  }
+
+  public void testTextProcessing() {
+    assertEquals(3, is('a').countIn("bazaar"));
+    assertEquals(1, is('a').indexIn("bazaar"));
+    assertEquals(3, is('a').indexIn("bazaar", 2));
+    assertEquals(-1, is('a').indexIn("bazaar", 6));
+    assertEquals(4, is('a').lastIndexIn("bazaar"));
+    assertEquals("bzr", is('a').removeFrom("bazaar"));
+    assertEquals("aaa", is('a').retainFrom("bazaar"));
+    assertEquals("rodor", is('a').replaceFrom("radar", 'o'));
+    assertEquals("cat", anyOf("ab").trimFrom("abacatbab"));
+    assertEquals("catbab", anyOf("ab").trimLeadingFrom("abacatbab"));
+    assertEquals("abacat", anyOf("ab").trimTrailingFrom("abacatbab"));
+    assertEquals("b-p-r", anyOf("eko").collapseFrom("bookkeeper", '-'));
+    assertEquals("-b-", anyOf("eko").collapseFrom("kbook", '-'));
+    assertEquals("a b c",
+        WHITESPACE.trimAndCollapseFrom(" \t a  b\u3000\nc  ", ' '));
+    assertTrue(ASCII.matchesAllOf("abc"));
+    assertTrue(ASCII.matchesAllOf(""));
+    assertFalse(ASCII.matchesAllOf("ab\u00e9"));
+    assertTrue(ASCII.matchesAnyOf("\u00e9a"));
+    assertTrue(JAVA_DIGIT.matchesNoneOf("abc"));
+    try {
+      is('a').indexIn("abc", 4);
+      fail();
+    } catch (IndexOutOfBoundsException expected) {}
+    try {
+      is('a').precomputed().indexIn("abc", -1);
+      fail();
+    } catch (IndexOutOfBoundsException expected) {}
+  }
+
+  /**
+   * Checks that every text processing method of every sample matcher agrees
+   * with the precomputed matcher, and with a simple definition in terms of
+   * {@link CharMatcher#matches}.
+   */
+  public void testTextProcessingAgreesWithMatches() {
+    for (CharMatcher matcher : SAMPLE_MATCHERS) {
+      CharMatcher precomputed = matcher.precomputed();
+      for (String string : SAMPLE_STRINGS) {
+        checkTextProcessing(matcher, string);
+        checkTextProcessing(precomputed, string);
+        checkTextProcessing(matcher, new StringBuilder(string));
+        checkTextProcessing(precomputed, new StringBuilder(string));
+      }
+    }
+  }
+
+  private static void checkTextProcessing(
+      CharMatcher matcher, CharSequence sequence) {
+    String string = sequence.toString();
+    int length = string.length();
+    int count = 0;
+    int first = -1;
+    int last = -1;
+    StringBuilder removed = new StringBuilder();
+    StringBuilder retained = new StringBuilder();
+    StringBuilder replaced = new StringBuilder();
+    StringBuilder collapsed = new StringBuilder();
+    for (int i = 0; i < length; i++) {
+      char c = string.charAt(i);
+      if (matcher.matches(c)) {
+        count++;
+        if (first == -1) {
+          first = i;
+        }
+        last = i;
+        retained.append(c);
+        replaced.append('#');
+        if (i == 0 || !matcher.matches(string.charAt(i - 1))) {
+          collapsed.append('#');
+        }
+      } else {
+        removed.append(c);
+        replaced.append(c);
+        collapsed.append(c);
+      }
+    }
+    int start = 0;
+    while (start < length && matcher.matches(string.charAt(start))) {
+      start++;
+    }
+    int end = length;
+    while (end > start && matcher.matches(string.charAt(end - 1))) {
+      end--;
+    }
+    String message = matcher + " on \"" + string + "\"";
+    assertEquals(message, count, matcher.countIn(sequence));
+    assertEquals(message, first, matcher.indexIn(sequence));
+    assertEquals(message, last, matcher.lastIndexIn(sequence));
+    assertEquals(message, count > 0, matcher.matchesAnyOf(sequence));
+    assertEquals(message, count == 0, matcher.matchesNoneOf(sequence));
+    assertEquals(message, count == length, matcher.matchesAllOf(sequence));
+    assertEquals(message, removed.toString(), matcher.removeFrom(sequence));
+    assertEquals(message, retained.toString(), matcher.retainFrom(sequence));
+    assertEquals(message, replaced.toString(),
+        matcher.replaceFrom(sequence, '#'));
+    assertEquals(message, collapsed.toString(),
+        matcher.collapseFrom(sequence, '#'));
+    assertEquals(message, string.substring(start, end),
+        matcher.trimFrom(sequence));
+    assertEquals(message, string.substring(start),
+        matcher.trimLeadingFrom(sequence));
+    int trailing = length;
+    while (trailing > 0 && matcher.matches(string.charAt(trailing - 1))) {
+      trailing--;
+    }
+    assertEquals(message, string.substring(0, trailing),
+        matcher.trimTrailingFrom(sequence));
+    for (int i = 0; i <= length; i++) {
+      int expected = -1;
+      for (int j = i; j < length; j++) {
+        if (matcher.matches(string.charAt(j))) {
+          expected = j;
+          break;
+        }
+      }
+      assertEquals(message, expected, matcher.indexIn(sequence, i));
+    }
+  }
+
+  public void testToString() {
+    assertEquals("CharMatcher.WHITESPACE", WHITESPACE.toString());
+    assertEquals("CharMatcher.is(a)", is('a').toString());
+    assertEquals("CharMatcher.anyOf(\"ab\\u00e9\")",
+        anyOf("ab\u00e9").toString());
+    assertEquals("CharMatcher.inRange(a, z).negate()",
+        inRange('a', 'z').negate().toString());
+  }
+
+  public void testNullPointers() throws Exception {
+    NullPointerTester tester = new NullPointerTester();
+    tester.testAllPublicStaticMethods(CharMatcher.class);
+    tester.testAllPublicInstanceMethods(is('a'));
+    tester.testAllPublicInstanceMethods(ANY);
+    tester.testAllPublicInstanceMethods(NONE);
+    tester.testAllPublicInstanceMethods(WHITESPACE);
+  }
+}
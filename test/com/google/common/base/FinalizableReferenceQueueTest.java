@@ -24,6 +24,7 @@ import java.lang.ref.ReferenceQueue;
 import java.lang.ref.WeakReference;
 import java.net.URL;
 import java.net.URLClassLoader;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Unit test for {@link FinalizableReferenceQueue}.
@@ -55,6 +56,120 @@ public class FinalizableReferenceQueueTest extends TestCase {
     fail();
   }
 
+  public void testQueuesShareThread() {
+    FinalizableReferenceQueue[] queues = new FinalizableReferenceQueue[10];
+    MockReference[] references = new MockReference[queues.length];
+    for (int i = 0; i < queues.length; i++) {
+      queues[i] = new FinalizableReferenceQueue();
+      references[i] = new MockReference(queues[i]);
+    }
+
+    int finalizerThreads = 0;
+    for (Thread thread : Thread.getAllStackTraces().keySet()) {
+      if (thread.getName().equals(Finalizer.class.getName())) {
+        finalizerThreads++;
+      }
+    }
+    assertEquals(1, finalizerThreads);
+
+    // wait up to 5s
+    for (int i = 0; i < 500 && !allFinalized(references); i++) {
+      try {
+        System.gc();
+        Thread.sleep(10);
+      } catch (InterruptedException e) { /* ignore */ }
+    }
+    assertTrue(allFinalized(references));
+    for (FinalizableReferenceQueue queue : queues) {
+      assertEquals(1, queue.queueDepth());
+      assertTrue(queue.cleanupLag(TimeUnit.NANOSECONDS) >= 0);
+      assertTrue(queue.cleanupLag(TimeUnit.SECONDS) < 5);
+    }
+  }
+
+  private static boolean allFinalized(MockReference[] references) {
+    for (MockReference reference : references) {
+      if (!reference.finalizeReferentCalled) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  public void testStatisticsBeforeCleanup() {
+    frq = new FinalizableReferenceQueue();
+    assertEquals(0, frq.queueDepth());
+    assertEquals(0, frq.cleanupLag(TimeUnit.NANOSECONDS));
+  }
+
+  public void testPollingQueue() {
+    frq = FinalizableReferenceQueue.newPollingQueue();
+    MockReference[] references = new MockReference[5];
+    for (int i = 0; i < references.length; i++) {
+      references[i] = new MockReference(frq);
+    }
+    // wait up to 5s
+    for (int i = 0; i < 500 && !allEnqueued(references); i++) {
+      try {
+        System.gc();
+        Thread.sleep(10);
+      } catch (InterruptedException e) { /* ignore */ }
+    }
+    assertTrue(allEnqueued(references));
+    new MockReference(frq);
+    assertFalse(references[0].finalizeReferentCalled);
+
+    assertEquals(0, frq.cleanUp(0));
+    assertEquals(2, frq.cleanUp(2));
+    assertEquals(5, frq.queueDepth());
+    assertEquals(3, frq.cleanUp(10));
+    assertEquals(3, frq.queueDepth());
+    assertEquals(0, frq.cleanUp(10));
+    assertTrue(allFinalized(references));
+  }
+
+  public void testPollingQueueDepthGrows() {
+    frq = FinalizableReferenceQueue.newPollingQueue();
+    MockReference[] references = new MockReference[6];
+    for (int i = 0; i < 3; i++) {
+      references[i] = new MockReference(frq);
+      references[i].enqueue();
+    }
+    assertEquals(1, frq.cleanUp(1));
+    assertEquals(3, frq.queueDepth());
+
+    for (int i = 3; i < references.length; i++) {
+      references[i] = new MockReference(frq);
+      references[i].enqueue();
+    }
+    assertEquals(1, frq.cleanUp(1));
+    assertEquals(5, frq.queueDepth());
+    assertFalse(allFinalized(references));
+
+    assertEquals(4, frq.cleanUp(10));
+    assertEquals(4, frq.queueDepth());
+    assertTrue(allFinalized(references));
+  }
+
+  private static boolean allEnqueued(MockReference[] references) {
+    for (MockReference reference : references) {
+      if (!reference.isEnqueued()) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  public void testCleanUpWithThread() {
+    frq = new FinalizableReferenceQueue();
+    assertEquals(0, frq.cleanUp(10));
+    try {
+      frq.cleanUp(-1);
+      fail();
+    } catch (IllegalArgumentException expected) {
+    }
+  }
+
   static class MockReference extends FinalizableWeakReference<Object> {
 
     volatile boolean finalizeReferentCalled;
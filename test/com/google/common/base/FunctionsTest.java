@@ -24,6 +24,10 @@ import com.google.common.testutils.SerializableTester;
 
 import junit.framework.TestCase;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -302,6 +306,41 @@ public class FunctionsTest extends TestCase {
     }
   }
 
+  public void testApplyAll() {
+    Map<Integer, String> results = Functions.applyAll(
+        Functions.toStringFunction(), Arrays.asList(3, 1, 3, 2));
+    assertEquals(Arrays.asList(3, 1, 2),
+        Arrays.asList(results.keySet().toArray()));
+    assertEquals(Arrays.asList("3", "1", "2"),
+        Arrays.asList(results.values().toArray()));
+
+    Map<Object, Object> nulls = Functions.applyAll(
+        Functions.constant(null), Arrays.asList(1, null));
+    assertEquals(2, nulls.size());
+    assertTrue(nulls.containsKey(null));
+  }
+
+  public void testApplyAll_batchFunction() {
+    final List<Object> batches = new ArrayList<Object>();
+    BatchFunction<String, Integer> length
+        = new BatchFunction<String, Integer>() {
+          public Integer apply(String from) {
+            throw new AssertionError();
+          }
+          public Map<String, Integer> applyAll(
+              Iterable<? extends String> inputs) {
+            batches.add(inputs);
+            return Collections.singletonMap("abc", 3);
+          }
+        };
+    List<String> inputs = Arrays.asList("abc");
+    Map<String, Number> results = Functions.<String, Number>applyAll(
+        length, inputs);
+    assertEquals(1, batches.size());
+    assertSame(inputs, batches.get(0));
+    assertEquals(Collections.singletonMap("abc", 3), results);
+  }
+
   private <Y> void checkCanReserializeSingleton(Function<? super String, Y> f) {
     Function<? super String, Y> g = SerializableTester.reserializeAndAssert(f);
     assertSame(f, g);
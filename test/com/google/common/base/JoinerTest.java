@@ -26,6 +26,11 @@ import junit.framework.Assert;
 import junit.framework.TestCase;
 
 import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
 import java.util.Arrays;
 import java.util.Map;
 
@@ -155,6 +160,24 @@ public class JoinerTest extends TestCase {
     joiner.appendTo(sb2, partsArray);
     assertEquals("x" + expected, sb2.toString());
 
+    try {
+      StringWriter writer = new StringWriter();
+      writer.write('x');
+      assertSame(writer, joiner.appendTo(writer, parts));
+      assertEquals("x" + expected, writer.toString());
+    } catch (IOException e) {
+      throw new AssertionError(e);
+    }
+
+    CharBuffer chars = CharBuffer.allocate(32).put('x');
+    assertSame(chars, joiner.appendTo(chars, parts));
+    assertEquals("x" + expected, chars.flip().toString());
+
+    ByteBuffer bytes = ByteBuffer.allocate(32).put((byte) 'x');
+    assertSame(bytes, joiner.appendUtf8To(bytes, parts));
+    assertEquals("x" + expected,
+        new String(bytes.array(), 0, bytes.position()));
+
     int num = partsArray.length - 2;
     if (num >= 0) {
       Object[] rest = new Integer[num];
@@ -251,9 +274,75 @@ public class JoinerTest extends TestCase {
         new DontStringMeBro(), null, new DontStringMeBro()));
   }
 
+  public void testJoinCharSequencesWithoutConverting() {
+    StringBuilder part = new StringBuilder("ab");
+    assertEquals("ab, cd, ab", Joiner.on(", ").join(part, "cd", part));
+    assertEquals("ab, cd", Joiner.on(", ").join(
+        Iterables.unmodifiableIterable(Arrays.asList(part, "cd"))));
+    assertEquals("",
+        Joiner.on(", ").skipNulls().join(Arrays.asList(null, null)));
+  }
+
+  public void testAppendToWriterAndCharBuffer_charSequences() throws Exception {
+    StringBuilder big = new StringBuilder();
+    for (int i = 0; i < 3000; i++) {
+      big.append((char) ('a' + i % 26));
+    }
+    Iterable<CharSequence> parts
+        = Arrays.<CharSequence>asList(big, "x", CharBuffer.wrap("yz"));
+    String expected = big + ";x;yz";
+
+    StringWriter writer = new StringWriter();
+    Joiner.on(';').appendTo(writer, parts);
+    assertEquals(expected, writer.toString());
+
+    CharBuffer chars = CharBuffer.allocate(expected.length());
+    Joiner.on(';').appendTo(chars, parts);
+    assertFalse(chars.hasRemaining());
+    assertEquals(expected, chars.flip().toString());
+  }
+
+  public void testAppendToWriter_emptyFirstCharSequence() throws Exception {
+    StringWriter writer = new StringWriter();
+    Joiner.on(',').appendTo(writer, Arrays.asList(
+        new StringBuilder(), new StringBuilder("a"), new StringBuilder("abc")));
+    assertEquals(",a,abc", writer.toString());
+  }
+
+  public void testAppendUtf8To() throws Exception {
+    String supplementary = new String(Character.toChars(0x1f600));
+    Iterable<?> parts = Arrays.asList("a\u00e9", new StringBuilder("\u20ac"),
+        supplementary, supplementary.substring(0, 1),
+        supplementary.substring(1), "\ud800", "\udc00x");
+    Joiner joiner = Joiner.on('\u00b7');
+    byte[] expected = joiner.join(parts).getBytes("UTF-8");
+    ByteBuffer bytes = ByteBuffer.allocate(64);
+    joiner.appendUtf8To(bytes, parts);
+    byte[] actual = new byte[bytes.position()];
+    System.arraycopy(bytes.array(), 0, actual, 0, actual.length);
+    assertEquals(Arrays.toString(expected), Arrays.toString(actual));
+
+    // A high surrogate at the very end.
+    bytes.clear();
+    Joiner.on("").appendUtf8To(bytes, Arrays.asList("a", "\ud800"));
+    assertEquals(2, bytes.position());
+    assertEquals('?', bytes.get(1));
+  }
+
+  public void testAppendUtf8To_overflow() {
+    try {
+      Joiner.on(',').appendUtf8To(
+          ByteBuffer.allocate(2), Arrays.asList("a", "b"));
+      fail();
+    } catch (BufferOverflowException expected) {}
+  }
+
   public void testNullPointers() throws Exception {
     NullPointerTester tester = new NullPointerTester();
     tester.setDefault(StringBuilder.class, new StringBuilder());
+    tester.setDefault(Writer.class, new StringWriter());
+    tester.setDefault(CharBuffer.class, CharBuffer.allocate(16));
+    tester.setDefault(ByteBuffer.class, ByteBuffer.allocate(16));
     tester.testAllPublicStaticMethods(Joiner.class);
     tester.testAllPublicInstanceMethods(Joiner.on(","));
     tester.testAllPublicInstanceMethods(Joiner.on(",").skipNulls());
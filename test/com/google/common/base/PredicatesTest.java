@@ -801,6 +801,122 @@ public class PredicatesTest extends TestCase {
         Predicates.or(p1, Predicates.not(p1)));
   }
 
+  /*
+   * Tests for Predicates.optimize(predicate).
+   */
+
+  public void testOptimizeFoldsConstants() {
+    assertSame(FALSE,
+        Predicates.optimize(Predicates.and(TRUE, FALSE, NEVER_REACHED)));
+    assertSame(TRUE,
+        Predicates.optimize(Predicates.or(FALSE, TRUE, NEVER_REACHED)));
+    assertSame(TRUE, Predicates.optimize(Predicates.<Integer>and()));
+    assertSame(FALSE, Predicates.optimize(Predicates.<Integer>or()));
+    assertSame(FALSE, Predicates.optimize(Predicates.not(TRUE)));
+    assertSame(TRUE, Predicates.optimize(Predicates.or(
+        Predicates.not(Predicates.and(isOdd(), FALSE)), NEVER_REACHED)));
+    assertEquals(isOdd(), Predicates.optimize(
+        Predicates.not(Predicates.not(Predicates.and(TRUE, isOdd())))));
+    assertSame(Predicates.notNull(),
+        Predicates.optimize(Predicates.not(Predicates.isNull())));
+    assertSame(FALSE, Predicates.optimize(Predicates.compose(
+        FALSE, Functions.<Integer>identity())));
+  }
+
+  public void testOptimizeFlattensAndOrders() {
+    Predicate<Integer> predicate = Predicates.and(isOdd(),
+        Predicates.and(Predicates.notNull(),
+            Predicates.and(isOdd(), TRUE)));
+    Predicate<Integer> optimized = Predicates.optimize(predicate);
+    assertEquals("And(NotNull,IsOdd)", optimized.toString());
+    assertEvalsLike(predicate, optimized, 0);
+    assertEvalsLike(predicate, optimized, 1);
+    assertFalse(optimized.apply(null));
+
+    assertEquals("Or(IsNull,IsOdd)", Predicates.optimize(
+        Predicates.or(isOdd(), Predicates.or(
+            Predicates.<Integer>isNull(), FALSE))).toString());
+  }
+
+  public void testOptimizeMergesMemberships() {
+    Predicate<Integer> predicate = Predicates.or(
+        Predicates.equalTo(1), isOdd(), Predicates.equalTo(-4),
+        Predicates.in(Arrays.asList(6, 1, 10)));
+    Predicate<Integer> optimized = Predicates.optimize(predicate);
+    assertEquals("Or(In([-4, 1, 6, 10]),IsOdd)", optimized.toString());
+    for (int i = -20; i <= 20; i++) {
+      assertEvalsLike(predicate, optimized, i);
+    }
+    checkSerialization(optimized);
+    new EqualsTester(optimized)
+        .addEqualObject(Predicates.optimize(predicate))
+        .addNotEqualObject(predicate)
+        .testEquals();
+  }
+
+  public void testOptimizeMergesLargeIntegersAndNull() {
+    Predicate<Integer> predicate = Predicates.or(Predicates.equalTo(1),
+        Predicates.equalTo(Integer.MAX_VALUE),
+        Predicates.equalTo(Integer.MIN_VALUE));
+    Predicate<Integer> optimized = Predicates.optimize(predicate);
+    for (int i : new int[] {
+        Integer.MIN_VALUE, Integer.MIN_VALUE + 1, -1, 0, 1, 2,
+        Integer.MAX_VALUE - 1, Integer.MAX_VALUE }) {
+      assertEquals(predicate.apply(i), optimized.apply(i));
+    }
+
+    Predicate<Integer> withNull = Predicates.optimize(Predicates.or(
+        Predicates.<Integer>isNull(), Predicates.equalTo(3)));
+    assertTrue(withNull.apply(null));
+    assertTrue(withNull.apply(3));
+    assertFalse(withNull.apply(4));
+  }
+
+  public void testOptimizeMergesEnums() {
+    Predicate<Object> predicate = Predicates.or(
+        Predicates.<Object>equalTo(Thread.State.NEW),
+        Predicates.<Object>equalTo(Thread.State.TERMINATED));
+    Predicate<Object> optimized = Predicates.optimize(predicate);
+    assertEquals("In([NEW, TERMINATED])", optimized.toString());
+    for (Thread.State state : Thread.State.values()) {
+      assertEquals(predicate.apply(state), optimized.apply(state));
+    }
+    assertFalse(optimized.apply("NEW"));
+    assertFalse(optimized.apply(null));
+    assertFalse(optimized.apply(java.lang.annotation.ElementType.TYPE));
+  }
+
+  public void testOptimizeKeepsOtherCollections() {
+    Collection<String> caseInsensitive
+        = new java.util.TreeSet<String>(String.CASE_INSENSITIVE_ORDER);
+    caseInsensitive.add("a");
+    Predicate<String> optimized = Predicates.optimize(Predicates.or(
+        Predicates.in(caseInsensitive), Predicates.equalTo("b")));
+    assertTrue(optimized.apply("A"));
+    assertTrue(optimized.apply("b"));
+    assertFalse(optimized.apply("B"));
+  }
+
+  public void testOptimizeMergesCompositions() {
+    final int[] calls = new int[1];
+    Function<Integer, Integer> square = new Function<Integer, Integer>() {
+      public Integer apply(Integer i) {
+        calls[0]++;
+        return i * i;
+      }
+    };
+    Predicate<Integer> predicate = Predicates.or(
+        Predicates.compose(Predicates.equalTo(4), square),
+        Predicates.compose(Predicates.equalTo(9), square));
+    Predicate<Integer> optimized = Predicates.optimize(predicate);
+    for (int i = -5; i <= 5; i++) {
+      boolean expected = predicate.apply(i);
+      calls[0] = 0;
+      assertEquals(expected, optimized.apply(i));
+      assertEquals(1, calls[0]);
+    }
+  }
+
   private static void assertEvalsToTrue(Predicate<? super Integer> predicate) {
     assertTrue(predicate.apply(0));
     assertTrue(predicate.apply(1));
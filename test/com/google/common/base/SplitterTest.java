@@ -0,0 +1,176 @@
+/*
+ * Copyright (C) 2009 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.base;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.testutils.NullPointerTester;
+
+import junit.framework.TestCase;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.regex.Pattern;
+
+/**
+ * Unit test for {@link Splitter}.
+ */
+public class SplitterTest extends TestCase {
+
+  private static final Splitter COMMA_SPLITTER = Splitter.on(',');
+
+  public void testCharacterSimpleSplit() {
+    checkSplit(COMMA_SPLITTER, "a,b,c", "a", "b", "c");
+  }
+
+  public void testCharacterSplitEdges() {
+    checkSplit(COMMA_SPLITTER, "", "");
+    checkSplit(COMMA_SPLITTER, ",", "", "");
+    checkSplit(COMMA_SPLITTER, ",a,,b,", "", "a", "", "b", "");
+    checkSplit(COMMA_SPLITTER, "a b", "a b");
+  }
+
+  public void testCharacterSplitOmitEmptyAndTrim() {
+    Splitter splitter = COMMA_SPLITTER.trimResults().omitEmptyStrings();
+    checkSplit(splitter, " a, ,,b ,\tc\n", "a", "b", "c");
+    checkSplit(splitter, " , ,");
+    checkSplit(COMMA_SPLITTER.trimResults(), " a , ", "a", "");
+  }
+
+  public void testTrimResultsWithMatcher() {
+    checkSplit(COMMA_SPLITTER.trimResults(CharMatcher.is('_')),
+        "_a ,_b_ ,c__", "a ", "b_ ", "c");
+    checkSplit(COMMA_SPLITTER.trimResults(CharMatcher.anyOf("[]"))
+        .omitEmptyStrings().limit(2), "[],[a],[b],[c]", "a", "b],[c");
+  }
+
+  public void testStringSplit() {
+    Splitter splitter = Splitter.on(", ");
+    checkSplit(splitter, "foo, bar, baz,qux", "foo", "bar", "baz,qux");
+    checkSplit(splitter, ", , ,", "", "", ",");
+    checkSplit(splitter, "a,", "a,");
+    checkSplit(Splitter.on("aa"), "aaaaa", "", "", "a");
+  }
+
+  public void testStringSplit_emptySeparator() {
+    try {
+      Splitter.on("");
+      fail();
+    } catch (IllegalArgumentException expected) {}
+  }
+
+  public void testPatternSplit() {
+    Splitter splitter = Splitter.on(Pattern.compile("\r?\n"));
+    checkSplit(splitter, "a\r\nb\nc\r", "a", "b", "c\r");
+    checkSplit(Splitter.onPattern("[,;]+").omitEmptyStrings(),
+        ";a,,b;;c,", "a", "b", "c");
+  }
+
+  public void testPatternSplit_zeroWidthMatches() {
+    checkSplit(Splitter.onPattern("\\b"), "ab cd", "ab", " ", "cd");
+    checkSplit(Splitter.onPattern("(?=,)"), "a,b,c", "a", ",b", ",c");
+  }
+
+  public void testPatternSplit_matchesEmptyString() {
+    try {
+      Splitter.onPattern("a*");
+      fail();
+    } catch (IllegalArgumentException expected) {}
+  }
+
+  public void testLimit() {
+    checkSplit(COMMA_SPLITTER.limit(3), "a,b,c,d", "a", "b", "c,d");
+    checkSplit(COMMA_SPLITTER.limit(1), "a,b", "a,b");
+    checkSplit(COMMA_SPLITTER.limit(5), "a,b", "a", "b");
+    checkSplit(COMMA_SPLITTER.limit(2).omitEmptyStrings(),
+        ",,a,,b,c", "a", "b,c");
+    checkSplit(COMMA_SPLITTER.limit(2).trimResults(),
+        " a , b , c ", "a", "b , c");
+    try {
+      COMMA_SPLITTER.limit(0);
+      fail();
+    } catch (IllegalArgumentException expected) {}
+  }
+
+  public void testOtherCharSequences() {
+    StringBuilder builder = new StringBuilder("a, b,c");
+    checkSplit(COMMA_SPLITTER.trimResults(), builder, "a", "b", "c");
+    checkSplit(Splitter.on(", "), builder, "a", "b,c");
+    checkSplit(Splitter.on(", ").limit(1), builder, "a, b,c");
+  }
+
+  public void testSplitToSequences() {
+    StringBuilder builder = new StringBuilder("ab,,cde");
+    List<CharSequence> pieces
+        = Lists.newArrayList(COMMA_SPLITTER.splitToSequences(builder));
+    assertEquals(3, pieces.size());
+    CharSequence piece = pieces.get(2);
+    assertEquals(3, piece.length());
+    assertEquals('d', piece.charAt(1));
+    assertEquals("cde", piece.toString());
+    assertEquals("de", piece.subSequence(1, 3).toString());
+    assertEquals("", piece.subSequence(3, 3).toString());
+    assertEquals("", pieces.get(1).toString());
+    try {
+      piece.charAt(3);
+      fail();
+    } catch (IndexOutOfBoundsException expected) {}
+    try {
+      piece.subSequence(2, 4);
+      fail();
+    } catch (IndexOutOfBoundsException expected) {}
+
+    // Views share the input's characters.
+    builder.setCharAt(5, 'X');
+    assertEquals("cXe", piece.toString());
+  }
+
+  public void testIteratorIsLazyAndRepeatable() {
+    Iterable<String> pieces = COMMA_SPLITTER.split("a,b");
+    Iterator<String> iterator = pieces.iterator();
+    assertTrue(iterator.hasNext());
+    assertTrue(iterator.hasNext());
+    assertEquals("a", iterator.next());
+    assertEquals("b", iterator.next());
+    assertFalse(iterator.hasNext());
+    try {
+      iterator.next();
+      fail();
+    } catch (NoSuchElementException expected) {}
+    assertEquals(ImmutableList.of("a", "b"), Lists.newArrayList(pieces));
+    assertEquals("[a, b]", pieces.toString());
+  }
+
+  public void testNullPointers() throws Exception {
+    NullPointerTester tester = new NullPointerTester();
+    tester.testAllPublicStaticMethods(Splitter.class);
+    tester.testAllPublicInstanceMethods(COMMA_SPLITTER);
+    tester.testAllPublicInstanceMethods(COMMA_SPLITTER.trimResults());
+  }
+
+  private static void checkSplit(
+      Splitter splitter, CharSequence input, String... expected) {
+    assertEquals(ImmutableList.of(expected),
+        Lists.newArrayList(splitter.split(input)));
+    List<String> viewed = Lists.newArrayList();
+    for (CharSequence piece : splitter.splitToSequences(input)) {
+      viewed.add(piece.toString());
+    }
+    assertEquals(ImmutableList.of(expected), viewed);
+  }
+}
@@ -21,9 +21,16 @@ import static com.google.common.testutils.SerializableTester.reserialize;
 
 import junit.framework.TestCase;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.NotSerializableException;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Tests com.google.common.base.Suppliers.
@@ -144,6 +151,219 @@ public class SuppliersTest extends TestCase {
     }
   }
 
+  public void testMemoizeConcurrentCallsComputeOnce()
+      throws InterruptedException {
+    final CountingSupplier countingSupplier = new CountingSupplier() {
+      @Override public Integer get() {
+        Thread.yield();
+        return super.get();
+      }
+    };
+    final Supplier<Integer> memoizedSupplier
+        = Suppliers.memoize(countingSupplier);
+    Thread[] threads = new Thread[10];
+    for (int i = 0; i < threads.length; i++) {
+      threads[i] = new Thread() {
+        @Override public void run() {
+          for (int j = 0; j < 100; j++) {
+            assertEquals(10, (int) memoizedSupplier.get());
+          }
+        }
+      };
+    }
+    for (Thread t : threads) {
+      t.start();
+    }
+    for (Thread t : threads) {
+      t.join();
+    }
+    assertEquals(1, countingSupplier.calls);
+  }
+
+  public void testMemoizeWithExpiration() throws InterruptedException {
+    CountingSupplier countingSupplier = new CountingSupplier();
+
+    Supplier<Integer> memoizedSupplier = Suppliers.memoizeWithExpiration(
+        countingSupplier, 75, TimeUnit.MILLISECONDS);
+
+    checkExpiration(countingSupplier, memoizedSupplier);
+  }
+
+  public void testMemoizeWithExpirationSerialized()
+      throws InterruptedException {
+    CountingSupplier countingSupplier = new CountingSupplier();
+
+    Supplier<Integer> memoizedSupplier = Suppliers.memoizeWithExpiration(
+        countingSupplier, 75, TimeUnit.MILLISECONDS);
+    // Calls to the original memoized supplier shouldn't affect its copy.
+    memoizedSupplier.get();
+
+    Supplier<Integer> copy = reserialize(memoizedSupplier);
+    memoizedSupplier.get();
+
+    CountingSupplier countingCopy = (CountingSupplier)
+        ((Suppliers.ExpiringMemoizingSupplier<Integer>) copy).delegate;
+    checkExpiration(countingCopy, copy);
+  }
+
+  private void checkExpiration(
+      CountingSupplier countingSupplier, Supplier<Integer> memoizedSupplier)
+      throws InterruptedException {
+    // the underlying supplier hasn't executed yet
+    assertEquals(0, countingSupplier.calls);
+
+    assertEquals(10, (int) memoizedSupplier.get());
+    // now it has
+    assertEquals(1, countingSupplier.calls);
+
+    assertEquals(10, (int) memoizedSupplier.get());
+    // it still should only have executed once due to memoization
+    assertEquals(1, countingSupplier.calls);
+
+    Thread.sleep(150);
+
+    assertEquals(20, (int) memoizedSupplier.get());
+    // old value expired
+    assertEquals(2, countingSupplier.calls);
+
+    assertEquals(20, (int) memoizedSupplier.get());
+    // it still should only have executed twice due to memoization
+    assertEquals(2, countingSupplier.calls);
+  }
+
+  public void testMemoizeWithExpirationInvalidDuration() {
+    try {
+      Suppliers.memoizeWithExpiration(
+          Suppliers.ofInstance(5), 0, TimeUnit.SECONDS);
+      fail();
+    } catch (IllegalArgumentException expected) {
+    }
+  }
+
+  /** Runs tasks only when asked to. */
+  private static class ManualExecutor implements Executor {
+    final List<Runnable> tasks = new ArrayList<Runnable>();
+    public void execute(Runnable task) {
+      tasks.add(task);
+    }
+    void runAll() {
+      List<Runnable> toRun = new ArrayList<Runnable>(tasks);
+      tasks.clear();
+      for (Runnable task : toRun) {
+        task.run();
+      }
+    }
+  }
+
+  public void testMemoizeWithRefresh() throws InterruptedException {
+    CountingSupplier countingSupplier = new CountingSupplier();
+    ManualExecutor executor = new ManualExecutor();
+    Supplier<Integer> refreshingSupplier = Suppliers.memoizeWithRefresh(
+        countingSupplier, 1, TimeUnit.NANOSECONDS, executor);
+    assertEquals(0, countingSupplier.calls);
+
+    // The first value is retrieved directly.
+    assertEquals(10, (int) refreshingSupplier.get());
+    assertEquals(1, countingSupplier.calls);
+    assertTrue(executor.tasks.isEmpty());
+
+    // Later ones are retrieved in the background, one at a time.
+    Thread.sleep(1);
+    assertEquals(10, (int) refreshingSupplier.get());
+    assertEquals(10, (int) refreshingSupplier.get());
+    assertEquals(1, executor.tasks.size());
+    assertEquals(1, countingSupplier.calls);
+
+    executor.runAll();
+    assertEquals(2, countingSupplier.calls);
+    assertEquals(20, (int) refreshingSupplier.get());
+  }
+
+  public void testMemoizeWithRefreshNotDue() {
+    CountingSupplier countingSupplier = new CountingSupplier();
+    ManualExecutor executor = new ManualExecutor();
+    Supplier<Integer> refreshingSupplier = Suppliers.memoizeWithRefresh(
+        countingSupplier, 1, TimeUnit.HOURS, executor);
+    for (int i = 0; i < 10; i++) {
+      assertEquals(10, (int) refreshingSupplier.get());
+    }
+    assertEquals(1, countingSupplier.calls);
+    assertTrue(executor.tasks.isEmpty());
+  }
+
+  public void testMemoizeWithRefreshFailure() throws InterruptedException {
+    final boolean[] fail = new boolean[1];
+    final CountingSupplier countingSupplier = new CountingSupplier();
+    Supplier<Integer> failingSupplier = new Supplier<Integer>() {
+      public Integer get() {
+        if (fail[0]) {
+          throw new IllegalStateException("expected");
+        }
+        return countingSupplier.get();
+      }
+    };
+    ManualExecutor executor = new ManualExecutor();
+    Supplier<Integer> refreshingSupplier = Suppliers.memoizeWithRefresh(
+        failingSupplier, 1, TimeUnit.NANOSECONDS, executor);
+    assertEquals(10, (int) refreshingSupplier.get());
+
+    fail[0] = true;
+    Thread.sleep(1);
+    refreshingSupplier.get();
+    executor.runAll();
+    assertEquals(10, (int) refreshingSupplier.get());
+
+    // The failed refresh is retried.
+    fail[0] = false;
+    executor.runAll();
+    assertEquals(20, (int) refreshingSupplier.get());
+  }
+
+  public void testMemoizeWithRefreshRejected() throws InterruptedException {
+    CountingSupplier countingSupplier = new CountingSupplier();
+    final boolean[] reject = { true };
+    ManualExecutor executor = new ManualExecutor() {
+      @Override public void execute(Runnable task) {
+        if (reject[0]) {
+          throw new RejectedExecutionException();
+        }
+        super.execute(task);
+      }
+    };
+    Supplier<Integer> refreshingSupplier = Suppliers.memoizeWithRefresh(
+        countingSupplier, 1, TimeUnit.NANOSECONDS, executor);
+    assertEquals(10, (int) refreshingSupplier.get());
+    Thread.sleep(1);
+    assertEquals(10, (int) refreshingSupplier.get());
+
+    reject[0] = false;
+    assertEquals(10, (int) refreshingSupplier.get());
+    executor.runAll();
+    assertEquals(20, (int) refreshingSupplier.get());
+  }
+
+  /** An executor that is serializable, unlike most. */
+  private static class SerializableExecutor
+      implements Executor, Serializable {
+    public void execute(Runnable task) {
+      task.run();
+    }
+  }
+
+  public void testMemoizeWithRefreshNotSerializable() throws IOException {
+    Supplier<Integer> refreshingSupplier = Suppliers.memoizeWithRefresh(
+        new CountingSupplier(), 1, TimeUnit.SECONDS,
+        new SerializableExecutor());
+    assertFalse(refreshingSupplier instanceof Serializable);
+    ObjectOutputStream out
+        = new ObjectOutputStream(new ByteArrayOutputStream());
+    try {
+      out.writeObject(refreshingSupplier);
+      fail();
+    } catch (NotSerializableException expected) {
+    }
+  }
+
   public void testOfInstanceSuppliesSameInstance() {
     Object toBeSupplied = new Object();
     Supplier<Object> objectSupplier = Suppliers.ofInstance(toBeSupplied);
@@ -197,6 +417,9 @@ public class SuppliersTest extends TestCase {
         Functions.identity(), Suppliers.ofInstance(5))).get());
     assertEquals(Integer.valueOf(5),
         reserialize(Suppliers.memoize(Suppliers.ofInstance(5))).get());
+    assertEquals(Integer.valueOf(5),
+        reserialize(Suppliers.memoizeWithExpiration(
+            Suppliers.ofInstance(5), 30, TimeUnit.SECONDS)).get());
     assertEquals(Integer.valueOf(5), reserialize(
         Suppliers.synchronizedSupplier(Suppliers.ofInstance(5))).get());
   }
@@ -45,12 +45,14 @@ public class CollectTestSuite {
   }
 
   private static final String[] CLASS_NAMES = new String[] {
+      "com.google.common.base.CharMatcherTest",
       "com.google.common.base.FinalizableReferenceQueueTest",
       "com.google.common.base.FunctionsTest",
       "com.google.common.base.JoinerTest",
       "com.google.common.base.ObjectsTest",
       "com.google.common.base.PreconditionsTest",
       "com.google.common.base.PredicatesTest",
+      "com.google.common.base.SplitterTest",
       "com.google.common.base.SuppliersTest",
       "com.google.common.collect.AbstractIteratorTest",
       "com.google.common.collect.AbstractMapEntryTest",
@@ -63,6 +65,9 @@ public class CollectTestSuite {
       "com.google.common.collect.Collections2Test",
       "com.google.common.collect.Collections2Test$ArrayListFilterChangeTest",
       "com.google.common.collect.Collections2Test$LinkedListFilterChangeTest",
+      "com.google.common.collect.CompressedRowImmutableMapTest",
+      "com.google.common.collect.CompressedRowImmutableMapTest$ListAsMapTest",
+      "com.google.common.collect.CompressedRowImmutableMapTest$SetAsMapTest",
       "com.google.common.collect.ConcurrentHashMultisetTest",
       "com.google.common.collect.ConcurrentHashMultisetWithChmTest",
       "com.google.common.collect.EnumBiMapTest",
@@ -91,15 +96,27 @@ public class CollectTestSuite {
       "com.google.common.collect.ImmutableBiMapTest$InverseMapTests",
       "com.google.common.collect.ImmutableBiMapTest$MapTests",
       "com.google.common.collect.ImmutableClassToInstanceMapTest",
+      "com.google.common.collect.ImmutableDoubleArrayTest",
+      "com.google.common.collect.ImmutableHashTrieMapTest",
+      "com.google.common.collect.ImmutableHashTrieMapTest$MapTests",
+      "com.google.common.collect.ImmutableHashTrieMapTest$MapTestsWithBadHashes",
+      "com.google.common.collect.ImmutableHashTrieMapTest$ReserializedMapTests",
+      "com.google.common.collect.ImmutableIntArrayTest",
+      "com.google.common.collect.ImmutableIntSetTest",
       "com.google.common.collect.ImmutableListMultimapTest",
       "com.google.common.collect.ImmutableListTest",
       "com.google.common.collect.ImmutableListTest$CreationTests",
+      "com.google.common.collect.ImmutableLongArrayTest",
+      "com.google.common.collect.ImmutableLongSetTest",
       "com.google.common.collect.ImmutableMapTest",
       "com.google.common.collect.ImmutableMapTest$CreationTests",
+      "com.google.common.collect.ImmutableMapTest$HashTableMapTests",
       "com.google.common.collect.ImmutableMapTest$MapTests",
       "com.google.common.collect.ImmutableMapTest$MapTestsWithBadHashes",
       "com.google.common.collect.ImmutableMapTest$MapTestsWithSingletonUnhashableValue",
       "com.google.common.collect.ImmutableMapTest$MapTestsWithUnhashableValues",
+      "com.google.common.collect.ImmutableMapTest$PerfectHashMapTests",
+      "com.google.common.collect.ImmutableMapTest$PerfectHashMapTestsWithBadHashes",
       "com.google.common.collect.ImmutableMapTest$ReserializedMapTests",
       "com.google.common.collect.ImmutableMapTest$SingletonMapTests",
       "com.google.common.collect.ImmutableMultimapAsMapImplementsMapTest",
@@ -111,6 +128,7 @@ public class CollectTestSuite {
       "com.google.common.collect.ImmutableSetTest",
       "com.google.common.collect.ImmutableSortedMapTest",
       "com.google.common.collect.ImmutableSortedMapTest$CreationTests",
+      "com.google.common.collect.ImmutableSortedMapTest$EytzingerLayoutMapTests",
       "com.google.common.collect.ImmutableSortedMapTest$HeadMapTests",
       "com.google.common.collect.ImmutableSortedMapTest$MapTests",
       "com.google.common.collect.ImmutableSortedMapTest$ReserializedMapTests",
@@ -118,6 +136,8 @@ public class CollectTestSuite {
       "com.google.common.collect.ImmutableSortedMapTest$SubMapTests",
       "com.google.common.collect.ImmutableSortedMapTest$TailMapTests",
       "com.google.common.collect.ImmutableSortedSetTest",
+      "com.google.common.collect.ImmutableTrieListTest",
+      "com.google.common.collect.InternersTest",
       "com.google.common.collect.InverseBiMapTest",
       "com.google.common.collect.IterablesTest",
       "com.google.common.collect.IteratorsTest",
@@ -126,13 +146,20 @@ public class CollectTestSuite {
       "com.google.common.collect.LinkedHashMultisetTest",
       "com.google.common.collect.LinkedListMultimapTest",
       "com.google.common.collect.ListsTest",
+      "com.google.common.collect.MapMakerTestSuite$AdaptiveConcurrencyTest",
+      "com.google.common.collect.MapMakerTestSuite$CollidingKeysTest",
       "com.google.common.collect.MapMakerTestSuite$ComputingTest",
+      "com.google.common.collect.MapMakerTestSuite$DiagnosticsTest",
       "com.google.common.collect.MapMakerTestSuite$ExpiringComputingReferenceMapTest",
       "com.google.common.collect.MapMakerTestSuite$ExpiringReferenceMapTest",
       "com.google.common.collect.MapMakerTestSuite$MakerTest",
+      "com.google.common.collect.MapMakerTestSuite$MemoizingFunctionTest",
+      "com.google.common.collect.MapMakerTestSuite$OffHeapValuesTest",
+      "com.google.common.collect.MapMakerTestSuite$OverflowTest",
       "com.google.common.collect.MapMakerTestSuite$RecursiveComputationTest",
       "com.google.common.collect.MapMakerTestSuite$ReferenceCombinationTestSuite",
       "com.google.common.collect.MapMakerTestSuite$ReferenceMapTest",
+      "com.google.common.collect.MapMakerTestSuite$WriteListenerTest",
       "com.google.common.collect.MapsTest",
       "com.google.common.collect.MapsTest$FilteredMapTests",
       "com.google.common.collect.MapsTransformValuesTest",
@@ -144,11 +171,13 @@ public class CollectTestSuite {
       "com.google.common.collect.MutableClassToInstanceMapTest",
       "com.google.common.collect.ObjectArraysTest",
       "com.google.common.collect.OrderingTest",
+      "com.google.common.collect.OverflowLogTest",
       "com.google.common.collect.PeekingIteratorTest",
       "com.google.common.collect.SetOperationsTest",
       "com.google.common.collect.SetOperationsTest$MoreTests",
       "com.google.common.collect.SetsTest",
       "com.google.common.collect.SimpleAbstractMultisetTest",
+      "com.google.common.collect.SlabAllocatorTest",
       "com.google.common.collect.SubMapMultimapAsMapImplementsMapTest",
       "com.google.common.collect.SynchronizedBiMapTest",
       "com.google.common.collect.SynchronizedBiMapTest$AbstractBiMapTests",
@@ -168,5 +197,7 @@ public class CollectTestSuite {
       "com.google.common.collect.testing.OpenJdk6Tests",
       "com.google.common.collect.testing.features.FeatureEnumTest",
       "com.google.common.collect.testing.features.FeatureUtilTest",
+      "com.google.common.hash.HashCodeTest",
+      "com.google.common.hash.HashingTest",
   };
 }
@@ -0,0 +1,196 @@
+/*
+ * Copyright (C) 2009 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.collect;
+
+import static java.util.Arrays.asList;
+
+import com.google.common.testutils.SerializableTester;
+
+import junit.framework.TestCase;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Tests for {@link ImmutableListMultimap} and {@link ImmutableSetMultimap}
+ * built with {@link ImmutableMultimap.Builder#compressedRows}, which have a
+ * {@link CompressedRowImmutableMap}.
+ */
+public class CompressedRowImmutableMapTest extends TestCase {
+
+  public static class ListAsMapTest
+      extends AbstractMultimapAsMapImplementsMapTest {
+    public ListAsMapTest() {
+      super(false, false);
+    }
+
+    @Override protected Map<String, Collection<Integer>> makeEmptyMap() {
+      return ImmutableListMultimap.<String, Integer>builder()
+          .compressedRows().build().asMap();
+    }
+
+    @Override protected Map<String, Collection<Integer>> makePopulatedMap() {
+      Multimap<String, Integer> delegate = LinkedListMultimap.create();
+      populate(delegate);
+      return ImmutableListMultimap.<String, Integer>builder()
+          .compressedRows().putAll(delegate).build().asMap();
+    }
+  }
+
+  public static class SetAsMapTest
+      extends AbstractMultimapAsMapImplementsMapTest {
+    public SetAsMapTest() {
+      super(false, false);
+    }
+
+    @Override protected Map<String, Collection<Integer>> makeEmptyMap() {
+      return ImmutableSetMultimap.<String, Integer>builder()
+          .compressedRows().build().asMap();
+    }
+
+    @Override protected Map<String, Collection<Integer>> makePopulatedMap() {
+      Multimap<String, Integer> delegate = HashMultimap.create();
+      populate(delegate);
+      return ImmutableSetMultimap.<String, Integer>builder()
+          .compressedRows().putAll(delegate).build().asMap();
+    }
+  }
+
+  private static ImmutableListMultimap<String, Integer> createList() {
+    return ImmutableListMultimap.<String, Integer>builder().compressedRows()
+        .putAll("foo", 1, 2, 3, 1)
+        .put("bar", 4)
+        .putAll("baz", 5, 6)
+        .build();
+  }
+
+  private static ImmutableSetMultimap<String, Integer> createSet() {
+    ImmutableSetMultimap.Builder<String, Integer> builder
+        = ImmutableSetMultimap.<String, Integer>builder().compressedRows();
+    builder.putAll("foo", 1, 2, 3, 1).put("bar", 4);
+    for (int i = 0; i < 20; i++) {
+      builder.put("many", i % 15);
+    }
+    return builder.build();
+  }
+
+  public void testList() {
+    ImmutableListMultimap<String, Integer> multimap = createList();
+    assertTrue(multimap.asMap() instanceof CompressedRowImmutableMap);
+    assertEquals(7, multimap.size());
+    assertEquals(asList(1, 2, 3, 1), multimap.get("foo"));
+    assertEquals(asList(4), multimap.get("bar"));
+    assertTrue(multimap.get("missing").isEmpty());
+    assertEquals(ImmutableSet.of("foo", "bar", "baz"), multimap.keySet());
+    assertEquals(asList(1, 2, 3, 1, 4, 5, 6),
+        Lists.newArrayList(multimap.values()));
+    assertTrue(multimap.containsEntry("baz", 6));
+    assertFalse(multimap.containsEntry("bar", 6));
+    assertTrue(multimap.containsValue(3));
+    assertFalse(multimap.containsValue(7));
+    assertEquals(2, multimap.keys().count("baz"));
+  }
+
+  public void testListEquals() {
+    ImmutableListMultimap<String, Integer> multimap = createList();
+    ImmutableListMultimap<String, Integer> regular
+        = ImmutableListMultimap.copyOf(LinkedListMultimap.create(multimap));
+    assertFalse(regular.asMap() instanceof CompressedRowImmutableMap);
+    assertEquals(regular, multimap);
+    assertEquals(multimap, regular);
+    assertEquals(regular.hashCode(), multimap.hashCode());
+    assertEquals(regular.toString(), multimap.toString());
+    assertEquals(regular.get("foo").hashCode(),
+        multimap.get("foo").hashCode());
+  }
+
+  public void testListSubList() {
+    ImmutableList<Integer> list = createList().get("foo");
+    assertEquals(asList(2, 3), list.subList(1, 3));
+    assertEquals(3, list.lastIndexOf(1));
+  }
+
+  public void testSet() {
+    ImmutableSetMultimap<String, Integer> multimap = createSet();
+    assertTrue(multimap.asMap() instanceof CompressedRowImmutableMap);
+    assertEquals(19, multimap.size());
+    assertEquals(asList(1, 2, 3), Lists.newArrayList(multimap.get("foo")));
+    assertEquals(ImmutableSet.of(1, 2, 3), multimap.get("foo"));
+    assertTrue(multimap.get("foo").contains(3));
+    assertFalse(multimap.get("foo").contains(4));
+    assertFalse(multimap.get("foo").contains(null));
+    assertEquals(15, multimap.get("many").size());
+    assertTrue(multimap.get("many").contains(14));
+    assertFalse(multimap.get("many").contains(15));
+    assertSame(multimap.get("many"), multimap.get("many"));
+    assertTrue(multimap.containsEntry("bar", 4));
+    assertFalse(multimap.containsEntry("foo", 4));
+    assertEquals(ImmutableSetMultimap.copyOf(
+        LinkedHashMultimap.create(multimap)), multimap);
+  }
+
+  public void testSetFromListMultimap() {
+    ImmutableSetMultimap<String, Integer> multimap
+        = ImmutableSetMultimap.<String, Integer>builder().compressedRows()
+            .putAll(createList())
+            .build();
+    assertEquals(6, multimap.size());
+    assertEquals(asList(1, 2, 3), Lists.newArrayList(multimap.get("foo")));
+    assertEquals(asList(5, 6), Lists.newArrayList(multimap.get("baz")));
+  }
+
+  public void testEmpty() {
+    assertSame(ImmutableListMultimap.of(),
+        ImmutableListMultimap.builder().compressedRows().build());
+    assertSame(ImmutableSetMultimap.of(),
+        ImmutableSetMultimap.builder().compressedRows().build());
+    assertSame(ImmutableListMultimap.of(),
+        ImmutableMultimap.builder().compressedRows().build());
+  }
+
+  public void testNullKey() {
+    ArrayListMultimap<String, Integer> multimap = ArrayListMultimap.create();
+    multimap.put(null, 1);
+    try {
+      ImmutableListMultimap.compressedCopyOf(multimap);
+      fail();
+    } catch (NullPointerException expected) {
+    }
+    try {
+      ImmutableSetMultimap.compressedCopyOf(multimap);
+      fail();
+    } catch (NullPointerException expected) {
+    }
+  }
+
+  public void testSerialization() {
+    ImmutableListMultimap<String, Integer> list
+        = SerializableTester.reserializeAndAssert(createList());
+    assertTrue(list.asMap() instanceof CompressedRowImmutableMap);
+    assertEquals(asList(1, 2, 3, 1), list.get("foo"));
+
+    ImmutableSetMultimap<String, Integer> set
+        = SerializableTester.reserializeAndAssert(createSet());
+    assertTrue(set.asMap() instanceof CompressedRowImmutableMap);
+    assertEquals(asList(1, 2, 3), Lists.newArrayList(set.get("foo")));
+    assertTrue(set.get("many").contains(14));
+
+    SerializableTester.reserializeAndAssert(list.get("foo"));
+    SerializableTester.reserializeAndAssert(set.get("foo"));
+    SerializableTester.reserializeAndAssert(set.asMap());
+  }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2009 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.collect;
+
+import static java.util.Arrays.asList;
+
+import com.google.common.collect.testing.ListTestSuiteBuilder;
+import com.google.common.collect.testing.SampleElements;
+import com.google.common.collect.testing.TestListGenerator;
+import com.google.common.collect.testing.features.CollectionSize;
+import com.google.common.testutils.SerializableTester;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.util.List;
+
+/**
+ * Tests for {@link ImmutableDoubleArray}.
+ */
+public class ImmutableDoubleArrayTest extends TestCase {
+  public static Test suite() {
+    TestSuite suite = new TestSuite();
+    suite.addTestSuite(ImmutableDoubleArrayTest.class);
+    suite.addTest(ListTestSuiteBuilder.using(new TestListGenerator<Double>() {
+          public SampleElements<Double> samples() {
+            return new SampleElements<Double>(
+                0.0, -0.0, 1.5, Double.NaN, Double.NEGATIVE_INFINITY);
+          }
+
+          public List<Double> create(Object... elements) {
+            ImmutableDoubleArray.Builder builder
+                = ImmutableDoubleArray.builder().add(2.5);
+            for (Object element : elements) {
+              builder.add((Double) element);
+            }
+            return builder.build().subArray(1, elements.length + 1).asList();
+          }
+
+          public Double[] createArray(int length) {
+            return new Double[length];
+          }
+
+          public List<Double> order(List<Double> insertionOrder) {
+            return insertionOrder;
+          }
+        })
+        .named("ImmutableDoubleArray.subArray.asList")
+        .withFeatures(CollectionSize.ANY)
+        .createTestSuite());
+    return suite;
+  }
+
+  public void testEqualityOfSpecialValues() {
+    ImmutableDoubleArray array = ImmutableDoubleArray.of(0.0, Double.NaN);
+    assertEquals(-1, array.indexOf(-0.0));
+    assertEquals(1, array.indexOf(Double.NaN));
+    assertEquals(array, ImmutableDoubleArray.of(0.0, Double.NaN));
+    assertFalse(array.equals(ImmutableDoubleArray.of(-0.0, Double.NaN)));
+    assertEquals(asList(0.0, Double.NaN).hashCode(), array.hashCode());
+    assertEquals(asList(0.0, Double.NaN), array.asList());
+    assertEquals("[0.0, NaN]", array.toString());
+  }
+
+  public void testSerialization() {
+    ImmutableDoubleArray array = ImmutableDoubleArray.of(1, 2, 3);
+    SerializableTester.reserializeAndAssert(array);
+    SerializableTester.reserializeAndAssert(array.subArray(1, 2));
+  }
+}
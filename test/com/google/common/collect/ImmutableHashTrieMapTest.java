@@ -0,0 +1,281 @@
+/*
+ * Copyright (C) 2009 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.collect;
+
+import com.google.common.collect.ImmutableHashTrieMap.Editor;
+import com.google.common.collect.ImmutableMapTest.AbstractMapTests;
+import com.google.common.collect.testing.SampleElements.Colliders;
+import com.google.common.testutils.SerializableTester;
+
+import junit.framework.TestCase;
+
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Tests for {@link ImmutableHashTrieMap}.
+ */
+public class ImmutableHashTrieMapTest extends TestCase {
+
+  public static class MapTests extends AbstractMapTests<String, Integer> {
+    @Override protected Map<String, Integer> makeEmptyMap() {
+      return ImmutableHashTrieMap.of();
+    }
+
+    @Override protected Map<String, Integer> makePopulatedMap() {
+      ImmutableHashTrieMap<String, Integer> map = ImmutableHashTrieMap.of();
+      for (int i = 0; i < 100; i++) {
+        map = map.with("key" + i, i);
+      }
+      return map;
+    }
+
+    @Override protected String getKeyNotInPopulatedMap() {
+      return "minus one";
+    }
+
+    @Override protected Integer getValueNotInPopulatedMap() {
+      return -1;
+    }
+  }
+
+  public static class MapTestsWithBadHashes
+      extends AbstractMapTests<Object, Integer> {
+    @Override protected Map<Object, Integer> makePopulatedMap() {
+      Colliders colliders = new Colliders();
+      return ImmutableHashTrieMap.<Object, Integer>of()
+          .with(colliders.e0, 0)
+          .with(5, 5)
+          .with(colliders.e1, 1)
+          .with(colliders.e2, 2)
+          .with(6, 6)
+          .with(colliders.e3, 3);
+    }
+
+    @Override protected Object getKeyNotInPopulatedMap() {
+      return new Colliders().e4;
+    }
+
+    @Override protected Integer getValueNotInPopulatedMap() {
+      return 4;
+    }
+  }
+
+  public static class ReserializedMapTests
+      extends AbstractMapTests<String, Integer> {
+    @Override protected Map<String, Integer> makePopulatedMap() {
+      return SerializableTester.reserialize(ImmutableHashTrieMap.copyOf(
+          ImmutableMap.of("one", 1, "two", 2, "three", 3)));
+    }
+
+    @Override protected String getKeyNotInPopulatedMap() {
+      return "minus one";
+    }
+
+    @Override protected Integer getValueNotInPopulatedMap() {
+      return -1;
+    }
+  }
+
+  public void testEmpty() {
+    ImmutableHashTrieMap<String, Integer> map = ImmutableHashTrieMap.of();
+    assertTrue(map.isEmpty());
+    assertSame(map, map.without("a"));
+    assertSame(map, map.with("a", 1).without("a"));
+    assertSame(map, map.edit().build());
+  }
+
+  public void testWith() {
+    ImmutableHashTrieMap<String, Integer> empty = ImmutableHashTrieMap.of();
+    ImmutableHashTrieMap<String, Integer> one = empty.with("a", 1);
+    ImmutableHashTrieMap<String, Integer> two = one.with("b", 2);
+    ImmutableHashTrieMap<String, Integer> replaced = two.with("a", 3);
+
+    assertEquals(ImmutableMap.of(), empty);
+    assertEquals(ImmutableMap.of("a", 1), one);
+    assertEquals(ImmutableMap.of("a", 1, "b", 2), two);
+    assertEquals(ImmutableMap.of("a", 3, "b", 2), replaced);
+    assertSame(two, two.with("b", two.get("b")));
+  }
+
+  public void testWithout() {
+    ImmutableHashTrieMap<String, Integer> map
+        = ImmutableHashTrieMap.copyOf(ImmutableMap.of("a", 1, "b", 2));
+    ImmutableHashTrieMap<String, Integer> removed = map.without("a");
+
+    assertEquals(ImmutableMap.of("a", 1, "b", 2), map);
+    assertEquals(ImmutableMap.of("b", 2), removed);
+    assertSame(map, map.without("c"));
+    assertSame(map, map.without(null));
+    assertSame(map, map.without(1));
+  }
+
+  public void testWithNulls() {
+    ImmutableHashTrieMap<String, Integer> map = ImmutableHashTrieMap.of();
+    try {
+      map.with(null, 1);
+      fail();
+    } catch (NullPointerException expected) {
+    }
+    try {
+      map.with("a", null);
+      fail();
+    } catch (NullPointerException expected) {
+    }
+  }
+
+  public void testCopyOf() {
+    ImmutableHashTrieMap<String, Integer> map = ImmutableHashTrieMap.copyOf(
+        ImmutableMap.of("one", 1, "two", 2, "three", 3));
+    assertEquals(ImmutableMap.of("one", 1, "two", 2, "three", 3), map);
+    assertSame(map, ImmutableHashTrieMap.copyOf(map));
+    assertSame(map, ImmutableMap.copyOf(map));
+  }
+
+  public void testIterationOrderDependsOnlyOnKeys() {
+    ImmutableHashTrieMap<Integer, Integer> forward = ImmutableHashTrieMap.of();
+    ImmutableHashTrieMap<Integer, Integer> backward
+        = ImmutableHashTrieMap.of();
+    for (int i = 0; i < 1000; i++) {
+      forward = forward.with(i, i);
+      backward = backward.with(999 - i, 999 - i);
+    }
+    assertEquals(Lists.newArrayList(forward.keySet()),
+        Lists.newArrayList(backward.keySet()));
+  }
+
+  /**
+   * Makes random changes both to a series of maps and, in batches, to an
+   * editor, and compares them to a {@link HashMap}. Keys collide often, and
+   * some have equal hash codes.
+   */
+  public void testRandomChanges() {
+    Random random = new Random(0);
+    Map<Object, Integer> expected = new HashMap<Object, Integer>();
+    ImmutableHashTrieMap<Object, Integer> map = ImmutableHashTrieMap.of();
+    Editor<Object, Integer> editor = map.edit();
+    for (int i = 0; i < 20000; i++) {
+      Object key = (random.nextInt(4) == 0)
+          ? new IntHolder(random.nextInt(64))
+          : random.nextInt(2000);
+      if (random.nextInt(3) == 0) {
+        expected.remove(key);
+        map = map.without(key);
+        editor.remove(key);
+      } else {
+        Integer value = random.nextInt();
+        expected.put(key, value);
+        map = map.with(key, value);
+        editor.put(key, value);
+      }
+      assertEquals(expected.size(), map.size());
+      assertEquals(expected.size(), editor.size());
+      assertEquals(expected.get(key), map.get(key));
+      assertEquals(expected.get(key), editor.get(key));
+      if (i % 1000 == 0) {
+        assertEquals(expected, map);
+        assertEquals(expected, editor.build());
+        assertEquals(expected.hashCode(), map.hashCode());
+      }
+    }
+    assertEquals(expected, map);
+    assertEquals(expected, editor.build());
+  }
+
+  public void testOldVersionsUnchanged() {
+    ImmutableHashTrieMap<Integer, Integer> map = ImmutableHashTrieMap.of();
+    Map<Integer, Integer> expected = new HashMap<Integer, Integer>();
+    for (int i = 0; i < 500; i++) {
+      map = map.with(i, i);
+      expected.put(i, i);
+    }
+    ImmutableHashTrieMap<Integer, Integer> changed = map.without(7);
+    for (int i = 100; i < 600; i++) {
+      changed = changed.with(i, -i);
+    }
+    assertEquals(expected, map);
+    assertEquals(599, changed.size());
+    assertEquals((Integer) (-200), changed.get(200));
+  }
+
+  public void testEditorBuildThenEdit() {
+    Editor<String, Integer> editor = ImmutableHashTrieMap.<String, Integer>of()
+        .edit().put("a", 1).put("b", 2);
+    ImmutableHashTrieMap<String, Integer> first = editor.build();
+    editor.put("a", 3).remove("b").put("c", 4);
+    ImmutableHashTrieMap<String, Integer> second = editor.build();
+
+    assertEquals(ImmutableMap.of("a", 1, "b", 2), first);
+    assertEquals(ImmutableMap.of("a", 3, "c", 4), second);
+  }
+
+  public void testEditorDoesNotChangeSource() {
+    ImmutableHashTrieMap<Integer, Integer> map = ImmutableHashTrieMap.of();
+    for (int i = 0; i < 100; i++) {
+      map = map.with(i, i);
+    }
+    Editor<Integer, Integer> editor = map.edit();
+    for (int i = 0; i < 100; i += 2) {
+      editor.remove(i);
+      editor.put(i + 1000, i);
+    }
+    assertEquals(100, map.size());
+    assertEquals((Integer) 0, map.get(0));
+    assertNull(map.get(1000));
+    assertEquals(100, editor.size());
+    assertNull(editor.get(0));
+    assertEquals((Integer) 0, editor.get(1000));
+  }
+
+  public void testSerialization() {
+    ImmutableHashTrieMap<String, Integer> map = ImmutableHashTrieMap.copyOf(
+        ImmutableMap.of("one", 1, "two", 2, "three", 3));
+    ImmutableHashTrieMap<String, Integer> copy
+        = SerializableTester.reserializeAndAssert(map);
+    assertEquals(Lists.newArrayList(map.keySet()),
+        Lists.newArrayList(copy.keySet()));
+    SerializableTester.reserializeAndAssert(map.entrySet());
+    SerializableTester.reserializeAndAssert(map.keySet());
+    assertSame(ImmutableHashTrieMap.of(),
+        SerializableTester.reserialize(ImmutableHashTrieMap.of()));
+  }
+
+  /** A key whose hash code is shared by other keys. */
+  private static class IntHolder implements Serializable {
+    final int value;
+
+    IntHolder(int value) {
+      this.value = value;
+    }
+
+    @Override public boolean equals(Object o) {
+      return (o instanceof IntHolder) && ((IntHolder) o).value == value;
+    }
+
+    @Override public int hashCode() {
+      return value % 8;
+    }
+
+    @Override public String toString() {
+      return "I" + value;
+    }
+
+    private static final long serialVersionUID = 0;
+  }
+}
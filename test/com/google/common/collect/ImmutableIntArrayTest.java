@@ -0,0 +1,204 @@
+/*
+ * Copyright (C) 2009 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.collect;
+
+import static java.util.Arrays.asList;
+
+import com.google.common.collect.testing.ListTestSuiteBuilder;
+import com.google.common.collect.testing.SampleElements;
+import com.google.common.collect.testing.TestListGenerator;
+import com.google.common.collect.testing.features.CollectionSize;
+import com.google.common.testutils.SerializableTester;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.util.List;
+
+/**
+ * Tests for {@link ImmutableIntArray}.
+ */
+public class ImmutableIntArrayTest extends TestCase {
+  public static Test suite() {
+    TestSuite suite = new TestSuite();
+    suite.addTestSuite(ImmutableIntArrayTest.class);
+    suite.addTest(ListTestSuiteBuilder.using(new TestIntegerListGenerator() {
+          @Override protected List<Integer> create(int[] values) {
+            return ImmutableIntArray.copyOf(values).asList();
+          }
+        })
+        .named("ImmutableIntArray.asList")
+        .withFeatures(CollectionSize.ANY)
+        .createTestSuite());
+    suite.addTest(ListTestSuiteBuilder.using(new TestIntegerListGenerator() {
+          @Override protected List<Integer> create(int[] values) {
+            ImmutableIntArray.Builder builder = ImmutableIntArray.builder(1)
+                .add(-1).add(-2);
+            for (int value : values) {
+              builder.add(value);
+            }
+            ImmutableIntArray array = builder.add(-3).build();
+            return array.subArray(2, values.length + 2).asList();
+          }
+        })
+        .named("ImmutableIntArray.subArray.asList")
+        .withFeatures(CollectionSize.ANY)
+        .createTestSuite());
+    suite.addTest(ListTestSuiteBuilder.using(new TestIntegerListGenerator() {
+          @Override protected List<Integer> create(int[] values) {
+            return SerializableTester.reserialize(
+                ImmutableIntArray.copyOf(values).asList());
+          }
+        })
+        .named("ImmutableIntArray.asList, reserialized")
+        .withFeatures(CollectionSize.ANY)
+        .createTestSuite());
+    return suite;
+  }
+
+  abstract static class TestIntegerListGenerator
+      implements TestListGenerator<Integer> {
+    public SampleElements<Integer> samples() {
+      return new SampleElements<Integer>(0, 1, 2, 3, 4);
+    }
+
+    public List<Integer> create(Object... elements) {
+      int[] values = new int[elements.length];
+      for (int i = 0; i < elements.length; i++) {
+        values[i] = (Integer) elements[i];
+      }
+      return create(values);
+    }
+
+    protected abstract List<Integer> create(int[] values);
+
+    public Integer[] createArray(int length) {
+      return new Integer[length];
+    }
+
+    public List<Integer> order(List<Integer> insertionOrder) {
+      return insertionOrder;
+    }
+  }
+
+  public void testOf() {
+    assertTrue(ImmutableIntArray.of().isEmpty());
+    assertSame(ImmutableIntArray.of(), ImmutableIntArray.of(new int[0]));
+    ImmutableIntArray array = ImmutableIntArray.of(3, 1, 3);
+    assertEquals(3, array.length());
+    assertEquals(3, array.get(0));
+    assertEquals(1, array.get(1));
+    assertEquals("[3, 1, 3]", array.toString());
+    assertEquals("[]", ImmutableIntArray.of().toString());
+  }
+
+  public void testCopyOfDoesNotShare() {
+    int[] values = {1, 2, 3};
+    ImmutableIntArray array = ImmutableIntArray.copyOf(values);
+    values[0] = 4;
+    assertEquals(1, array.get(0));
+    array.toArray()[1] = 5;
+    assertEquals(2, array.get(1));
+  }
+
+  public void testCopyOfIterable() {
+    assertEquals(ImmutableIntArray.of(1, 2, 3),
+        ImmutableIntArray.copyOf(asList(1, 2, 3)));
+    assertEquals(ImmutableIntArray.of(1, 2, 3),
+        ImmutableIntArray.copyOf(Iterables.unmodifiableIterable(
+            asList(1, 2, 3))));
+    try {
+      ImmutableIntArray.copyOf(asList(1, null));
+      fail();
+    } catch (NullPointerException expected) {
+    }
+  }
+
+  public void testGetOutOfBounds() {
+    ImmutableIntArray array = ImmutableIntArray.of(1, 2, 3).subArray(1, 2);
+    try {
+      array.get(1);
+      fail();
+    } catch (IndexOutOfBoundsException expected) {
+    }
+    try {
+      array.get(-1);
+      fail();
+    } catch (IndexOutOfBoundsException expected) {
+    }
+  }
+
+  public void testSearch() {
+    ImmutableIntArray array = ImmutableIntArray.of(5, 1, 2, 1, 5, 6)
+        .subArray(1, 5);
+    assertEquals(0, array.indexOf(1));
+    assertEquals(2, array.lastIndexOf(1));
+    assertEquals(3, array.indexOf(5));
+    assertEquals(-1, array.indexOf(6));
+    assertTrue(array.contains(2));
+    assertFalse(array.contains(6));
+    assertEquals(-1, array.asList().indexOf(1L));
+  }
+
+  public void testBuilderReuse() {
+    ImmutableIntArray.Builder builder = ImmutableIntArray.builder();
+    builder.add(1).addAll(new int[] {2, 3});
+    ImmutableIntArray first = builder.build();
+    builder.addAll(asList(4, 5)).addAll(first);
+    ImmutableIntArray second = builder.build();
+    assertEquals(ImmutableIntArray.of(1, 2, 3), first);
+    assertEquals(ImmutableIntArray.of(1, 2, 3, 4, 5, 1, 2, 3), second);
+    assertSame(ImmutableIntArray.of(), ImmutableIntArray.builder().build());
+  }
+
+  public void testBuilderNegativeCapacity() {
+    try {
+      ImmutableIntArray.builder(-1);
+      fail();
+    } catch (IllegalArgumentException expected) {
+    }
+  }
+
+  public void testEqualsAndHashCode() {
+    ImmutableIntArray array = ImmutableIntArray.of(0, 1, 2, 3);
+    ImmutableIntArray subArray = array.subArray(1, 3);
+    assertEquals(ImmutableIntArray.of(1, 2), subArray);
+    assertEquals(ImmutableIntArray.of(1, 2).hashCode(), subArray.hashCode());
+    assertEquals(asList(1, 2).hashCode(), subArray.hashCode());
+    assertFalse(subArray.equals(ImmutableIntArray.of(1, 2, 3)));
+    assertFalse(subArray.equals(asList(1, 2)));
+    assertEquals(asList(1, 2), subArray.asList());
+    assertEquals(subArray.asList(), ImmutableList.of(1, 2));
+  }
+
+  public void testAsListInterop() {
+    ImmutableList<Integer> list = ImmutableIntArray.of(1, 2, 3).asList();
+    assertSame(list, ImmutableList.copyOf(list));
+    assertEquals(ImmutableIntArray.of(2, 3).asList(), list.subList(1, 3));
+    assertSame(ImmutableList.of(), ImmutableIntArray.of().asList());
+  }
+
+  public void testSerialization() {
+    ImmutableIntArray array = ImmutableIntArray.builder()
+        .add(1).add(2).add(3).build();
+    SerializableTester.reserializeAndAssert(array);
+    SerializableTester.reserializeAndAssert(array.subArray(1, 2));
+    assertSame(ImmutableIntArray.of(),
+        SerializableTester.reserialize(ImmutableIntArray.of()));
+  }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2009 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.collect;
+
+import static java.util.Arrays.asList;
+
+import com.google.common.testutils.SerializableTester;
+
+import junit.framework.TestCase;
+
+import java.util.LinkedHashSet;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Tests for {@link ImmutableIntSet}.
+ */
+public class ImmutableIntSetTest extends TestCase {
+  public void testEmpty() {
+    ImmutableIntSet set = ImmutableIntSet.of();
+    assertTrue(set.isEmpty());
+    assertEquals(0, set.size());
+    assertFalse(set.contains(0));
+    assertSame(set, ImmutableIntSet.copyOf(new int[0]));
+    assertSame(set, ImmutableIntSet.builder().build());
+    assertEquals("[]", set.toString());
+  }
+
+  public void testOf() {
+    ImmutableIntSet set = ImmutableIntSet.of(3, 0, 3, -7, 0);
+    assertEquals(3, set.size());
+    assertTrue(set.contains(0));
+    assertTrue(set.contains(-7));
+    assertFalse(set.contains(1));
+    assertEquals(ImmutableIntArray.of(3, 0, -7), set.asArray());
+    assertEquals(asList(3, 0, -7), set.asList());
+    assertEquals("[3, 0, -7]", set.toString());
+  }
+
+  public void testRandom() {
+    Random random = new Random(0);
+    Set<Integer> expected = new LinkedHashSet<Integer>();
+    ImmutableIntSet.Builder builder = ImmutableIntSet.builder();
+    for (int i = 0; i < 5000; i++) {
+      int value = (i % 2 == 0) ? random.nextInt(3000) : random.nextInt();
+      expected.add(value);
+      builder.add(value);
+    }
+    ImmutableIntSet set = builder.build();
+    assertEquals(expected.size(), set.size());
+    assertEquals(ImmutableList.copyOf(expected), set.asList());
+    for (int i = -100; i < 4000; i++) {
+      assertEquals(expected.contains(i), set.contains(i));
+    }
+    assertEquals(expected.hashCode(), set.hashCode());
+  }
+
+  public void testCopyOf() {
+    ImmutableIntSet set = ImmutableIntSet.copyOf(asList(1, 2, 1, 3));
+    assertEquals(ImmutableIntSet.of(1, 2, 3), set);
+    ImmutableIntArray array = ImmutableIntArray.of(0, 1, 2, 3).subArray(1, 4);
+    assertEquals(set, ImmutableIntSet.copyOf(array));
+    try {
+      ImmutableIntSet.copyOf(asList(1, null));
+      fail();
+    } catch (NullPointerException expected) {
+    }
+  }
+
+  public void testEqualsIgnoresOrder() {
+    assertEquals(ImmutableIntSet.of(1, 2, 3), ImmutableIntSet.of(3, 2, 1));
+    assertEquals(ImmutableIntSet.of(1, 2, 3).hashCode(),
+        ImmutableIntSet.of(3, 2, 1).hashCode());
+    assertFalse(ImmutableIntSet.of(1, 2).equals(ImmutableIntSet.of(1, 3)));
+    assertFalse(ImmutableIntSet.of(1, 2).equals(ImmutableIntArray.of(1, 2)));
+  }
+
+  public void testSerialization() {
+    ImmutableIntSet set = ImmutableIntSet.of(5, 1, 4);
+    ImmutableIntSet copy = SerializableTester.reserializeAndAssert(set);
+    assertEquals(set.asList(), copy.asList());
+    assertTrue(copy.contains(4));
+    assertSame(ImmutableIntSet.of(),
+        SerializableTester.reserialize(ImmutableIntSet.of()));
+  }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2009 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.collect;
+
+import static java.util.Arrays.asList;
+
+import com.google.common.collect.testing.ListTestSuiteBuilder;
+import com.google.common.collect.testing.SampleElements;
+import com.google.common.collect.testing.TestListGenerator;
+import com.google.common.collect.testing.features.CollectionSize;
+import com.google.common.testutils.SerializableTester;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.util.List;
+
+/**
+ * Tests for {@link ImmutableLongArray}.
+ */
+public class ImmutableLongArrayTest extends TestCase {
+  public static Test suite() {
+    TestSuite suite = new TestSuite();
+    suite.addTestSuite(ImmutableLongArrayTest.class);
+    suite.addTest(ListTestSuiteBuilder.using(new TestLongListGenerator() {
+          @Override protected List<Long> create(long[] values) {
+            return ImmutableLongArray.copyOf(values).asList();
+          }
+        })
+        .named("ImmutableLongArray.asList")
+        .withFeatures(CollectionSize.ANY)
+        .createTestSuite());
+    suite.addTest(ListTestSuiteBuilder.using(new TestLongListGenerator() {
+          @Override protected List<Long> create(long[] values) {
+            ImmutableLongArray array = ImmutableLongArray.builder()
+                .add(-1).addAll(values).add(-2).build();
+            return array.subArray(1, values.length + 1).asList();
+          }
+        })
+        .named("ImmutableLongArray.subArray.asList")
+        .withFeatures(CollectionSize.ANY)
+        .createTestSuite());
+    return suite;
+  }
+
+  abstract static class TestLongListGenerator
+      implements TestListGenerator<Long> {
+    public SampleElements<Long> samples() {
+      return new SampleElements<Long>(0L, 1L, 1L << 40, -1L, Long.MIN_VALUE);
+    }
+
+    public List<Long> create(Object... elements) {
+      long[] values = new long[elements.length];
+      for (int i = 0; i < elements.length; i++) {
+        values[i] = (Long) elements[i];
+      }
+      return create(values);
+    }
+
+    protected abstract List<Long> create(long[] values);
+
+    public Long[] createArray(int length) {
+      return new Long[length];
+    }
+
+    public List<Long> order(List<Long> insertionOrder) {
+      return insertionOrder;
+    }
+  }
+
+  public void testBasics() {
+    ImmutableLongArray array = ImmutableLongArray.of(1L << 40, 2, 1L << 40);
+    assertEquals(3, array.length());
+    assertEquals(1L << 40, array.get(0));
+    assertEquals(0, array.indexOf(1L << 40));
+    assertEquals(2, array.lastIndexOf(1L << 40));
+    assertFalse(array.contains(0));
+    assertEquals("[1099511627776, 2, 1099511627776]", array.toString());
+    assertEquals(asList(1L << 40, 2L, 1L << 40).hashCode(), array.hashCode());
+    assertEquals(array,
+        ImmutableLongArray.copyOf(asList(1L << 40, 2L, 1L << 40)));
+    assertEquals(-1, array.asList().indexOf(2));
+  }
+
+  public void testSerialization() {
+    ImmutableLongArray array = ImmutableLongArray.of(1, 2, 3);
+    SerializableTester.reserializeAndAssert(array);
+    SerializableTester.reserializeAndAssert(array.subArray(1, 2));
+  }
+}
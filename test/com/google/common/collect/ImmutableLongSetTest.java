@@ -0,0 +1,69 @@
+/*
+ * Copyright (C) 2009 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.collect;
+
+import static java.util.Arrays.asList;
+
+import com.google.common.testutils.SerializableTester;
+
+import junit.framework.TestCase;
+
+import java.util.LinkedHashSet;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Tests for {@link ImmutableLongSet}.
+ */
+public class ImmutableLongSetTest extends TestCase {
+  public void testOf() {
+    ImmutableLongSet set = ImmutableLongSet.of(1L << 40, 0, 1L << 40, -1);
+    assertEquals(3, set.size());
+    assertTrue(set.contains(1L << 40));
+    assertFalse(set.contains(1));
+    assertEquals(asList(1L << 40, 0L, -1L), set.asList());
+    assertEquals(ImmutableLongSet.of(0, -1, 1L << 40), set);
+    assertFalse(ImmutableLongSet.of().contains(0));
+  }
+
+  public void testRandom() {
+    Random random = new Random(0);
+    Set<Long> expected = new LinkedHashSet<Long>();
+    ImmutableLongSet.Builder builder = ImmutableLongSet.builder();
+    for (int i = 0; i < 5000; i++) {
+      // values that differ only in their high bits
+      long value = ((long) random.nextInt(100) << 32) | random.nextInt(30);
+      expected.add(value);
+      builder.add(value);
+    }
+    ImmutableLongSet set = builder.build();
+    assertEquals(ImmutableList.copyOf(expected), set.asList());
+    for (long high = 0; high < 110; high++) {
+      for (long low = 0; low < 35; low++) {
+        long value = (high << 32) | low;
+        assertEquals(expected.contains(value), set.contains(value));
+      }
+    }
+    assertEquals(expected.hashCode(), set.hashCode());
+  }
+
+  public void testSerialization() {
+    ImmutableLongSet set = ImmutableLongSet.of(5, 1L << 40, 4);
+    ImmutableLongSet copy = SerializableTester.reserializeAndAssert(set);
+    assertEquals(set.asList(), copy.asList());
+  }
+}
@@ -289,6 +289,74 @@ public class ImmutableMapTest extends TestCase {
     }
   }
 
+  public static class PerfectHashMapTests
+      extends AbstractMapTests<String, Integer> {
+    @Override protected Map<String, Integer> makePopulatedMap() {
+      // more entries than a SmallImmutableMap holds
+      Builder<String, Integer> builder
+          = new Builder<String, Integer>().perfectHashing();
+      for (int i = 0; i < 10; i++) {
+        builder.put("key" + i, i);
+      }
+      return builder.build();
+    }
+
+    @Override protected String getKeyNotInPopulatedMap() {
+      return "minus one";
+    }
+
+    @Override protected Integer getValueNotInPopulatedMap() {
+      return -1;
+    }
+  }
+
+  public static class PerfectHashMapTestsWithBadHashes
+      extends AbstractMapTests<Object, Integer> {
+
+    @Override protected Map<Object, Integer> makeEmptyMap() {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override protected Map<Object, Integer> makePopulatedMap() {
+      Colliders colliders = new Colliders();
+      return new Builder<Object, Integer>().perfectHashing()
+          .put(colliders.e0, 0)
+          .put(colliders.e1, 1)
+          .put(colliders.e2, 2)
+          .put(colliders.e3, 3)
+          .put(5, 5).put(6, 6).put(7, 7).put(8, 8).put(9, 9)
+          .build();
+    }
+
+    @Override protected Object getKeyNotInPopulatedMap() {
+      return new Colliders().e4;
+    }
+
+    @Override protected Integer getValueNotInPopulatedMap() {
+      return 4;
+    }
+  }
+
+  public static class HashTableMapTests
+      extends AbstractMapTests<String, Integer> {
+    @Override protected Map<String, Integer> makePopulatedMap() {
+      // more entries than a SmallImmutableMap holds
+      Builder<String, Integer> builder = new Builder<String, Integer>();
+      for (int i = 0; i < 10; i++) {
+        builder.put("key" + i, i);
+      }
+      return builder.build();
+    }
+
+    @Override protected String getKeyNotInPopulatedMap() {
+      return "minus one";
+    }
+
+    @Override protected Integer getValueNotInPopulatedMap() {
+      return -1;
+    }
+  }
+
   public static class MapTestsWithUnhashableValues
       extends AbstractMapTests<Integer, UnhashableObject> {
     @Override protected Map<Integer, UnhashableObject> makeEmptyMap() {
@@ -432,6 +500,118 @@ public class ImmutableMapTest extends TestCase {
       }
     }
 
+    public void testPerfectHashing() {
+      Builder<String, Integer> builder
+          = new Builder<String, Integer>().perfectHashing();
+      Map<String, Integer> expected = new LinkedHashMap<String, Integer>();
+      for (int i = 0; i < 10000; i++) {
+        builder.put("key" + i, i);
+        expected.put("key" + i, i);
+      }
+      ImmutableMap<String, Integer> map = builder.build();
+      assertEquals(expected, map);
+      assertEquals(Lists.newArrayList(expected.entrySet()),
+          Lists.newArrayList(map.entrySet()));
+      for (int i = 0; i < 10000; i++) {
+        assertEquals(Integer.valueOf(i), map.get("key" + i));
+        assertNull(map.get("other" + i));
+      }
+      assertEquals(map, SerializableTester.reserialize(map));
+    }
+
+    public void testPerfectHashing_collidingHashCodes() {
+      Builder<IntHolder, Integer> builder
+          = new Builder<IntHolder, Integer>().perfectHashing();
+      for (int i = 0; i < 300; i++) {
+        builder.put(new IntHolder(i % 7 == 0 ? 7 : i), i);
+      }
+      try {
+        builder.build();
+        fail();
+      } catch (IllegalArgumentException expected) {}
+
+      // Keys whose hash codes take only a few values
+      Builder<String, Integer> clustered
+          = new Builder<String, Integer>().perfectHashing();
+      List<String> keys = Lists.newArrayList();
+      for (int i = 0; i < 300; i++) {
+        String key = collidingString(i);
+        clustered.put(key, i);
+        keys.add(key);
+      }
+      ImmutableMap<String, Integer> map = clustered.build();
+      assertEquals(keys, Lists.newArrayList(map.keySet()));
+      for (int i = 0; i < 300; i++) {
+        assertEquals(Integer.valueOf(i), map.get(collidingString(i)));
+      }
+      assertNull(map.get(collidingString(300)));
+    }
+
+    /**
+     * Returns distinct strings whose hash codes take only 10 values. Since
+     * "Aa" and "BB" have the same hash code, so do all strings made of the
+     * same number of those pairs.
+     */
+    private static String collidingString(int i) {
+      StringBuilder builder = new StringBuilder().append(i % 10);
+      for (int bits = i / 10 + 32; bits > 1; bits >>= 1) {
+        builder.append(((bits & 1) == 0) ? "Aa" : "BB");
+      }
+      return builder.toString();
+    }
+
+    public void testSmallMaps() {
+      for (int size = 2; size <= SmallImmutableMap.MAX_SIZE + 1; size++) {
+        Builder<IntHolder, String> builder = new Builder<IntHolder, String>();
+        Map<IntHolder, String> expected
+            = new LinkedHashMap<IntHolder, String>();
+        for (int i = 0; i < size; i++) {
+          builder.put(new IntHolder(i * 1024), "v" + i);
+          expected.put(new IntHolder(i * 1024), "v" + i);
+        }
+        ImmutableMap<IntHolder, String> map = builder.build();
+        assertEquals(expected, map);
+        assertEquals(map, expected);
+        assertEquals(expected.hashCode(), map.hashCode());
+        assertEquals(expected.toString(), map.toString());
+        assertEquals(Lists.newArrayList(expected.entrySet()),
+            Lists.newArrayList(map.entrySet()));
+        assertEquals(expected.entrySet().hashCode(),
+            map.entrySet().hashCode());
+        assertEquals(expected.keySet(), map.keySet());
+        assertEquals(expected.keySet().hashCode(), map.keySet().hashCode());
+        assertEquals(Lists.newArrayList(expected.values()),
+            Lists.newArrayList(map.values()));
+        for (int i = 0; i < size; i++) {
+          assertEquals("v" + i, map.get(new IntHolder(i * 1024)));
+          assertNull(map.get(new IntHolder(i * 1024 + 1)));
+          assertTrue(map.containsValue("v" + i));
+        }
+        assertFalse(map.containsValue("v" + size));
+        assertNull(map.get(null));
+        assertEquals(map, ImmutableMap.copyOf(expected));
+        assertEquals(map, SerializableTester.reserialize(map));
+
+        expected.put(new IntHolder(-1), "extra");
+        assertFalse(map.equals(expected));
+        assertFalse(map.equals(ImmutableSortedMap.of("a", "v0", "b", "v1")));
+
+        builder.put(new IntHolder(0), "duplicate");
+        try {
+          builder.build();
+          fail();
+        } catch (IllegalArgumentException expectedException) {}
+      }
+    }
+
+    public void testPerfectHashing_bimap() {
+      ImmutableBiMap<String, Integer> bimap
+          = new ImmutableBiMap.Builder<String, Integer>().perfectHashing()
+              .put("one", 1).put("two", 2).build();
+      assertEquals(Integer.valueOf(2), bimap.get("two"));
+      assertEquals("one", bimap.inverse().get(1));
+    }
+
     public void testOf() {
       assertMapEquals(
           ImmutableMap.of("one", 1),
@@ -556,6 +736,83 @@ public class ImmutableMapTest extends TestCase {
     private static final long serialVersionUID = 5;
   }
 
+  public void testGet_clusteredHashCodes() {
+    ImmutableMap.Builder<IntHolder, Integer> builder = ImmutableMap.builder();
+    for (int i = 0; i < 300; i++) {
+      builder.put(new IntHolder(i * 1024), i);
+    }
+    Map<IntHolder, Integer> map = builder.build();
+    for (int i = 0; i < 300; i++) {
+      assertEquals(Integer.valueOf(i), map.get(new IntHolder(i * 1024)));
+      assertNull(map.get(new IntHolder(i * 1024 + 512)));
+    }
+
+    builder.put(new IntHolder(150 * 1024), -1);
+    try {
+      builder.build();
+      fail();
+    } catch (IllegalArgumentException expected) {}
+  }
+
+  public void testBuilder_compact() {
+    ImmutableMap.Builder<String, Integer> builder
+        = ImmutableMap.<String, Integer>builder().compact();
+    Map<String, Integer> reference = Maps.newLinkedHashMap();
+    for (int i = 0; i < 600; i++) {
+      builder.put("key" + i, i);
+      reference.put("key" + i, i);
+    }
+    ImmutableMap<String, Integer> map = builder.build();
+    assertEquals(reference, map);
+    assertEquals(Lists.newArrayList(reference.keySet()),
+        Lists.newArrayList(map.keySet()));
+    for (int i = 0; i < 600; i++) {
+      assertEquals(Integer.valueOf(i), map.get("key" + i));
+      assertNull(map.get("absent" + i));
+    }
+
+    builder.put("key42", -1);
+    try {
+      builder.build();
+      fail();
+    } catch (IllegalArgumentException expected) {}
+  }
+
+  public void testBuilder_compactClusteredHashCodes() {
+    // Too clustered for a table 3/4 full, so the table is rebuilt larger.
+    ImmutableBiMap.Builder<IntHolder, Integer> builder
+        = new ImmutableBiMap.Builder<IntHolder, Integer>().compact();
+    for (int i = 0; i < 300; i++) {
+      builder.put(new IntHolder(i * 1024), i);
+    }
+    ImmutableBiMap<IntHolder, Integer> map = builder.build();
+    assertEquals(300, map.size());
+    for (int i = 0; i < 300; i++) {
+      assertEquals(Integer.valueOf(i), map.get(new IntHolder(i * 1024)));
+      assertNull(map.get(new IntHolder(i * 1024 + 512)));
+      assertEquals(new IntHolder(i * 1024), map.inverse().get(i));
+    }
+  }
+
+  public void testBuilder_maxLoadFactor() {
+    ImmutableMap<String, Integer> map = ImmutableMap.<String, Integer>builder()
+        .maxLoadFactor(0.6f).put("one", 1).put("two", 2).put("three", 3)
+        .build();
+    assertEquals(ImmutableMap.of("one", 1, "two", 2, "three", 3), map);
+    assertEquals(Integer.valueOf(2), map.get("two"));
+    assertNull(map.get("four"));
+  }
+
+  public void testBuilder_maxLoadFactorOutOfRange() {
+    ImmutableMap.Builder<String, Integer> builder = ImmutableMap.builder();
+    for (float loadFactor : new float[] { 0, -0.5f, 0.8f, Float.NaN }) {
+      try {
+        builder.maxLoadFactor(loadFactor);
+        fail();
+      } catch (IllegalArgumentException expected) {}
+    }
+  }
+
   public void testMutableValues() {
     IntHolder holderA = new IntHolder(1);
     IntHolder holderB = new IntHolder(2);
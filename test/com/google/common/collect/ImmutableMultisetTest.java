@@ -36,6 +36,7 @@ import static java.util.Arrays.asList;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.Set;
 
 /**
@@ -393,6 +394,40 @@ public class ImmutableMultisetTest extends TestCase {
     assertContentsInOrder(c, "a", "a", "b");
   }
 
+  public void testCounts() {
+    Multiset<Integer> expected = LinkedHashMultiset.create();
+    for (int i = 0; i < 1000; i++) {
+      expected.add(i, i % 7 + 1);
+    }
+    expected.add(5, 100000);
+    ImmutableMultiset<Integer> multiset = ImmutableMultiset.copyOf(expected);
+    assertEquals(expected, multiset);
+    assertEquals(expected.hashCode(), multiset.hashCode());
+    assertEquals(expected.entrySet(), multiset.entrySet());
+    assertEquals(expected.entrySet().hashCode(),
+        multiset.entrySet().hashCode());
+    assertEquals(expected.elementSet(), multiset.elementSet());
+    assertEquals(100006, multiset.count(5));
+    assertEquals(0, multiset.count(1000));
+    assertEquals(0, multiset.count("5"));
+    assertEquals(0, multiset.count(null));
+    assertTrue(multiset.elementSet().contains(999));
+    assertFalse(multiset.elementSet().contains(-1));
+    assertEquals(expected.size(), multiset.size());
+    assertEquals(Lists.newArrayList(expected), Lists.newArrayList(multiset));
+  }
+
+  public void testIteratorPastEnd() {
+    Iterator<String> iterator = ImmutableMultiset.of("a", "a").iterator();
+    iterator.next();
+    iterator.next();
+    try {
+      iterator.next();
+      fail();
+    } catch (NoSuchElementException expected) {
+    }
+  }
+
   public void testMultisetWrites() {
     Multiset<String> multiset = ImmutableMultiset.of("a", "b", "a");
     UnmodifiableCollectionTests.assertMultisetIsUnmodifiable(multiset, "test");
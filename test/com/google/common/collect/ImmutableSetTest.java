@@ -18,9 +18,13 @@ package com.google.common.collect;
 
 import com.google.common.collect.ImmutableSet.Builder;
 import com.google.common.testutils.NullPointerTester;
+import com.google.common.testutils.SerializableTester;
 
+import java.io.Serializable;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Set;
 
 /**
@@ -100,6 +104,173 @@ public class ImmutableSetTest extends AbstractImmutableSetTest {
     }
   }
 
+  public void testChooseTableSize_loadFactor() {
+    assertEquals(8, Hashing.chooseTableSize(3, 0));
+    assertEquals(4, Hashing.chooseTableSize(3, 0.75f));
+    assertEquals(8, Hashing.chooseTableSize(4, 0.75f));
+    assertEquals(8, Hashing.chooseTableSize(6, 0.75f));
+    assertEquals(16, Hashing.chooseTableSize(7, 0.75f));
+    assertEquals(16, Hashing.chooseTableSize(7, 0.5f));
+    assertEquals(1 << 30, Hashing.chooseTableSize(1 << 29, 0.75f));
+    assertEquals(1 << 30, Hashing.chooseTableSize(1 << 29, 0.1f));
+    try {
+      Hashing.chooseTableSize(1 << 30, 0.75f);
+      fail();
+    } catch (IllegalArgumentException expected) {
+    }
+  }
+
+  public void testContains_clusteredHashCodes() {
+    List<ClusteredKey> elements = Lists.newArrayList();
+    for (int i = 0; i < 300; i++) {
+      elements.add(new ClusteredKey(i));
+      elements.add(new ClusteredKey(i / 2));
+    }
+    Set<ClusteredKey> set = ImmutableSet.copyOf(elements);
+    assertEquals(300, set.size());
+    for (int i = 0; i < 300; i++) {
+      assertTrue(set.contains(new ClusteredKey(i)));
+      assertFalse(set.contains(new ClusteredKey(-1 - i)));
+    }
+  }
+
+  public void testBuilder_perfectHashing() {
+    ImmutableSet.Builder<Object> builder
+        = ImmutableSet.builder().perfectHashing();
+    List<Object> expected = Lists.newArrayList();
+    for (int i = 0; i < 1000; i++) {
+      builder.add(i).add(new ClusteredKey(i)).add(i / 2);
+      expected.add(i);
+      expected.add(new ClusteredKey(i));
+    }
+    ImmutableSet<Object> set = builder.build();
+    assertEquals(expected, Lists.newArrayList(set));
+    assertEquals(Sets.newHashSet(expected), set);
+    assertEquals(Sets.newHashSet(expected).hashCode(), set.hashCode());
+    for (int i = 0; i < 1000; i++) {
+      assertTrue(set.contains(i));
+      assertTrue(set.contains(new ClusteredKey(i)));
+      assertFalse(set.contains(-1 - i));
+      assertFalse(set.contains(new ClusteredKey(-1 - i)));
+    }
+    assertFalse(set.contains(null));
+    assertEquals(set, SerializableTester.reserialize(set));
+  }
+
+  public void testDuplicatesLeaveSmallSet() {
+    // nine elements in, eight distinct ones out
+    ImmutableSet<Integer> set
+        = ImmutableSet.copyOf(Arrays.asList(1, 2, 3, 4, 5, 6, 7, 8, 1));
+    assertTrue(set instanceof SmallImmutableSet);
+    assertEquals(8, set.size());
+  }
+
+  public void testSmallSets() {
+    for (int size = 2; size <= SmallImmutableSet.MAX_SIZE + 1; size++) {
+      List<ClusteredKey> elements = Lists.newArrayList();
+      for (int i = 0; i < size; i++) {
+        elements.add(new ClusteredKey(i));
+        elements.add(new ClusteredKey(i / 2));
+      }
+      ImmutableSet<ClusteredKey> set = ImmutableSet.copyOf(elements);
+      Set<ClusteredKey> expected = Sets.newLinkedHashSet(elements);
+      assertEquals(Lists.newArrayList(expected), Lists.newArrayList(set));
+      assertEquals(expected, set);
+      assertEquals(expected.hashCode(), set.hashCode());
+      for (int i = 0; i < size; i++) {
+        assertTrue(set.contains(new ClusteredKey(i)));
+        assertFalse(set.contains(new ClusteredKey(-1 - i)));
+      }
+      assertFalse(set.contains(null));
+      assertEquals(set, SerializableTester.reserialize(set));
+    }
+  }
+
+  public void testBuilder_perfectHashingFewDistinct() {
+    ImmutableSet<Integer> set = ImmutableSet.<Integer>builder()
+        .perfectHashing().add(1, 2, 3, 1, 2, 3, 1, 2, 3, 1).build();
+    assertTrue(set instanceof SmallImmutableSet);
+    assertEquals(Arrays.asList(1, 2, 3), Lists.newArrayList(set));
+  }
+
+  public void testBuilder_perfectHashingOnlyDuplicates() {
+    ImmutableSet<String> set = ImmutableSet.<String>builder()
+        .perfectHashing().add("a", "a", new String("a")).build();
+    assertEquals(Collections.singleton("a"), set);
+    assertEquals(1, set.size());
+  }
+
+  public void testBuilder_compact() {
+    ImmutableSet.Builder<Integer> builder = ImmutableSet.builder();
+    List<Integer> expected = Lists.newArrayList();
+    for (int i = 0; i < 600; i++) {
+      builder.add(i * 31, i / 2 * 31);
+      expected.add(i * 31);
+    }
+    RegularImmutableSet<Integer> set
+        = (RegularImmutableSet<Integer>) builder.compact().build();
+    assertEquals(expected, Lists.newArrayList(set));
+    assertEquals(1024, set.table.length);
+    for (int i = 0; i < 600; i++) {
+      assertTrue(set.contains(i * 31));
+      assertFalse(set.contains(i * 31 + 1));
+    }
+  }
+
+  public void testBuilder_compactClusteredHashCodes() {
+    ImmutableSet.Builder<ClusteredKey> builder = ImmutableSet.builder();
+    for (int i = 0; i < 300; i++) {
+      builder.add(new ClusteredKey(i));
+    }
+    RegularImmutableSet<ClusteredKey> set
+        = (RegularImmutableSet<ClusteredKey>) builder.compact().build();
+    assertEquals(300, set.size());
+    // Too clustered for a table 3/4 full, so the table is rebuilt larger.
+    assertEquals(Hashing.chooseTableSize(300), set.table.length);
+    for (int i = 0; i < 300; i++) {
+      assertTrue(set.contains(new ClusteredKey(i)));
+      assertFalse(set.contains(new ClusteredKey(-1 - i)));
+    }
+  }
+
+  public void testBuilder_maxLoadFactor() {
+    // more elements than a SmallImmutableSet holds
+    RegularImmutableSet<Integer> set = (RegularImmutableSet<Integer>)
+        ImmutableSet.<Integer>builder().maxLoadFactor(0.6f)
+            .add(1, 2, 3, 4, 5, 6, 7, 8, 9, 2).build();
+    assertEquals(Arrays.asList(1, 2, 3, 4, 5, 6, 7, 8, 9),
+        Lists.newArrayList(set));
+    assertEquals(16, set.table.length);
+  }
+
+  public void testBuilder_maxLoadFactorOutOfRange() {
+    ImmutableSet.Builder<String> builder = ImmutableSet.builder();
+    for (float loadFactor : new float[] { 0, -0.5f, 0.8f, Float.NaN }) {
+      try {
+        builder.maxLoadFactor(loadFactor);
+        fail();
+      } catch (IllegalArgumentException expected) {}
+    }
+  }
+
+  /** A key whose hash codes take only a few values. */
+  private static final class ClusteredKey implements Serializable {
+    final int value;
+
+    ClusteredKey(int value) {
+      this.value = value;
+    }
+
+    @Override public boolean equals(Object object) {
+      return object instanceof ClusteredKey
+          && ((ClusteredKey) object).value == value;
+    }
+
+    @Override public int hashCode() {
+      return value % 7;
+    }
+  }
+
   public void testCopyOf_copiesImmutableSortedSet() {
     ImmutableSortedSet<String> sortedSet = ImmutableSortedSet.of("a");
     ImmutableSet<String> copy = ImmutableSet.copyOf(sortedSet);
@@ -392,6 +392,24 @@ public class ImmutableSortedMapTest extends TestCase {
     }
   }
 
+  public static class EytzingerLayoutMapTests
+      extends AbstractMapTests<String, Integer> {
+    @Override protected SortedMap<String, Integer> makePopulatedMap() {
+      return ImmutableSortedMap.<String, Integer>naturalOrder()
+          .eytzingerLayout()
+          .put("a", 1).put("b", 2).put("c", 3).put("d", 4).put("e", 5)
+          .build();
+    }
+
+    @Override protected String getKeyNotInPopulatedMap() {
+      return "minus one";
+    }
+
+    @Override protected Integer getValueNotInPopulatedMap() {
+      return -1;
+    }
+  }
+
   public static class CreationTests extends TestCase {
     public void testEmptyBuilder() {
       ImmutableSortedMap<String, Integer> map
@@ -724,6 +742,35 @@ public class ImmutableSortedMapTest extends TestCase {
           "two", 2, "three", 3, "one", 1, "four", 4, "five", 5);
       assertSame(comparator, map.comparator());
     }    
+
+    public void testBuilderEytzingerLayout() {
+      for (int size = 0; size < 40; size++) {
+        Builder<Integer, String> builder
+            = ImmutableSortedMap.<Integer, String>naturalOrder()
+                .eytzingerLayout();
+        SortedMap<Integer, String> expected = Maps.newTreeMap();
+        for (int i = size - 1; i >= 0; i--) {
+          builder.put(2 * i, "v" + i);
+          expected.put(2 * i, "v" + i);
+        }
+        ImmutableSortedMap<Integer, String> map = builder.build();
+        assertEquals(expected, map);
+        assertEquals(Lists.newArrayList(expected.keySet()),
+            Lists.newArrayList(map.keySet()));
+        for (int key = -1; key <= 2 * size; key++) {
+          assertEquals(expected.get(key), map.get(key));
+          assertEquals(expected.containsKey(key), map.keySet().contains(key));
+          assertEquals(expected.headMap(key), map.headMap(key));
+          assertEquals(expected.tailMap(key), map.tailMap(key));
+          assertEquals(expected.subMap(key, key + 5), map.subMap(key, key + 5));
+          assertEquals(expected.subMap(key, key + 5).keySet(),
+              map.subMap(key, key + 5).keySet());
+          assertEquals(expected.headMap(size).get(key),
+              map.headMap(size).get(key));
+        }
+        assertEquals(expected, SerializableTester.reserialize(map));
+      }
+    }
   }
 
   public void testNullPointers() throws Exception {
@@ -674,6 +674,31 @@ public class ImmutableSortedSetTest extends AbstractImmutableSetTest {
     assertTrue(Iterables.elementsEqual(LegacyComparable.VALUES_BACKWARD, set));
   }
 
+  public void testBuilderEytzingerLayout() {
+    for (int size = 0; size < 40; size++) {
+      ImmutableSortedSet.Builder<Integer> builder
+          = ImmutableSortedSet.<Integer>reverseOrder().eytzingerLayout();
+      SortedSet<Integer> expected
+          = Sets.newTreeSet(Ordering.natural().reverse());
+      for (int i = 0; i < size; i++) {
+        builder.add(2 * i, 2 * i);
+        expected.add(2 * i);
+      }
+      ImmutableSortedSet<Integer> set = builder.build();
+      assertEquals(Lists.newArrayList(expected), Lists.newArrayList(set));
+      for (int e = -1; e <= 2 * size; e++) {
+        assertEquals(expected.contains(e), set.contains(e));
+        assertEquals(expected.headSet(e), set.headSet(e));
+        assertEquals(expected.tailSet(e), set.tailSet(e));
+        assertEquals(expected.subSet(e + 5, e), set.subSet(e + 5, e));
+        assertEquals(expected.tailSet(size).contains(e),
+            set.tailSet(size).contains(e));
+      }
+      assertFalse(set.contains("a"));
+      assertEquals(expected, SerializableTester.reserialize(set));
+    }
+  }
+
   @SuppressWarnings("deprecation")
   public void testBuilderMethod() {
     try {
@@ -0,0 +1,235 @@
+/*
+ * Copyright (C) 2009 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.collect;
+
+import static java.util.Arrays.asList;
+
+import com.google.common.collect.testing.ListTestSuiteBuilder;
+import com.google.common.collect.testing.TestStringListGenerator;
+import com.google.common.collect.testing.features.CollectionSize;
+import com.google.common.testutils.SerializableTester;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Tests for {@link ImmutableTrieList}.
+ */
+public class ImmutableTrieListTest extends TestCase {
+  public static Test suite() {
+    TestSuite suite = new TestSuite();
+    suite.addTestSuite(ImmutableTrieListTest.class);
+    suite.addTest(ListTestSuiteBuilder.using(new TestStringListGenerator() {
+          @Override protected List<String> create(String[] elements) {
+            ImmutableTrieList<String> list = ImmutableTrieList.of();
+            for (String element : elements) {
+              list = list.append(element);
+            }
+            return list;
+          }
+        })
+        .named("ImmutableTrieList, appended")
+        .withFeatures(CollectionSize.ANY)
+        .createTestSuite());
+    suite.addTest(ListTestSuiteBuilder.using(new TestStringListGenerator() {
+          @Override protected List<String> create(String[] elements) {
+            return ImmutableTrieList.copyOf(asList(elements));
+          }
+        })
+        .named("ImmutableTrieList, copyOf")
+        .withFeatures(CollectionSize.ANY)
+        .createTestSuite());
+    suite.addTest(ListTestSuiteBuilder.using(new TestStringListGenerator() {
+          @Override protected List<String> create(String[] elements) {
+            return SerializableTester.reserialize(
+                ImmutableTrieList.copyOf(asList(elements)));
+          }
+        })
+        .named("ImmutableTrieList, reserialized")
+        .withFeatures(CollectionSize.ANY)
+        .createTestSuite());
+    suite.addTest(ListTestSuiteBuilder.using(new TestStringListGenerator() {
+          @Override protected List<String> create(String[] elements) {
+            // long enough on both sides to need a trie of two levels
+            ImmutableTrieList<String> list
+                = ImmutableTrieList.copyOf(strings(1000))
+                    .appendAll(asList(elements))
+                    .appendAll(strings(100));
+            return list.subList(1000, 1000 + elements.length);
+          }
+        })
+        .named("ImmutableTrieList, middle subList")
+        .withFeatures(CollectionSize.ANY)
+        .createTestSuite());
+    return suite;
+  }
+
+  private static List<String> strings(int count) {
+    List<String> strings = new ArrayList<String>();
+    for (int i = 0; i < count; i++) {
+      strings.add("s" + i);
+    }
+    return strings;
+  }
+
+  public void testAppend() {
+    List<Integer> expected = new ArrayList<Integer>();
+    ImmutableTrieList<Integer> list = ImmutableTrieList.of();
+    for (int i = 0; i < 40000; i++) {
+      ImmutableTrieList<Integer> previous = list;
+      list = list.append(i);
+      expected.add(i);
+      assertEquals(i, previous.size());
+      assertEquals((Integer) i, list.get(i));
+    }
+    assertEquals(expected, list);
+    assertEquals(expected.hashCode(), list.hashCode());
+    assertEquals(expected, Lists.newArrayList(list.listIterator()));
+  }
+
+  public void testAppendAll() {
+    ImmutableTrieList<Integer> list = ImmutableTrieList.of();
+    List<Integer> expected = new ArrayList<Integer>();
+    for (int i = 0; i < 20; i++) {
+      List<Integer> batch = new ArrayList<Integer>();
+      for (int j = 0; j < i * 50; j++) {
+        batch.add(expected.size() + j);
+      }
+      ImmutableTrieList<Integer> previous = list;
+      list = list.appendAll(batch);
+      assertEquals(expected, previous);
+      expected.addAll(batch);
+      assertEquals(expected, list);
+    }
+    assertSame(list, list.appendAll(ImmutableList.<Integer>of()));
+    assertEquals(Lists.newArrayList(Iterables.concat(list, list)),
+        list.appendAll(list));
+  }
+
+  public void testWith() {
+    ImmutableTrieList<Integer> list = ImmutableTrieList.of();
+    List<Integer> expected = new ArrayList<Integer>();
+    for (int i = 0; i < 2000; i++) {
+      list = list.append(i);
+      expected.add(i);
+    }
+    ImmutableTrieList<Integer> original = list;
+    Random random = new Random(0);
+    for (int i = 0; i < 2000; i++) {
+      int index = random.nextInt(2000);
+      list = list.with(index, -i);
+      expected.set(index, -i);
+    }
+    assertEquals(expected, list);
+    for (int i = 0; i < 2000; i++) {
+      assertEquals((Integer) i, original.get(i));
+    }
+    assertSame(list, list.with(5, list.get(5)));
+  }
+
+  public void testWithOutOfBounds() {
+    ImmutableTrieList<String> list
+        = ImmutableTrieList.<String>of().append("a").append("b").subList(0, 1);
+    try {
+      list.with(1, "b");
+      fail();
+    } catch (IndexOutOfBoundsException expected) {
+    }
+  }
+
+  public void testNulls() {
+    ImmutableTrieList<String> list = ImmutableTrieList.<String>of().append("a");
+    try {
+      list.append(null);
+      fail();
+    } catch (NullPointerException expected) {
+    }
+    try {
+      list.with(0, null);
+      fail();
+    } catch (NullPointerException expected) {
+    }
+    try {
+      list.appendAll(asList("b", null));
+      fail();
+    } catch (NullPointerException expected) {
+    }
+    try {
+      ImmutableTrieList.copyOf(asList("b", null));
+      fail();
+    } catch (NullPointerException expected) {
+    }
+  }
+
+  /**
+   * Takes random sublists, appends to them and changes them, and compares
+   * the results to {@link ArrayList}s.
+   */
+  public void testSubListThenChange() {
+    List<Integer> all = new ArrayList<Integer>();
+    for (int i = 0; i < 5000; i++) {
+      all.add(i);
+    }
+    ImmutableTrieList<Integer> list = ImmutableTrieList.copyOf(all);
+    Random random = new Random(0);
+    for (int i = 0; i < 300; i++) {
+      int from = random.nextInt(all.size());
+      int to = from + random.nextInt(all.size() - from + 1);
+      ImmutableTrieList<Integer> subList = list.subList(from, to);
+      List<Integer> expected
+          = new ArrayList<Integer>(all.subList(from, to));
+      assertEquals(expected, subList);
+
+      for (int j = 0; j < 100; j++) {
+        subList = subList.append(-j);
+        expected.add(-j);
+      }
+      subList = subList.with(0, -1000);
+      expected.set(0, -1000);
+      assertEquals(expected, subList);
+      assertEquals(expected.lastIndexOf(-1000), subList.lastIndexOf(-1000));
+      assertEquals(expected.indexOf(from + 1), subList.indexOf(from + 1));
+      assertEquals(expected.subList(10, expected.size() - 10),
+          subList.subList(10, expected.size() - 10));
+    }
+    assertEquals(all, list);
+  }
+
+  public void testCopyOf() {
+    ImmutableTrieList<String> list = ImmutableTrieList.copyOf(strings(100));
+    assertSame(list, ImmutableTrieList.copyOf(list));
+    assertSame(list, ImmutableList.copyOf(list));
+    assertEquals(strings(100),
+        ImmutableTrieList.copyOf(strings(100).iterator()));
+    assertSame(ImmutableTrieList.of(),
+        ImmutableTrieList.copyOf(new ArrayList<String>()));
+  }
+
+  public void testSerialization() {
+    ImmutableTrieList<String> list = ImmutableTrieList.copyOf(strings(100));
+    ImmutableTrieList<String> copy
+        = SerializableTester.reserializeAndAssert(list);
+    assertEquals(list, copy.subList(0, 100));
+    assertSame(ImmutableTrieList.of(),
+        SerializableTester.reserialize(ImmutableTrieList.of()));
+  }
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright (C) 2009 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.common.collect;
+
+import junit.framework.TestCase;
+
+import java.lang.ref.WeakReference;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Unit test for {@link Interners}.
+ */
+public class InternersTest extends TestCase {
+
+  public void testStrong_simplistic() {
+    checkSimplistic(Interners.<String>newStrongInterner());
+  }
+
+  public void testWeak_simplistic() {
+    checkSimplistic(Interners.<String>newWeakInterner());
+  }
+
+  public void testStrong_null() {
+    checkNull(Interners.<String>newStrongInterner());
+  }
+
+  public void testWeak_null() {
+    checkNull(Interners.<String>newWeakInterner());
+  }
+
+  public void testWeak_manyInstances() {
+    Interner<Integer> pool = Interners.newWeakInterner();
+    List<Integer> canonical = Lists.newArrayList();
+    for (int i = 0; i < 10000; i++) {
+      canonical.add(pool.intern(new Integer(i)));
+    }
+    for (int i = 0; i < 10000; i++) {
+      assertSame(canonical.get(i), pool.intern(new Integer(i)));
+    }
+  }
+
+  public void testWeak_collidingHashCodes() {
+    Interner<Colliding> pool = Interners.newWeakInterner();
+    List<Colliding> canonical = Lists.newArrayList();
+    for (int i = 0; i < 100; i++) {
+      canonical.add(pool.intern(new Colliding(i)));
+    }
+    for (int i = 0; i < 100; i++) {
+      assertSame(canonical.get(i), pool.intern(new Colliding(i)));
+    }
+  }
+
+  public void testWeak_afterGC() throws InterruptedException {
+    Interner<Integer> pool = Interners.newWeakInterner();
+    Integer canonical = new Integer(5);
+    assertSame(canonical, pool.intern(canonical));
+
+    WeakReference<Integer> signal = new WeakReference<Integer>(canonical);
+    canonical = null;
+    for (int i = 0; i < 500 && signal.get() != null; i++) {
+      System.gc();
+      Thread.sleep(10);
+    }
+    assertNull(signal.get());
+
+    Integer not = new Integer(5);
+    assertSame(not, pool.intern(not));
+  }
+
+  public void testWeak_concurrent() throws Exception {
+    final Interner<String> pool = Interners.newWeakInterner();
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<String[]>> futures = Lists.newArrayList();
+      for (int t = 0; t < 4; t++) {
+        futures.add(executor.submit(new Callable<String[]>() {
+          public String[] call() {
+            String[] interned = new String[1000];
+            for (int i = 0; i < interned.length; i++) {
+              interned[i] = pool.intern(new String("s" + i));
+            }
+            return interned;
+          }
+        }));
+      }
+      String[] first = futures.get(0).get();
+      for (Future<String[]> future : futures) {
+        String[] interned = future.get();
+        for (int i = 0; i < interned.length; i++) {
+          assertSame(first[i], interned[i]);
+        }
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  private static void checkSimplistic(Interner<String> pool) {
+    String canonical = "a";
+    String not = new String("a");
+    assertNotSame(canonical, not);
+    assertSame(canonical, pool.intern(canonical));
+    assertSame(canonical, pool.intern(not));
+    assertSame(canonical, pool.intern(new String("a")));
+    assertEquals("b", pool.intern(new String("b")));
+  }
+
+  private static void checkNull(Interner<String> pool) {
+    try {
+      pool.intern(null);
+      fail();
+    } catch (NullPointerException expected) {}
+  }
+
+  private static final class Colliding {
+    final int value;
+
+    Colliding(int value) {
+      this.value = value;
+    }
+
+    @Override public boolean equals(Object object) {
+      return object instanceof Colliding && ((Colliding) object).value == value;
+    }
+
+    @Override public int hashCode() {
+      return 42;
+    }
+  }
+}
@@ -16,25 +16,34 @@
 
 package com.google.common.collect;
 
+import com.google.common.base.BatchFunction;
 import com.google.common.base.Function;
 import com.google.common.base.Functions;
 import com.google.common.collect.CustomConcurrentHashMap.Impl;
+import com.google.common.collect.CustomConcurrentHashMap.SimpleStrategy;
 import com.google.common.collect.testing.Helpers;
+import com.google.common.collect.testing.MinimalIterable;
 import com.google.common.testutils.SerializableTester;
 
 import junit.framework.Test;
 import junit.framework.TestCase;
 import junit.framework.TestSuite;
 
+import java.io.File;
 import java.io.Serializable;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Field;
 import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
 import java.util.Set;
 import java.util.Timer;
 import java.util.TimerTask;
@@ -42,6 +51,8 @@ import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
 import static java.util.concurrent.TimeUnit.NANOSECONDS;
 import static java.util.concurrent.TimeUnit.SECONDS;
 
@@ -589,6 +600,1023 @@ public class MapMakerTestSuite extends TestCase {
     }
   }
 
+  /**
+   * Tests for bins that hold many entries with colliding hash codes.
+   */
+  public static class CollidingKeysTest extends TestCase {
+
+    static final int KEY_COUNT = 200;
+
+    public void testComparableKeys() {
+      checkCollidingKeys(new Function<Integer, Object>() {
+        public Object apply(Integer i) {
+          return new ComparableCollider(i);
+        }
+      });
+    }
+
+    public void testUnorderedKeys() {
+      checkCollidingKeys(new Function<Integer, Object>() {
+        public Object apply(Integer i) {
+          return new Collider(i);
+        }
+      });
+    }
+
+    public void testMixedKeys() {
+      checkCollidingKeys(new Function<Integer, Object>() {
+        public Object apply(Integer i) {
+          return (i % 2 == 0) ? new ComparableCollider(i) : new Collider(i);
+        }
+      });
+    }
+
+    public void testMixedKeysRemovalKeepsOrder() {
+      ConcurrentMap<Object, Integer> map = new MapMaker()
+          .concurrencyLevel(1).softValues().makeMap();
+      for (int i = 10; i <= 24; i += 2) {
+        map.put(new ComparableCollider(i), i);
+      }
+      map.put(new Collider(0), -1);
+      for (int i = 0; i <= 4; i++) {
+        map.put(new ComparableCollider(i), i);
+      }
+      map.put(new ComparableCollider(11), 11);
+      assertEquals(Integer.valueOf(-1), map.remove(new Collider(0)));
+      for (int i = 10; i <= 24; i += 2) {
+        assertEquals(Integer.valueOf(i), map.get(new ComparableCollider(i)));
+      }
+      for (int i = 0; i <= 4; i++) {
+        assertEquals(Integer.valueOf(i), map.get(new ComparableCollider(i)));
+      }
+      assertEquals(Integer.valueOf(11), map.get(new ComparableCollider(11)));
+    }
+
+    public void testMixedKeysRandomized() {
+      Random random = new Random(0);
+      for (int round = 0; round < 20; round++) {
+        Impl<Object, Integer, ?> map = newMap();
+        Map<Object, Integer> expected = new HashMap<Object, Integer>();
+        for (int op = 0; op < 2000; op++) {
+          int i = random.nextInt(60);
+          Object key = random.nextBoolean()
+              ? new ComparableCollider(i) : new Collider(i);
+          if (random.nextInt(3) == 0) {
+            assertEquals(expected.remove(key), map.remove(key));
+          } else {
+            assertEquals(expected.put(key, op), map.put(key, op));
+          }
+          for (Map.Entry<Object, Integer> entry : expected.entrySet()) {
+            assertEquals(entry.getValue(), map.get(entry.getKey()));
+          }
+        }
+        assertEquals(expected, map);
+      }
+    }
+
+    private void checkCollidingKeys(Function<Integer, Object> keyFunction) {
+      Impl<Object, Integer, ?> map = newMap();
+      List<Object> keys = new ArrayList<Object>();
+      for (int i = 0; i < KEY_COUNT; i++) {
+        keys.add(keyFunction.apply(i));
+      }
+
+      for (int i = 0; i < KEY_COUNT; i++) {
+        assertNull(map.put(keys.get(i), i));
+      }
+      assertEquals(KEY_COUNT, map.size());
+      assertTrue(hasTreeBin(map));
+      for (int i = 0; i < KEY_COUNT; i++) {
+        assertEquals(Integer.valueOf(i), map.get(keyFunction.apply(i)));
+      }
+      assertNull(map.get(keyFunction.apply(KEY_COUNT)));
+      assertTrue(map.containsValue(KEY_COUNT - 1));
+      assertFalse(map.containsValue(KEY_COUNT));
+      assertEquals(new HashSet<Object>(keys), map.keySet());
+
+      assertEquals(Integer.valueOf(0), map.put(keys.get(0), -1));
+      assertEquals(Integer.valueOf(-1), map.putIfAbsent(keys.get(0), 0));
+      assertTrue(map.replace(keys.get(0), -1, 0));
+      assertEquals(Integer.valueOf(0), map.replace(keys.get(0), 0));
+
+      for (int i = 0; i < KEY_COUNT; i += 2) {
+        assertEquals(Integer.valueOf(i), map.remove(keyFunction.apply(i)));
+      }
+      assertEquals(KEY_COUNT / 2, map.size());
+      assertTrue(hasTreeBin(map));
+      for (int i = 0; i < KEY_COUNT; i++) {
+        assertEquals(i % 2 == 1, map.containsKey(keyFunction.apply(i)));
+      }
+
+      for (int i = 1; i < KEY_COUNT - 2; i += 2) {
+        assertTrue(map.remove(keyFunction.apply(i), i));
+      }
+      assertEquals(1, map.size());
+      assertFalse(hasTreeBin(map));
+      assertEquals(Integer.valueOf(KEY_COUNT - 1),
+          map.get(keyFunction.apply(KEY_COUNT - 1)));
+    }
+
+    public void testIteratorRemove() {
+      Impl<Object, Integer, ?> map = newMap();
+      for (int i = 0; i < KEY_COUNT; i++) {
+        map.put(new ComparableCollider(i), i);
+      }
+
+      Set<Integer> seen = new HashSet<Integer>();
+      Iterator<Map.Entry<Object, Integer>> iterator
+          = map.entrySet().iterator();
+      while (iterator.hasNext()) {
+        Map.Entry<Object, Integer> entry = iterator.next();
+        assertTrue(seen.add(entry.getValue()));
+        if (entry.getValue() % 3 != 0) {
+          iterator.remove();
+        }
+      }
+      assertEquals(KEY_COUNT, seen.size());
+      assertEquals((KEY_COUNT + 2) / 3, map.size());
+    }
+
+    public void testComputingMap() {
+      ConcurrentMap<ComparableCollider, Integer> map = new MapMaker()
+          .concurrencyLevel(1)
+          .makeComputingMap(new Function<ComparableCollider, Integer>() {
+            public Integer apply(ComparableCollider key) {
+              return key.value;
+            }
+          });
+      for (int i = 0; i < KEY_COUNT; i++) {
+        assertEquals(Integer.valueOf(i), map.get(new ComparableCollider(i)));
+      }
+      assertEquals(KEY_COUNT, map.size());
+      assertTrue(hasTreeBin((Impl<?, ?, ?>) map));
+    }
+
+    public void testSerialization() {
+      Impl<Object, Integer, ?> map = newMap();
+      for (int i = 0; i < KEY_COUNT; i++) {
+        map.put(new ComparableCollider(i), i);
+      }
+      Map<Object, Integer> copy = SerializableTester.reserialize(map);
+      assertEquals(map, copy);
+      assertTrue(hasTreeBin((Impl<?, ?, ?>) copy));
+    }
+
+    private static Impl<Object, Integer, ?> newMap() {
+      return (Impl<Object, Integer, ?>) new CustomConcurrentHashMap.Builder()
+          .concurrencyLevel(1)
+          .buildMap(new SerializableStrategy<Object, Integer>());
+    }
+
+    static class SerializableStrategy<K, V> extends SimpleStrategy<K, V>
+        implements Serializable {
+      private static final long serialVersionUID = 0;
+    }
+
+    private static boolean hasTreeBin(Impl<?, ?, ?> map) {
+      for (Impl<?, ?, ?>.Segment segment : map.segments) {
+        for (int i = 0; i < segment.table.length(); i++) {
+          if (segment.table.get(i) instanceof Impl.TreeBin) {
+            return true;
+          }
+        }
+      }
+      return false;
+    }
+
+    static class Collider implements Serializable {
+      final int value;
+
+      Collider(int value) {
+        this.value = value;
+      }
+
+      @Override public boolean equals(Object o) {
+        return o instanceof Collider && ((Collider) o).value == value;
+      }
+
+      @Override public int hashCode() {
+        return 1;
+      }
+
+      private static final long serialVersionUID = 0;
+    }
+
+    static class ComparableCollider
+        implements Comparable<ComparableCollider>, Serializable {
+      final int value;
+
+      ComparableCollider(int value) {
+        this.value = value;
+      }
+
+      public int compareTo(ComparableCollider o) {
+        return (value < o.value) ? -1 : ((value == o.value) ? 0 : 1);
+      }
+
+      @Override public boolean equals(Object o) {
+        return o instanceof ComparableCollider
+            && ((ComparableCollider) o).value == value;
+      }
+
+      @Override public int hashCode() {
+        return 1;
+      }
+
+      private static final long serialVersionUID = 0;
+    }
+  }
+
+  public static class DiagnosticsTest extends TestCase {
+
+    public void testLockCounts() {
+      ConcurrentMap<Integer, Integer> map = new MapMaker()
+          .concurrencyLevel(1).recordDiagnostics().makeMap();
+      MapDiagnostics diagnostics = MapMaker.diagnostics(map);
+      assertEquals(1, diagnostics.getSegmentCount());
+      assertEquals(0, diagnostics.getLockAcquisitions()[0]);
+
+      for (int i = 0; i < 10; i++) {
+        map.put(i, i);
+      }
+      assertEquals(10, diagnostics.getLockAcquisitions()[0]);
+      assertEquals(0, diagnostics.getContendedLockAcquisitions()[0]);
+
+      long holds = 0;
+      for (long count : diagnostics.getLockHoldTimeHistograms()[0]) {
+        holds += count;
+      }
+      assertEquals(10, holds);
+
+      // Reads don't lock.
+      map.get(3);
+      assertEquals(10, diagnostics.getLockAcquisitions()[0]);
+    }
+
+    public void testTableShape() {
+      ConcurrentMap<Integer, Integer> map = new MapMaker()
+          .concurrencyLevel(1).initialCapacity(16).recordDiagnostics()
+          .makeMap();
+      for (int i = 0; i < 8; i++) {
+        map.put(i, i);
+      }
+      MapDiagnostics diagnostics = MapMaker.diagnostics(map);
+      int tableSize = diagnostics.getTableSizes()[0];
+      assertEquals(8, diagnostics.getEntryCounts()[0]);
+      assertEquals(8.0 / tableSize, diagnostics.getLoadFactors()[0]);
+
+      long[] histogram = diagnostics.getBinSizeHistograms()[0];
+      assertEquals(MapDiagnostics.BIN_SIZE_BUCKETS, histogram.length);
+      long bins = 0;
+      long entries = 0;
+      for (int size = 0; size < histogram.length; size++) {
+        bins += histogram[size];
+        entries += size * histogram[size];
+      }
+      assertEquals(tableSize, bins);
+      assertEquals(8, entries);
+    }
+
+    public void testHistogramsAreCopies() {
+      ConcurrentMap<Integer, Integer> map
+          = new MapMaker().recordDiagnostics().makeMap();
+      MapDiagnostics diagnostics = MapMaker.diagnostics(map);
+      diagnostics.getLockHoldTimeHistograms()[0][0] = 42;
+      assertEquals(0, diagnostics.getLockHoldTimeHistograms()[0][0]);
+    }
+
+    public void testNotRecorded() {
+      try {
+        MapMaker.diagnostics(new MapMaker().weakKeys().makeMap());
+        fail();
+      } catch (IllegalArgumentException expected) {
+      }
+      try {
+        MapMaker.diagnostics(new ConcurrentHashMap<Object, Object>());
+        fail();
+      } catch (IllegalArgumentException expected) {
+      }
+    }
+
+    public void testRecordDiagnosticsTwice() {
+      MapMaker maker = new MapMaker().recordDiagnostics();
+      try {
+        maker.recordDiagnostics();
+        fail();
+      } catch (IllegalStateException expected) {
+      }
+    }
+
+    public void testSerializationDropsDiagnostics() {
+      ConcurrentMap<String, String> map
+          = new MapMaker().recordDiagnostics().makeMap();
+      map.put("a", "b");
+      ConcurrentMap<String, String> copy = SerializableTester.reserialize(map);
+      assertEquals(map, copy);
+      try {
+        MapMaker.diagnostics(copy);
+        fail();
+      } catch (IllegalArgumentException expected) {
+      }
+    }
+  }
+
+  public static class AdaptiveConcurrencyTest extends TestCase {
+
+    public void testStartsWithOneSegment() {
+      ConcurrentMap<Integer, Integer> map = new MapMaker()
+          .concurrencyLevel(16).adaptiveConcurrency().makeMap();
+      Impl<?, ?, ?> impl = (Impl<?, ?, ?>) map;
+      assertNull(impl.segments);
+      assertEquals(16, impl.slots().length);
+      assertEquals(1, impl.distinctSegments().length);
+    }
+
+    public void testSplit() {
+      ConcurrentMap<Integer, Integer> map = new MapMaker()
+          .concurrencyLevel(16).adaptiveConcurrency().makeMap();
+      for (int i = 0; i < 1000; i++) {
+        map.put(i, i);
+      }
+      Impl<?, ?, ?> impl = (Impl<?, ?, ?>) map;
+      Object original = impl.slots()[0];
+      splitAll(impl);
+      assertEquals(16, impl.distinctSegments().length);
+      assertNotSame(original, impl.slots()[0]);
+
+      assertEquals(1000, map.size());
+      assertFalse(map.isEmpty());
+      Set<Integer> keys = new HashSet<Integer>();
+      for (Map.Entry<Integer, Integer> entry : map.entrySet()) {
+        assertEquals(entry.getKey(), entry.getValue());
+        assertTrue(keys.add(entry.getKey()));
+      }
+      assertEquals(1000, keys.size());
+      for (int i = 0; i < 1000; i++) {
+        assertEquals((Integer) i, map.get(i));
+      }
+      assertTrue(map.containsValue(999));
+
+      assertEquals((Integer) 5, map.remove(5));
+      assertEquals(999, map.size());
+      map.clear();
+      assertTrue(map.isEmpty());
+    }
+
+    public void testSplitOnContention() {
+      ConcurrentMap<Integer, Integer> map = new MapMaker()
+          .concurrencyLevel(2).adaptiveConcurrency().makeMap();
+      map.put(1, 1);
+      contend((Impl<?, ?, ?>) map);
+      assertEquals(2, ((Impl<?, ?, ?>) map).distinctSegments().length);
+      assertEquals((Integer) 1, map.get(1));
+
+      // There's nothing left to split.
+      contend((Impl<?, ?, ?>) map);
+      assertEquals(2, ((Impl<?, ?, ?>) map).distinctSegments().length);
+    }
+
+    public void testSplitWithDiagnostics() {
+      ConcurrentMap<Integer, Integer> map = new MapMaker().concurrencyLevel(4)
+          .adaptiveConcurrency().recordDiagnostics().makeMap();
+      MapDiagnostics diagnostics = MapMaker.diagnostics(map);
+      assertEquals(1, diagnostics.getSegmentCount());
+      contend((Impl<?, ?, ?>) map);
+      assertEquals(2, diagnostics.getSegmentCount());
+      map.put(1, 1);
+      long acquisitions = 0;
+      for (long count : diagnostics.getLockAcquisitions()) {
+        acquisitions += count;
+      }
+      assertEquals(1, acquisitions);
+    }
+
+    public void testSplitComputingMap() {
+      final AtomicInteger computations = new AtomicInteger();
+      ConcurrentMap<Integer, Integer> map = new MapMaker()
+          .concurrencyLevel(8).adaptiveConcurrency().makeComputingMap(
+              new Function<Integer, Integer>() {
+                public Integer apply(Integer key) {
+                  computations.incrementAndGet();
+                  return key * 2;
+                }
+              });
+      for (int i = 0; i < 100; i++) {
+        assertEquals((Integer) (i * 2), map.get(i));
+      }
+      splitAll((Impl<?, ?, ?>) map);
+      for (int i = 0; i < 200; i++) {
+        assertEquals((Integer) (i * 2), map.get(i));
+      }
+      assertEquals(200, computations.get());
+    }
+
+    public void testFixedConcurrencyUsesPlainSegments() {
+      ConcurrentMap<Integer, Integer> map
+          = new MapMaker().concurrencyLevel(2).weakValues().makeMap();
+      Impl<?, ?, ?> impl = (Impl<?, ?, ?>) map;
+      assertNull(impl.splitter);
+      assertSame(impl.segments, impl.slots());
+      for (Object segment : impl.segments) {
+        assertSame(Impl.Segment.class, segment.getClass());
+      }
+    }
+
+    public void testFixedConcurrencyDoesNotSplit() {
+      ConcurrentMap<Integer, Integer> map = new MapMaker()
+          .concurrencyLevel(2).recordDiagnostics().makeMap();
+      Impl<?, ?, ?> impl = (Impl<?, ?, ?>) map;
+      Object first = impl.segments[0];
+      contend(impl);
+      assertSame(first, impl.segments[0]);
+      assertEquals(2, impl.distinctSegments().length);
+    }
+
+    public void testWriterWaitingForSplitSegment() throws Exception {
+      final ConcurrentMap<Integer, Integer> map = new MapMaker()
+          .concurrencyLevel(4).adaptiveConcurrency().makeMap();
+      Impl<?, ?, ?> impl = (Impl<?, ?, ?>) map;
+      ReentrantLock segment = impl.slots()[0];
+      segment.lock();
+      Thread writer = new Thread() {
+        @Override public void run() {
+          for (int i = 0; i < 100; i++) {
+            map.put(i, i);
+          }
+        }
+      };
+      try {
+        writer.start();
+        while (!segment.hasQueuedThreads()) {
+          Thread.sleep(1);
+        }
+        splitAll(impl);
+      } finally {
+        segment.unlock();
+      }
+      writer.join();
+
+      assertEquals(100, map.size());
+      for (int i = 0; i < 100; i++) {
+        assertEquals((Integer) i, map.get(i));
+      }
+      for (Object split : impl.distinctSegments()) {
+        assertNotSame(segment, split);
+      }
+    }
+
+    public void testConcurrentSplits() throws Exception {
+      final ConcurrentMap<Integer, Integer> map = new MapMaker()
+          .concurrencyLevel(64).adaptiveConcurrency().makeMap();
+      final int threadCount = 4;
+      final int perThread = 5000;
+      Thread[] threads = new Thread[threadCount];
+      for (int t = 0; t < threadCount; t++) {
+        final int offset = t * perThread;
+        threads[t] = new Thread() {
+          @Override public void run() {
+            for (int i = offset; i < offset + perThread; i++) {
+              map.put(i, i);
+              if (i % 2 == 0) {
+                map.remove(i);
+              }
+            }
+          }
+        };
+        threads[t].start();
+      }
+      Impl<?, ?, ?> impl = (Impl<?, ?, ?>) map;
+      while (splitOnce(impl)) {
+        Thread.yield();
+      }
+      for (Thread thread : threads) {
+        thread.join();
+      }
+
+      assertEquals(64, impl.distinctSegments().length);
+      assertEquals(threadCount * perThread / 2, map.size());
+      for (int i = 0; i < threadCount * perThread; i++) {
+        assertEquals((i % 2 == 0) ? null : (Integer) i, map.get(i));
+      }
+    }
+
+    public void testSerialization() {
+      ConcurrentMap<String, Integer> map = new MapMaker()
+          .concurrencyLevel(8).adaptiveConcurrency().makeMap();
+      for (int i = 0; i < 100; i++) {
+        map.put("key" + i, i);
+      }
+      splitAll((Impl<?, ?, ?>) map);
+      assertEquals(map, SerializableTester.reserialize(map));
+    }
+
+    /** Splits every segment until each serves one slot. */
+    static void splitAll(Impl<?, ?, ?> impl) {
+      while (splitOnce(impl)) {}
+    }
+
+    /** Splits each current segment once. Returns false if none could be. */
+    static <K, V, E> boolean splitOnce(Impl<K, V, E> impl) {
+      boolean split = false;
+      for (Impl<K, V, E>.Segment segment : impl.distinctSegments()) {
+        segment.lock();
+        try {
+          split |= !segment.retired && impl.splitter.split(segment);
+        } finally {
+          segment.unlock();
+        }
+      }
+      return split;
+    }
+
+    /** Simulates enough contention to split the segment in the first slot. */
+    static <K, V, E> void contend(Impl<K, V, E> impl) {
+      Impl<K, V, E>.ContentionAwareSegment segment
+          = (Impl<K, V, E>.ContentionAwareSegment) impl.slots()[0];
+      segment.lock();
+      try {
+        for (int i = 0; i < CustomConcurrentHashMap.Impl.SPLIT_THRESHOLD; i++) {
+          segment.contended();
+        }
+      } finally {
+        segment.unlock();
+      }
+    }
+  }
+
+  public static class OffHeapValuesTest extends TestCase {
+
+    /** Stores strings as a length followed by their characters. */
+    static class StringSerializer implements ValueSerializer<String> {
+      public int serializedSize(String value) {
+        return 4 + 2 * value.length();
+      }
+      public void write(String value, ByteBuffer buffer) {
+        buffer.putInt(value.length());
+        for (int i = 0; i < value.length(); i++) {
+          buffer.putChar(value.charAt(i));
+        }
+      }
+      public String read(ByteBuffer buffer) {
+        char[] chars = new char[buffer.getInt()];
+        for (int i = 0; i < chars.length; i++) {
+          chars[i] = buffer.getChar();
+        }
+        return new String(chars);
+      }
+    }
+
+    public void testBasicOperations() {
+      ConcurrentMap<Integer, String> map
+          = new MapMaker().offHeapValues(new StringSerializer()).makeMap();
+      assertNull(map.put(1, "one"));
+      assertEquals("one", map.get(1));
+      assertEquals("one", map.put(1, "uno"));
+      assertEquals("uno", map.get(1));
+      assertEquals("uno", map.putIfAbsent(1, "ein"));
+      assertTrue(map.replace(1, "uno", "eins"));
+      assertFalse(map.replace(1, "uno", "one"));
+      assertTrue(map.containsValue("eins"));
+      assertFalse(map.remove(1, "uno"));
+      assertTrue(map.remove(1, "eins"));
+      assertTrue(map.isEmpty());
+
+      Map<Integer, String> expected = new HashMap<Integer, String>();
+      for (int i = 0; i < 100; i++) {
+        expected.put(i, "value " + i);
+      }
+      map.putAll(expected);
+      assertEquals(expected, map);
+      assertEquals(expected, SerializableTester.reserialize(map));
+      map.clear();
+      assertTrue(map.isEmpty());
+    }
+
+    public void testLargeValues() {
+      ConcurrentMap<Integer, String> map
+          = new MapMaker().offHeapValues(new StringSerializer()).makeMap();
+      char[] chars = new char[1 << 20];
+      Arrays.fill(chars, 'x');
+      String large = new String(chars);
+      map.put(1, large);
+      assertEquals(large, map.get(1));
+      assertEquals(large, map.remove(1));
+    }
+
+    public void testMemoryIsReused() {
+      ConcurrentMap<Integer, String> map
+          = new MapMaker().offHeapValues(new StringSerializer()).makeMap();
+      SlabAllocator allocator = allocator(map);
+      for (int i = 0; i < 1000; i++) {
+        map.put(i, "value " + i);
+      }
+      int slabs = allocator.slabCount();
+      for (int round = 0; round < 10; round++) {
+        for (int i = 0; i < 1000; i++) {
+          map.put(i, "eulav " + i);
+        }
+        for (int i = 0; i < 500; i++) {
+          map.remove(i);
+        }
+        map.clear();
+        for (int i = 0; i < 1000; i++) {
+          map.put(i, "value " + i);
+        }
+      }
+      assertEquals(slabs, allocator.slabCount());
+    }
+
+    public void testComputingMap() {
+      ConcurrentMap<Integer, String> map = new MapMaker()
+          .offHeapValues(new StringSerializer())
+          .makeComputingMap(Functions.toStringFunction());
+      assertEquals("42", map.get(42));
+      assertEquals("42", map.get(42));
+      map.put(42, "forty-two");
+      assertEquals("forty-two", map.get(42));
+    }
+
+    public void testConcurrentReplacement() throws Exception {
+      final ConcurrentMap<Integer, String> map
+          = new MapMaker().offHeapValues(new StringSerializer()).makeMap();
+      map.put(0, "a");
+      Thread writer = new Thread() {
+        @Override public void run() {
+          for (int i = 0; i < 20000; i++) {
+            map.put(0, (i % 2 == 0) ? "bb" : "a");
+          }
+        }
+      };
+      writer.start();
+      while (writer.isAlive()) {
+        String value = map.get(0);
+        assertTrue(value, "a".equals(value) || "bb".equals(value));
+      }
+      writer.join();
+    }
+
+    @SuppressWarnings("unchecked")
+    public void testStaleCopy() throws Exception {
+      ConcurrentMap<Object, String> map = new MapMaker()
+          .offHeapValues(new StringSerializer()).makeMap();
+      Object key = new CollidingKeysTest.Collider(0);
+      Object next = new CollidingKeysTest.Collider(1);
+      map.put(next, "one");
+      map.put(key, "zero");
+      Object strategy = field(Impl.class, "strategy").get(map);
+      CustomConcurrentHashMap.Internals<Object, String, Object> internals
+          = (CustomConcurrentHashMap.Internals<Object, String, Object>)
+              field(strategy.getClass(), "internals").get(strategy);
+      Object original = internals.getEntry(key);
+
+      // Removing the entry that follows key's copies key's entry, which
+      // then shares its value with the original.
+      map.remove(next);
+      assertNotSame(original, internals.getEntry(key));
+      map.put(key, "replaced");
+      assertEquals("replaced",
+          ((CustomConcurrentHashMap.Strategy<Object, String, Object>)
+              strategy).getValue(original));
+    }
+
+    public void testIncompatibleOptions() {
+      try {
+        new MapMaker().weakKeys().offHeapValues(new StringSerializer());
+        fail();
+      } catch (IllegalStateException expected) {
+      }
+      try {
+        new MapMaker().offHeapValues(new StringSerializer()).softValues();
+        fail();
+      } catch (IllegalStateException expected) {
+      }
+      try {
+        new MapMaker().offHeapValues(new StringSerializer())
+            .offHeapValues(new StringSerializer());
+        fail();
+      } catch (IllegalStateException expected) {
+      }
+    }
+
+    public void testBadSerializer() {
+      ConcurrentMap<Integer, String> map = new MapMaker()
+          .offHeapValues(new StringSerializer() {
+            @Override public void write(String value, ByteBuffer buffer) {
+              buffer.putInt(value.length());
+            }
+          })
+          .makeMap();
+      try {
+        map.put(1, "one");
+        fail();
+      } catch (IllegalStateException expected) {
+      }
+    }
+
+    static SlabAllocator allocator(Map<?, ?> map) {
+      try {
+        Object strategy = field(Impl.class, "strategy").get(map);
+        Object offHeap = field(strategy.getClass(), "offHeap").get(strategy);
+        return (SlabAllocator)
+            field(offHeap.getClass(), "allocator").get(offHeap);
+      } catch (IllegalAccessException e) {
+        throw new AssertionError(e);
+      }
+    }
+
+    static Field field(Class<?> type, String name) {
+      try {
+        Field field = type.getDeclaredField(name);
+        field.setAccessible(true);
+        return field;
+      } catch (NoSuchFieldException e) {
+        throw new AssertionError(e);
+      }
+    }
+  }
+
+  public static class OverflowTest extends TestCase {
+    File directory;
+
+    @Override protected void setUp() throws Exception {
+      directory = File.createTempFile("OverflowTest", "");
+      assertTrue(directory.delete());
+      assertTrue(directory.mkdir());
+    }
+
+    @Override protected void tearDown() {
+      for (File file : directory.listFiles()) {
+        file.delete();
+      }
+      directory.delete();
+    }
+
+    /** Returns a new string for each key and counts invocations. */
+    static class CountingFunction implements Function<Integer, String> {
+      final AtomicInteger count = new AtomicInteger();
+      @SuppressWarnings("RedundantStringConstructorCall")
+      public String apply(Integer key) {
+        count.incrementAndGet();
+        return new String("value " + key);
+      }
+    }
+
+    public void testReclaimedValuesAreReadFromDisk() {
+      CountingFunction function = new CountingFunction();
+      ConcurrentMap<Integer, String> map = new MapMaker()
+          .weakValues()
+          .overflowToDisk(directory, 1 << 20,
+              new OffHeapValuesTest.StringSerializer())
+          .makeComputingMap(function);
+      WeakReference<String> reference
+          = new WeakReference<String>(map.get(1));
+      assertEquals(1, function.count.get());
+      awaitClearing(reference);
+
+      assertEquals("value 1", map.get(1));
+      assertEquals(1, function.count.get());
+    }
+
+    public void testRemovalInvalidatesDiskCopy() {
+      CountingFunction function = new CountingFunction();
+      ConcurrentMap<Integer, String> map = new MapMaker()
+          .overflowToDisk(directory, 1 << 20,
+              new OffHeapValuesTest.StringSerializer())
+          .makeComputingMap(function);
+      assertEquals("value 1", map.get(1));
+      map.remove(1);
+      assertEquals("value 1", map.get(1));
+      assertEquals(2, function.count.get());
+
+      map.put(2, "two");
+      map.remove(2);
+      assertEquals("value 2", map.get(2));
+      assertEquals(3, function.count.get());
+    }
+
+    public void testPutInvalidatesDiskCopy() {
+      CountingFunction function = new CountingFunction();
+      ConcurrentMap<Integer, String> map = new MapMaker()
+          .weakValues()
+          .overflowToDisk(directory, 1 << 20,
+              new OffHeapValuesTest.StringSerializer())
+          .makeComputingMap(function);
+      map.get(1);
+      String two = new String("two");
+      map.put(1, two);
+      assertSame(two, map.get(1));
+      WeakReference<String> reference = new WeakReference<String>(two);
+      two = null;
+      awaitClearing(reference);
+
+      assertEquals("value 1", map.get(1));
+      assertEquals(2, function.count.get());
+    }
+
+    public void testIncompatibleOptions() {
+      ValueSerializer<String> serializer
+          = new OffHeapValuesTest.StringSerializer();
+      try {
+        new MapMaker().overflowToDisk(directory, 1 << 20, serializer)
+            .makeMap();
+        fail();
+      } catch (IllegalStateException expected) {
+      }
+      try {
+        new MapMaker().weakKeys().overflowToDisk(directory, 1, serializer);
+        fail();
+      } catch (IllegalStateException expected) {
+      }
+      try {
+        new MapMaker().overflowToDisk(directory, 1, serializer).softKeys();
+        fail();
+      } catch (IllegalStateException expected) {
+      }
+      try {
+        new MapMaker().overflowToDisk(directory, 0, serializer);
+        fail();
+      } catch (IllegalArgumentException expected) {
+      }
+    }
+
+    static void awaitClearing(WeakReference<?> reference) {
+      for (int i = 0; i < 500 && reference.get() != null; i++) {
+        System.gc();
+        try {
+          Thread.sleep(10);
+        } catch (InterruptedException e) { /* ignore */ }
+      }
+      assertNull(reference.get());
+    }
+  }
+
+  public static class WriteListenerTest extends TestCase {
+
+    /** Counts writes, checking that no segment lock is held. */
+    static class ListeningStrategy extends SimpleStrategy<String, Integer>
+        implements CustomConcurrentHashMap.WriteListener {
+      Impl<String, Integer, ?> map;
+      int writes;
+
+      public void afterWrite() {
+        for (Impl<?, ?, ?>.Segment segment : map.segments) {
+          assertFalse(segment.isHeldByCurrentThread());
+        }
+        writes++;
+      }
+    }
+
+    public void testAfterWrite() {
+      ListeningStrategy strategy = new ListeningStrategy();
+      @SuppressWarnings("unchecked")
+      Impl<String, Integer, ?> map = (Impl<String, Integer, ?>)
+          new CustomConcurrentHashMap.Builder().buildMap(strategy);
+      strategy.map = map;
+
+      map.put("a", 1);
+      map.putIfAbsent("b", 2);
+      map.replace("a", 3);
+      map.replace("a", 3, 4);
+      map.remove("b");
+      map.remove("a", 4);
+      map.clear();
+      assertEquals(7, strategy.writes);
+      map.get("a");
+      map.containsKey("a");
+      assertEquals(7, strategy.writes);
+    }
+  }
+
+  public static class MemoizingFunctionTest extends TestCase {
+
+    static class CountingLength implements BatchFunction<String, Integer> {
+      final AtomicInteger calls = new AtomicInteger();
+      final List<List<String>> batches = new ArrayList<List<String>>();
+
+      public Integer apply(String from) {
+        calls.incrementAndGet();
+        return from.length();
+      }
+
+      public Map<String, Integer> applyAll(Iterable<? extends String> inputs) {
+        List<String> batch = new ArrayList<String>();
+        Map<String, Integer> results = new HashMap<String, Integer>();
+        for (String input : inputs) {
+          batch.add(input);
+          if (!input.equals("skipped")) {
+            results.put(input, input.length());
+          }
+        }
+        batches.add(batch);
+        return results;
+      }
+    }
+
+    public void testApply() {
+      CountingLength length = new CountingLength();
+      Function<String, Integer> memoized
+          = new MapMaker().makeMemoizingFunction(length);
+      assertEquals(3, (int) memoized.apply("abc"));
+      assertEquals(3, (int) memoized.apply("abc"));
+      assertEquals(1, (int) memoized.apply("a"));
+      assertEquals(2, length.calls.get());
+      try {
+        memoized.apply(null);
+        fail();
+      } catch (NullPointerException expected) {}
+    }
+
+    public void testApplyAll() {
+      CountingLength length = new CountingLength();
+      Function<String, Integer> memoized
+          = new MapMaker().makeMemoizingFunction(length);
+      memoized.apply("a");
+
+      Map<String, Integer> results = Functions.applyAll(memoized,
+          Arrays.asList("abc", "a", "skipped", "ab", "abc"));
+      assertEquals(Arrays.asList("abc", "a", "skipped", "ab"),
+          new ArrayList<String>(results.keySet()));
+      assertEquals(Arrays.asList(3, 1, 7, 2),
+          new ArrayList<Integer>(results.values()));
+
+      // Only missing results are computed, all at once, and a result missing
+      // from the batch is computed on its own.
+      assertEquals(1, length.batches.size());
+      assertEquals(Arrays.asList("abc", "skipped", "ab"),
+          length.batches.get(0));
+      assertEquals(2, length.calls.get());
+
+      Functions.applyAll(memoized, Arrays.asList("abc", "skipped"));
+      assertEquals(1, length.batches.size());
+      assertEquals(2, length.calls.get());
+    }
+
+    public void testApplyAll_iterableOnce() {
+      CountingLength length = new CountingLength();
+      Function<String, Integer> memoized
+          = new MapMaker().makeMemoizingFunction(length);
+      Map<String, Integer> results = Functions.applyAll(memoized,
+          MinimalIterable.of("abc", "a", "ab"));
+      assertEquals(Arrays.asList("abc", "a", "ab"),
+          new ArrayList<String>(results.keySet()));
+      assertEquals(Arrays.asList(3, 1, 2),
+          new ArrayList<Integer>(results.values()));
+      assertEquals(0, length.calls.get());
+    }
+
+    public void testApplyAll_notBatch() {
+      final AtomicInteger calls = new AtomicInteger();
+      Function<Integer, Integer> square = new Function<Integer, Integer>() {
+        public Integer apply(Integer from) {
+          calls.incrementAndGet();
+          return from * from;
+        }
+      };
+      Function<Integer, Integer> memoized
+          = new MapMaker().makeMemoizingFunction(square);
+      assertEquals(Arrays.asList(9, 4),
+          new ArrayList<Integer>(Functions.applyAll(
+              memoized, Arrays.asList(3, 2, 3)).values()));
+      assertEquals(Arrays.asList(4, 9),
+          new ArrayList<Integer>(Functions.applyAll(
+              memoized, Arrays.asList(2, 3)).values()));
+      assertEquals(2, calls.get());
+    }
+
+    public void testApplyAll_batchThrows() {
+      Function<String, Integer> memoized = new MapMaker().makeMemoizingFunction(
+          new CountingLength() {
+            @Override public Map<String, Integer> applyAll(
+                Iterable<? extends String> inputs) {
+              throw new IllegalStateException();
+            }
+          });
+      try {
+        Functions.applyAll(memoized, Arrays.asList("a", "b"));
+        fail();
+      } catch (ComputationException expected) {
+        assertTrue(expected.getCause() instanceof IllegalStateException);
+      }
+      assertEquals(1, (int) memoized.apply("a"));
+    }
+
+    public void testSerialization() {
+      Function<String, Integer> memoized
+          = new MapMaker().makeMemoizingFunction(new SerializableLength());
+      assertEquals(3, (int) memoized.apply("abc"));
+      Function<String, Integer> copy = SerializableTester.reserialize(memoized);
+      assertEquals(2, (int) copy.apply("ab"));
+    }
+
+    static class SerializableLength
+        implements Function<String, Integer>, Serializable {
+      public Integer apply(String from) {
+        return from.length();
+      }
+      private static final long serialVersionUID = 0;
+    }
+  }
+
   /**
    * Tests combinations of key and value reference types.
    */
@@ -0,0 +1,160 @@
+/*
+ * Copyright (C) 2009 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.collect;
+
+import com.google.common.collect.MapMakerTestSuite.OffHeapValuesTest.StringSerializer;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Unit test for {@code OverflowLog}.
+ */
+public class OverflowLogTest extends TestCase {
+  File directory;
+
+  @Override protected void setUp() throws Exception {
+    directory = File.createTempFile("OverflowLogTest", "");
+    assertTrue(directory.delete());
+    assertTrue(directory.mkdir());
+  }
+
+  @Override protected void tearDown() {
+    for (File file : directory.listFiles()) {
+      file.delete();
+    }
+    directory.delete();
+  }
+
+  public void testPutGetInvalidate() {
+    OverflowLog<Integer, String> log
+        = new OverflowLog<Integer, String>(directory, 1 << 20,
+            new StringSerializer());
+    assertNull(log.get(1));
+    log.put(1, "one");
+    log.put(2, "two");
+    assertEquals("one", log.get(1));
+    assertEquals("two", log.get(2));
+    log.put(1, "uno");
+    assertEquals("uno", log.get(1));
+    log.invalidate(1);
+    assertNull(log.get(1));
+    assertEquals("two", log.get(2));
+    assertEquals(1, log.size());
+    log.close();
+    assertNull(log.get(2));
+  }
+
+  public void testCompactionKeepsNewestValuesWithinCap() {
+    // Each value takes 104 bytes; 1000-byte regions hold nine of them, so
+    // the file holds at most 36, and compaction keeps up to 18 of them.
+    OverflowLog<Integer, String> log
+        = new OverflowLog<Integer, String>(directory, 4096,
+            new StringSerializer(), 1000);
+    for (int i = 0; i < 1000; i++) {
+      log.put(i, value(i));
+      assertTrue(log.fileSize() <= 4096);
+    }
+    assertEquals(value(999), log.get(999));
+    int kept = log.size();
+    assertTrue(String.valueOf(kept), kept >= 19 && kept <= 36);
+    for (int i = 0; i < 1000 - kept; i++) {
+      assertNull(log.get(i));
+    }
+    for (int i = 1000 - kept; i < 1000; i++) {
+      assertEquals(value(i), log.get(i));
+    }
+    assertEquals(1, directory.listFiles().length);
+    log.close();
+    assertEquals(0, directory.listFiles().length);
+  }
+
+  public void testCompactionSkipsInvalidatedValues() {
+    OverflowLog<Integer, String> log
+        = new OverflowLog<Integer, String>(directory, 4096,
+            new StringSerializer(), 1000);
+    log.put(0, value(0));
+    for (int i = 1; i < 1000; i++) {
+      log.put(i, value(i));
+      log.invalidate(i - 1);
+    }
+    assertEquals(1, log.size());
+    assertEquals(value(999), log.get(999));
+  }
+
+  public void testReadsDuringCompaction() throws Exception {
+    final OverflowLog<Integer, String> log
+        = new OverflowLog<Integer, String>(directory, 4096,
+            new StringSerializer(), 1000);
+    final AtomicReference<String> failure = new AtomicReference<String>();
+    Thread reader = new Thread() {
+      @Override public void run() {
+        while (!isInterrupted()) {
+          for (int i = 0; i < 100; i++) {
+            String value = log.get(i);
+            if (value != null && !value.equals(value(i))) {
+              failure.set(i + ": " + value);
+            }
+          }
+        }
+      }
+    };
+    reader.start();
+    for (int round = 0; round < 100; round++) {
+      for (int i = 0; i < 100; i++) {
+        log.put(i, value(i));
+      }
+    }
+    reader.interrupt();
+    reader.join();
+    assertNull(failure.get());
+    assertEquals(1, directory.listFiles().length);
+    log.close();
+    assertEquals(0, directory.listFiles().length);
+  }
+
+  public void testLargeValuesAreSkipped() {
+    OverflowLog<Integer, String> log
+        = new OverflowLog<Integer, String>(directory, 4096,
+            new StringSerializer());
+    log.put(1, value(1));
+    char[] chars = new char[1024];
+    Arrays.fill(chars, 'x');
+    log.put(1, new String(chars));
+    assertNull(log.get(1));
+    assertEquals(0, log.size());
+  }
+
+  public void testUnwritableDirectory() {
+    OverflowLog<Integer, String> log
+        = new OverflowLog<Integer, String>(
+            new File(directory, "missing"), 4096, new StringSerializer());
+    log.put(1, "one");
+    assertNull(log.get(1));
+    log.put(2, "two");
+    assertNull(log.get(2));
+  }
+
+  static String value(int i) {
+    char[] chars = new char[50];
+    Arrays.fill(chars, (char) ('a' + i % 26));
+    return new String(chars);
+  }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2009 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.collect;
+
+import junit.framework.TestCase;
+
+import java.nio.ByteBuffer;
+import java.nio.ReadOnlyBufferException;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Unit test for {@code SlabAllocator}.
+ */
+public class SlabAllocatorTest extends TestCase {
+
+  public void testBlocksDoNotOverlap() {
+    SlabAllocator allocator = new SlabAllocator(1024);
+    long[] handles = new long[200];
+    for (int i = 0; i < handles.length; i++) {
+      handles[i] = allocator.allocate(i + 1);
+      ByteBuffer buffer = allocator.buffer(handles[i], i + 1);
+      assertEquals(i + 1, buffer.remaining());
+      while (buffer.hasRemaining()) {
+        buffer.put((byte) i);
+      }
+    }
+    for (int i = 0; i < handles.length; i++) {
+      ByteBuffer buffer = allocator.readOnlyBuffer(handles[i], i + 1);
+      while (buffer.hasRemaining()) {
+        assertEquals((byte) i, buffer.get());
+      }
+    }
+  }
+
+  public void testFreedBlocksAreReused() {
+    SlabAllocator allocator = new SlabAllocator(1024);
+    Set<Long> handles = new HashSet<Long>();
+    for (int i = 0; i < 10; i++) {
+      handles.add(allocator.allocate(100));
+    }
+    int slabs = allocator.slabCount();
+    for (long handle : handles) {
+      allocator.free(handle, 100);
+    }
+    for (int i = 0; i < 10; i++) {
+      // Blocks are shared by sizes in the same class.
+      assertTrue(handles.contains(allocator.allocate(100 + i)));
+    }
+    assertEquals(slabs, allocator.slabCount());
+  }
+
+  public void testLargeBlocks() {
+    SlabAllocator allocator = new SlabAllocator(1024);
+    long handle = allocator.allocate(5000);
+    assertEquals(1, allocator.slabCount());
+    ByteBuffer buffer = allocator.buffer(handle, 5000);
+    assertEquals(5000, buffer.remaining());
+    allocator.free(handle, 5000);
+    assertEquals(0, allocator.slabCount());
+  }
+
+  public void testReadOnlyBuffer() {
+    SlabAllocator allocator = new SlabAllocator();
+    long handle = allocator.allocate(8);
+    allocator.buffer(handle, 8).putLong(42);
+    ByteBuffer buffer = allocator.readOnlyBuffer(handle, 8);
+    assertEquals(42, buffer.getLong());
+    try {
+      allocator.readOnlyBuffer(handle, 8).putLong(0);
+      fail();
+    } catch (ReadOnlyBufferException expected) {
+    }
+  }
+
+  public void testInvalidSlabSize() {
+    try {
+      new SlabAllocator(8);
+      fail();
+    } catch (IllegalArgumentException expected) {
+    }
+  }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright (C) 2009 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.common.hash;
+
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+
+/**
+ * Unit test for {@link HashCode}.
+ */
+public class HashCodeTest extends TestCase {
+
+  public void testFromInt() {
+    HashCode hashCode = HashCode.fromInt(0x01020304);
+    assertEquals(32, hashCode.bits());
+    assertEquals(0x01020304, hashCode.asInt());
+    assertTrue(Arrays.equals(new byte[] {4, 3, 2, 1}, hashCode.asBytes()));
+    assertEquals("04030201", hashCode.toString());
+    assertEquals(0x01020304, hashCode.hashCode());
+    try {
+      hashCode.asLong();
+      fail();
+    } catch (IllegalStateException expected) {}
+  }
+
+  public void testFromLong() {
+    HashCode hashCode = HashCode.fromLong(0x0102030405060708L);
+    assertEquals(64, hashCode.bits());
+    assertEquals(0x0102030405060708L, hashCode.asLong());
+    assertEquals(0x05060708, hashCode.asInt());
+    assertEquals("0807060504030201", hashCode.toString());
+  }
+
+  public void testFromLongs() {
+    HashCode hashCode = HashCode.fromLongs(1, 0xff00000000000000L);
+    assertEquals(128, hashCode.bits());
+    assertEquals(1, hashCode.asLong());
+    assertEquals("010000000000000000000000000000ff", hashCode.toString());
+    byte[] bytes = hashCode.asBytes();
+    bytes[0] = 9;
+    assertEquals(1, hashCode.asBytes()[0]);
+  }
+
+  public void testEquals() {
+    assertEquals(HashCode.fromInt(5), HashCode.fromInt(5));
+    assertFalse(HashCode.fromInt(5).equals(HashCode.fromInt(6)));
+    assertEquals(HashCode.fromLong(5), HashCode.fromLong(5));
+    assertFalse(HashCode.fromLong(5).equals(HashCode.fromLongs(5, 0)));
+    assertFalse(HashCode.fromInt(5).equals(HashCode.fromLong(5)));
+    assertEquals(HashCode.fromLongs(5, 6), HashCode.fromLongs(5, 6));
+    assertFalse(HashCode.fromLongs(5, 6).equals(HashCode.fromLongs(5, 7)));
+    assertEquals(HashCode.fromLongs(5, 6).hashCode(),
+        HashCode.fromLongs(5, 6).hashCode());
+  }
+}
@@ -0,0 +1,232 @@
+/*
+ * Copyright (C) 2009 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.common.hash;
+
+import com.google.common.testutils.NullPointerTester;
+import com.google.common.testutils.SerializableTester;
+
+import junit.framework.TestCase;
+
+import java.util.Random;
+
+/**
+ * Unit test for {@link Hashing} and its hash functions.
+ */
+public class HashingTest extends TestCase {
+
+  private static final String FOX
+      = "The quick brown fox jumps over the lazy dog";
+
+  private static final HashFunction[] FUNCTIONS = {
+    Hashing.murmur3_32(), Hashing.murmur3_32(1234567),
+    Hashing.murmur3_64(), Hashing.murmur3_64(-1),
+    Hashing.murmur3_128(), Hashing.murmur3_128(42),
+  };
+
+  public void testMurmur3_32() throws Exception {
+    assertEquals(0x2e4ff723, Hashing.murmur3_32()
+        .hashBytes(FOX.getBytes("US-ASCII")).asInt());
+    assertEquals(0, Hashing.murmur3_32().hashBytes(new byte[0]).asInt());
+    assertEquals(0xa167dbf3, Hashing.murmur3_32()
+        .hashBytes("hell".getBytes("US-ASCII")).asInt());
+    assertEquals(0xea7191b2, Hashing.murmur3_32(123)
+        .hashBytes("hello, world".getBytes("US-ASCII")).asInt());
+    assertEquals(0xbc5b91e3, Hashing.murmur3_32().hashInt(42).asInt());
+    assertEquals(0x42b016c3, Hashing.murmur3_32().hashString("abc").asInt());
+    assertEquals(32, Hashing.murmur3_32().bits());
+  }
+
+  public void testMurmur3_128() throws Exception {
+    assertEquals("6c1b07bc7bbc4be347939ac4a93c437a", Hashing.murmur3_128()
+        .hashBytes(FOX.getBytes("US-ASCII")).toString());
+    assertEquals("00000000000000000000000000000000",
+        Hashing.murmur3_128().hashBytes(new byte[0]).toString());
+    assertEquals("67f8103e694299624753ebba820bdb92", Hashing.murmur3_128()
+        .hashBytes("hell".getBytes("US-ASCII")).toString());
+    assertEquals("c19dfecc5f88ed2fe593f178aac299db", Hashing.murmur3_128(123)
+        .hashBytes("hello, world".getBytes("US-ASCII")).toString());
+    assertEquals("73edba1a7ab2e4a0af464a6bc9122169",
+        Hashing.murmur3_128().hashLong(-1).toString());
+    assertEquals("be7dab5a95b7780fd02adcd4409a804b",
+        Hashing.murmur3_128().hashString("abcdefghijklmnopqrs").toString());
+    assertEquals(128, Hashing.murmur3_128().bits());
+  }
+
+  public void testMurmur3_64IsPrefixOf128() {
+    for (int seed : new int[] {0, -7}) {
+      HashCode full = Hashing.murmur3_128(seed).hashString(FOX);
+      HashCode half = Hashing.murmur3_64(seed).hashString(FOX);
+      assertEquals(64, half.bits());
+      assertEquals(full.asLong(), half.asLong());
+      assertEquals(full.toString().substring(0, 16), half.toString());
+    }
+  }
+
+  public void testOneShotAndStreamingAgree() {
+    // Lengths on both sides of several chunk boundaries.
+    Random random = new Random(0);
+    for (HashFunction function : FUNCTIONS) {
+      for (int length = 0; length < 70; length++) {
+        byte[] bytes = new byte[length + 3];
+        random.nextBytes(bytes);
+        HashCode expected = function.hashBytes(bytes, 3, length);
+        assertEquals(expected, hashInPieces(function, bytes, 3, length));
+
+        Hasher bytewise = function.newHasher();
+        for (int i = 3; i < bytes.length; i++) {
+          bytewise.putByte(bytes[i]);
+        }
+        assertEquals(expected, bytewise.hash());
+      }
+    }
+  }
+
+  private static HashCode hashInPieces(
+      HashFunction function, byte[] bytes, int offset, int length) {
+    Hasher hasher = function.newHasher();
+    int split = length / 3;
+    hasher.putBytes(bytes, offset, split);
+    hasher.putBytes(bytes, offset + split, length - split);
+    return hasher.hash();
+  }
+
+  public void testPrimitivesAreLittleEndian() {
+    for (HashFunction function : FUNCTIONS) {
+      long l = 0x0102030405060708L;
+      assertEquals(function.hashLong(l), function.newHasher()
+          .putInt(0x05060708).putInt(0x01020304).hash());
+      assertEquals(
+          function.hashLong(l), function.newHasher().putLong(l).hash());
+      assertEquals(function.hashInt(0x01020304), function.newHasher()
+          .putShort((short) 0x0304).putChar((char) 0x0102).hash());
+      assertEquals(function.hashInt(0x01020304), function.hashBytes(
+          new byte[] {4, 3, 2, 1}));
+      assertEquals(function.hashInt(Float.floatToRawIntBits(1.5f)),
+          function.newHasher().putFloat(1.5f).hash());
+      assertEquals(function.hashLong(Double.doubleToRawLongBits(-2.5)),
+          function.newHasher().putDouble(-2.5).hash());
+      assertEquals(function.hashBytes(new byte[] {1, 0}),
+          function.newHasher().putBoolean(true).putBoolean(false).hash());
+    }
+  }
+
+  public void testStringsAndObjects() {
+    for (HashFunction function : FUNCTIONS) {
+      for (int length = 0; length < 20; length++) {
+        String string = FOX.substring(0, length);
+        Hasher chars = function.newHasher();
+        for (int i = 0; i < length; i++) {
+          chars.putChar(string.charAt(i));
+        }
+        HashCode expected = chars.hash();
+        assertEquals(expected, function.hashString(string));
+        assertEquals(expected,
+            function.hashString(new StringBuilder(string)));
+        assertEquals(expected,
+            function.newHasher().putString(string).hash());
+        assertEquals(expected,
+            function.hashObject(string, Funnels.stringFunnel()));
+      }
+      assertEquals(function.hashInt(7),
+          function.hashObject(7, Funnels.integerFunnel()));
+      assertEquals(function.hashLong(7),
+          function.hashObject(7L, Funnels.longFunnel()));
+      assertEquals(function.hashBytes(new byte[] {1, 2}),
+          function.hashObject(new byte[] {1, 2}, Funnels.byteArrayFunnel()));
+    }
+  }
+
+  public void testSeedsMatter() {
+    assertFalse(Hashing.murmur3_32(1).hashInt(1)
+        .equals(Hashing.murmur3_32(2).hashInt(1)));
+    assertFalse(Hashing.murmur3_128(1).hashInt(1)
+        .equals(Hashing.murmur3_128(2).hashInt(1)));
+  }
+
+  public void testEqualsAndSerialization() {
+    assertEquals(Hashing.murmur3_32(), Hashing.murmur3_32(0));
+    assertEquals(Hashing.murmur3_128(5), Hashing.murmur3_128(5));
+    assertFalse(Hashing.murmur3_64().equals(Hashing.murmur3_128()));
+    assertEquals("Hashing.murmur3_64(0)", Hashing.murmur3_64().toString());
+    for (HashFunction function : FUNCTIONS) {
+      HashFunction copy = SerializableTester.reserializeAndAssert(function);
+      assertEquals(function.hashString(FOX), copy.hashString(FOX));
+    }
+  }
+
+  public void testConsistentHash_ofLong() {
+    Random random = new Random(1);
+    for (int i = 0; i < 1000; i++) {
+      long input = random.nextLong();
+      int previous = 0;
+      assertEquals(0, Hashing.consistentHash(input, 1));
+      for (int buckets = 2; buckets < 100; buckets++) {
+        int bucket = Hashing.consistentHash(input, buckets);
+        assertTrue(bucket >= 0 && bucket < buckets);
+        // A key either stays or moves to the new bucket.
+        assertTrue(bucket == previous || bucket == buckets - 1);
+        previous = bucket;
+      }
+    }
+  }
+
+  public void testConsistentHash_isUniform() {
+    int buckets = 10;
+    int[] counts = new int[buckets];
+    for (int i = 0; i < 100000; i++) {
+      HashCode hashCode = Hashing.murmur3_64().hashInt(i);
+      counts[Hashing.consistentHash(hashCode, buckets)]++;
+    }
+    for (int count : counts) {
+      assertTrue(String.valueOf(count), count > 9500 && count < 10500);
+    }
+  }
+
+  public void testConsistentHash_ofHashCode() {
+    HashCode hash32 = Hashing.murmur3_32().hashInt(1);
+    assertEquals(Hashing.consistentHash(hash32.asInt() & 0xffffffffL, 1000),
+        Hashing.consistentHash(hash32, 1000));
+    HashCode hash128 = Hashing.murmur3_128().hashInt(1);
+    assertEquals(Hashing.consistentHash(hash128.asLong(), 1000),
+        Hashing.consistentHash(hash128, 1000));
+  }
+
+  public void testConsistentHash_badBuckets() {
+    try {
+      Hashing.consistentHash(1, 0);
+      fail();
+    } catch (IllegalArgumentException expected) {}
+  }
+
+  public void testBadIndexes() {
+    for (HashFunction function : FUNCTIONS) {
+      try {
+        function.hashBytes(new byte[4], 2, 3);
+        fail();
+      } catch (IndexOutOfBoundsException expected) {}
+      try {
+        function.newHasher().putBytes(new byte[4], -1, 2);
+        fail();
+      } catch (IndexOutOfBoundsException expected) {}
+    }
+  }
+
+  public void testNullPointers() throws Exception {
+    NullPointerTester tester = new NullPointerTester();
+    tester.testAllPublicStaticMethods(Hashing.class);
+    tester.testAllPublicStaticMethods(Funnels.class);
+  }
+}